@@ -5,11 +5,13 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @MapperScan("org.bedrock.teateach.mappers")
 @EnableCaching
 @EnableAspectJAutoProxy
+@EnableScheduling
 public class TeaTeachApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,34 @@
+package org.bedrock.teateach.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bedrock.teateach.enums.GradingJobStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * A batch of submissions graded by the LLM in the background
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GradingJob {
+    private Long id;
+    private GradingJobStatus status;
+    private String owner; // Instance that claimed the job, while it is running
+    private LocalDateTime heartbeatAt;
+    private String gradingRubric; // Null means the default rubric
+    private int totalItems;
+    private int succeededItems;
+    private int failedItems;
+    private int skippedItems;
+    private String lastError;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+
+    public int getFinishedItems() {
+        return succeededItems + failedItems + skippedItems;
+    }
+}
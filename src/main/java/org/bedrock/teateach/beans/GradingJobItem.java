@@ -0,0 +1,26 @@
+package org.bedrock.teateach.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bedrock.teateach.enums.GradingItemStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * State of one submission within a grading job
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GradingJobItem {
+    private Long id;
+    private Long jobId;
+    private Long submissionId;
+    private GradingItemStatus status;
+    private Double score;
+    private String feedback;
+    private String error;
+    private int attempts;
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,18 @@
+package org.bedrock.teateach.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A pending increment to a student's playback vector.
+ * counts[i] is the number of additional plays of second i.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PlaybackDelta {
+    private Long studentId;
+    private Long resourceId;
+    private int[] counts;
+}
@@ -0,0 +1,19 @@
+package org.bedrock.teateach.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A Redis hot-tier snapshot whose increments are committed to playback_vectors
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PlaybackHotTierSnapshot {
+    private Long snapshotId; // Sequence id Redis gave the snapshot
+    private String member; // studentId:resourceId
+    private LocalDateTime appliedAt;
+}
@@ -114,6 +114,135 @@ public class PlaybackVector {
         }
     }
 
+    /**
+     * Increment play counts for a list of watched [start, end) intervals in seconds, e.g. [[600, 2400]].
+     * Uses a difference array, so the cost is O(intervals + duration) however long the intervals are.
+     *
+     * @throws IllegalArgumentException if an interval is not within the video, see {@link #intervalsToCountVector}
+     */
+    public void incrementIntervals(int[][] intervals) {
+        if (videoDuration == null || videoDuration <= 0) {
+            return;
+        }
+        applyDelta(intervalsToCountVector(intervals, videoDuration));
+    }
+
+    /**
+     * Add a delta vector to the play counts, ignoring seconds past the video duration
+     */
+    public void applyDelta(int[] delta) {
+        if (delta == null || videoDuration == null) {
+            return;
+        }
+
+        // Ensure the playbackData array covers the whole video
+        if (playbackData == null || playbackData.length < videoDuration) {
+            int[] newData = new int[videoDuration];
+            if (playbackData != null) {
+                System.arraycopy(playbackData, 0, newData, 0, playbackData.length);
+            }
+            playbackData = newData;
+        }
+
+        int limit = Math.min(delta.length, videoDuration);
+        for (int i = 0; i < limit; i++) {
+            playbackData[i] += delta[i];
+        }
+    }
+
+    /**
+     * Create a detached copy of this vector so callers can overlay pending deltas safely
+     */
+    public PlaybackVector copy() {
+        int[] data = playbackData != null ? playbackData.clone() : null;
+        return new PlaybackVector(id, studentId, resourceId, data, videoDuration, lastUpdated);
+    }
+
+    /**
+     * Convert a list of played seconds into a count vector, e.g. [2, 3, 3] becomes [0, 0, 1, 2].
+     * Seconds outside [0, videoDuration) are ignored like {@link #incrementSecondPlayCount}, so the vector is never
+     * longer than the video however large the seconds a client sends.
+     */
+    public static int[] toCountVector(int[] seconds, int videoDuration) {
+        if (seconds == null || seconds.length == 0) {
+            return new int[0];
+        }
+
+        int max = -1;
+        for (int second : seconds) {
+            if (second >= 0 && second < videoDuration) {
+                max = Math.max(max, second);
+            }
+        }
+        if (max < 0) {
+            return new int[0];
+        }
+
+        int[] counts = new int[max + 1];
+        for (int second : seconds) {
+            if (second >= 0 && second <= max) {
+                counts[second]++;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Check that a count vector sent by a client, where each index is a second, does not reach past the video
+     *
+     * @return the vector, or an empty one for null
+     * @throws IllegalArgumentException if the vector is longer than videoDuration
+     */
+    public static int[] checkCountVector(int[] counts, int videoDuration) {
+        if (counts == null) {
+            return new int[0];
+        }
+        if (counts.length > videoDuration) {
+            throw new IllegalArgumentException("Count vector of length " + counts.length
+                    + " is longer than the video duration of " + videoDuration + " seconds");
+        }
+        return counts;
+    }
+
+    /**
+     * Convert [start, end) intervals into a count vector covering the furthest interval end.
+     * Difference-array sweep: +1 at each start, -1 at each end, then a prefix sum.
+     *
+     * @throws IllegalArgumentException if an interval is not [start, end) with 0 <= start < end <= videoDuration,
+     *                                  so a client cannot make the vector longer than the video
+     */
+    public static int[] intervalsToCountVector(int[][] intervals, int videoDuration) {
+        if (intervals == null) {
+            return new int[0];
+        }
+
+        int length = 0;
+        for (int[] interval : intervals) {
+            if (interval == null || interval.length != 2) {
+                throw new IllegalArgumentException("Interval must be [start, end)");
+            }
+            if (interval[0] < 0 || interval[0] >= interval[1] || interval[1] > videoDuration) {
+                throw new IllegalArgumentException("Interval [" + interval[0] + ", " + interval[1]
+                        + ") is not within the video duration of " + videoDuration + " seconds");
+            }
+            length = Math.max(length, interval[1]);
+        }
+
+        int[] counts = new int[length];
+        int[] diff = new int[length + 1];
+        for (int[] interval : intervals) {
+            diff[interval[0]]++;
+            diff[interval[1]]--;
+        }
+
+        int running = 0;
+        for (int i = 0; i < length; i++) {
+            running += diff[i];
+            counts[i] = running;
+        }
+        return counts;
+    }
+
     /**
      * Calculate the percentage of the video that has been played at least once
      */
@@ -121,6 +250,16 @@ public class PlaybackVector {
         if (playbackData == null || videoDuration == null || videoDuration == 0) {
             return 0.0;
         }
+        return (double) getCoveredSeconds() / videoDuration * 100.0;
+    }
+
+    /**
+     * Get the number of seconds within the video duration that have been played at least once
+     */
+    public int getCoveredSeconds() {
+        if (playbackData == null || videoDuration == null) {
+            return 0;
+        }
 
         int playedSeconds = 0;
 
@@ -130,7 +269,7 @@ public class PlaybackVector {
             }
         }
 
-        return (double) playedSeconds / videoDuration * 100.0;
+        return playedSeconds;
     }
 
     /**
@@ -0,0 +1,40 @@
+package org.bedrock.teateach.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Per-resource sum of all students' playback vectors, kept up to date as playback deltas are applied
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResourceHeatmap {
+    private Long resourceId;
+    private int[] heatmapData; // Total play count of each second across all students
+    private Integer duration; // Longest video duration seen for this resource
+    private LocalDateTime lastUpdated;
+
+    /**
+     * Add a delta to the aggregate, growing it when the delta is longer
+     */
+    public void add(int[] delta) {
+        if (delta == null) {
+            return;
+        }
+        if (heatmapData == null || heatmapData.length < delta.length) {
+            int[] newData = new int[delta.length];
+            if (heatmapData != null) {
+                System.arraycopy(heatmapData, 0, newData, 0, heatmapData.length);
+            }
+            heatmapData = newData;
+        }
+        for (int i = 0; i < delta.length; i++) {
+            heatmapData[i] += delta[i];
+        }
+        duration = Math.max(duration != null ? duration : 0, heatmapData.length);
+    }
+}
@@ -0,0 +1,95 @@
+package org.bedrock.teateach.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Downsampled level of a resource heatmap: per bucket of resolutionSeconds, the summed play count
+ * and the highest per-second play count
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResourceHeatmapLevel {
+    private Long resourceId;
+    private Integer resolutionSeconds;
+    private int[] sumData;
+    private int[] maxData;
+    private Integer duration; // Video duration in seconds covered by the buckets
+    private LocalDateTime lastUpdated;
+
+    /**
+     * Build a level from a per-second heatmap
+     */
+    public static ResourceHeatmapLevel downsample(Long resourceId, int[] heatmap, int resolutionSeconds) {
+        ResourceHeatmapLevel perSecond = new ResourceHeatmapLevel(resourceId, 1, heatmap, heatmap,
+                heatmap.length, LocalDateTime.now());
+        return perSecond.coarsen(resolutionSeconds);
+    }
+
+    /**
+     * Merge every factor adjacent buckets into one; sums are added and maxes take the maximum
+     */
+    public ResourceHeatmapLevel coarsen(int factor) {
+        if (factor <= 1) {
+            return this;
+        }
+        int[] sums = sumData != null ? sumData : new int[0];
+        int[] maxes = maxData != null ? maxData : new int[0];
+        int buckets = (sums.length + factor - 1) / factor;
+        int[] mergedSums = new int[buckets];
+        int[] mergedMaxes = new int[buckets];
+        for (int i = 0; i < sums.length; i++) {
+            int bucket = i / factor;
+            mergedSums[bucket] += sums[i];
+            mergedMaxes[bucket] = i % factor == 0 ? maxes[i] : Math.max(mergedMaxes[bucket], maxes[i]);
+        }
+        return new ResourceHeatmapLevel(resourceId, resolutionSeconds * factor, mergedSums, mergedMaxes,
+                duration, lastUpdated);
+    }
+
+    /**
+     * Update the buckets covering seconds [from, to) after delta was added to the per-second heatmap:
+     * the delta is added to their sums and their maxes are recomputed, leaving every other bucket untouched
+     *
+     * @param perSecond the per-second heatmap with the delta already added
+     * @param duration  video duration in seconds covered by the heatmap
+     */
+    public void applyDelta(int[] delta, int[] perSecond, int duration, int from, int to) {
+        int resolution = resolutionSeconds;
+        int buckets = (duration + resolution - 1) / resolution;
+        sumData = grow(sumData, buckets);
+        maxData = grow(maxData, buckets);
+        for (int i = from; i < to; i++) {
+            sumData[i / resolution] += delta[i];
+        }
+        for (int bucket = from / resolution; bucket <= (to - 1) / resolution; bucket++) {
+            int start = bucket * resolution;
+            int end = Math.min(start + resolution, perSecond.length);
+            int max = start < end ? perSecond[start] : 0;
+            for (int i = start + 1; i < end; i++) {
+                max = Math.max(max, perSecond[i]);
+            }
+            maxData[bucket] = max;
+        }
+        this.duration = Math.max(this.duration != null ? this.duration : 0, duration);
+    }
+
+    private static int[] grow(int[] data, int length) {
+        if (data != null && data.length >= length) {
+            return data;
+        }
+        int[] grown = new int[length];
+        if (data != null) {
+            System.arraycopy(data, 0, grown, 0, data.length);
+        }
+        return grown;
+    }
+
+    public int getBucketCount() {
+        return sumData != null ? sumData.length : 0;
+    }
+}
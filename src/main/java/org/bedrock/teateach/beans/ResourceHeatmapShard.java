@@ -0,0 +1,39 @@
+package org.bedrock.teateach.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Part of the playback deltas of a resource that has not been folded into its {@link ResourceHeatmap} yet
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResourceHeatmapShard {
+    private Long resourceId;
+    private Integer shard;
+    private int[] deltaData; // Play counts per second added since the last fold, null when there are none
+    private LocalDateTime lastUpdated;
+
+    /**
+     * Add a delta to the pending counts, growing them when the delta is longer
+     */
+    public void add(int[] delta) {
+        if (delta == null) {
+            return;
+        }
+        if (deltaData == null || deltaData.length < delta.length) {
+            int[] newData = new int[delta.length];
+            if (deltaData != null) {
+                System.arraycopy(deltaData, 0, newData, 0, deltaData.length);
+            }
+            deltaData = newData;
+        }
+        for (int i = 0; i < delta.length; i++) {
+            deltaData[i] += delta[i];
+        }
+    }
+}
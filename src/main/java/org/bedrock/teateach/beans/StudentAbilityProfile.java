@@ -0,0 +1,21 @@
+package org.bedrock.teateach.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Stored result of the LLM ability analysis of one student
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StudentAbilityProfile {
+    private Long studentId; // Student number, as used by the ability endpoints
+    private String profileData; // JSON of the analysis map
+    private boolean stale; // A grade or enrollment changed since computedAt
+    private LocalDateTime computedAt;
+    private LocalDateTime updatedAt;
+}
@@ -1,27 +1,110 @@
 package org.bedrock.teateach.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bedrock.teateach.llm.CachingEmbeddingModel;
+import org.bedrock.teateach.llm.OllamaEndpoint;
+import org.bedrock.teateach.llm.OllamaEndpointPool;
+import org.bedrock.teateach.llm.RoutingChatModel;
+import org.bedrock.teateach.llm.RoutingEmbeddingModel;
+import org.bedrock.teateach.vectorstore.HnswVectorStore;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.ollama.OllamaChatModel;
 import org.springframework.ai.ollama.OllamaEmbeddingModel;
 import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Configuration
 public class OllamaConfiguration {
 
+    /**
+     * The Ollama servers of llm.ollama.endpoints; each one's concurrency cap and served models can be set with
+     * llm.ollama.endpoint.&lt;index&gt;.max-concurrency and .models. Empty when no endpoints are listed.
+     */
+    @Bean
+    public OllamaEndpointPool ollamaEndpointPool(Environment environment,
+                                                 MeterRegistry meterRegistry,
+                                                 @Value("${llm.ollama.endpoints:}") String[] urls,
+                                                 @Value("${spring.ai.ollama.chat.options.model:}") String chatModel,
+                                                 @Value("${spring.ai.ollama.embedding.model:}") String embeddingModel,
+                                                 @Value("${llm.ollama.max-concurrency:4}") int maxConcurrency,
+                                                 @Value("${llm.ollama.model-affinity:false}") boolean modelAffinity,
+                                                 @Value("${llm.ollama.eject-after-failures:3}") int ejectAfterFailures,
+                                                 @Value("${llm.ollama.readmit-after-probes:2}") int readmitAfterProbes,
+                                                 @Value("${llm.ollama.acquire-timeout-ms:300000}") long acquireTimeoutMs,
+                                                 @Value("${llm.ollama.probe-timeout-ms:2000}") long probeTimeoutMs) {
+        List<OllamaEndpoint> endpoints = new ArrayList<>();
+        for (String url : urls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            String prefix = "llm.ollama.endpoint." + endpoints.size() + ".";
+            Set<String> models = Arrays.stream(environment.getProperty(prefix + "models", "").split(","))
+                    .map(String::trim)
+                    .filter(model -> !model.isEmpty())
+                    .collect(Collectors.toSet());
+            endpoints.add(OllamaEndpoint.create(url.trim(),
+                    environment.getProperty(prefix + "max-concurrency", Integer.class, maxConcurrency),
+                    models, chatModel, embeddingModel));
+        }
+        return new OllamaEndpointPool(endpoints, modelAffinity, ejectAfterFailures, readmitAfterProbes,
+                acquireTimeoutMs, probeTimeoutMs, meterRegistry);
+    }
+
     @Bean
-    public ChatClient.Builder chatClientBuilder(OllamaChatModel ollamaChatModel) {
-        return ChatClient.builder(ollamaChatModel)
+    public ChatClient.Builder chatClientBuilder(OllamaChatModel ollamaChatModel,
+                                                OllamaEndpointPool endpointPool,
+                                                @Value("${spring.ai.ollama.chat.options.model:}") String model) {
+        ChatModel chatModel = endpointPool.isEmpty() ? ollamaChatModel : new RoutingChatModel(endpointPool, model);
+        return ChatClient.builder(chatModel)
                 .defaultSystem("You are an intelligent educational AI assistant for the TeaTeach platform. " +
                         "Your role is to analyze educational content, provide structured insights, and help improve learning outcomes. " +
                         "Always provide detailed, evidence-based responses, formatted appropriately for the requested task.");
     }
 
+    /**
+     * The Ollama embedding model, balanced over the endpoint pool if it has endpoints, behind a batching,
+     * content-addressed cache; used by the vector store
+     */
+    @Bean
+    @Primary
+    public CachingEmbeddingModel cachingEmbeddingModel(OllamaEmbeddingModel ollamaEmbeddingModel,
+                                                       OllamaEndpointPool endpointPool,
+                                                       MeterRegistry meterRegistry,
+                                                       @Value("${spring.ai.ollama.embedding.model:}") String model,
+                                                       @Value("${llm.embedding.batch-size:32}") int batchSize,
+                                                       @Value("${llm.embedding.cache.enabled:true}") boolean cacheEnabled,
+                                                       @Value("${llm.embedding.cache.path:./data/embedding-cache.bin}") String cachePath,
+                                                       @Value("${llm.embedding.cache.max-entries:100000}") int maxEntries) {
+        EmbeddingModel delegate = endpointPool.isEmpty() ? ollamaEmbeddingModel : new RoutingEmbeddingModel(endpointPool, model);
+        return new CachingEmbeddingModel(delegate, model, batchSize, cacheEnabled ? maxEntries : 0,
+                cacheEnabled && !cachePath.isBlank() ? Paths.get(cachePath) : null, meterRegistry);
+    }
+
     @Bean
-    public VectorStore vectorStore(EmbeddingModel embeddingModel) {
+    public VectorStore vectorStore(CachingEmbeddingModel embeddingModel,
+                                   @Value("${llm.vector-store.type:simple}") String type,
+                                   @Value("${llm.vector-store.hnsw.m:16}") int m,
+                                   @Value("${llm.vector-store.hnsw.ef-construction:200}") int efConstruction,
+                                   @Value("${llm.vector-store.hnsw.ef-search:64}") int efSearch,
+                                   @Value("${llm.vector-store.hnsw.compact-ratio:0.3}") double compactRatio,
+                                   @Value("${llm.vector-store.hnsw.partition-key:}") String partitionKey) {
+        if ("hnsw".equalsIgnoreCase(type)) {
+            return new HnswVectorStore(embeddingModel, m, efConstruction, efSearch, compactRatio, partitionKey);
+        }
         return SimpleVectorStore.builder(embeddingModel).build();
     }
 }
@@ -0,0 +1,87 @@
+package org.bedrock.teateach.config;
+
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.boot.ssl.SslBundles;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.util.backoff.FixedBackOff;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Kafka setup for the playback event pipeline (playback.kafka.*).
+ * No ProducerFactory/ConsumerFactory beans are declared here, so Spring Boot's String template used for API logging stays in place.
+ */
+@Configuration
+public class PlaybackKafkaConfig {
+
+    /**
+     * Batch listener for playback events. Offsets are committed after a batch has been stored,
+     * and a failed batch is retried until the database is reachable again rather than skipped.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, byte[]> playbackEventListenerContainerFactory(
+            KafkaProperties kafkaProperties,
+            SslBundles sslBundles,
+            @Value("${playback.kafka.concurrency:3}") int concurrency,
+            @Value("${playback.kafka.max-poll-records:500}") int maxPollRecords,
+            @Value("${playback.kafka.fetch-max-wait-ms:200}") int fetchMaxWaitMs,
+            @Value("${playback.kafka.retry-backoff-ms:5000}") long retryBackoffMs) {
+        Map<String, Object> properties = consumerProperties(kafkaProperties.buildConsumerProperties(sslBundles),
+                maxPollRecords, fetchMaxWaitMs);
+
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(properties, new StringDeserializer(), new ByteArrayDeserializer()));
+        factory.setBatchListener(true);
+        factory.setConcurrency(Math.max(1, concurrency));
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        factory.setCommonErrorHandler(new DefaultErrorHandler(new FixedBackOff(retryBackoffMs, FixedBackOff.UNLIMITED_ATTEMPTS)));
+        return factory;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "playback.kafka.enabled", havingValue = "true")
+    public NewTopic playbackEventsTopic(@Value("${playback.kafka.topic:playback-events}") String topic,
+                                       @Value("${playback.kafka.partitions:12}") int partitions,
+                                       @Value("${playback.kafka.replicas:1}") int replicas) {
+        return TopicBuilder.name(topic).partitions(partitions).replicas(replicas).build();
+    }
+
+    /**
+     * Consumer settings on top of spring.kafka.*: manual commits, and fetches that wait briefly for a fuller batch
+     */
+    public static Map<String, Object> consumerProperties(Map<String, Object> base, int maxPollRecords, int fetchMaxWaitMs) {
+        Map<String, Object> properties = new HashMap<>(base);
+        properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        properties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        properties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, Math.max(1, maxPollRecords));
+        properties.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, 16 * 1024);
+        properties.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, fetchMaxWaitMs);
+        return properties;
+    }
+
+    /**
+     * Producer settings on top of spring.kafka.*: idempotent, compressed sends that linger to fill a batch
+     */
+    public static Map<String, Object> producerProperties(Map<String, Object> base, int lingerMs) {
+        Map<String, Object> properties = new HashMap<>(base);
+        properties.put(ProducerConfig.ACKS_CONFIG, "all");
+        properties.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        properties.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4");
+        properties.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        return properties;
+    }
+}
@@ -34,10 +34,18 @@ public class SecurityConfig {
                 .requestMatchers("/api/auth/**").permitAll()
                 .requestMatchers("/api/public/**").permitAll()
                 .requestMatchers("/v3/api-docs/**", "/swagger-ui/**", "/swagger-ui.html").permitAll()
-                .requestMatchers("/actuator/health").permitAll()
+                .requestMatchers("/actuator/health", "/actuator/health/**").permitAll()
                 .requestMatchers("/api/student/**").hasAuthority("STUDENT")
                 .requestMatchers("/api/teacher/**").hasAuthority("TEACHER")
                 .requestMatchers("/api/admin/**").hasAuthority("ADMIN")
+                // Playback storage maintenance rewrites whole tables
+                .requestMatchers("/api/playback/admin/compact-storage").hasAuthority("ADMIN")
+                .requestMatchers("/api/playback/admin/heatmaps/rebuild").hasAuthority("ADMIN")
+                .requestMatchers("/api/playback/admin/hot-tier/consistency").hasAuthority("ADMIN")
+                .requestMatchers("/api/playback/admin/merge-duplicates").hasAuthority("ADMIN")
+                .requestMatchers("/api/playback/admin/backfill-counters").hasAuthority("ADMIN")
+                // The LLM response cache is shared by all users
+                .requestMatchers("/api/llm/cache", "/api/llm/cache/**").hasAuthority("ADMIN")
                 .anyRequest().authenticated()
             )
             .headers(headers -> headers
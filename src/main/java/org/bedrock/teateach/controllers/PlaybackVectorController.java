@@ -2,12 +2,24 @@ package org.bedrock.teateach.controllers;
 
 import lombok.extern.slf4j.Slf4j;
 import org.bedrock.teateach.beans.PlaybackVector;
+import org.bedrock.teateach.beans.ResourceHeatmapLevel;
+import org.bedrock.teateach.dto.HeatmapRebuildResult;
+import org.bedrock.teateach.dto.HotTierConsistencyReport;
+import org.bedrock.teateach.dto.ResourceEngagementAnalytics;
+import org.bedrock.teateach.dto.ResourceWatchRoster;
+import org.bedrock.teateach.dto.StudentEngagementSummary;
+import org.bedrock.teateach.services.PlaybackAnalyticsService;
+import org.bedrock.teateach.services.PlaybackEventPublisher;
+import org.bedrock.teateach.services.PlaybackHotTier;
+import org.bedrock.teateach.services.PlaybackStorageMigrationService;
 import org.bedrock.teateach.services.PlaybackVectorService;
+import org.bedrock.teateach.services.ResourceHeatmapService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -16,10 +28,25 @@ import java.util.Map;
 public class PlaybackVectorController {
 
     private final PlaybackVectorService playbackVectorService;
+    private final PlaybackStorageMigrationService playbackStorageMigrationService;
+    private final ResourceHeatmapService resourceHeatmapService;
+    private final PlaybackAnalyticsService playbackAnalyticsService;
+    private final PlaybackHotTier playbackHotTier;
+    private final PlaybackEventPublisher playbackEventPublisher;
 
     @Autowired
-    public PlaybackVectorController(PlaybackVectorService playbackVectorService) {
+    public PlaybackVectorController(PlaybackVectorService playbackVectorService,
+                                    PlaybackStorageMigrationService playbackStorageMigrationService,
+                                    ResourceHeatmapService resourceHeatmapService,
+                                    PlaybackAnalyticsService playbackAnalyticsService,
+                                    PlaybackHotTier playbackHotTier,
+                                    PlaybackEventPublisher playbackEventPublisher) {
         this.playbackVectorService = playbackVectorService;
+        this.playbackStorageMigrationService = playbackStorageMigrationService;
+        this.resourceHeatmapService = resourceHeatmapService;
+        this.playbackAnalyticsService = playbackAnalyticsService;
+        this.playbackHotTier = playbackHotTier;
+        this.playbackEventPublisher = playbackEventPublisher;
     }
 
     /**
@@ -35,6 +62,12 @@ public class PlaybackVectorController {
                 playedSeconds.length, studentId, resourceId);
 
         try {
+            if (playbackEventPublisher.isEnabled()) {
+                playbackEventPublisher.publish(studentId, resourceId,
+                        PlaybackVector.toCountVector(playedSeconds, playbackVectorService.getVideoDuration(resourceId)));
+                return queued();
+            }
+
             PlaybackVector updatedVector = playbackVectorService.updatePlaybackVector(
                     studentId, resourceId, playedSeconds);
 
@@ -66,6 +99,12 @@ public class PlaybackVectorController {
                 playbackCountVector.length, studentId, resourceId);
 
         try {
+            if (playbackEventPublisher.isEnabled()) {
+                playbackEventPublisher.publish(studentId, resourceId,
+                        PlaybackVector.checkCountVector(playbackCountVector, playbackVectorService.getVideoDuration(resourceId)));
+                return queued();
+            }
+
             PlaybackVector updatedVector = playbackVectorService.updatePlaybackVectorWithCounts(
                     studentId, resourceId, playbackCountVector);
 
@@ -85,6 +124,43 @@ public class PlaybackVectorController {
         }
     }
 
+    /**
+     * Record watched intervals, each as [start, end) in seconds, e.g. [[600, 2400]] for minutes 10 to 40
+     */
+    @PostMapping("/record-intervals")
+    public ResponseEntity<?> recordPlayedIntervals(
+            @RequestParam Long studentId,
+            @RequestParam Long resourceId,
+            @RequestBody int[][] intervals) {
+
+        log.info("Recording {} played intervals for student {} and resource {}",
+                intervals.length, studentId, resourceId);
+
+        try {
+            if (playbackEventPublisher.isEnabled()) {
+                playbackEventPublisher.publish(studentId, resourceId,
+                        PlaybackVector.intervalsToCountVector(intervals, playbackVectorService.getVideoDuration(resourceId)));
+                return queued();
+            }
+
+            PlaybackVector updatedVector = playbackVectorService.updatePlaybackVectorWithIntervals(
+                    studentId, resourceId, intervals);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("watchPercentage", updatedVector.calculatePlaybackPercentage());
+            response.put("totalPlayCount", updatedVector.getTotalPlayCount());
+
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("Error recording playback intervals", e);
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
+        }
+    }
+
     /**
      * Get the watch percentage for a student and resource
      */
@@ -109,6 +185,40 @@ public class PlaybackVectorController {
         }
     }
 
+    /**
+     * Get a student's engagement across all resources: per-resource watch percentage, play counts and last activity
+     */
+    @GetMapping("/students/{studentId}/summary")
+    public ResponseEntity<?> getStudentEngagementSummary(@PathVariable Long studentId) {
+        try {
+            StudentEngagementSummary summary = playbackVectorService.getStudentEngagementSummary(studentId);
+            return ResponseEntity.ok(summary);
+        } catch (Exception e) {
+            log.error("Error getting student engagement summary", e);
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * Get the watch percentage of every student who has played a resource
+     */
+    @GetMapping("/resources/{resourceId}/roster")
+    public ResponseEntity<?> getResourceWatchRoster(@PathVariable Long resourceId) {
+        try {
+            ResourceWatchRoster roster = playbackVectorService.getResourceWatchRoster(resourceId);
+            return ResponseEntity.ok(roster);
+        } catch (Exception e) {
+            log.error("Error getting resource watch roster", e);
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
+        }
+    }
+
     /**
      * Get the heatmap data for a resource
      */
@@ -119,8 +229,7 @@ public class PlaybackVectorController {
             return ResponseEntity.ok(Map.of(
                     "resourceId", resourceId,
                     "heatmapData", heatmap,
-                    "totalViews", heatmap.length > 0 ? 
-                            playbackVectorService.getPlaybackVectorsByResource(resourceId).size() : 0
+                    "totalViews", heatmap.length > 0 ? playbackVectorService.countViewers(resourceId) : 0
             ));
         } catch (Exception e) {
             log.error("Error generating heatmap", e);
@@ -130,4 +239,164 @@ public class PlaybackVectorController {
             ));
         }
     }
+
+    /**
+     * Get a downsampled heatmap with sum and max play counts per bucket.
+     * Pass either the maximum number of buckets or a bucket resolution in seconds (1, 10, 60, ...).
+     */
+    @GetMapping("/heatmap/{resourceId}/buckets")
+    public ResponseEntity<?> getHeatmapBuckets(
+            @PathVariable Long resourceId,
+            @RequestParam(required = false) Integer buckets,
+            @RequestParam(required = false) Integer resolution) {
+        try {
+            ResourceHeatmapLevel level = playbackVectorService.generateHeatmapLevel(resourceId, buckets, resolution);
+            return ResponseEntity.ok(Map.of(
+                    "resourceId", resourceId,
+                    "resolutionSeconds", level.getResolutionSeconds(),
+                    "duration", level.getDuration(),
+                    "sums", level.getSumData(),
+                    "maxes", level.getMaxData()
+            ));
+        } catch (Exception e) {
+            log.error("Error generating bucketed heatmap", e);
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * Get engagement analytics for a resource: heatmap, completion distribution, average watch percentage and drop-off curve
+     */
+    @GetMapping("/analytics/{resourceId}")
+    public ResponseEntity<?> getEngagementAnalytics(@PathVariable Long resourceId) {
+        try {
+            ResourceEngagementAnalytics analytics = playbackAnalyticsService.analyzeResource(resourceId);
+            return ResponseEntity.ok(analytics);
+        } catch (Exception e) {
+            log.error("Error computing engagement analytics", e);
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * Convert playback vectors still stored as JSON text into the compact binary encoding. Admins only
+     */
+    @PostMapping("/admin/compact-storage")
+    public ResponseEntity<?> backfillCompactStorage(@RequestParam(defaultValue = "500") int batchSize) {
+        try {
+            int converted = playbackStorageMigrationService.backfillCompactEncoding(batchSize);
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "convertedRows", converted
+            ));
+        } catch (Exception e) {
+            log.error("Error backfilling compact playback storage", e);
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * Fill the covered_seconds and total_play_count columns of vectors written before they existed.
+     * Admins only
+     */
+    @PostMapping("/admin/backfill-counters")
+    public ResponseEntity<?> backfillPlaybackCounters(@RequestParam(defaultValue = "500") int batchSize) {
+        try {
+            int updated = playbackStorageMigrationService.backfillPlaybackCounters(batchSize);
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "updatedRows", updated
+            ));
+        } catch (Exception e) {
+            log.error("Error backfilling playback counters", e);
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * Merge duplicate playback vectors for the same student and resource, ahead of adding uk_student_resource.
+     * Admins only
+     */
+    @PostMapping("/admin/merge-duplicates")
+    public ResponseEntity<?> mergeDuplicateVectors() {
+        try {
+            int removed = playbackStorageMigrationService.mergeDuplicateVectors();
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "removedRows", removed
+            ));
+        } catch (Exception e) {
+            log.error("Error merging duplicate playback vectors", e);
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * Recompute resource heatmaps from the raw playback vectors and report any drift of the incremental aggregate.
+     * Rebuilds every resource when no resourceId is given. Admins only
+     */
+    @PostMapping("/admin/heatmaps/rebuild")
+    public ResponseEntity<?> rebuildHeatmaps(@RequestParam(required = false) Long resourceId) {
+        try {
+            List<HeatmapRebuildResult> results = resourceId != null
+                    ? List.of(resourceHeatmapService.rebuildHeatmap(resourceId))
+                    : playbackStorageMigrationService.rebuildAllHeatmaps();
+            long mismatched = results.stream().filter(r -> r.isPreviouslyMaterialized() && !r.isMatched()).count();
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "rebuiltResources", results.size(),
+                    "mismatchedResources", mismatched,
+                    "results", results
+            ));
+        } catch (Exception e) {
+            log.error("Error rebuilding resource heatmaps", e);
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * Check that every pending increment in the Redis hot tier is tracked for compaction, optionally repairing it.
+     * Admins only
+     */
+    @GetMapping("/admin/hot-tier/consistency")
+    public ResponseEntity<?> checkHotTierConsistency(@RequestParam(defaultValue = "false") boolean repair) {
+        try {
+            HotTierConsistencyReport report = playbackHotTier.checkConsistency(repair);
+            return ResponseEntity.ok(report);
+        } catch (Exception e) {
+            log.error("Error checking playback hot tier consistency", e);
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * Response for a heartbeat handed to the Kafka pipeline; it is applied to the playback vector asynchronously
+     */
+    private static ResponseEntity<?> queued() {
+        return ResponseEntity.accepted().body(Map.of(
+                "success", true,
+                "queued", true
+        ));
+    }
 }
@@ -2,6 +2,7 @@ package org.bedrock.teateach.controllers;
 
 import org.bedrock.teateach.beans.Course;
 import org.bedrock.teateach.llm.LLMService;
+import org.bedrock.teateach.services.AbilityProfileService;
 import org.bedrock.teateach.services.CourseEnrollmentService;
 import org.bedrock.teateach.services.CourseService;
 import org.bedrock.teateach.services.StudentService;
@@ -26,18 +27,21 @@ public class StudentAbilityController {
     private final CourseService courseService;
     private final CourseEnrollmentService courseEnrollmentService;
     private final StudentService studentService;
+    private final AbilityProfileService abilityProfileService;
 
     @Autowired
-    public StudentAbilityController(LLMService llmService, CourseService courseService, CourseEnrollmentService courseEnrollmentService, StudentService studentService) {
+    public StudentAbilityController(LLMService llmService, CourseService courseService, CourseEnrollmentService courseEnrollmentService, StudentService studentService,
+                                    AbilityProfileService abilityProfileService) {
         this.llmService = llmService;
         this.courseService = courseService;
         this.courseEnrollmentService = courseEnrollmentService;
         this.studentService = studentService;
+        this.abilityProfileService = abilityProfileService;
     }
 
     /**
      * Analyzes student abilities based on their submission data, enrolled courses, and knowledge points.
-     * Results are cached to avoid heavy LLM load.
+     * Served from the stored ability profile, which is recomputed in the background after grade or enrollment changes.
      *
      * @param studentId The ID of the student to analyze
      * @return A comprehensive ability assessment including scores and interested fields
@@ -45,7 +49,7 @@ public class StudentAbilityController {
     @GetMapping("/analyze/{studentId}")
     public ResponseEntity<Map<String, Object>> analyzeStudentAbilities(@PathVariable Long studentId) {
         try {
-            Map<String, Object> analysis = llmService.analyzeStudentAbilities(studentId);
+            Map<String, Object> analysis = abilityProfileService.getProfile(studentId);
             return ResponseEntity.ok(analysis);
         } catch (Exception e) {
             return ResponseEntity.internalServerError()
@@ -71,7 +75,7 @@ public class StudentAbilityController {
             @RequestParam(defaultValue = "all") String resourceType) {
         try {
             // Get student abilities, interested fields, and enrolled courses
-            Map<String, Object> studentAbilities = llmService.analyzeStudentAbilities(studentId);
+            Map<String, Object> studentAbilities = abilityProfileService.getProfile(studentId);
             
             @SuppressWarnings("unchecked")
             Map<String, Object> abilities = (Map<String, Object>) studentAbilities.get("abilities");
@@ -110,7 +114,7 @@ public class StudentAbilityController {
             Map<String, Object> result = new HashMap<>();
             
             // Get student abilities, interested fields, and enrolled courses once
-            Map<String, Object> studentAbilities = llmService.analyzeStudentAbilities(studentId);
+            Map<String, Object> studentAbilities = abilityProfileService.getProfile(studentId);
             
             @SuppressWarnings("unchecked")
             Map<String, Object> abilities = (Map<String, Object>) studentAbilities.get("abilities");
@@ -182,7 +186,7 @@ public class StudentAbilityController {
                 "comprehensive", "/api/student-abilities/recommend/{studentId}/comprehensive - Get all recommendation types"
             ),
             "dataSource", "Analysis based on graded submissions, enrolled courses, and knowledge points",
-            "caching", "Results cached for 5 seconds (development) / 1 hour (production)",
+            "caching", "Profiles are stored and recomputed in the background after new grades or enrollment changes",
             "features", java.util.List.of(
                 "Comprehensive ability scoring",
                 "Interest field identification",
@@ -1,9 +1,16 @@
 package org.bedrock.teateach.controllers;
 
+import org.bedrock.teateach.beans.GradingJob;
 import org.bedrock.teateach.beans.StudentTaskSubmission;
 import org.bedrock.teateach.beans.SubmissionFile;
+import org.bedrock.teateach.dto.GradingJobProgress;
+import org.bedrock.teateach.enums.GradingJobStatus;
 import org.bedrock.teateach.llm.LLMService;
+import org.bedrock.teateach.llm.LlmSseEmitters;
+import org.bedrock.teateach.llm.LlmStreamEvent;
 import org.bedrock.teateach.services.GradeService; // For recordSubmissionScore
+import org.bedrock.teateach.services.GradingJobRunner;
+import org.bedrock.teateach.services.GradingJobService;
 import org.bedrock.teateach.services.StudentTaskSubmissionService; // Assuming a dedicated service for basic CRUD
 import org.bedrock.teateach.services.SubmissionFileService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,10 +21,12 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.*;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
 
 @RestController
 @RequestMapping("/api/submissions")
@@ -27,16 +36,22 @@ public class StudentTaskSubmissionController {
     private final GradeService gradeService; // For specific grading logic
     private final SubmissionFileService submissionFileService;
     private final LLMService llmService; // For AI-powered grading and feedback
+    private final GradingJobService gradingJobService; // Background batch grading
+    private final GradingJobRunner gradingJobRunner;
 
     @Autowired
     public StudentTaskSubmissionController(StudentTaskSubmissionService studentTaskSubmissionService,
                                            GradeService gradeService,
                                            SubmissionFileService submissionFileService,
-                                           LLMService llmService) {
+                                           LLMService llmService,
+                                           GradingJobService gradingJobService,
+                                           GradingJobRunner gradingJobRunner) {
         this.studentTaskSubmissionService = studentTaskSubmissionService;
         this.gradeService = gradeService;
         this.submissionFileService = submissionFileService;
         this.llmService = llmService;
+        this.gradingJobService = gradingJobService;
+        this.gradingJobRunner = gradingJobRunner;
     }
 
     /**
@@ -312,28 +327,8 @@ public class StudentTaskSubmissionController {
                 return ResponseEntity.badRequest().body(gradingResult);
             }
             
-            // Extract score and feedback from LLM response
-            Double score = null;
-            Object scoreObj = gradingResult.get("score");
-            if (scoreObj instanceof Number) {
-                score = ((Number) scoreObj).doubleValue();
-            }
-            String feedback = (String) gradingResult.get("feedback");
-            
-            // Update the submission with LLM results
-            submission.setScore(score);
-            submission.setFeedback(feedback);
-            submission.setCompletionStatus(3); // Mark as graded
-            
-            StudentTaskSubmission updatedSubmission = studentTaskSubmissionService.updateSubmission(submission);
-            
-            // Update overall grade
-            gradeService.recordSubmissionScore(submissionId, score);
-            
-            // Return success response with updated submission
-            gradingResult.put("submission", updatedSubmission);
-            
-            return ResponseEntity.ok(gradingResult);
+            // Update the submission and the overall grade, and return it with the LLM results
+            return ResponseEntity.ok(applyLlmGrade(submission, gradingResult));
             
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -372,23 +367,8 @@ public class StudentTaskSubmissionController {
                 return ResponseEntity.badRequest().body(feedbackResult);
             }
             
-            // Extract feedback from LLM response
-            String feedback = (String) feedbackResult.get("feedback");
-            
-            // Update the submission with LLM feedback
-            String existingFeedback = submission.getFeedback();
-            String newFeedback = existingFeedback != null && !existingFeedback.trim().isEmpty() 
-                ? existingFeedback + "\n\n--- AI-Generated Feedback ---\n" + feedback
-                : "--- AI-Generated Feedback ---\n" + feedback;
-            
-            submission.setFeedback(newFeedback);
-            
-            StudentTaskSubmission updatedSubmission = studentTaskSubmissionService.updateSubmission(submission);
-            
-            // Return success response with updated submission
-            feedbackResult.put("submission", updatedSubmission);
-            
-            return ResponseEntity.ok(feedbackResult);
+            // Append the LLM feedback to the submission and return it with the LLM results
+            return ResponseEntity.ok(appendLlmFeedback(submission, feedbackResult));
             
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -400,6 +380,107 @@ public class StudentTaskSubmissionController {
         }
     }
 
+    /**
+     * Streams LLM grading of a submission as Server-Sent Events: "token" events with the model output as it is
+     * generated, then a "result" event with the same body as the llm-grade endpoint once the grade is saved,
+     * or an "error" event.
+     * POST /api/submissions/{submissionId}/llm-grade/stream
+     * @param submissionId The ID of the submission to grade.
+     * @param gradingRubric The grading criteria/rubric to use for assessment.
+     * @return The event stream.
+     */
+    @PostMapping(value = "/{submissionId}/llm-grade/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamGradeSubmissionWithLLM(@PathVariable Long submissionId,
+                                                                   @RequestParam(required = false) String gradingRubric) {
+        Optional<StudentTaskSubmission> submissionOpt = studentTaskSubmissionService.getSubmissionById(submissionId);
+        if (submissionOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        StudentTaskSubmission submission = submissionOpt.get();
+        return ResponseEntity.ok(LlmSseEmitters.of(llmService.streamGradeSubmission(submission, gradingRubric)
+            .map(event -> event.isResult() ? saveStreamedResult(event, result -> applyLlmGrade(submission, result)) : event)));
+    }
+
+    /**
+     * Streams LLM feedback generation (without grading) for a submission as Server-Sent Events.
+     * POST /api/submissions/{submissionId}/llm-feedback/stream
+     * @param submissionId The ID of the submission to provide feedback for.
+     * @param feedbackPrompt Custom prompt for the type of feedback desired.
+     * @return The event stream.
+     */
+    @PostMapping(value = "/{submissionId}/llm-feedback/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamFeedbackWithLLM(@PathVariable Long submissionId,
+                                                            @RequestParam(required = false) String feedbackPrompt) {
+        Optional<StudentTaskSubmission> submissionOpt = studentTaskSubmissionService.getSubmissionById(submissionId);
+        if (submissionOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        StudentTaskSubmission submission = submissionOpt.get();
+        return ResponseEntity.ok(LlmSseEmitters.of(llmService.streamFeedback(submission, feedbackPrompt)
+            .map(event -> event.isResult() ? saveStreamedResult(event, result -> appendLlmFeedback(submission, result)) : event)));
+    }
+
+    /**
+     * Stores the LLM score and feedback on the submission and records it in the overall grade.
+     * @return The grading result with the updated submission added.
+     */
+    private Map<String, Object> applyLlmGrade(StudentTaskSubmission submission, Map<String, Object> gradingResult) {
+        // Extract score and feedback from LLM response
+        Double score = null;
+        Object scoreObj = gradingResult.get("score");
+        if (scoreObj instanceof Number) {
+            score = ((Number) scoreObj).doubleValue();
+        }
+        String feedback = (String) gradingResult.get("feedback");
+
+        // Update the submission with LLM results
+        submission.setScore(score);
+        submission.setFeedback(feedback);
+        submission.setCompletionStatus(3); // Mark as graded
+
+        StudentTaskSubmission updatedSubmission = studentTaskSubmissionService.updateSubmission(submission);
+
+        // Update overall grade
+        gradeService.recordSubmissionScore(submission.getId(), score);
+
+        gradingResult.put("submission", updatedSubmission);
+        return gradingResult;
+    }
+
+    /**
+     * Appends the LLM feedback to the submission's existing feedback.
+     * @return The feedback result with the updated submission added.
+     */
+    private Map<String, Object> appendLlmFeedback(StudentTaskSubmission submission, Map<String, Object> feedbackResult) {
+        String feedback = (String) feedbackResult.get("feedback");
+
+        String existingFeedback = submission.getFeedback();
+        String newFeedback = existingFeedback != null && !existingFeedback.trim().isEmpty()
+            ? existingFeedback + "\n\n--- AI-Generated Feedback ---\n" + feedback
+            : "--- AI-Generated Feedback ---\n" + feedback;
+
+        submission.setFeedback(newFeedback);
+
+        StudentTaskSubmission updatedSubmission = studentTaskSubmissionService.updateSubmission(submission);
+        feedbackResult.put("submission", updatedSubmission);
+        return feedbackResult;
+    }
+
+    /**
+     * Saves the result of a streamed LLM call; a failed save ends the stream with an error event.
+     */
+    @SuppressWarnings("unchecked")
+    private static LlmStreamEvent saveStreamedResult(LlmStreamEvent event,
+                                                     Function<Map<String, Object>, Map<String, Object>> save) {
+        try {
+            return LlmStreamEvent.result(save.apply((Map<String, Object>) event.getData()));
+        } catch (Exception e) {
+            return LlmStreamEvent.error("Failed to save the LLM result: " + e.getMessage());
+        }
+    }
+
     /**
      * Batch process multiple submissions for LLM grading.
      * POST /api/submissions/batch-llm-grade
@@ -478,4 +559,100 @@ public class StudentTaskSubmissionController {
                 ));
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Starts LLM grading of a batch of submissions in the background.
+     * Each submission's score is recorded as soon as it is graded; poll the job for progress.
+     * POST /api/submissions/batch-llm-grade/jobs
+     * @param request Contains submission IDs, an optional grading rubric and an optional regradeGraded flag
+     *                (submissions that are already graded are skipped unless it is true).
+     * @return The job ID, 202 Accepted.
+     */
+    @PostMapping("/batch-llm-grade/jobs")
+    public ResponseEntity<?> submitBatchGradingJob(@RequestBody Map<String, Object> request) {
+        try {
+            List<Long> submissionIds = toIdList(request.get("submissionIds"));
+            String gradingRubric = (String) request.get("gradingRubric");
+            boolean regradeGraded = Boolean.TRUE.equals(request.get("regradeGraded"));
+
+            if (submissionIds.isEmpty()) {
+                return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", "No submission IDs provided",
+                    "message", "Please provide a list of submission IDs to grade"
+                ));
+            }
+
+            GradingJob job = gradingJobService.createJob(submissionIds, gradingRubric, regradeGraded);
+            gradingJobRunner.submit(job.getId());
+
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
+                "success", true,
+                "jobId", job.getId(),
+                "totalItems", job.getTotalItems(),
+                "skippedItems", job.getSkippedItems(),
+                "statusUrl", "/api/submissions/batch-llm-grade/jobs/" + job.getId()
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Progress and per-submission results of a grading job.
+     * GET /api/submissions/batch-llm-grade/jobs/{jobId}
+     * @param jobId The ID of the job.
+     * @return The job's counters, progress percentage and item results.
+     */
+    @GetMapping("/batch-llm-grade/jobs/{jobId}")
+    public ResponseEntity<GradingJobProgress> getBatchGradingJob(@PathVariable Long jobId) {
+        return gradingJobService.getProgress(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Grades the failed and unfinished submissions of a job again.
+     * POST /api/submissions/batch-llm-grade/jobs/{jobId}/retry
+     * @param jobId The ID of the job.
+     * @return The number of submissions queued again, 202 Accepted.
+     */
+    @PostMapping("/batch-llm-grade/jobs/{jobId}/retry")
+    public ResponseEntity<?> retryBatchGradingJob(@PathVariable Long jobId) {
+        GradingJob job = gradingJobService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        // A running job may be graded by another instance
+        if (gradingJobRunner.isActive(jobId) || job.getStatus() == GradingJobStatus.RUNNING) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of(
+                "success", false,
+                "error", "Grading job " + jobId + " is still running"
+            ));
+        }
+        int requeued = gradingJobService.prepareRetry(jobId);
+        gradingJobRunner.submit(jobId);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
+            "success", true,
+            "jobId", jobId,
+            "requeuedItems", requeued
+        ));
+    }
+
+    /**
+     * JSON numbers arrive as Integer or Long depending on their size
+     */
+    private static List<Long> toIdList(Object value) {
+        List<Long> ids = new ArrayList<>();
+        if (value instanceof Collection<?>) {
+            for (Object id : (Collection<?>) value) {
+                if (id instanceof Number) {
+                    ids.add(((Number) id).longValue());
+                } else if (id != null) {
+                    ids.add(Long.parseLong(id.toString()));
+                }
+            }
+        }
+        return ids;
+    }
+}
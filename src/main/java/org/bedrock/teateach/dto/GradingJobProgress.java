@@ -0,0 +1,21 @@
+package org.bedrock.teateach.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bedrock.teateach.beans.GradingJob;
+import org.bedrock.teateach.beans.GradingJobItem;
+
+import java.util.List;
+
+/**
+ * Polling view of a grading job: its counters and the result of every submission graded so far
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GradingJobProgress {
+    private GradingJob job;
+    private double progressPercentage; // Finished items (succeeded, failed or skipped) over all items
+    private List<GradingJobItem> items; // In submission order
+}
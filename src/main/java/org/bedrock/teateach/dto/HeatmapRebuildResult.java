@@ -0,0 +1,19 @@
+package org.bedrock.teateach.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of recomputing a resource heatmap from the raw playback vectors
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HeatmapRebuildResult {
+    private Long resourceId;
+    private boolean previouslyMaterialized; // false when the aggregate row did not exist yet
+    private boolean matched; // incremental aggregate equalled the recomputed one
+    private int mismatchedSeconds;
+    private int firstMismatchSecond; // -1 when matched
+}
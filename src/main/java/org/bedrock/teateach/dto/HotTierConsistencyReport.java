@@ -0,0 +1,22 @@
+package org.bedrock.teateach.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Result of checking the Redis playback hot tier bookkeeping against its data
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HotTierConsistencyReport {
+    private boolean consistent;
+    private int liveKeys; // Pairs with increments waiting for compaction
+    private int snapshotKeys; // Pairs taken by a compaction that has not been acknowledged yet
+    private long pendingIncrements; // Sum of all play counts held in Redis
+    private int untrackedLiveKeys; // Live hashes missing from the dirty set; they would never be compacted
+    private int untrackedSnapshotKeys; // Snapshots missing from the compacting set; they would never be retried
+    private int danglingMembers; // Set members without any data
+    private boolean repaired;
+}
@@ -0,0 +1,27 @@
+package org.bedrock.teateach.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Hit and miss counters of the LLM response cache for one call site
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LlmCacheStats {
+    private String site;
+    private boolean enabled;
+    private long localHits;
+    private long redisHits;
+    private long misses; // Model calls made because neither tier had the response
+    private long bypassed; // Calls made while caching was disabled for the site
+    private long size; // Entries in the local tier
+    private long evictions; // Local entries dropped by the size bound or TTL
+
+    public double getHitRate() {
+        long lookups = localHits + redisHits + misses;
+        return lookups == 0 ? 0.0 : (localHits + redisHits) * 100.0 / lookups;
+    }
+}
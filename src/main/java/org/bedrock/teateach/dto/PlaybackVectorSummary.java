@@ -0,0 +1,33 @@
+package org.bedrock.teateach.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Metadata of one playback vector without its play counts, read from the counter columns
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PlaybackVectorSummary {
+    private Long id;
+    private Long studentId;
+    private Long resourceId;
+    private Integer videoDuration;
+    private int coveredSeconds; // Seconds played at least once
+    private long totalPlayCount;
+    private LocalDateTime lastUpdated;
+
+    /**
+     * Percentage of the video played at least once, same as PlaybackVector.calculatePlaybackPercentage()
+     */
+    public double getWatchPercentage() {
+        if (videoDuration == null || videoDuration == 0) {
+            return 0.0;
+        }
+        return (double) coveredSeconds / videoDuration * 100.0;
+    }
+}
@@ -0,0 +1,21 @@
+package org.bedrock.teateach.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Engagement statistics of one resource, computed in a single pass over its playback vectors
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResourceEngagementAnalytics {
+    private Long resourceId;
+    private int studentCount;
+    private int videoDuration; // Longest video duration among the vectors
+    private int[] heatmap; // Total play count of each second across all students
+    private int[] completionDistribution; // Students per watch-percentage decile: [0-10%), [10-20%), ..., [90-100%]
+    private double averageWatchPercentage;
+    private int[] dropOffCurve; // Number of students whose furthest watched second is at or after each second
+}
@@ -0,0 +1,21 @@
+package org.bedrock.teateach.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Watch percentage of every student who has played a resource
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResourceWatchRoster {
+    private Long resourceId;
+    private int studentCount;
+    private int completedCount; // Students who watched at least the completion threshold
+    private double averageWatchPercentage;
+    private List<PlaybackVectorSummary> students; // Ordered by student id
+}
@@ -0,0 +1,25 @@
+package org.bedrock.teateach.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * A student's viewing across all resources they have played
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StudentEngagementSummary {
+    private Long studentId;
+    private int resourceCount;
+    private int completedResources; // Resources watched to at least the completion threshold
+    private double averageWatchPercentage;
+    private long coveredSeconds; // Distinct seconds watched, summed over resources
+    private long totalPlayCount;
+    private LocalDateTime lastActivity;
+    private List<PlaybackVectorSummary> resources; // Most recently watched first
+}
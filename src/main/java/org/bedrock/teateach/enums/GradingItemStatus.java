@@ -0,0 +1,18 @@
+package org.bedrock.teateach.enums;
+
+import lombok.Getter;
+
+@Getter
+public enum GradingItemStatus {
+    PENDING("待评分"),
+    SUCCEEDED("评分成功"),
+    FAILED("评分失败"),
+    SKIPPED("已评分，跳过");
+
+    private final String description;
+
+    GradingItemStatus(String description) {
+        this.description = description;
+    }
+
+}
@@ -0,0 +1,18 @@
+package org.bedrock.teateach.enums;
+
+import lombok.Getter;
+
+@Getter
+public enum GradingJobStatus {
+    PENDING("等待评分"),
+    RUNNING("评分中"),
+    COMPLETED("已完成"),
+    FAILED("已中断");
+
+    private final String description;
+
+    GradingJobStatus(String description) {
+        this.description = description;
+    }
+
+}
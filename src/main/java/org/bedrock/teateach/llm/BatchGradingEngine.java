@@ -0,0 +1,233 @@
+package org.bedrock.teateach.llm;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs many LLM grading calls in parallel against the Ollama endpoint.
+ * <p>
+ * At most {@code llm.grading.concurrency} calls are in flight at once; a bounded pool of platform threads is used
+ * because the application targets Java 17. Each attempt has its own timeout, failed attempts are retried with
+ * exponential backoff, and outcomes are handed to the caller in completion order.
+ * <p>
+ * Cancelling a timed-out attempt only interrupts its thread, and a blocking HTTP call to the model ignores that, so
+ * an abandoned call keeps its slot until it really returns. A retry waits up to the attempt timeout for a free slot.
+ */
+@Component
+@Slf4j
+public class BatchGradingEngine {
+
+    private final int concurrency;
+    private final long timeoutMs;
+    private final int maxAttempts;
+    private final long backoffMs;
+    private final ExecutorService workers;
+    private final ExecutorService calls;
+    private final Semaphore slots;
+
+    @Autowired
+    public BatchGradingEngine(@Value("${llm.grading.concurrency:4}") int concurrency,
+                              @Value("${llm.grading.timeout-ms:180000}") long timeoutMs,
+                              @Value("${llm.grading.max-attempts:3}") int maxAttempts,
+                              @Value("${llm.grading.backoff-ms:2000}") long backoffMs) {
+        this.concurrency = Math.max(1, concurrency);
+        this.timeoutMs = Math.max(1, timeoutMs);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMs = Math.max(0, backoffMs);
+        // Workers own one item each (attempts and backoff included)
+        this.workers = new ThreadPoolExecutor(this.concurrency, this.concurrency, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), daemonThreads("llm-grading-"));
+        ((ThreadPoolExecutor) this.workers).allowCoreThreadTimeOut(true);
+        // The blocking model call runs on its own thread so a worker can abandon it when the attempt times out
+        this.calls = Executors.newCachedThreadPool(daemonThreads("llm-grading-call-"));
+        // Held by a model call until it ends, not until its attempt gives up on it
+        this.slots = new Semaphore(this.concurrency);
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Grade every item and return the outcomes in the order they completed
+     *
+     * @param items      the work items, e.g. submissions
+     * @param idOf       identifier reported in each outcome
+     * @param grader     the model call for one item; any exception counts as a failed attempt
+     * @param onComplete called from the calling thread as each item finishes, may be null
+     */
+    public <T> List<GradingOutcome> gradeAll(List<T> items,
+                                             Function<T, Long> idOf,
+                                             Function<T, Object> grader,
+                                             Consumer<GradingOutcome> onComplete) {
+        CompletionService<GradingOutcome> completion = new ExecutorCompletionService<>(workers);
+        for (T item : items) {
+            completion.submit(() -> gradeOne(idOf.apply(item), () -> grader.apply(item)));
+        }
+
+        List<GradingOutcome> outcomes = new ArrayList<>(items.size());
+        try {
+            for (int i = 0; i < items.size(); i++) {
+                GradingOutcome outcome = completion.take().get();
+                outcomes.add(outcome);
+                if (onComplete != null) {
+                    onComplete.accept(outcome);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Batch grading was interrupted after " + outcomes.size() + " items", e);
+        } catch (ExecutionException e) {
+            // gradeOne never throws; this would be a bug in the engine itself
+            throw new IllegalStateException("Batch grading worker failed", e.getCause());
+        }
+        return outcomes;
+    }
+
+    private GradingOutcome gradeOne(Long id, Callable<Object> call) {
+        long started = System.nanoTime();
+        String lastError = null;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            try {
+                if (!slots.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                    lastError = "No free model slot within " + timeoutMs + " ms, earlier calls are still running";
+                } else {
+                    AtomicBoolean callStarted = new AtomicBoolean();
+                    Future<Object> running = submitHoldingSlot(call, callStarted);
+                    try {
+                        Object result = running.get(timeoutMs, TimeUnit.MILLISECONDS);
+                        return new GradingOutcome(id, true, result, null, attempt, elapsedMs(started));
+                    } catch (TimeoutException e) {
+                        abandon(running, callStarted);
+                        lastError = "Timed out after " + timeoutMs + " ms";
+                    } catch (ExecutionException e) {
+                        lastError = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+                    } catch (InterruptedException e) {
+                        abandon(running, callStarted);
+                        throw e;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new GradingOutcome(id, false, null, "Interrupted", attempt, elapsedMs(started));
+            }
+
+            log.warn("Grading attempt {}/{} for item {} failed: {}", attempt, maxAttempts, id, lastError);
+            if (attempt < maxAttempts && !sleepBackoff(attempt)) {
+                return new GradingOutcome(id, false, null, "Interrupted", attempt, elapsedMs(started));
+            }
+        }
+        return new GradingOutcome(id, false, null, lastError, maxAttempts, elapsedMs(started));
+    }
+
+    /**
+     * Run the model call on its own thread; the slot taken by the caller is released when the call itself ends
+     */
+    private Future<Object> submitHoldingSlot(Callable<Object> call, AtomicBoolean callStarted) {
+        try {
+            return calls.submit(() -> {
+                if (!callStarted.compareAndSet(false, true)) {
+                    return null; // Abandoned before it started, the slot was already released
+                }
+                try {
+                    return call.call();
+                } finally {
+                    slots.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Stop waiting for a call; it keeps its slot until it returns unless it had not started yet
+     */
+    private void abandon(Future<Object> running, AtomicBoolean callStarted) {
+        running.cancel(true);
+        if (callStarted.compareAndSet(false, true)) {
+            slots.release();
+        }
+    }
+
+    /**
+     * Wait backoffMs, 2 * backoffMs, 4 * backoffMs, ... before the next attempt
+     *
+     * @return false if interrupted
+     */
+    private boolean sleepBackoff(int attempt) {
+        long delay = backoffMs << Math.min(attempt - 1, 16);
+        if (delay <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(delay);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static long elapsedMs(long startedNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+        calls.shutdownNow();
+    }
+
+    /**
+     * Result of grading one item
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class GradingOutcome {
+        private Long id;
+        private boolean success;
+        private Object result; // What the grader returned, when successful
+        private String error; // Last failure, when unsuccessful
+        private int attempts;
+        private long elapsedMs; // Including retries and backoff
+    }
+}
@@ -0,0 +1,323 @@
+package org.bedrock.teateach.llm;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link EmbeddingModel} that sends texts to the underlying model in batches and caches the vectors by content.
+ * <p>
+ * The cache key is the SHA-256 of the embedding model name and the text, so a duplicate description or a re-uploaded
+ * file is never embedded twice, and switching models never returns a stale vector. Texts missing from the cache are
+ * de-duplicated and sent {@code batchSize} per model call.
+ * <p>
+ * Entries are appended to a cache file and loaded again at startup; a record cut short by a crash is dropped. At most
+ * {@code maxEntries} vectors are kept, further ones are embedded but not cached.
+ * <p>
+ * Metrics: {@code llm.embedding.cache.requests} (tag result=hit|miss), {@code llm.embedding.cache.hit.ratio},
+ * {@code llm.embedding.cache.size}, {@code llm.embedding.model.calls} (one per batch), {@code llm.embedding.computed}
+ * and {@code llm.embedding.throughput}, the embeddings computed per second of model time.
+ */
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private static final int FILE_MAGIC = 0x454D4243; // "EMBC"
+    private static final int FILE_VERSION = 1;
+    private static final int KEY_BYTES = 32;
+
+    private final EmbeddingModel delegate;
+    private final String model;
+    private final int batchSize;
+    private final int maxEntries;
+    private final Path cachePath;
+    private final Map<String, float[]> entries = new ConcurrentHashMap<>();
+    private DataOutputStream appender;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong computed = new AtomicLong();
+    private final AtomicLong modelNanos = new AtomicLong();
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter computedCounter;
+    private final Timer modelCalls;
+
+    /**
+     * @param model      name of the embedding model, part of every cache key
+     * @param maxEntries maximum number of cached vectors, 0 disables caching
+     * @param cachePath  file the cache is kept in across restarts, or null for a memory-only cache
+     */
+    public CachingEmbeddingModel(EmbeddingModel delegate, String model, int batchSize, int maxEntries, Path cachePath,
+                                 MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.model = model;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxEntries = Math.max(0, maxEntries);
+        this.cachePath = cachePath;
+        this.hitCounter = meterRegistry.counter("llm.embedding.cache.requests", "result", "hit");
+        this.missCounter = meterRegistry.counter("llm.embedding.cache.requests", "result", "miss");
+        this.computedCounter = meterRegistry.counter("llm.embedding.computed");
+        this.modelCalls = meterRegistry.timer("llm.embedding.model.calls");
+        meterRegistry.gauge("llm.embedding.cache.hit.ratio", this, CachingEmbeddingModel::getHitRatio);
+        meterRegistry.gauge("llm.embedding.cache.size", entries, Map::size);
+        meterRegistry.gauge("llm.embedding.throughput", this, CachingEmbeddingModel::getThroughput);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        float[][] vectors = new float[texts.size()][];
+
+        // Positions of each text that is not cached, by key, so duplicates within the request are embedded once
+        Map<String, List<Integer>> missing = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            String key = key(texts.get(i));
+            float[] cached = maxEntries > 0 ? entries.get(key) : null;
+            if (cached != null) {
+                vectors[i] = cached;
+                hits.incrementAndGet();
+                hitCounter.increment();
+            } else {
+                missing.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+                misses.incrementAndGet();
+                missCounter.increment();
+            }
+        }
+
+        List<String> keys = new ArrayList<>(missing.keySet());
+        for (int from = 0; from < keys.size(); from += batchSize) {
+            List<String> batchKeys = keys.subList(from, Math.min(from + batchSize, keys.size()));
+            List<String> batchTexts = batchKeys.stream().map(key -> texts.get(missing.get(key).get(0))).toList();
+
+            long start = System.nanoTime();
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(batchTexts, request.getOptions()));
+            long elapsed = System.nanoTime() - start;
+            modelCalls.record(elapsed, TimeUnit.NANOSECONDS);
+            modelNanos.addAndGet(elapsed);
+
+            List<Embedding> results = response.getResults();
+            if (results.size() != batchTexts.size()) {
+                throw new IllegalStateException("Embedding model returned " + results.size() + " embeddings for "
+                        + batchTexts.size() + " texts");
+            }
+            for (int j = 0; j < results.size(); j++) {
+                Embedding embedding = results.get(j);
+                String key = batchKeys.get(embedding.getIndex() != null ? embedding.getIndex() : j);
+                put(key, embedding.getOutput());
+                for (int position : missing.get(key)) {
+                    vectors[position] = embedding.getOutput();
+                }
+            }
+            computed.addAndGet(results.size());
+            computedCounter.increment(results.size());
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(vectors.length);
+        for (int i = 0; i < vectors.length; i++) {
+            embeddings.add(new Embedding(vectors[i], i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Share of looked up texts that were answered from the cache
+     */
+    public double getHitRatio() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    /**
+     * Embeddings computed per second of model time
+     */
+    public double getThroughput() {
+        long nanos = modelNanos.get();
+        return nanos == 0 ? 0 : computed.get() * 1e9 / nanos;
+    }
+
+    /**
+     * Load the cache file, dropping a record cut short by a crash, and open it for appending
+     */
+    @PostConstruct
+    public synchronized void load() {
+        if (cachePath == null || maxEntries == 0) {
+            return;
+        }
+        try {
+            Path directory = cachePath.toAbsolutePath().getParent();
+            if (directory != null) {
+                Files.createDirectories(directory);
+            }
+            boolean writeHeader = true;
+            if (Files.isRegularFile(cachePath) && Files.size(cachePath) > 0) {
+                long validLength = read();
+                if (validLength < 0) {
+                    log.warn("Ignoring unreadable embedding cache {}", cachePath);
+                    validLength = 0;
+                }
+                if (validLength < Files.size(cachePath)) {
+                    try (FileChannel channel = FileChannel.open(cachePath, StandardOpenOption.WRITE)) {
+                        channel.truncate(validLength);
+                    }
+                }
+                writeHeader = validLength == 0;
+            }
+            appender = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cachePath.toFile(), true), 1 << 16));
+            if (writeHeader) {
+                appender.writeInt(FILE_MAGIC);
+                appender.writeInt(FILE_VERSION);
+            }
+            log.info("Loaded {} cached embeddings from {}", entries.size(), cachePath);
+        } catch (IOException e) {
+            // The cache still works in memory
+            log.warn("Could not open embedding cache {}: {}", cachePath, e.getMessage());
+            appender = null;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${llm.embedding.cache.flush-interval-ms:10000}")
+    public synchronized void flush() {
+        if (appender != null) {
+            try {
+                appender.flush();
+            } catch (IOException e) {
+                log.warn("Could not write embedding cache {}: {}", cachePath, e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        flush();
+        if (appender != null) {
+            try {
+                appender.close();
+            } catch (IOException e) {
+                log.debug("Could not close embedding cache {}: {}", cachePath, e.getMessage());
+            }
+            appender = null;
+        }
+    }
+
+    /**
+     * Read all complete records of the cache file
+     *
+     * @return the length of the valid part of the file, or -1 if it is not an embedding cache
+     */
+    private long read() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cachePath), 1 << 16))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                return -1;
+            }
+            long validLength = 8;
+            byte[] key = new byte[KEY_BYTES];
+            while (entries.size() < maxEntries) {
+                try {
+                    in.readFully(key);
+                    int dimensions = in.readInt();
+                    if (dimensions <= 0 || dimensions > 65536) {
+                        break;
+                    }
+                    float[] vector = new float[dimensions];
+                    for (int d = 0; d < dimensions; d++) {
+                        vector[d] = in.readFloat();
+                    }
+                    entries.put(HexFormat.of().formatHex(key), vector);
+                    validLength += KEY_BYTES + 4 + 4L * dimensions;
+                } catch (EOFException e) {
+                    break;
+                }
+            }
+            return validLength;
+        } catch (EOFException e) {
+            return -1;
+        }
+    }
+
+    private void put(String key, float[] vector) {
+        if (entries.size() >= maxEntries || entries.putIfAbsent(key, vector) != null) {
+            return;
+        }
+        synchronized (this) {
+            if (appender == null) {
+                return;
+            }
+            try {
+                appender.write(HexFormat.of().parseHex(key));
+                appender.writeInt(vector.length);
+                for (float value : vector) {
+                    appender.writeFloat(value);
+                }
+            } catch (IOException e) {
+                log.warn("Could not write embedding cache {}: {}", cachePath, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Hex SHA-256 of the model name and the text
+     */
+    String key(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(("model=" + model + "\n").getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.bedrock.teateach.llm;
+
+/**
+ * Finds the first complete JSON object or array in a streamed model response, so the stream can be cancelled
+ * instead of waiting for the prose reasoning models often add after it.
+ * <p>
+ * Think blocks are dropped with a {@link ThinkTagStreamFilter}. Text before the first opening brace or bracket, such as a
+ * markdown fence, is skipped; from there brace and bracket depth is tracked, ignoring those inside strings and
+ * escaped quotes, until it is back at zero. Not thread-safe: use one instance per stream.
+ */
+final class JsonStreamExtractor {
+
+    private final ThinkTagStreamFilter thinkFilter = new ThinkTagStreamFilter();
+    private final StringBuilder visible = new StringBuilder();
+    private int scanned;
+    private int start = -1;
+    private int end = -1;
+    private int depth;
+    private boolean insideString;
+    private boolean escaped;
+
+    /**
+     * @return whether the first JSON value is complete, so the rest of the stream is not needed
+     */
+    boolean accept(String chunk) {
+        if (!isComplete()) {
+            visible.append(thinkFilter.accept(chunk));
+            scan();
+        }
+        return isComplete();
+    }
+
+    boolean isComplete() {
+        return end >= 0;
+    }
+
+    /**
+     * The first complete JSON value, or once the stream ended without one, all of the response outside think blocks
+     * so the caller's parser can report what the model answered
+     */
+    String finish() {
+        if (isComplete()) {
+            return visible.substring(start, end);
+        }
+        visible.append(thinkFilter.finish());
+        scan();
+        return isComplete() ? visible.substring(start, end) : visible.toString().trim();
+    }
+
+    private void scan() {
+        for (; scanned < visible.length() && !isComplete(); scanned++) {
+            char c = visible.charAt(scanned);
+            if (start < 0) {
+                if (c == '{' || c == '[') {
+                    start = scanned;
+                    depth = 1;
+                }
+            } else if (insideString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    insideString = false;
+                }
+            } else if (c == '"') {
+                insideString = true;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if ((c == '}' || c == ']') && --depth == 0) {
+                end = scanned + 1;
+            }
+        }
+    }
+}
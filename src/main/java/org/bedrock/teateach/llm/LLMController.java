@@ -1,9 +1,12 @@
 package org.bedrock.teateach.llm;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.bedrock.teateach.beans.StudentLearningData;
+import org.bedrock.teateach.dto.LlmCacheStats;
 import org.bedrock.teateach.services.StudentService;
 import java.util.Map;
 import java.util.List;
@@ -15,11 +18,13 @@ public class LLMController {
 
     private final LLMService llmService;
     private final StudentService studentService;
+    private final LlmResponseCache responseCache;
 
     @Autowired
-    public LLMController(LLMService llmService, StudentService studentService) {
+    public LLMController(LLMService llmService, StudentService studentService, LlmResponseCache responseCache) {
         this.llmService = llmService;
         this.studentService = studentService;
+        this.responseCache = responseCache;
     }
 
     /**
@@ -89,6 +94,59 @@ public class LLMController {
         }
     }
 
+    /**
+     * Stream learning content recommendations as Server-Sent Events.
+     * "token" events carry the visible model output as it is generated, followed by one "result" event
+     * with the recommendations, or an "error" event.
+     * @param request Contains student ID and performance data
+     * @return The event stream
+     */
+    @PostMapping(value = "/recommend/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamRecommendations(@RequestBody RecommendationRequest request) {
+        return LlmSseEmitters.of(llmService.streamRecommendations(
+            Long.parseLong(request.getStudentId()),
+            convertToLongDoubleMap(request.getPerformanceData()),
+            request.getCourseId()
+        ));
+    }
+
+    /**
+     * Stream learning content recommendations by student ID as Server-Sent Events
+     * @param studentId The student's ID
+     * @param courseId Optional course ID to filter recommendations
+     * @return The event stream
+     */
+    @GetMapping(value = "/recommend/{studentId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamRecommendationsByStudentId(
+            @PathVariable String studentId,
+            @RequestParam(required = false) Long courseId) {
+        List<StudentLearningData> learningData = studentService.getStudentLearningData(studentId, courseId);
+        return LlmSseEmitters.of(llmService.streamRecommendations(
+            Long.parseLong(studentId),
+            convertLearningDataToLongDoubleMap(learningData),
+            courseId != null ? courseId : 1L
+        ));
+    }
+
+    /**
+     * Hit and miss counters of the LLM response cache, per call site. Admins only
+     * @return One entry per call site that has been used since startup
+     */
+    @GetMapping("/cache/stats")
+    public ResponseEntity<List<LlmCacheStats>> getCacheStats() {
+        return ResponseEntity.ok(responseCache.getStats());
+    }
+
+    /**
+     * Drop the locally cached LLM responses, e.g. after changing a prompt template. Admins only
+     * @return Success status
+     */
+    @DeleteMapping("/cache")
+    public ResponseEntity<Map<String, Object>> clearCache() {
+        responseCache.clearLocal();
+        return ResponseEntity.ok(Map.of("success", true));
+    }
+
     /**
      * Convert StudentLearningData list to performance map for LLM processing
      */
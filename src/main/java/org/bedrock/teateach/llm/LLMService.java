@@ -2,6 +2,7 @@ package org.bedrock.teateach.llm;
 
 import org.bedrock.teateach.beans.*;
 import org.bedrock.teateach.services.*;
+import org.bedrock.teateach.vectorstore.HnswVectorStore;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.context.annotation.Lazy;
 import org.json.JSONObject;
@@ -14,21 +15,25 @@ import org.springframework.ai.document.Document;
 import org.springframework.ai.template.st.StTemplateRenderer;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.stereotype.Service;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
-import javax.annotation.PostConstruct;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -37,6 +42,9 @@ import java.util.stream.Collectors;
  */
 @Service
 public class LLMService {
+    /** Key set in an ability analysis that fell back to default scores because the analysis failed */
+    public static final String ANALYSIS_FAILED = "analysisFailed";
+
     private final String apiKey;
     private final ChatClient chatClient;
     private final VectorStore vectorStore;
@@ -46,6 +54,13 @@ public class LLMService {
     private final KnowledgePointService knowledgePointService;
     private final StudentService studentService;
     private final CourseService courseService;
+    private final LearningTaskService learningTaskService;
+    private final BatchGradingEngine batchGradingEngine;
+    private final LlmResponseCache responseCache;
+    private final ResourceVectorIndexer resourceIndexer;
+    private final SingleFlight singleFlight;
+    private final ModelRouter modelRouter;
+    private final PromptBudget promptBudget;
 
     @Autowired
     public LLMService(@Value("${llm.api.key}") String apiKey,
@@ -56,7 +71,14 @@ public class LLMService {
                       CourseEnrollmentService courseEnrollmentService,
                       @Lazy KnowledgePointService knowledgePointService,
                       @Lazy StudentService studentService,
-                      @Lazy CourseService courseService) {
+                      @Lazy CourseService courseService,
+                      @Lazy LearningTaskService learningTaskService,
+                      BatchGradingEngine batchGradingEngine,
+                      LlmResponseCache responseCache,
+                      ResourceVectorIndexer resourceIndexer,
+                      SingleFlight singleFlight,
+                      ModelRouter modelRouter,
+                      PromptBudget promptBudget) {
         this.apiKey = apiKey;
         this.chatClient = chatClientBuilder.build();
         this.vectorStore = vectorStore;
@@ -66,102 +88,44 @@ public class LLMService {
         this.knowledgePointService = knowledgePointService;
         this.studentService = studentService;
         this.courseService = courseService;
+        this.learningTaskService = learningTaskService;
+        this.batchGradingEngine = batchGradingEngine;
+        this.responseCache = responseCache;
+        this.resourceIndexer = resourceIndexer;
+        this.singleFlight = singleFlight;
+        this.modelRouter = modelRouter;
+        this.promptBudget = promptBudget;
         System.out.println("LLMService initialized with API Key: " + (apiKey != null && !apiKey.isEmpty() ? "******" : "NONE"));
     }
 
     /**
-     * Initializes the vector store with all existing resources in the system.
-     * This method is called after the bean is constructed.
-     */
-    @PostConstruct
-    public void initializeVectorStore() {
-        try {
-            System.out.println("Initializing vector store with existing resources...");
-            List<Resource> allResources = resourceService.getAllResources();
-
-            for (Resource resource : allResources) {
-                addResourceToVectorStore(resource);
-            }
-
-            System.out.println("Vector store initialized with " + allResources.size() + " resources.");
-        } catch (Exception e) {
-            System.err.println("Error initializing vector store: " + e.getMessage());
-            e.printStackTrace();
-        }
-    }
-
-    /**
-     * Adds a single resource to the vector store.
-     * This method should be called whenever a new resource is uploaded.
+     * Adds a single resource to the vector store, replacing its previous document.
+     * This method should be called whenever a resource is uploaded or changed.
      *
      * @param resource The resource to add to the vector store
      */
     public void addResourceToVectorStore(Resource resource) {
-        try {
-            String content = extractResourceContent(resource);
-            if (content != null && !content.trim().isEmpty()) {
-                Document document = new Document(content);
-                document.getMetadata().put("resourceId", resource.getId().toString());
-                document.getMetadata().put("resourceName", resource.getResourceName());
-                document.getMetadata().put("fileType", resource.getFileType());
-                document.getMetadata().put("description", resource.getDescription() != null ? resource.getDescription() : "");
-
-                vectorStore.add(List.of(document));
-                System.out.println("Added resource to vector store: " + resource.getResourceName());
-            }
-        } catch (Exception e) {
-            System.err.println("Error adding resource to vector store: " + e.getMessage());
-            e.printStackTrace();
-        }
+        resourceIndexer.indexResource(resource);
     }
 
     /**
-     * Extracts text content from a resource file for embedding.
-     * Currently supports basic text extraction for common file types.
+     * Removes the document of a deleted resource from the vector store.
      *
-     * @param resource The resource to extract content from
-     * @return The extracted text content, or null if extraction fails
+     * @param resourceId The ID of the deleted resource
      */
-    private String extractResourceContent(Resource resource) {
-        try {
-            String filePath = resource.getFilePath();
-            String fileType = resource.getFileType().toLowerCase();
-
-            // For now, we'll create a searchable representation using metadata
-            // In a production system, you'd want to use proper document parsers
-            StringBuilder content = new StringBuilder();
-            content.append("Resource Name: ").append(resource.getResourceName()).append("\n");
-            content.append("File Type: ").append(resource.getFileType()).append("\n");
-
-            if (resource.getDescription() != null && !resource.getDescription().trim().isEmpty()) {
-                content.append("Description: ").append(resource.getDescription()).append("\n");
-            }
-
-            // For text-based files, try to read the actual content
-            if (fileType.equals("txt") || fileType.equals("md")) {
-                try {
-                    String fileContent = Files.readString(Paths.get(filePath));
-                    content.append("Content: ").append(fileContent);
-                } catch (IOException e) {
-                    System.out.println("Could not read file content for: " + filePath);
-                }
-            }
-
-            return content.toString();
-        } catch (Exception e) {
-            System.err.println("Error extracting content from resource: " + e.getMessage());
-            return null;
-        }
+    public void removeResourceFromVectorStore(Long resourceId) {
+        resourceIndexer.removeResource(resourceId);
     }
 
     public JSONObject simplePrompt(String input) {
         Prompt prompt = new Prompt(input);
-        var req = chatClient.prompt(prompt);
-        String response = req.call().content();
-        // Remove think tags from response
-        response = removeThinkTags(response);
-        // Convert cleaned response to JSONObject
-        return new JSONObject(response);
+        return modelRouter.call(ModelRouter.Task.EXTRACTION, prompt, routed -> {
+            String response = chatClient.prompt(routed).call().content();
+            // Remove think tags from response
+            response = removeThinkTags(response);
+            // Convert cleaned response to JSONObject
+            return new JSONObject(response);
+        });
     }
 
     /**
@@ -229,6 +193,61 @@ public class LLMService {
         }
     }
 
+    /**
+     * Calls the model of the task through the response cache, repeating the call with the escalation model if the
+     * answer cannot be parsed (see {@link ModelRouter}).
+     *
+     * @param site  call site, selects the cache's TTL, size bound and bypass flag (llm.cache.&lt;site&gt;.*)
+     * @param parse turns the response without think tags into the result, throwing if it is unusable
+     */
+    private <T> T callCached(String site, ModelRouter.Task task, Prompt prompt, Function<String, T> parse) {
+        return modelRouter.call(task, prompt, routed -> callModel(site, routed, parse));
+    }
+
+    /**
+     * Calls the model through the response cache. The model's answer is cut after its first JSON value (see
+     * {@link #streamFirstJsonValue}). The think-stripped response is stored only after parse
+     * succeeded, so retries of a malformed answer reach the model again. Identical prompts sent while one is still
+     * waiting for the model share its response; each caller parses it on its own.
+     *
+     * @throws LlmResponseFormatException if the model's response could not be parsed
+     */
+    private <T> T callModel(String site, Prompt prompt, Function<String, T> parse) {
+        String key = responseCache.key(prompt);
+        Optional<String> cached = responseCache.get(site, key);
+        if (cached.isPresent()) {
+            try {
+                return parse.apply(cached.get());
+            } catch (RuntimeException e) {
+                // Written by an older parser; ask the model again
+                responseCache.evict(site, key);
+            }
+        }
+
+        String response = singleFlight.call(site, List.of(key), () -> streamFirstJsonValue(prompt));
+        T result;
+        try {
+            result = parse.apply(response);
+        } catch (RuntimeException e) {
+            throw new LlmResponseFormatException(e.getMessage(), e);
+        }
+        responseCache.put(site, key, response);
+        return result;
+    }
+
+    /**
+     * Streams the model's answer and cancels the stream as soon as the first complete JSON object or array has
+     * arrived, so tokens the model would generate after it are not waited for. Answers without JSON are read to the
+     * end and returned without think tags.
+     */
+    private String streamFirstJsonValue(Prompt prompt) {
+        JsonStreamExtractor extractor = new JsonStreamExtractor();
+        chatClient.prompt(prompt).stream().content()
+            .takeUntil(extractor::accept)
+            .blockLast();
+        return extractor.finish();
+    }
+
     /**
      * Intelligently extracts and structures knowledge points from course content.
      *
@@ -303,13 +322,9 @@ public class LLMService {
 
         // Execute prompt and parse results into a list of KnowledgePoint objects
         try {
-            String response = chatClient.prompt(prompt).call().content();
-            // Remove think tags from response
-            response = removeThinkTags(response);
-            response = cleanJsonResponse(response);
-            // Parse the cleaned response directly
-
-            return parseJsonResponse(response, new ParameterizedTypeReference<List<KnowledgePoint>>() {});
+            // Think tags are removed before parsing; the cleaned response is cached per prompt
+            return callCached("knowledge-points", ModelRouter.Task.EXTRACTION, prompt,
+                response -> parseJsonResponse(response, new ParameterizedTypeReference<List<KnowledgePoint>>() {}));
         } catch (Exception e) {
             System.err.println("Error extracting knowledge points: " + e.getMessage());
             e.printStackTrace();
@@ -364,75 +379,11 @@ public class LLMService {
         System.out.println("LLM: Recommending learning content for student " + studentId + " based on performance using RAG.");
 
         try {
-            // Analyze performance to identify weak areas
-            List<String> weakAreas = identifyWeakAreas(performanceData);
-
-            // Search for relevant resources using vector store
-            List<Document> relevantResources = searchRelevantResources(weakAreas, courseId);
-
-            // Format the performance data for the prompt
-            StringBuilder performanceBuilder = new StringBuilder();
-            performanceData.forEach((taskId, score) -> {
-                performanceBuilder.append("Task ").append(taskId).append(": ").append(score).append("\n");
-            });
-
-            // Format relevant resources for the prompt
-            StringBuilder resourcesBuilder = new StringBuilder();
-            for (Document doc : relevantResources) {
-                resourcesBuilder.append("Resource: ").append(doc.getMetadata().get("resourceName")).append("\n");
-                resourcesBuilder.append("Type: ").append(doc.getMetadata().get("fileType")).append("\n");
-                resourcesBuilder.append("Description: ").append(doc.getMetadata().get("description")).append("\n");
-                String content = doc.getText();
-                if (content != null && !content.isEmpty()) {
-                    resourcesBuilder.append("Content Preview: ").append(content.substring(0, Math.min(200, content.length()))).append("...\n\n");
-                } else {
-                    resourcesBuilder.append("Content Preview: [No content available]\n\n");
-                }
-            }
+            Prompt prompt = buildRecommendationPrompt(studentId, performanceData, courseId);
 
-            Map<String, Object> promptParams = new HashMap<>();
-            promptParams.put("studentId", studentId);
-            promptParams.put("courseId", courseId);
-            promptParams.put("performanceData", performanceBuilder.toString());
-            promptParams.put("relevantResources", resourcesBuilder.toString());
-            promptParams.put("weakAreas", String.join(", ", weakAreas));
-
-            String promptTemplate = """
-                    Based on the following student performance data and available learning resources, 
-                    recommend personalized learning content that addresses the student's specific weaknesses.
-                    
-                    Student ID: {studentId}
-                    Course ID: {courseId}
-                    
-                    Performance Data:
-                    {performanceData}
-                    
-                    Identified Weak Areas: {weakAreas}
-                    
-                    Available Relevant Resources:
-                    {relevantResources}
-                    
-                    Provide a list of specific, actionable recommendations for learning content.
-                    Each recommendation should reference specific resources when available and directly address 
-                    the learning needs identified from the performance data.
-                    Return exactly 3-5 recommendations as a JSON array of strings.
-                    """;
-
-            // Create prompt
-            PromptTemplate template = PromptTemplate.builder()
-                    .renderer(StTemplateRenderer.builder().startDelimiterToken('{').endDelimiterToken('}').build())
-                    .template(promptTemplate)
-                    .build();
-            UserMessage userMessage = template.create(promptParams).getUserMessage();
-            SystemMessage systemMessage = new SystemMessage("You are an educational recommendation AI that analyzes student performance and suggests personalized learning content based on available resources. You MUST output ONLY valid JSON format without any markdown code blocks, explanations, or additional text. Do not wrap your response in ```json or ``` tags. this is a very easy task, so do not think too long, YOU SHALL OUTPUT YOUR RESPONSE IN CHINESE");
-            Prompt prompt = new Prompt(List.of(systemMessage, userMessage));
-
-            // Execute prompt and parse results
-            String response = chatClient.prompt(prompt).call().content();
-            // Remove think tags from response
-            response = removeThinkTags(response);
-            // Parse the cleaned response directly
-            return parseJsonResponse(response, new ParameterizedTypeReference<List<String>>() {});
+            // Execute prompt (or reuse the cached answer to the same prompt) and parse results
+            return callCached("recommendations", ModelRouter.Task.RECOMMENDATION, prompt,
+                response -> parseJsonResponse(response, new ParameterizedTypeReference<List<String>>() {}));
 
         } catch (Exception e) {
             System.err.println("Error generating learning recommendations: " + e.getMessage());
@@ -446,6 +397,74 @@ public class LLMService {
         }
     }
 
+    /**
+     * Builds the RAG prompt for learning content recommendations, returning a JSON array of strings.
+     */
+    private Prompt buildRecommendationPrompt(Long studentId, Map<Long, Double> performanceData, Long courseId) {
+        // Analyze performance to identify weak areas
+        List<String> weakAreas = identifyWeakAreas(performanceData);
+
+        // Search for relevant resources using vector store, by the topics resources are actually described with
+        List<Document> relevantResources = searchRelevantResources(identifyWeakTopics(performanceData), courseId);
+
+        // Format the performance data for the prompt
+        StringBuilder performanceBuilder = new StringBuilder();
+        performanceData.forEach((taskId, score) -> {
+            performanceBuilder.append("Task ").append(taskId).append(": ").append(score).append("\n");
+        });
+
+        // Format relevant resources for the prompt
+        StringBuilder resourcesBuilder = new StringBuilder();
+        for (Document doc : relevantResources) {
+            resourcesBuilder.append("Resource: ").append(doc.getMetadata().get("resourceName")).append("\n");
+            resourcesBuilder.append("Type: ").append(doc.getMetadata().get("fileType")).append("\n");
+            resourcesBuilder.append("Description: ").append(doc.getMetadata().get("description")).append("\n");
+            String content = doc.getText();
+            if (content != null && !content.isEmpty()) {
+                resourcesBuilder.append("Content Preview: ").append(content.substring(0, Math.min(200, content.length()))).append("...\n\n");
+            } else {
+                resourcesBuilder.append("Content Preview: [No content available]\n\n");
+            }
+        }
+
+        Map<String, Object> promptParams = new HashMap<>();
+        promptParams.put("studentId", studentId);
+        promptParams.put("courseId", courseId);
+        promptParams.put("performanceData", performanceBuilder.toString());
+        promptParams.put("relevantResources", resourcesBuilder.toString());
+        promptParams.put("weakAreas", String.join(", ", weakAreas));
+
+        String promptTemplate = """
+                Based on the following student performance data and available learning resources, 
+                recommend personalized learning content that addresses the student's specific weaknesses.
+                
+                Student ID: {studentId}
+                Course ID: {courseId}
+                
+                Performance Data:
+                {performanceData}
+                
+                Identified Weak Areas: {weakAreas}
+                
+                Available Relevant Resources:
+                {relevantResources}
+                
+                Provide a list of specific, actionable recommendations for learning content.
+                Each recommendation should reference specific resources when available and directly address 
+                the learning needs identified from the performance data.
+                Return exactly 3-5 recommendations as a JSON array of strings.
+                """;
+
+        // Create prompt
+        PromptTemplate template = PromptTemplate.builder()
+                .renderer(StTemplateRenderer.builder().startDelimiterToken('{').endDelimiterToken('}').build())
+                .template(promptTemplate)
+                .build();
+        UserMessage userMessage = template.create(promptParams).getUserMessage();
+        SystemMessage systemMessage = new SystemMessage("You are an educational recommendation AI that analyzes student performance and suggests personalized learning content based on available resources. You MUST output ONLY valid JSON format without any markdown code blocks, explanations, or additional text. Do not wrap your response in ```json or ``` tags. this is a very easy task, so do not think too long, YOU SHALL OUTPUT YOUR RESPONSE IN CHINESE");
+        return new Prompt(List.of(systemMessage, userMessage));
+    }
+
     /**
      * Identifies weak areas based on performance data.
      *
@@ -475,28 +494,70 @@ public class LLMService {
         return weakAreas;
     }
 
+    /**
+     * Names the tasks behind the weak areas; unlike the task IDs and scores of the weak area labels, these are what
+     * resource names and descriptions mention.
+     *
+     * @param performanceData Map of task IDs to scores
+     * @return Names of the tasks scored below 70, or below 85 when there are none
+     */
+    private List<String> identifyWeakTopics(Map<Long, Double> performanceData) {
+        double threshold = performanceData.values().stream()
+                .anyMatch(score -> score != null && score < 70.0) ? 70.0 : 85.0;
+        return performanceData.entrySet().stream()
+                .filter(entry -> entry.getValue() != null && entry.getValue() < threshold)
+                .map(entry -> learningTaskService.getTaskById(entry.getKey()))
+                .filter(task -> task != null && task.getTaskName() != null && !task.getTaskName().isBlank())
+                .map(LearningTask::getTaskName)
+                .toList();
+    }
+
     /**
      * Searches for relevant resources using the vector store.
      *
-     * @param weakAreas List of identified weak areas
-     * @param courseId  The course ID
+     * @param weakTopics Names of the topics the student is weak in
+     * @param courseId   The course ID
      * @return List of relevant documents from the vector store
      */
-    private List<Document> searchRelevantResources(List<String> weakAreas, Long courseId) {
+    private List<Document> searchRelevantResources(List<String> weakTopics, Long courseId) {
         try {
-            // Create search query based on weak areas
-            String searchQuery = "learning materials resources help improve " + String.join(" ", weakAreas);
-
-            // Search the vector store for relevant documents
-            SearchRequest searchRequest = SearchRequest.builder()
-                    .query(searchQuery)
-                    .topK(5)
-                    .similarityThreshold(0.3)
-                    .build();
-
-            List<Document> searchResults = vectorStore.similaritySearch(searchRequest);
+            // Create search query based on weak topics
+            String searchQuery = "learning materials resources help improve " + String.join(" ", weakTopics);
+            int topK = 5;
+
+            List<Document> searchResults;
+            if (!resourceIndexer.isReady()) {
+                // The vector store is still being indexed and would miss resources
+                searchResults = resourceIndexer.metadataSearch(weakTopics, courseId, topK);
+            } else if (courseId == null) {
+                searchResults = vectorStore.similaritySearch(SearchRequest.builder()
+                        .query(searchQuery)
+                        .topK(topK)
+                        .similarityThreshold(0.3)
+                        .build());
+            } else if (vectorStore instanceof HnswVectorStore hnsw && ResourceVectorIndexer.COURSE_IDS.equals(hnsw.getPartitionKey())) {
+                // Only the course's own graph is searched
+                searchResults = vectorStore.similaritySearch(SearchRequest.builder()
+                        .query(searchQuery)
+                        .topK(topK)
+                        .similarityThreshold(0.3)
+                        .filterExpression(new FilterExpressionBuilder().eq(ResourceVectorIndexer.COURSE_IDS, courseId.toString()).build())
+                        .build());
+            } else {
+                // Filter expressions cannot test list metadata, so other stores over-fetch and filter here
+                searchResults = vectorStore.similaritySearch(SearchRequest.builder()
+                        .query(searchQuery)
+                        .topK(topK * 4)
+                        .similarityThreshold(0.3)
+                        .build())
+                        .stream()
+                        .filter(document -> document.getMetadata().get(ResourceVectorIndexer.COURSE_IDS) instanceof List<?> ids
+                                && ids.contains(courseId.toString()))
+                        .limit(topK)
+                        .toList();
+            }
 
-            System.out.println("Found " + searchResults.size() + " relevant resources for weak areas: " + weakAreas);
+            System.out.println("Found " + searchResults.size() + " relevant resources for weak topics: " + weakTopics);
 
             return searchResults;
         } catch (Exception e) {
@@ -554,11 +615,13 @@ public class LLMService {
 
         // Execute prompt and parse result
         try {
-            String response = chatClient.prompt(prompt).call().content().trim();
-            // Remove think tags from response
-            response = removeThinkTags(response);
-            // Try to parse the response as a Double
-            return Double.parseDouble(response);
+            return modelRouter.call(ModelRouter.Task.ANALYSIS, prompt, routed -> {
+                String response = chatClient.prompt(routed).call().content().trim();
+                // Remove think tags from response
+                response = removeThinkTags(response);
+                // Try to parse the response as a Double
+                return Double.parseDouble(response);
+            });
         } catch (NumberFormatException e) {
             System.err.println("Error parsing ability score from LLM response: " + e.getMessage());
             // If we can't parse a valid double from the response, use a fallback calculation
@@ -606,8 +669,38 @@ public class LLMService {
      * @return A map containing score and detailed feedback.
      */
     public Map<String, Object> gradeStudentReport(StudentTaskSubmission submission, String gradingRubric) {
+        return gradeStudentReport(submission, gradingRubric, ModelRouter.Task.GRADING);
+    }
+
+    private Map<String, Object> gradeStudentReport(StudentTaskSubmission submission, String gradingRubric,
+                                                   ModelRouter.Task task) {
+        try {
+            return requestGrading(submission, gradingRubric, task);
+        } catch (Exception e) {
+            System.err.println("Error grading student report: " + e.getMessage());
+            e.printStackTrace();
+            // Fallback to basic grading response
+            return createFallbackGradingResponse(submission);
+        }
+    }
+
+    /**
+     * Asks the model to grade a submission. Unlike {@link #gradeStudentReport}, failures are thrown
+     * instead of being replaced by the fallback grade, so batch grading can retry them.
+     */
+    private Map<String, Object> requestGrading(StudentTaskSubmission submission, String gradingRubric,
+                                               ModelRouter.Task task) {
         System.out.println("LLM: Intelligently grading report for submission ID: " + submission.getId());
 
+        // Execute prompt (or reuse the cached grade of the same submission and rubric) and parse results
+        return callCached("grading", task, buildGradingPrompt(submission, gradingRubric),
+            response -> parseJsonResponse(response, new ParameterizedTypeReference<Map<String, Object>>() {}));
+    }
+
+    /**
+     * Builds the grading prompt, asking for a JSON object with score, feedback and criteriaBreakdown.
+     */
+    private Prompt buildGradingPrompt(StudentTaskSubmission submission, String gradingRubric) {
         Map<String, Object> promptParams = new HashMap<>();
         promptParams.put("submissionId", submission.getId());
         promptParams.put("studentId", submission.getStudentId());
@@ -649,21 +742,7 @@ public class LLMService {
                 .build();
         UserMessage userMessage = template.create(promptParams).getUserMessage();
         SystemMessage systemMessage = new SystemMessage("You are an educational assessment AI that provides fair, consistent, and detailed grading of student submissions. You MUST output ONLY valid JSON format without any markdown code blocks, explanations, or additional text. Do not wrap your response in ```json or ``` tags. this is a very easy task, so do not think too long, YOU SHOULD OUTPUT YOUR RESPONSE IN CHINESE");
-        Prompt prompt = new Prompt(List.of(systemMessage, userMessage));
-
-        // Execute prompt and parse results
-        try {
-            String response = chatClient.prompt(prompt).call().content();
-            // Remove think tags from response
-            response = removeThinkTags(response);
-            // Parse the cleaned response directly
-            return parseJsonResponse(response, new ParameterizedTypeReference<Map<String, Object>>() {});
-        } catch (Exception e) {
-            System.err.println("Error grading student report: " + e.getMessage());
-            e.printStackTrace();
-            // Fallback to basic grading response
-            return createFallbackGradingResponse(submission);
-        }
+        return new Prompt(List.of(systemMessage, userMessage));
     }
 
     /**
@@ -695,30 +774,9 @@ public class LLMService {
                     "The submission must have content before it can be graded by the LLM service");
             }
 
-            // Use custom rubric or default
-            String rubric = customRubric != null ? customRubric :
-                "Evaluate this submission based on content quality, clarity of expression, adherence to requirements, and overall understanding of the topic. Provide constructive feedback and a score out of 100.";
-
-            // Call the existing grading method
-            Map<String, Object> gradingResult = gradeStudentReport(submission, rubric);
-
-            // Extract score and feedback
-            Double score = null;
-            Object scoreObj = gradingResult.get("score");
-            if (scoreObj instanceof Number) {
-                score = ((Number) scoreObj).doubleValue();
-            }
-            String feedback = (String) gradingResult.get("feedback");
-
-            // Create success response
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("score", score);
-            response.put("feedback", feedback);
-            response.put("criteriaBreakdown", gradingResult.get("criteriaBreakdown"));
-            response.put("message", "Submission graded successfully by AI");
-
-            return response;
+            // Call the existing grading method with the custom rubric or default
+            Map<String, Object> gradingResult = gradeStudentReport(submission, rubricOrDefault(customRubric));
+            return createGradingResponse(gradingResult);
 
         } catch (Exception e) {
             System.err.println("Error in LLM submission grading: " + e.getMessage());
@@ -741,11 +799,10 @@ public class LLMService {
             }
 
             // Use custom prompt or default feedback-focused prompt
-            String prompt = customPrompt != null ? customPrompt :
-                "Provide detailed, constructive feedback on this student submission. Focus on strengths, areas for improvement, and specific suggestions for enhancement. Do not provide a numerical score. you should output your response in chinese";
+            String prompt = customPrompt != null ? customPrompt : DEFAULT_FEEDBACK_PROMPT;
 
             // Call the existing grading method but focus on feedback
-            Map<String, Object> gradingResult = gradeStudentReport(submission, prompt);
+            Map<String, Object> gradingResult = gradeStudentReport(submission, prompt, ModelRouter.Task.FEEDBACK);
 
             // Extract feedback
             String feedback = (String) gradingResult.get("feedback");
@@ -766,35 +823,97 @@ public class LLMService {
         }
     }
 
+    private static final String DEFAULT_FEEDBACK_PROMPT =
+        "Provide detailed, constructive feedback on this student submission. Focus on strengths, areas for improvement, and specific suggestions for enhancement. Do not provide a numerical score. you should output your response in chinese";
+
+    private static String rubricOrDefault(String customRubric) {
+        return customRubric != null ? customRubric :
+            "Evaluate this submission based on content quality, clarity of expression, adherence to requirements, and overall understanding of the topic. Provide constructive feedback and a score out of 100.";
+    }
+
+    /**
+     * Builds the success response of gradeSubmission from the model's grading result.
+     */
+    private static Map<String, Object> createGradingResponse(Map<String, Object> gradingResult) {
+        // Extract score and feedback
+        Double score = null;
+        Object scoreObj = gradingResult.get("score");
+        if (scoreObj instanceof Number) {
+            score = ((Number) scoreObj).doubleValue();
+        }
+        String feedback = (String) gradingResult.get("feedback");
+
+        // Create success response
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("score", score);
+        response.put("feedback", feedback);
+        response.put("criteriaBreakdown", gradingResult.get("criteriaBreakdown"));
+        response.put("message", "Submission graded successfully by AI");
+
+        return response;
+    }
+
     /**
      * Processes multiple submissions for batch LLM grading.
+     * Submissions are graded in parallel by the {@link BatchGradingEngine}, which limits the number of concurrent
+     * model calls and retries failed or timed-out calls; a submission that still fails is reported as failed
+     * instead of receiving the fallback grade.
      * Returns a summary of successful and failed operations.
      */
     public Map<String, Object> batchGradeSubmissions(List<StudentTaskSubmission> submissions, String customRubric) {
+        return batchGradeSubmissions(submissions, customRubric, null);
+    }
+
+    /**
+     * Batch grading that also reports each submission's outcome as soon as it is graded.
+     *
+     * @param onComplete called once per submission in completion order, may be null
+     */
+    public Map<String, Object> batchGradeSubmissions(List<StudentTaskSubmission> submissions, String customRubric,
+                                                     Consumer<BatchGradingEngine.GradingOutcome> onComplete) {
+        long started = System.currentTimeMillis();
         Map<String, Object> batchResult = new HashMap<>();
         List<Map<String, Object>> successfulGradings = new ArrayList<>();
         List<Map<String, Object>> failedGradings = new ArrayList<>();
 
+        // Submissions without content cannot be graded and are not worth a model call
+        List<StudentTaskSubmission> gradable = new ArrayList<>();
         for (StudentTaskSubmission submission : submissions) {
-            try {
-                Map<String, Object> result = gradeSubmission(submission, customRubric);
-
-                if ((Boolean) result.get("success")) {
-                    Map<String, Object> successEntry = new HashMap<>();
-                    successEntry.put("submissionId", submission.getId());
-                    successEntry.put("score", result.get("score"));
-                    successEntry.put("feedback", result.get("feedback"));
-                    successfulGradings.add(successEntry);
-                } else {
-                    Map<String, Object> failEntry = new HashMap<>();
-                    failEntry.put("submissionId", submission.getId());
-                    failEntry.put("error", result.get("message"));
-                    failedGradings.add(failEntry);
-                }
-            } catch (Exception e) {
+            if (submission.getSubmissionContent() == null || submission.getSubmissionContent().trim().isEmpty()) {
                 Map<String, Object> failEntry = new HashMap<>();
                 failEntry.put("submissionId", submission.getId());
-                failEntry.put("error", "Unexpected error during grading: " + e.getMessage());
+                failEntry.put("error", "No submission content found to grade");
+                failedGradings.add(failEntry);
+                if (onComplete != null) {
+                    onComplete.accept(new BatchGradingEngine.GradingOutcome(submission.getId(), false, null,
+                            "No submission content found to grade", 0, 0));
+                }
+            } else {
+                gradable.add(submission);
+            }
+        }
+
+        String rubric = rubricOrDefault(customRubric);
+        List<BatchGradingEngine.GradingOutcome> outcomes = batchGradingEngine.gradeAll(gradable,
+                StudentTaskSubmission::getId,
+                submission -> createGradingResponse(requestGrading(submission, rubric, ModelRouter.Task.GRADING)),
+                onComplete);
+
+        for (BatchGradingEngine.GradingOutcome outcome : outcomes) {
+            if (outcome.isSuccess()) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> result = (Map<String, Object>) outcome.getResult();
+                Map<String, Object> successEntry = new HashMap<>();
+                successEntry.put("submissionId", outcome.getId());
+                successEntry.put("score", result.get("score"));
+                successEntry.put("feedback", result.get("feedback"));
+                successEntry.put("attempts", outcome.getAttempts());
+                successfulGradings.add(successEntry);
+            } else {
+                Map<String, Object> failEntry = new HashMap<>();
+                failEntry.put("submissionId", outcome.getId());
+                failEntry.put("error", "Grading failed after " + outcome.getAttempts() + " attempts: " + outcome.getError());
                 failedGradings.add(failEntry);
             }
         }
@@ -805,15 +924,127 @@ public class LLMService {
         batchResult.put("failedGradings", failedGradings);
         batchResult.put("successCount", successfulGradings.size());
         batchResult.put("failureCount", failedGradings.size());
+        batchResult.put("concurrency", batchGradingEngine.getConcurrency());
+        batchResult.put("durationMs", System.currentTimeMillis() - started);
         batchResult.put("message", String.format("Batch grading completed: %d successful, %d failed",
             successfulGradings.size(), failedGradings.size()));
 
         return batchResult;
     }
 
+    /**
+     * Streaming variant of {@link #gradeSubmission}: visible tokens are emitted as the model produces them,
+     * with think blocks removed, followed by the same response map once the stream has closed.
+     * A response that cannot be parsed ends with an error event instead of the fallback grade.
+     */
+    public Flux<LlmStreamEvent> streamGradeSubmission(StudentTaskSubmission submission, String customRubric) {
+        if (submission.getSubmissionContent() == null || submission.getSubmissionContent().trim().isEmpty()) {
+            return Flux.just(LlmStreamEvent.error("No submission content found to grade"));
+        }
+        System.out.println("LLM: Streaming grading of submission ID: " + submission.getId());
+        return streamJson("grading", ModelRouter.Task.GRADING, () -> buildGradingPrompt(submission, rubricOrDefault(customRubric)),
+            response -> createGradingResponse(parseJsonResponse(response, new ParameterizedTypeReference<Map<String, Object>>() {})));
+    }
+
+    /**
+     * Streaming variant of {@link #generateFeedback}.
+     */
+    public Flux<LlmStreamEvent> streamFeedback(StudentTaskSubmission submission, String customPrompt) {
+        if (submission.getSubmissionContent() == null || submission.getSubmissionContent().trim().isEmpty()) {
+            return Flux.just(LlmStreamEvent.error("No submission content found"));
+        }
+        String prompt = customPrompt != null ? customPrompt : DEFAULT_FEEDBACK_PROMPT;
+        return streamJson("grading", ModelRouter.Task.FEEDBACK, () -> buildGradingPrompt(submission, prompt), response -> {
+            Map<String, Object> gradingResult = parseJsonResponse(response, new ParameterizedTypeReference<Map<String, Object>>() {});
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", true);
+            result.put("feedback", gradingResult.get("feedback"));
+            result.put("message", "Feedback generated successfully by AI");
+            return result;
+        });
+    }
+
+    /**
+     * Streaming variant of {@link #recommendLearningContent}; the result holds the recommendations.
+     */
+    public Flux<LlmStreamEvent> streamRecommendations(Long studentId, Map<Long, Double> performanceData, Long courseId) {
+        return streamJson("recommendations", ModelRouter.Task.RECOMMENDATION,
+            () -> buildRecommendationPrompt(studentId, performanceData, courseId), response -> {
+                Map<String, Object> result = new HashMap<>();
+                result.put("success", true);
+                result.put("recommendations", parseJsonResponse(response, new ParameterizedTypeReference<List<String>>() {}));
+                result.put("studentId", studentId);
+                result.put("courseId", courseId);
+                return result;
+            });
+    }
+
+    /**
+     * Streams a prompt whose answer is JSON. Think blocks are removed on the fly, the visible text is
+     * accumulated as it is emitted, and it is parsed once the model closes the stream.
+     * The prompt is built on subscription, so failures while building it also end in an error event.
+     * Responses share the cache of the blocking call sites; a cached response is sent as a single token event.
+     * The task's model streams the answer; if it cannot be parsed, the result event holds the escalation model's
+     * answer, read up to its first JSON value on the bounded elastic scheduler, while the tokens already sent stay
+     * those of the first model.
+     * Events are published on the bounded elastic scheduler, so subscribers may block.
+     */
+    private Flux<LlmStreamEvent> streamJson(String site, ModelRouter.Task task, Supplier<Prompt> prompt,
+                                            Function<String, Object> parseResult) {
+        return Flux.defer(() -> {
+                Prompt base = prompt.get();
+                String model = modelRouter.modelFor(task);
+                Prompt built = modelRouter.withModel(base, model);
+                modelRouter.recordCall(task);
+                String key = responseCache.key(built);
+                Optional<String> cached = responseCache.get(site, key);
+                if (cached.isPresent()) {
+                    try {
+                        return Flux.just(LlmStreamEvent.token(cached.get()), LlmStreamEvent.result(parseResult.apply(cached.get())));
+                    } catch (RuntimeException e) {
+                        responseCache.evict(site, key);
+                    }
+                }
+
+                ThinkTagStreamFilter filter = new ThinkTagStreamFilter();
+                StringBuilder visible = new StringBuilder();
+                long start = System.nanoTime();
+                return chatClient.prompt(built).stream().content()
+                    .map(filter::accept)
+                    .concatWith(Mono.fromCallable(filter::finish))
+                    .filter(chunk -> !chunk.isEmpty())
+                    .doOnNext(visible::append)
+                    .map(LlmStreamEvent::token)
+                    .concatWith(Mono.fromCallable(() -> {
+                        String response = visible.toString().trim();
+                        Object result;
+                        try {
+                            result = parseResult.apply(response);
+                        } catch (RuntimeException e) {
+                            modelRouter.recordLatency(task, model, System.nanoTime() - start, false);
+                            if (!modelRouter.escalates(task)) {
+                                throw e;
+                            }
+                            return LlmStreamEvent.result(modelRouter.escalate(task, model,
+                                new LlmResponseFormatException(e.getMessage(), e), base,
+                                routed -> callModel(site, routed, parseResult)));
+                        }
+                        modelRouter.recordLatency(task, model, System.nanoTime() - start, true);
+                        responseCache.put(site, key, response);
+                        return LlmStreamEvent.result(result);
+                    }).subscribeOn(Schedulers.boundedElastic()));
+            })
+            .publishOn(Schedulers.boundedElastic())
+            .onErrorResume(e -> {
+                System.err.println("Error streaming LLM response: " + e.getMessage());
+                return Flux.just(LlmStreamEvent.error(e.getMessage()));
+            });
+    }
+
     /**
      * Analyzes student abilities based on their submission data, enrolled courses, and knowledge points.
-     * Results are cached for 1 hour (5 seconds during development) to avoid heavy LLM load.
+     * Always calls the model; the precomputed profile that callers should read instead is kept by
+     * {@link AbilityProfileService}.
      *
      * @param studentId The ID of the student to analyze
      * @return A map containing student abilities and interested fields
@@ -841,7 +1072,7 @@ public class LLMService {
                 return createDefaultAbilities(studentId);
             }
 
-            // Prepare data for LLM analysis
+            // Prepare data for LLM analysis; knowledge points and submissions are cut to the prompt budget
             StringBuilder analysisPrompt = new StringBuilder();
             analysisPrompt.append("\"You are an educational recommendation AI that analyzes student performance and suggests personalized learning content based on available resources. You MUST output ONLY valid JSON format without any markdown code blocks, explanations, or additional text. Do not wrap your response in ```json or ``` tags. this is a very easy task, so do not think too long, you should output your response in chinese\"");
             analysisPrompt.append("Analyze the following student data and provide a comprehensive ability assessment:\n\n");
@@ -853,56 +1084,45 @@ public class LLMService {
                     .append(" (").append(course.getCourseCode()).append(")\n");
             }
 
-            // Add knowledge points
-            analysisPrompt.append("\nKNOWLEDGE POINTS BEING STUDIED:\n");
-            for (KnowledgePoint kp : allKnowledgePoints) {
-                analysisPrompt.append("- ").append(kp.getName())
-                    .append(" (Difficulty: ").append(kp.getDifficultyLevel()).append(")\n");
-            }
-
-            // Add submission performance data
-            analysisPrompt.append("\nSUBMISSION PERFORMANCE DATA:\n");
+            // The average covers every graded submission, also those only summarized in the prompt
             double totalScore = 0;
             int scoreCount = 0;
             for (StudentTaskSubmission submission : gradedSubmissions) {
-                analysisPrompt.append("- Task ID: ").append(submission.getTaskId())
-                    .append(", Score: ").append(submission.getScore())
-                    .append("/100");
-                if (submission.getFeedback() != null && !submission.getFeedback().trim().isEmpty()) {
-                    analysisPrompt.append(", Feedback: ").append(submission.getFeedback());
-                }
-                analysisPrompt.append("\n");
                 totalScore += submission.getScore();
                 scoreCount++;
             }
 
+            StringBuilder instructions = new StringBuilder();
             double averageScore = scoreCount > 0 ? totalScore / scoreCount : 0;
-            analysisPrompt.append("\nOVERALL AVERAGE SCORE: ").append(String.format("%.2f", averageScore)).append("/100\n");
+            instructions.append("\nOVERALL AVERAGE SCORE: ").append(String.format("%.2f", averageScore)).append("/100\n");
 
             // Add analysis instructions
-            analysisPrompt.append("\nPlease analyze this data and provide a JSON response (A SINGLE JSON OBJECT RESPONSE) with the following structure:\n");
-            analysisPrompt.append("{\n");
-            analysisPrompt.append("  \"studentAbilities\": {\n");
-            analysisPrompt.append("    \"mathReasoning\": <score 0-100>,\n");
-            analysisPrompt.append("    \"languageProficiency\": <score 0-100>,\n");
-            analysisPrompt.append("    \"codingAbility\": <score 0-100>,\n");
-            analysisPrompt.append("    \"problemSolvingAbility\": <score 0-100>,\n");
-            analysisPrompt.append("    \"socialKnowledge\": <score 0-100>\n");
-            analysisPrompt.append("  },\n");
-            analysisPrompt.append("  \"interestedFields\": [\"field1\", \"field2\", \"field3\"],\n");
-            analysisPrompt.append("  \"analysis\": \"Brief explanation of the assessment\"\n");
-            analysisPrompt.append("}\n\n");
-            analysisPrompt.append("Base your assessment on the course subjects, knowledge points difficulty levels, ");
-            analysisPrompt.append("submission scores, and feedback patterns. Infer abilities from the academic context.");
-
-            // Call LLM for analysis
-            String llmResponse = chatClient.prompt()
-                .user(analysisPrompt.toString())
-                .call()
-                .content();
-
-            llmResponse = removeThinkTags(llmResponse);
-            llmResponse = cleanJsonResponse(llmResponse);
+            instructions.append("\nPlease analyze this data and provide a JSON response (A SINGLE JSON OBJECT RESPONSE) with the following structure:\n");
+            instructions.append("{\n");
+            instructions.append("  \"studentAbilities\": {\n");
+            instructions.append("    \"mathReasoning\": <score 0-100>,\n");
+            instructions.append("    \"languageProficiency\": <score 0-100>,\n");
+            instructions.append("    \"codingAbility\": <score 0-100>,\n");
+            instructions.append("    \"problemSolvingAbility\": <score 0-100>,\n");
+            instructions.append("    \"socialKnowledge\": <score 0-100>\n");
+            instructions.append("  },\n");
+            instructions.append("  \"interestedFields\": [\"field1\", \"field2\", \"field3\"],\n");
+            instructions.append("  \"analysis\": \"Brief explanation of the assessment\"\n");
+            instructions.append("}\n\n");
+            instructions.append("Base your assessment on the course subjects, knowledge points difficulty levels, ");
+            instructions.append("submission scores, and feedback patterns. Infer abilities from the academic context.");
+
+            String promptText = promptBudget.fitAbilityAnalysis(analysisPrompt.toString(), instructions.toString(),
+                allKnowledgePoints, gradedSubmissions);
+
+            // Call LLM for analysis; only answers with the expected structure are cached
+            String llmResponse = callCached("ability-analysis", ModelRouter.Task.ANALYSIS,
+                new Prompt(new UserMessage(promptText)),
+                response -> {
+                    String json = cleanJsonResponse(response);
+                    new JSONObject(json).getJSONObject("studentAbilities");
+                    return json;
+                });
             System.out.println(llmResponse);
 
             // Parse LLM response
@@ -940,13 +1160,13 @@ public class LLMService {
 
             } catch (Exception parseError) {
                 System.err.println("Error parsing LLM response for student ability analysis: " + parseError.getMessage());
-                return createDefaultAbilities(studentId);
+                return createFailedAbilities(studentId);
             }
 
         } catch (Exception e) {
             System.err.println("Error analyzing student abilities: " + e.getMessage());
             e.printStackTrace();
-            return createDefaultAbilities(studentId);
+            return createFailedAbilities(studentId);
         }
     }
 
@@ -997,6 +1217,16 @@ public class LLMService {
         return result;
     }
 
+    /**
+     * Default abilities returned when the analysis itself failed, as opposed to a student without graded work.
+     * Marked with {@link #ANALYSIS_FAILED} so the result is not stored as the student's profile.
+     */
+    private Map<String, Object> createFailedAbilities(Long studentId) {
+        Map<String, Object> result = createDefaultAbilities(studentId);
+        result.put(ANALYSIS_FAILED, true);
+        return result;
+    }
+
     /**
      * Recommends learning resources based on student abilities and interests using RAG.
      *
@@ -1099,12 +1329,13 @@ public class LLMService {
         prompt.append("}\n");
         
         try {
-            String response = chatClient.prompt()
-                    .user(prompt.toString())
-                    .call()
-                    .content();
-            response = removeThinkTags(response);
-            response = cleanJsonResponse(response);
+            String response = callCached("resource-recommendations", ModelRouter.Task.RECOMMENDATION,
+                    new Prompt(new UserMessage(prompt.toString())),
+                    llmResponse -> {
+                        String json = cleanJsonResponse(llmResponse);
+                        new JSONObject(json);
+                        return json;
+                    });
             
             // Parse JSON response
             ObjectMapper mapper = new ObjectMapper();
@@ -1204,16 +1435,18 @@ public class LLMService {
             prompt.append("}\n");
 
             // Call LLM for resource recommendations
-            String llmResponse = chatClient.prompt()
-                .user(prompt.toString())
-                .call()
-                .content();
+            JSONObject jsonResponse = modelRouter.call(ModelRouter.Task.RECOMMENDATION,
+                new Prompt(new UserMessage(prompt.toString())), routed -> {
+                    String llmResponse = chatClient.prompt(routed)
+                        .call()
+                        .content();
 
-            llmResponse = removeThinkTags(llmResponse);
-            llmResponse = cleanJsonResponse(llmResponse);
+                    llmResponse = removeThinkTags(llmResponse);
+                    llmResponse = cleanJsonResponse(llmResponse);
 
-            // Parse JSON response
-            JSONObject jsonResponse = new JSONObject(llmResponse);
+                    // Parse JSON response
+                    return new JSONObject(llmResponse);
+                });
             Map<String, Object> result = new HashMap<>();
 
             // Extract recommendations
@@ -1326,6 +1559,13 @@ public class LLMService {
             
             String searchQuery = "learning materials resources help improve " + String.join(" ", searchTerms);
 
+            if (!resourceIndexer.isReady()) {
+                // The vector store is still being indexed and would miss resources
+                List<Document> searchResults = resourceIndexer.metadataSearch(searchTerms, null, 8);
+                System.out.println("Found " + searchResults.size() + " matching resources by metadata for: " + searchTerms);
+                return searchResults;
+            }
+
             // Search the vector store for relevant documents
             SearchRequest searchRequest = SearchRequest.builder()
                     .query(searchQuery)
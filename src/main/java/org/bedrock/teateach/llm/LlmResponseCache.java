@@ -0,0 +1,241 @@
+package org.bedrock.teateach.llm;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.bedrock.teateach.dto.LlmCacheStats;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed cache of LLM responses.
+ * <p>
+ * The key is a SHA-256 of the model name, the prompt options and every message of the rendered prompt, so the same
+ * submission graded with the same rubric maps to the same entry. Each call site ("grading", "recommendations", ...)
+ * has its own Caffeine cache; {@code llm.cache.<site>.enabled}, {@code .ttl-seconds} and {@code .max-size} override
+ * the global defaults. With {@code llm.cache.redis.enabled} responses are also shared through Redis, so they survive
+ * restarts and are reused by other instances. Redis errors only cost the lookup.
+ * <p>
+ * Only responses that the caller managed to parse are stored, so a malformed answer is never replayed.
+ * <p>
+ * Per site, lookups are counted as {@code llm.response.cache.requests} tagged with the result (local-hit, redis-hit,
+ * miss or bypassed), next to the {@code llm.response.cache.size} and {@code llm.response.cache.evictions} of the
+ * local tier.
+ */
+@Component
+@Slf4j
+public class LlmResponseCache {
+
+    static final String REDIS_PREFIX = "llm:response:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final Environment environment;
+    private final boolean enabled;
+    private final boolean redisEnabled;
+    private final String model;
+    private final long defaultTtlSeconds;
+    private final long defaultMaxSize;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Site> sites = new ConcurrentHashMap<>();
+
+    @Autowired
+    public LlmResponseCache(StringRedisTemplate redisTemplate,
+                            Environment environment,
+                            @Value("${llm.cache.enabled:true}") boolean enabled,
+                            @Value("${llm.cache.redis.enabled:false}") boolean redisEnabled,
+                            @Value("${spring.ai.ollama.chat.options.model:}") String model,
+                            @Value("${llm.cache.ttl-seconds:86400}") long defaultTtlSeconds,
+                            @Value("${llm.cache.max-size:500}") long defaultMaxSize,
+                            MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.environment = environment;
+        this.enabled = enabled;
+        this.redisEnabled = redisEnabled;
+        this.model = model;
+        this.defaultTtlSeconds = defaultTtlSeconds;
+        this.defaultMaxSize = defaultMaxSize;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Key of a prompt: hex SHA-256 of the model, the prompt options and the type and text of every message
+     */
+    public String key(Prompt prompt) {
+        StringBuilder material = new StringBuilder("model=").append(model).append('\n');
+        ChatOptions options = prompt.getOptions();
+        if (options != null) {
+            material.append("options=").append(options.getModel()).append(',').append(options.getTemperature())
+                    .append(',').append(options.getTopP()).append(',').append(options.getTopK())
+                    .append(',').append(options.getMaxTokens()).append(',').append(options.getFrequencyPenalty())
+                    .append(',').append(options.getPresencePenalty()).append(',').append(options.getStopSequences())
+                    .append('\n');
+        }
+        for (Message message : prompt.getInstructions()) {
+            // The separator cannot appear in prompt text, so message boundaries are unambiguous
+            material.append(message.getMessageType().getValue()).append(':').append(message.getText()).append('\u0000');
+        }
+        return sha256(material.toString());
+    }
+
+    /**
+     * Look up a response, trying the local tier first and then Redis
+     *
+     * @return the cached response text, or empty on a miss or when caching is disabled for the site
+     */
+    public Optional<String> get(String site, String key) {
+        Site cache = site(site);
+        if (!cache.enabled) {
+            cache.bypassed.incrementAndGet();
+            return Optional.empty();
+        }
+
+        String local = cache.entries.getIfPresent(key);
+        if (local != null) {
+            cache.localHits.incrementAndGet();
+            return Optional.of(local);
+        }
+
+        if (redisEnabled) {
+            try {
+                String shared = redisTemplate.opsForValue().get(redisKey(site, key));
+                if (shared != null) {
+                    cache.redisHits.incrementAndGet();
+                    cache.entries.put(key, shared);
+                    return Optional.of(shared);
+                }
+            } catch (RuntimeException e) {
+                log.warn("LLM cache lookup in Redis failed for site {}: {}", site, e.getMessage());
+            }
+        }
+
+        cache.misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    public void put(String site, String key, String response) {
+        Site cache = site(site);
+        if (!cache.enabled || response == null) {
+            return;
+        }
+        cache.entries.put(key, response);
+        if (redisEnabled) {
+            try {
+                redisTemplate.opsForValue().set(redisKey(site, key), response, cache.ttl);
+            } catch (RuntimeException e) {
+                log.warn("LLM cache write to Redis failed for site {}: {}", site, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Drop an entry, e.g. when a cached response could no longer be parsed
+     */
+    public void evict(String site, String key) {
+        site(site).entries.invalidate(key);
+        if (redisEnabled) {
+            try {
+                redisTemplate.delete(redisKey(site, key));
+            } catch (RuntimeException e) {
+                log.warn("LLM cache delete in Redis failed for site {}: {}", site, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Empty the local tier of every site. Redis entries expire with their TTL.
+     */
+    public void clearLocal() {
+        sites.values().forEach(cache -> cache.entries.invalidateAll());
+    }
+
+    public List<LlmCacheStats> getStats() {
+        List<LlmCacheStats> stats = new ArrayList<>();
+        sites.forEach((name, cache) -> stats.add(new LlmCacheStats(name, cache.enabled, cache.localHits.get(),
+                cache.redisHits.get(), cache.misses.get(), cache.bypassed.get(), cache.entries.estimatedSize(),
+                cache.entries.stats().evictionCount())));
+        stats.sort((a, b) -> a.getSite().compareTo(b.getSite()));
+        return stats;
+    }
+
+    private Site site(String name) {
+        return sites.computeIfAbsent(name, this::createSite);
+    }
+
+    private Site createSite(String name) {
+        String prefix = "llm.cache." + name + ".";
+        boolean siteEnabled = enabled && environment.getProperty(prefix + "enabled", Boolean.class, true);
+        long ttlSeconds = environment.getProperty(prefix + "ttl-seconds", Long.class, defaultTtlSeconds);
+        long maxSize = environment.getProperty(prefix + "max-size", Long.class, defaultMaxSize);
+        Site site = new Site(siteEnabled, Duration.ofSeconds(Math.max(1, ttlSeconds)), Math.max(0, maxSize));
+        registerMeters(name, site);
+        return site;
+    }
+
+    private void registerMeters(String name, Site site) {
+        Tags tags = Tags.of("site", name);
+        registerRequests(tags.and("result", "local-hit"), site.localHits);
+        registerRequests(tags.and("result", "redis-hit"), site.redisHits);
+        registerRequests(tags.and("result", "miss"), site.misses);
+        registerRequests(tags.and("result", "bypassed"), site.bypassed);
+        meterRegistry.gauge("llm.response.cache.size", tags, site.entries, Cache::estimatedSize);
+        meterRegistry.more().counter("llm.response.cache.evictions", tags, site.entries,
+                cache -> cache.stats().evictionCount());
+    }
+
+    private void registerRequests(Tags tags, AtomicLong count) {
+        meterRegistry.more().counter("llm.response.cache.requests", tags, count, AtomicLong::get);
+    }
+
+    private static String redisKey(String site, String key) {
+        return REDIS_PREFIX + site + ":" + key;
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static class Site {
+        private final boolean enabled;
+        private final Duration ttl;
+        private final Cache<String, String> entries;
+        private final AtomicLong localHits = new AtomicLong();
+        private final AtomicLong redisHits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong bypassed = new AtomicLong();
+
+        private Site(boolean enabled, Duration ttl, long maxSize) {
+            this.enabled = enabled;
+            this.ttl = ttl;
+            this.entries = Caffeine.newBuilder()
+                    .maximumSize(maxSize)
+                    .expireAfterWrite(ttl)
+                    .recordStats()
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package org.bedrock.teateach.llm;
+
+/**
+ * Thrown when a model answered but its response could not be parsed into the expected structure
+ */
+public class LlmResponseFormatException extends RuntimeException {
+
+    public LlmResponseFormatException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
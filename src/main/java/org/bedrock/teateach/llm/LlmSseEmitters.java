@@ -0,0 +1,39 @@
+package org.bedrock.teateach.llm;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+
+/**
+ * Bridges streamed LLM responses to Spring MVC Server-Sent Events.
+ * The emitter uses spring.mvc.async.request-timeout; when it times out or the client goes away,
+ * the model stream is cancelled.
+ */
+public final class LlmSseEmitters {
+
+    private LlmSseEmitters() {
+    }
+
+    public static SseEmitter of(Flux<LlmStreamEvent> events) {
+        SseEmitter emitter = new SseEmitter();
+        Disposable subscription = events.subscribe(
+                event -> {
+                    try {
+                        emitter.send(SseEmitter.event().name(event.getType()).data(event.getData(), MediaType.APPLICATION_JSON));
+                    } catch (IOException e) {
+                        // The client disconnected; failing here cancels the model stream
+                        throw Exceptions.propagate(e);
+                    }
+                },
+                emitter::completeWithError,
+                emitter::complete);
+        emitter.onTimeout(subscription::dispose);
+        emitter.onError(e -> subscription.dispose());
+        emitter.onCompletion(subscription::dispose);
+        return emitter;
+    }
+}
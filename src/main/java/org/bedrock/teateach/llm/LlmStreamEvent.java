@@ -0,0 +1,39 @@
+package org.bedrock.teateach.llm;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * One Server-Sent Event of a streamed LLM response: visible tokens as they arrive,
+ * then either the parsed result or an error
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LlmStreamEvent {
+    public static final String TOKEN = "token";
+    public static final String RESULT = "result";
+    public static final String ERROR = "error";
+
+    private String type; // Used as the SSE event name
+    private Object data; // Sent as JSON, so leading spaces of tokens survive the SSE framing
+
+    public static LlmStreamEvent token(String text) {
+        return new LlmStreamEvent(TOKEN, Map.of("text", text));
+    }
+
+    public static LlmStreamEvent result(Object result) {
+        return new LlmStreamEvent(RESULT, result);
+    }
+
+    public static LlmStreamEvent error(String message) {
+        return new LlmStreamEvent(ERROR, Map.of("success", false, "error", message != null ? message : "Unknown error"));
+    }
+
+    public boolean isResult() {
+        return RESULT.equals(type);
+    }
+}
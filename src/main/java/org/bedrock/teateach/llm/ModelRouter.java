@@ -0,0 +1,160 @@
+package org.bedrock.teateach.llm;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Chooses the chat model of each LLM call by its task class.
+ * <p>
+ * {@code llm.routing.<task>.model} names the model of a task (extraction, grading, feedback, recommendation,
+ * analysis); tasks without one use {@code spring.ai.ollama.chat.options.model}. If the task's model fails, most often
+ * because its answer could not be parsed, the call is repeated once with {@code llm.routing.escalation-model}, the
+ * default model unless set.
+ * <p>
+ * Metrics: {@code llm.task.latency} per attempt (tags task, model and outcome=success|failure),
+ * {@code llm.task.escalations} (tags task and reason=invalid-response|error) and {@code llm.task.escalation.rate},
+ * the share of a task's calls that were escalated.
+ */
+@Component
+@Slf4j
+public class ModelRouter {
+
+    public enum Task {
+        EXTRACTION, GRADING, FEEDBACK, RECOMMENDATION, ANALYSIS;
+
+        public String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final String defaultModel;
+    private final String escalationModel;
+    private final Map<Task, String> models = new EnumMap<>(Task.class);
+    private final Map<Task, AtomicLong> calls = new EnumMap<>(Task.class);
+    private final Map<Task, AtomicLong> escalations = new EnumMap<>(Task.class);
+
+    @Autowired
+    public ModelRouter(Environment environment,
+                       MeterRegistry meterRegistry,
+                       @Value("${spring.ai.ollama.chat.options.model:}") String defaultModel,
+                       @Value("${llm.routing.escalation-model:}") String escalationModel) {
+        this.meterRegistry = meterRegistry;
+        this.defaultModel = defaultModel;
+        this.escalationModel = escalationModel.isBlank() ? defaultModel : escalationModel;
+        for (Task task : Task.values()) {
+            String model = environment.getProperty("llm.routing." + task.tag() + ".model", "");
+            models.put(task, model.isBlank() ? defaultModel : model.trim());
+            calls.put(task, new AtomicLong());
+            escalations.put(task, new AtomicLong());
+            meterRegistry.gauge("llm.task.escalation.rate", Tags.of("task", task.tag()),
+                    this, router -> router.getEscalationRate(task));
+        }
+    }
+
+    public String modelFor(Task task) {
+        return models.get(task);
+    }
+
+    public String getEscalationModel() {
+        return escalationModel;
+    }
+
+    /**
+     * Whether a failed call of the task is repeated with the escalation model
+     */
+    public boolean escalates(Task task) {
+        return !modelFor(task).equals(escalationModel);
+    }
+
+    /**
+     * The prompt to send to the model: unchanged for the default model, so its cache entries stay valid
+     */
+    public Prompt withModel(Prompt prompt, String model) {
+        if (model == null || model.isBlank() || model.equals(defaultModel)) {
+            return prompt;
+        }
+        return new Prompt(prompt.getInstructions(), ChatOptions.builder().model(model).build());
+    }
+
+    /**
+     * Run the call with the task's model, and once more with the escalation model if that fails
+     *
+     * @param attempt sends the prompt it is given and parses the answer, throwing if it is unusable
+     */
+    public <T> T call(Task task, Prompt prompt, Function<Prompt, T> attempt) {
+        recordCall(task);
+        String model = modelFor(task);
+        try {
+            return timed(task, model, () -> attempt.apply(withModel(prompt, model)));
+        } catch (RuntimeException e) {
+            if (!escalates(task)) {
+                throw e;
+            }
+            return escalate(task, model, e, prompt, attempt);
+        }
+    }
+
+    /**
+     * Repeat a call whose attempt with {@code model} failed with the escalation model
+     */
+    public <T> T escalate(Task task, String model, RuntimeException cause, Prompt prompt, Function<Prompt, T> attempt) {
+        recordEscalation(task, model, cause);
+        return timed(task, escalationModel, () -> attempt.apply(withModel(prompt, escalationModel)));
+    }
+
+    public void recordCall(Task task) {
+        calls.get(task).incrementAndGet();
+    }
+
+    public void recordLatency(Task task, String model, long nanos, boolean success) {
+        meterRegistry.timer("llm.task.latency", "task", task.tag(), "model", model,
+                "outcome", success ? "success" : "failure").record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordEscalation(Task task, String model, Throwable cause) {
+        escalations.get(task).incrementAndGet();
+        String reason = cause instanceof LlmResponseFormatException ? "invalid-response" : "error";
+        meterRegistry.counter("llm.task.escalations", "task", task.tag(), "reason", reason).increment();
+        log.info("Escalating {} call from {} to {}: {}", task.tag(), model, escalationModel, cause.getMessage());
+    }
+
+    public long getEscalationCount(Task task) {
+        return escalations.get(task).get();
+    }
+
+    /**
+     * Share of the task's calls that needed the escalation model
+     */
+    public double getEscalationRate(Task task) {
+        long total = calls.get(task).get();
+        return total == 0 ? 0 : (double) escalations.get(task).get() / total;
+    }
+
+    private <T> T timed(Task task, String model, Supplier<T> call) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = call.get();
+            success = true;
+            return result;
+        } finally {
+            recordLatency(task, model, System.nanoTime() - start, success);
+        }
+    }
+}
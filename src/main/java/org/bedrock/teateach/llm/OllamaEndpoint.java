@@ -0,0 +1,109 @@
+package org.bedrock.teateach.llm;
+
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.ollama.OllamaChatModel;
+import org.springframework.ai.ollama.OllamaEmbeddingModel;
+import org.springframework.ai.ollama.api.OllamaApi;
+import org.springframework.ai.ollama.api.OllamaOptions;
+import org.springframework.retry.support.RetryTemplate;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * One Ollama server of an {@link OllamaEndpointPool}: its chat and embedding model clients, its concurrency cap and
+ * the routing state the pool keeps for it.
+ */
+public class OllamaEndpoint {
+
+    private final String url;
+    private final int maxConcurrency;
+    private final Set<String> configuredModels;
+    private final ChatModel chatModel;
+    private final EmbeddingModel embeddingModel;
+
+    // Guarded by the pool's lock; volatile for the gauges
+    volatile int outstanding;
+    volatile boolean healthy = true;
+    int consecutiveFailures;
+    int consecutiveProbeSuccesses;
+    volatile Set<String> discoveredModels = Set.of();
+
+    /**
+     * @param configuredModels models this endpoint serves when routing with model affinity; empty to use the models
+     *                         the health probe finds on the server
+     */
+    public OllamaEndpoint(String url, int maxConcurrency, Set<String> configuredModels, ChatModel chatModel,
+                          EmbeddingModel embeddingModel) {
+        this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.configuredModels = configuredModels.stream().map(OllamaEndpoint::normalize).collect(Collectors.toSet());
+        this.chatModel = chatModel;
+        this.embeddingModel = embeddingModel;
+    }
+
+    /**
+     * Endpoint with Ollama clients for the server at {@code url}. The clients do not retry; a failed call is
+     * handed to another endpoint by the routing models instead.
+     */
+    public static OllamaEndpoint create(String url, int maxConcurrency, Set<String> configuredModels,
+                                        String chatModelName, String embeddingModelName) {
+        OllamaApi api = OllamaApi.builder().baseUrl(url).build();
+        ChatModel chatModel = OllamaChatModel.builder()
+                .ollamaApi(api)
+                .defaultOptions(OllamaOptions.builder().model(chatModelName).build())
+                .retryTemplate(RetryTemplate.builder().maxAttempts(1).build())
+                .build();
+        EmbeddingModel embeddingModel = OllamaEmbeddingModel.builder()
+                .ollamaApi(api)
+                .defaultOptions(OllamaOptions.builder().model(embeddingModelName).build())
+                .build();
+        return new OllamaEndpoint(url, maxConcurrency, configuredModels, chatModel, embeddingModel);
+    }
+
+    /**
+     * Ollama's name of a model: a name without tag means the "latest" tag
+     */
+    static String normalize(String model) {
+        String name = model.trim();
+        return name.contains(":") ? name : name + ":latest";
+    }
+
+    /**
+     * Whether requests for the model may be sent here; true while the served models are unknown
+     */
+    boolean serves(String model) {
+        Set<String> models = configuredModels.isEmpty() ? discoveredModels : configuredModels;
+        return model == null || model.isBlank() || models.isEmpty() || models.contains(normalize(model));
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public ChatModel getChatModel() {
+        return chatModel;
+    }
+
+    public EmbeddingModel getEmbeddingModel() {
+        return embeddingModel;
+    }
+
+    public int getOutstanding() {
+        return outstanding;
+    }
+
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+}
@@ -0,0 +1,248 @@
+package org.bedrock.teateach.llm;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The Ollama servers LLM calls are balanced over.
+ * <p>
+ * A call is sent to the healthy endpoint with the fewest outstanding requests, ties taking turns. Every endpoint
+ * accepts at most its {@code maxConcurrency} requests at a time; when all are busy the caller waits up to
+ * {@code acquireTimeoutMs} for a free slot. With model affinity only endpoints that serve the requested model are
+ * considered: the models configured for the endpoint, or those its health probe listed.
+ * <p>
+ * An endpoint is ejected after {@code ejectAfterFailures} consecutive failed requests (I/O errors and 5xx answers)
+ * or a failed health probe, and re-admitted after {@code readmitAfterProbes} successful probes in a row. If every
+ * endpoint is ejected, calls are spread over all of them rather than refused.
+ * <p>
+ * Metrics: {@code llm.ollama.outstanding} and {@code llm.ollama.healthy} (1 or 0) per endpoint, and
+ * {@code llm.ollama.requests} (tags endpoint and outcome=success|failure).
+ */
+@Slf4j
+public class OllamaEndpointPool {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final List<OllamaEndpoint> endpoints;
+    private final boolean modelAffinity;
+    private final int ejectAfterFailures;
+    private final int readmitAfterProbes;
+    private final long acquireTimeoutMs;
+    private final Duration probeTimeout;
+    private final MeterRegistry meterRegistry;
+    private final HttpClient httpClient;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private int next;
+
+    public OllamaEndpointPool(List<OllamaEndpoint> endpoints, boolean modelAffinity, int ejectAfterFailures,
+                              int readmitAfterProbes, long acquireTimeoutMs, long probeTimeoutMs,
+                              MeterRegistry meterRegistry) {
+        this.endpoints = List.copyOf(endpoints);
+        this.modelAffinity = modelAffinity;
+        this.ejectAfterFailures = Math.max(1, ejectAfterFailures);
+        this.readmitAfterProbes = Math.max(1, readmitAfterProbes);
+        this.acquireTimeoutMs = Math.max(0, acquireTimeoutMs);
+        this.probeTimeout = Duration.ofMillis(Math.max(1, probeTimeoutMs));
+        this.meterRegistry = meterRegistry;
+        this.httpClient = HttpClient.newBuilder().connectTimeout(probeTimeout).build();
+        for (OllamaEndpoint endpoint : this.endpoints) {
+            meterRegistry.gauge("llm.ollama.outstanding", Tags.of("endpoint", endpoint.getUrl()),
+                    endpoint, OllamaEndpoint::getOutstanding);
+            meterRegistry.gauge("llm.ollama.healthy", Tags.of("endpoint", endpoint.getUrl()),
+                    endpoint, e -> e.isHealthy() ? 1 : 0);
+        }
+    }
+
+    public boolean isEmpty() {
+        return endpoints.isEmpty();
+    }
+
+    public List<OllamaEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Take a request slot on the least loaded endpoint for the model, waiting for one to free up if all are busy.
+     * The slot must be returned with {@link #release}.
+     *
+     * @param model   requested model, null for any
+     * @param exclude endpoints that already failed this call
+     * @throws IllegalStateException if no endpoint is left or none had a free slot in time
+     */
+    public OllamaEndpoint acquire(String model, Set<OllamaEndpoint> exclude) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMs);
+        lock.lock();
+        try {
+            while (true) {
+                List<OllamaEndpoint> candidates = candidates(model, exclude);
+                if (candidates.isEmpty()) {
+                    throw new IllegalStateException("No Ollama endpoint left for model " + model);
+                }
+                OllamaEndpoint chosen = null;
+                for (int i = 0; i < candidates.size(); i++) {
+                    OllamaEndpoint endpoint = candidates.get((next + i) % candidates.size());
+                    if (endpoint.outstanding < endpoint.getMaxConcurrency()
+                            && (chosen == null || endpoint.outstanding < chosen.outstanding)) {
+                        chosen = endpoint;
+                    }
+                }
+                if (chosen != null) {
+                    next++;
+                    chosen.outstanding++;
+                    return chosen;
+                }
+
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new IllegalStateException("All Ollama endpoints for model " + model + " stayed busy for "
+                            + acquireTimeoutMs + " ms");
+                }
+                released.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an Ollama endpoint", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return a slot taken with {@link #acquire}
+     *
+     * @param failed whether the request failed because of the endpoint, see {@link #isEndpointFailure}
+     */
+    public void release(OllamaEndpoint endpoint, boolean failed) {
+        meterRegistry.counter("llm.ollama.requests", "endpoint", endpoint.getUrl(),
+                "outcome", failed ? "failure" : "success").increment();
+        lock.lock();
+        try {
+            endpoint.outstanding--;
+            if (!failed) {
+                endpoint.consecutiveFailures = 0;
+            } else if (++endpoint.consecutiveFailures >= ejectAfterFailures && endpoint.healthy) {
+                eject(endpoint, endpoint.consecutiveFailures + " failed requests in a row");
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Whether an exception means the endpoint could not serve the request, so another one should be tried: an I/O
+     * error or a server error. Errors in the request itself (4xx) are not the endpoint's fault.
+     */
+    public static boolean isEndpointFailure(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException || cause instanceof TransientAiException
+                    || cause instanceof HttpServerErrorException
+                    || cause instanceof WebClientResponseException response && response.getStatusCode().is5xxServerError()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Probe every endpoint: ejects unreachable ones, re-admits recovered ones and refreshes the served models
+     */
+    @Scheduled(fixedDelayString = "${llm.ollama.probe-interval-ms:10000}")
+    public void probe() {
+        endpoints.forEach(this::probe);
+    }
+
+    void probe(OllamaEndpoint endpoint) {
+        Set<String> models = null;
+        String problem = null;
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(endpoint.getUrl() + "/api/tags"))
+                    .timeout(probeTimeout)
+                    .GET()
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 200) {
+                models = new HashSet<>();
+                for (JsonNode model : objectMapper.readTree(response.body()).path("models")) {
+                    models.add(OllamaEndpoint.normalize(model.path("name").asText()));
+                }
+            } else {
+                problem = "health probe answered " + response.statusCode();
+            }
+        } catch (IOException e) {
+            problem = "health probe failed: " + e.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (models == null) {
+                endpoint.consecutiveProbeSuccesses = 0;
+                if (endpoint.healthy) {
+                    eject(endpoint, problem);
+                }
+                return;
+            }
+            endpoint.discoveredModels = Set.copyOf(models);
+            if (!endpoint.healthy && ++endpoint.consecutiveProbeSuccesses >= readmitAfterProbes) {
+                endpoint.healthy = true;
+                endpoint.consecutiveFailures = 0;
+                log.info("Re-admitted Ollama endpoint {}", endpoint.getUrl());
+                released.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void eject(OllamaEndpoint endpoint, String reason) {
+        endpoint.healthy = false;
+        endpoint.consecutiveProbeSuccesses = 0;
+        log.warn("Ejected Ollama endpoint {}: {}", endpoint.getUrl(), reason);
+    }
+
+    /**
+     * Healthy endpoints not excluded that serve the model; all endpoints not excluded if none is healthy, and
+     * affinity is dropped if no endpoint serves the model
+     */
+    private List<OllamaEndpoint> candidates(String model, Set<OllamaEndpoint> exclude) {
+        List<OllamaEndpoint> open = new ArrayList<>();
+        for (OllamaEndpoint endpoint : endpoints) {
+            if (!exclude.contains(endpoint)) {
+                open.add(endpoint);
+            }
+        }
+        if (modelAffinity) {
+            List<OllamaEndpoint> serving = open.stream().filter(endpoint -> endpoint.serves(model)).toList();
+            if (!serving.isEmpty()) {
+                open = serving;
+            }
+        }
+        List<OllamaEndpoint> healthy = open.stream().filter(OllamaEndpoint::isHealthy).toList();
+        return healthy.isEmpty() ? open : healthy;
+    }
+}
@@ -0,0 +1,247 @@
+package org.bedrock.teateach.llm;
+
+import org.bedrock.teateach.beans.KnowledgePoint;
+import org.bedrock.teateach.beans.StudentTaskSubmission;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps prompts built from a student's whole history within a token budget.
+ * <p>
+ * Tokens are estimated without a tokenizer: one and a half per CJK character, a quarter per other character, which
+ * overestimates rather than underestimates for the models in use. For the ability analysis the most recent graded
+ * submissions are listed with their feedback cut to {@code feedbackChars}; older ones are summarized in one line with
+ * their count, average and lowest and highest score. Knowledge points are ranked by relevance (named in the
+ * student's feedback, then prerequisite of or related to many others), taken from each course in turn, and the rest
+ * is counted. The result depends only on the input, not on its order.
+ */
+@Component
+public class PromptBudget {
+
+    static final String KNOWLEDGE_POINTS_TITLE = "\nKNOWLEDGE POINTS BEING STUDIED:\n";
+    static final String SUBMISSIONS_TITLE = "\nSUBMISSION PERFORMANCE DATA:\n";
+
+    private static final Comparator<StudentTaskSubmission> MOST_RECENT_FIRST = Comparator
+            .comparing(StudentTaskSubmission::getSubmissionTime, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(StudentTaskSubmission::getId, Comparator.nullsLast(Comparator.reverseOrder()));
+
+    private final int abilityAnalysisTokens;
+    private final int feedbackChars;
+    private final double submissionShare;
+
+    /**
+     * @param abilityAnalysisTokens budget of the whole ability analysis prompt
+     * @param feedbackChars         feedback of a listed submission is cut to this many characters
+     * @param submissionShare       part of the budget left after the fixed text that submissions get first; what
+     *                              the knowledge points do not use goes to the submissions as well
+     */
+    @Autowired
+    public PromptBudget(@Value("${llm.prompt-budget.ability-analysis-tokens:3000}") int abilityAnalysisTokens,
+                        @Value("${llm.prompt-budget.feedback-chars:300}") int feedbackChars,
+                        @Value("${llm.prompt-budget.submission-share:0.6}") double submissionShare) {
+        this.abilityAnalysisTokens = Math.max(0, abilityAnalysisTokens);
+        this.feedbackChars = Math.max(0, feedbackChars);
+        this.submissionShare = Math.min(1, Math.max(0, submissionShare));
+    }
+
+    /**
+     * Estimated number of tokens of the text
+     */
+    public int estimateTokens(CharSequence text) {
+        double tokens = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = Character.codePointAt(text, i);
+            tokens += isCjk(codePoint) ? 1.5 : 0.25;
+            i += Character.charCount(codePoint);
+        }
+        return (int) Math.ceil(tokens);
+    }
+
+    public int getAbilityAnalysisTokens() {
+        return abilityAnalysisTokens;
+    }
+
+    /**
+     * The ability analysis prompt: header, knowledge points, submissions and footer, with the two lists cut to fit
+     * the budget. The header and footer are kept whole.
+     */
+    public String fitAbilityAnalysis(String header, String footer, List<KnowledgePoint> knowledgePoints,
+                                     List<StudentTaskSubmission> gradedSubmissions) {
+        int available = Math.max(0, abilityAnalysisTokens - estimateTokens(header) - estimateTokens(footer)
+                - estimateTokens(KNOWLEDGE_POINTS_TITLE) - estimateTokens(SUBMISSIONS_TITLE));
+
+        // Submissions get their share first, the knowledge points what is left, then submissions the remainder
+        List<String> submissionLines = submissionLines(gradedSubmissions, (int) (available * submissionShare));
+        List<String> knowledgePointLines = knowledgePointLines(knowledgePoints, gradedSubmissions,
+                available - cost(submissionLines));
+        submissionLines = submissionLines(gradedSubmissions, available - cost(knowledgePointLines));
+
+        StringBuilder prompt = new StringBuilder(header).append(KNOWLEDGE_POINTS_TITLE);
+        knowledgePointLines.forEach(line -> prompt.append(line).append('\n'));
+        prompt.append(SUBMISSIONS_TITLE);
+        submissionLines.forEach(line -> prompt.append(line).append('\n'));
+        return prompt.append(footer).toString();
+    }
+
+    /**
+     * One line per graded submission, most recent first, as many as fit; the rest summarized in a last line
+     */
+    List<String> submissionLines(List<StudentTaskSubmission> gradedSubmissions, int tokenBudget) {
+        List<StudentTaskSubmission> sorted = new ArrayList<>(gradedSubmissions);
+        sorted.sort(MOST_RECENT_FIRST);
+
+        List<String> lines = new ArrayList<>();
+        int used = 0;
+        int listed = 0;
+        for (; listed < sorted.size(); listed++) {
+            String line = submissionLine(sorted.get(listed));
+            // Room must remain for the summary of the submissions after this one
+            String summary = listed + 1 < sorted.size() ? summarize(sorted.subList(listed + 1, sorted.size())) : "";
+            if (used + estimateTokens(line + "\n") + estimateTokens(summary + "\n") > tokenBudget) {
+                break;
+            }
+            lines.add(line);
+            used += estimateTokens(line + "\n");
+        }
+        if (listed < sorted.size()) {
+            String summary = summarize(sorted.subList(listed, sorted.size()));
+            if (used + estimateTokens(summary + "\n") <= tokenBudget) {
+                lines.add(summary);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * One line per knowledge point in order of relevance, as many as fit, followed by the number left out
+     */
+    List<String> knowledgePointLines(List<KnowledgePoint> knowledgePoints, List<StudentTaskSubmission> gradedSubmissions,
+                                     int tokenBudget) {
+        List<KnowledgePoint> ranked = rankKnowledgePoints(knowledgePoints, gradedSubmissions);
+        List<String> lines = new ArrayList<>();
+        int used = 0;
+        int listed = 0;
+        for (; listed < ranked.size(); listed++) {
+            KnowledgePoint knowledgePoint = ranked.get(listed);
+            String line = "- " + knowledgePoint.getName() + " (Difficulty: " + knowledgePoint.getDifficultyLevel() + ")";
+            String rest = listed + 1 < ranked.size() ? omitted(ranked.size() - listed - 1) : "";
+            if (used + estimateTokens(line + "\n") + estimateTokens(rest + "\n") > tokenBudget) {
+                break;
+            }
+            lines.add(line);
+            used += estimateTokens(line + "\n");
+        }
+        if (listed < ranked.size() && used + estimateTokens(omitted(ranked.size() - listed) + "\n") <= tokenBudget) {
+            lines.add(omitted(ranked.size() - listed));
+        }
+        return lines;
+    }
+
+    /**
+     * Knowledge points by relevance: those named in the feedback of more submissions first, then those more others
+     * build on or relate to, then by id. Courses take turns, so every course is represented.
+     */
+    List<KnowledgePoint> rankKnowledgePoints(List<KnowledgePoint> knowledgePoints,
+                                             List<StudentTaskSubmission> gradedSubmissions) {
+        List<String> feedback = gradedSubmissions.stream()
+                .map(StudentTaskSubmission::getFeedback)
+                .filter(text -> text != null && !text.isBlank())
+                .map(text -> text.toLowerCase(Locale.ROOT))
+                .toList();
+        Map<Long, Integer> references = new HashMap<>();
+        for (KnowledgePoint knowledgePoint : knowledgePoints) {
+            countReferences(references, knowledgePoint.getPrerequisiteKnowledgePointIds());
+            countReferences(references, knowledgePoint.getRelatedKnowledgePointIds());
+        }
+        Map<KnowledgePoint, Integer> mentions = new HashMap<>();
+        for (KnowledgePoint knowledgePoint : knowledgePoints) {
+            String name = knowledgePoint.getName() == null ? "" : knowledgePoint.getName().trim().toLowerCase(Locale.ROOT);
+            mentions.put(knowledgePoint, name.isEmpty() ? 0 : (int) feedback.stream().filter(text -> text.contains(name)).count());
+        }
+
+        Comparator<KnowledgePoint> byRelevance = Comparator
+                .comparing((KnowledgePoint knowledgePoint) -> mentions.get(knowledgePoint), Comparator.reverseOrder())
+                .thenComparing(knowledgePoint -> references.getOrDefault(knowledgePoint.getId(), 0), Comparator.reverseOrder())
+                .thenComparing(KnowledgePoint::getId, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(KnowledgePoint::getName, Comparator.nullsLast(Comparator.naturalOrder()));
+        Map<Long, List<KnowledgePoint>> byCourse = new TreeMap<>(Comparator.nullsLast(Comparator.naturalOrder()));
+        for (KnowledgePoint knowledgePoint : knowledgePoints) {
+            byCourse.computeIfAbsent(knowledgePoint.getCourseId(), id -> new ArrayList<>()).add(knowledgePoint);
+        }
+        byCourse.values().forEach(course -> course.sort(byRelevance));
+
+        List<KnowledgePoint> ranked = new ArrayList<>(knowledgePoints.size());
+        for (int round = 0; ranked.size() < knowledgePoints.size(); round++) {
+            for (List<KnowledgePoint> course : byCourse.values()) {
+                if (round < course.size()) {
+                    ranked.add(course.get(round));
+                }
+            }
+        }
+        return ranked;
+    }
+
+    private String submissionLine(StudentTaskSubmission submission) {
+        StringBuilder line = new StringBuilder("- Task ID: ").append(submission.getTaskId())
+                .append(", Score: ").append(submission.getScore()).append("/100");
+        String feedback = submission.getFeedback();
+        if (feedback != null && !feedback.trim().isEmpty() && feedbackChars > 0) {
+            line.append(", Feedback: ").append(truncate(feedback.trim().replaceAll("\\s+", " "), feedbackChars));
+        }
+        return line.toString();
+    }
+
+    private static String summarize(List<StudentTaskSubmission> submissions) {
+        StudentTaskSubmission lowest = submissions.get(0);
+        StudentTaskSubmission highest = submissions.get(0);
+        double total = 0;
+        for (StudentTaskSubmission submission : submissions) {
+            total += submission.getScore();
+            if (submission.getScore() < lowest.getScore()) {
+                lowest = submission;
+            }
+            if (submission.getScore() > highest.getScore()) {
+                highest = submission;
+            }
+        }
+        return String.format(Locale.ROOT, "- %d earlier graded submissions: average %.2f/100, lowest %s/100 (Task ID: %s), highest %s/100 (Task ID: %s)",
+                submissions.size(), total / submissions.size(), lowest.getScore(), lowest.getTaskId(),
+                highest.getScore(), highest.getTaskId());
+    }
+
+    private static String omitted(int count) {
+        return "- ... and " + count + " more knowledge points";
+    }
+
+    private static void countReferences(Map<Long, Integer> references, List<Long> ids) {
+        if (ids != null) {
+            ids.forEach(id -> references.merge(id, 1, Integer::sum));
+        }
+    }
+
+    private static String truncate(String text, int maxChars) {
+        if (text.codePointCount(0, text.length()) <= maxChars) {
+            return text;
+        }
+        return text.substring(0, text.offsetByCodePoints(0, maxChars)) + "...";
+    }
+
+    private int cost(List<String> lines) {
+        return lines.stream().mapToInt(line -> estimateTokens(line + "\n")).sum();
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL;
+    }
+}
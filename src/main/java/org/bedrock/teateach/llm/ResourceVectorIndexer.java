@@ -0,0 +1,426 @@
+package org.bedrock.teateach.llm;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bedrock.teateach.beans.LearningTask;
+import org.bedrock.teateach.beans.Resource;
+import org.bedrock.teateach.services.LearningTaskService;
+import org.bedrock.teateach.services.ResourceLinksChangedEvent;
+import org.bedrock.teateach.services.ResourceService;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the resource documents of the vector store in step with the resources.
+ * <p>
+ * The initial indexing runs in the background once the application is ready, so startup does not wait for the
+ * embedding model. Resources that changed since the snapshot are embedded in batches of
+ * {@code llm.vector-store.index.batch-size}, {@code llm.vector-store.index.parallelism} batches at a time.
+ * Until it finishes, {@link #isReady()} is false and callers use {@link #metadataSearch} instead of the incomplete
+ * vector store; progress is reported by {@link VectorIndexHealthIndicator}.
+ */
+@Component
+@Slf4j
+public class ResourceVectorIndexer {
+
+    /** Vector document metadata: ids of the courses and tasks a resource is associated with, as strings */
+    public static final String COURSE_IDS = "courseIds";
+    public static final String TASK_IDS = "taskIds";
+
+    public enum State {
+        PENDING, INDEXING, READY, FAILED
+    }
+
+    private final VectorStore vectorStore;
+    private final VectorStoreSnapshot vectorStoreSnapshot;
+    private final ResourceService resourceService;
+    private final LearningTaskService learningTaskService;
+    private final int batchSize;
+    private final long retryDelayMs;
+    private final long maxRetryDelayMs;
+    private final ExecutorService executor;
+
+    private volatile State state = State.PENDING;
+    private volatile String error;
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicInteger embedded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @Autowired
+    public ResourceVectorIndexer(VectorStore vectorStore,
+                                 VectorStoreSnapshot vectorStoreSnapshot,
+                                 ResourceService resourceService,
+                                 @Lazy LearningTaskService learningTaskService,
+                                 @Value("${llm.vector-store.index.batch-size:16}") int batchSize,
+                                 @Value("${llm.vector-store.index.parallelism:4}") int parallelism,
+                                 @Value("${llm.vector-store.index.retry-delay-ms:10000}") long retryDelayMs,
+                                 @Value("${llm.vector-store.index.max-retry-delay-ms:600000}") long maxRetryDelayMs) {
+        this.vectorStore = vectorStore;
+        this.vectorStoreSnapshot = vectorStoreSnapshot;
+        this.resourceService = resourceService;
+        this.learningTaskService = learningTaskService;
+        this.batchSize = Math.max(1, batchSize);
+        this.retryDelayMs = Math.max(1, retryDelayMs);
+        this.maxRetryDelayMs = Math.max(this.retryDelayMs, maxRetryDelayMs);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, parallelism), runnable -> {
+            Thread thread = new Thread(runnable, "vector-index-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startInitialIndexing() {
+        if (state != State.PENDING) {
+            return;
+        }
+        state = State.INDEXING;
+        Thread thread = new Thread(this::indexUntilReady, "vector-index-initial");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Index every resource, retrying with exponential backoff while indexing fails as a whole, e.g. because the
+     * database is not reachable yet. Searches use the metadata fallback meanwhile.
+     */
+    void indexUntilReady() {
+        long delay = retryDelayMs;
+        indexAll();
+        while (state == State.FAILED) {
+            log.warn("Vector store indexing attempt {} failed, retrying in {} ms", attempts.get(), delay);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            delay = Math.min(delay * 2, maxRetryDelayMs);
+            indexAll();
+        }
+    }
+
+    /**
+     * Index every resource. Resources restored from the snapshot are only embedded again if their content or task
+     * links changed; resources deleted since are removed.
+     */
+    void indexAll() {
+        state = State.INDEXING;
+        // Only the first attempt restores the snapshot; a retry keeps what was indexed meanwhile
+        boolean firstAttempt = attempts.incrementAndGet() == 1;
+        processed.set(0);
+        embedded.set(0);
+        failed.set(0);
+        try {
+            int restored = firstAttempt ? vectorStoreSnapshot.load() : 0;
+            List<Resource> resources = resourceService.getAllResources();
+            total.set(resources.size());
+
+            List<Document> pending = new ArrayList<>();
+            Set<Long> existingIds = new HashSet<>();
+            for (Resource resource : resources) {
+                existingIds.add(resource.getId());
+                Document document = prepareDocument(resource);
+                if (document != null) {
+                    pending.add(document);
+                } else {
+                    processed.incrementAndGet();
+                }
+            }
+
+            List<CompletableFuture<Void>> batches = new ArrayList<>();
+            for (int from = 0; from < pending.size(); from += batchSize) {
+                List<Document> batch = pending.subList(from, Math.min(from + batchSize, pending.size()));
+                batches.add(CompletableFuture.runAsync(() -> addBatch(batch), executor));
+            }
+            CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new)).join();
+
+            for (Long resourceId : vectorStoreSnapshot.getIndexedResourceIds()) {
+                if (!existingIds.contains(resourceId)) {
+                    removeResource(resourceId);
+                }
+            }
+            vectorStoreSnapshot.saveIfChanged();
+
+            state = State.READY;
+            log.info("Vector store indexed {} resources ({} restored from snapshot, {} embedded, {} failed)",
+                    resources.size(), restored, embedded.get(), failed.get());
+        } catch (RuntimeException e) {
+            error = e.getMessage();
+            state = State.FAILED;
+            log.error("Vector store indexing failed", e);
+        }
+    }
+
+    /**
+     * Embeds a resource unless its current content and task links are already in the vector store.
+     *
+     * @return true if the resource was embedded, false if it was up to date or failed
+     */
+    public boolean indexResource(Resource resource) {
+        try {
+            Document document = prepareDocument(resource);
+            if (document == null) {
+                return false;
+            }
+            vectorStore.add(List.of(document));
+            vectorStoreSnapshot.recordIndexed(resource.getId(), (String) document.getMetadata().get(VectorStoreSnapshot.CONTENT_HASH));
+            log.debug("Added resource {} to vector store", resource.getResourceName());
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Could not add resource {} to vector store: {}", resource.getId(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Removes the document of a deleted resource from the vector store.
+     */
+    public void removeResource(Long resourceId) {
+        try {
+            vectorStore.delete(List.of(VectorStoreSnapshot.documentId(resourceId)));
+            vectorStoreSnapshot.recordRemoved(resourceId);
+        } catch (RuntimeException e) {
+            log.warn("Could not remove resource {} from vector store: {}", resourceId, e.getMessage());
+        }
+    }
+
+    /**
+     * Re-indexes resources whose task links changed, so their course and task metadata is current. Embedding runs
+     * on the indexing pool so the request that changed the links doesn't wait for the model.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onResourceLinksChanged(ResourceLinksChangedEvent event) {
+        List<Long> resourceIds = List.copyOf(event.getResourceIds());
+        try {
+            executor.execute(() -> {
+                for (Long resourceId : resourceIds) {
+                    try {
+                        resourceService.getResourceById(resourceId).ifPresent(this::indexResource);
+                    } catch (RuntimeException e) {
+                        log.warn("Could not re-index resource {}: {}", resourceId, e.getMessage());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Skipped re-indexing resources {}, the indexer is shut down", resourceIds);
+        }
+    }
+
+    /**
+     * Whether the initial indexing finished, so vector searches see every resource
+     */
+    public boolean isReady() {
+        return state == State.READY;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public int getTotal() {
+        return total.get();
+    }
+
+    public int getProcessed() {
+        return processed.get();
+    }
+
+    public int getEmbedded() {
+        return embedded.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * How often the initial indexing was started, retries included
+     */
+    public int getAttempts() {
+        return attempts.get();
+    }
+
+    /**
+     * Keyword search over resource names, descriptions and file types, for when the vector store is not ready.
+     * Resources are ranked by the number of query words they contain; resources without any are left out.
+     *
+     * @param terms    The words or phrases to look for
+     * @param courseId Only resources linked to this course, or null for all resources
+     * @param topK     The maximum number of results
+     * @return Documents shaped like the vector store's, best match first
+     */
+    public List<Document> metadataSearch(List<String> terms, Long courseId, int topK) {
+        Set<String> words = terms.stream()
+                .flatMap(term -> Arrays.stream(term.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")))
+                .filter(word -> word.length() > 2)
+                .collect(Collectors.toSet());
+        if (words.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, Integer> matches = new HashMap<>();
+        Map<Long, Resource> candidates = new LinkedHashMap<>();
+        for (Resource resource : courseId != null ? courseResources(courseId) : resourceService.getAllResources()) {
+            String text = (resource.getResourceName() + " " + resource.getDescription() + " " + resource.getFileType())
+                    .toLowerCase(Locale.ROOT);
+            int count = (int) words.stream().filter(text::contains).count();
+            if (count > 0) {
+                matches.put(resource.getId(), count);
+                candidates.put(resource.getId(), resource);
+            }
+        }
+
+        return candidates.values().stream()
+                .sorted(Comparator.comparing((Resource resource) -> matches.get(resource.getId())).reversed())
+                .limit(topK)
+                .map(resource -> {
+                    Map<String, Object> metadata = baseMetadata(resource);
+                    metadata.put("distance", 1 - (double) matches.get(resource.getId()) / words.size());
+                    return new Document(VectorStoreSnapshot.documentId(resource.getId()), describe(resource), metadata);
+                })
+                .toList();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void addBatch(List<Document> batch) {
+        try {
+            // One embedding request for the whole batch
+            vectorStore.add(batch);
+            for (Document document : batch) {
+                vectorStoreSnapshot.recordIndexed(Long.valueOf((String) document.getMetadata().get(VectorStoreSnapshot.RESOURCE_ID)),
+                        (String) document.getMetadata().get(VectorStoreSnapshot.CONTENT_HASH));
+            }
+            embedded.addAndGet(batch.size());
+        } catch (RuntimeException e) {
+            failed.addAndGet(batch.size());
+            log.warn("Could not embed a batch of {} resources: {}", batch.size(), e.getMessage());
+        } finally {
+            processed.addAndGet(batch.size());
+        }
+    }
+
+    /**
+     * The vector document of a resource, or null if the resource has no content or is already up to date
+     */
+    private Document prepareDocument(Resource resource) {
+        String content = extractResourceContent(resource);
+        if (content == null || content.trim().isEmpty()) {
+            return null;
+        }
+        List<LearningTask> tasks = learningTaskService.getTasksByResourceId(resource.getId());
+        List<String> courseIds = tasks.stream().map(task -> String.valueOf(task.getCourseId())).distinct().sorted().toList();
+        List<String> taskIds = tasks.stream().map(task -> String.valueOf(task.getId())).distinct().sorted().toList();
+        // The links are part of the hash, so linking a resource to another course updates its document
+        String contentHash = vectorStoreSnapshot.contentHash(content + "\ncourses=" + courseIds + "\ntasks=" + taskIds);
+        if (vectorStoreSnapshot.isIndexed(resource.getId(), contentHash)) {
+            return null;
+        }
+
+        Map<String, Object> metadata = baseMetadata(resource);
+        metadata.put(VectorStoreSnapshot.CONTENT_HASH, contentHash);
+        metadata.put(COURSE_IDS, courseIds);
+        metadata.put(TASK_IDS, taskIds);
+        return new Document(VectorStoreSnapshot.documentId(resource.getId()), content, metadata);
+    }
+
+    private static Map<String, Object> baseMetadata(Resource resource) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put(VectorStoreSnapshot.RESOURCE_ID, resource.getId().toString());
+        metadata.put("resourceName", resource.getResourceName());
+        metadata.put("fileType", resource.getFileType());
+        metadata.put("description", resource.getDescription() != null ? resource.getDescription() : "");
+        return metadata;
+    }
+
+    private List<Resource> courseResources(Long courseId) {
+        Map<Long, Resource> resources = new LinkedHashMap<>();
+        for (LearningTask task : learningTaskService.getTasksByCourseId(courseId)) {
+            for (Resource resource : learningTaskService.getTaskResources(task.getId())) {
+                resources.putIfAbsent(resource.getId(), resource);
+            }
+        }
+        return new ArrayList<>(resources.values());
+    }
+
+    private static String describe(Resource resource) {
+        StringBuilder content = new StringBuilder();
+        content.append("Resource Name: ").append(resource.getResourceName()).append("\n");
+        content.append("File Type: ").append(resource.getFileType()).append("\n");
+        if (resource.getDescription() != null && !resource.getDescription().trim().isEmpty()) {
+            content.append("Description: ").append(resource.getDescription()).append("\n");
+        }
+        return content.toString();
+    }
+
+    /**
+     * Extracts text content from a resource file for embedding.
+     * Currently supports basic text extraction for common file types.
+     *
+     * @param resource The resource to extract content from
+     * @return The extracted text content, or null if extraction fails
+     */
+    private String extractResourceContent(Resource resource) {
+        try {
+            String filePath = resource.getFilePath();
+            String fileType = resource.getFileType().toLowerCase();
+
+            // For now, we'll create a searchable representation using metadata
+            // In a production system, you'd want to use proper document parsers
+            StringBuilder content = new StringBuilder(describe(resource));
+
+            // For text-based files, try to read the actual content
+            if (fileType.equals("txt") || fileType.equals("md")) {
+                try {
+                    String fileContent = Files.readString(Paths.get(filePath));
+                    content.append("Content: ").append(fileContent);
+                } catch (IOException e) {
+                    log.debug("Could not read file content for: {}", filePath);
+                }
+            }
+
+            return content.toString();
+        } catch (Exception e) {
+            log.warn("Error extracting content from resource {}: {}", resource.getId(), e.getMessage());
+            return null;
+        }
+    }
+}
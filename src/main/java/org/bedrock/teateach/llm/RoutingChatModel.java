@@ -0,0 +1,79 @@
+package org.bedrock.teateach.llm;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link ChatModel} that sends every call to an endpoint of an {@link OllamaEndpointPool}.
+ * <p>
+ * A call that fails because of its endpoint is sent to the next endpoint until each one was tried once. A stream is
+ * not moved once it started, since tokens may already have reached the client.
+ */
+@Slf4j
+public class RoutingChatModel implements ChatModel {
+
+    private final OllamaEndpointPool pool;
+    private final String defaultModel;
+
+    /**
+     * @param defaultModel model of prompts that name none, used for model affinity
+     */
+    public RoutingChatModel(OllamaEndpointPool pool, String defaultModel) {
+        this.pool = pool;
+        this.defaultModel = defaultModel;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        String model = model(prompt);
+        Set<OllamaEndpoint> tried = new HashSet<>();
+        while (true) {
+            OllamaEndpoint endpoint = pool.acquire(model, tried);
+            boolean failed = false;
+            try {
+                return endpoint.getChatModel().call(prompt);
+            } catch (RuntimeException e) {
+                failed = OllamaEndpointPool.isEndpointFailure(e);
+                tried.add(endpoint);
+                if (!failed || tried.size() >= pool.getEndpoints().size()) {
+                    throw e;
+                }
+                log.warn("Chat call to Ollama endpoint {} failed, trying another one: {}", endpoint, e.getMessage());
+            } finally {
+                pool.release(endpoint, failed);
+            }
+        }
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        String model = model(prompt);
+        // Waiting for a free slot blocks, so it must not happen on an event loop thread
+        return Flux.defer(() -> {
+            OllamaEndpoint endpoint = pool.acquire(model, Set.of());
+            AtomicBoolean failed = new AtomicBoolean();
+            return endpoint.getChatModel().stream(prompt)
+                    .doOnError(e -> failed.set(OllamaEndpointPool.isEndpointFailure(e)))
+                    .doFinally(signal -> pool.release(endpoint, failed.get()));
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return pool.getEndpoints().get(0).getChatModel().getDefaultOptions();
+    }
+
+    private String model(Prompt prompt) {
+        ChatOptions options = prompt.getOptions();
+        return options != null && options.getModel() != null ? options.getModel() : defaultModel;
+    }
+}
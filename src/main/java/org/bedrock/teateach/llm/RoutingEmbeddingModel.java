@@ -0,0 +1,70 @@
+package org.bedrock.teateach.llm;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * {@link EmbeddingModel} that sends every call to an endpoint of an {@link OllamaEndpointPool}, moving a call that
+ * failed because of its endpoint to the next one until each one was tried once.
+ */
+@Slf4j
+public class RoutingEmbeddingModel implements EmbeddingModel {
+
+    private final OllamaEndpointPool pool;
+    private final String defaultModel;
+    private volatile int dimensions = -1;
+
+    /**
+     * @param defaultModel model of requests that name none, used for model affinity
+     */
+    public RoutingEmbeddingModel(OllamaEndpointPool pool, String defaultModel) {
+        this.pool = pool;
+        this.defaultModel = defaultModel;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        EmbeddingOptions options = request.getOptions();
+        String model = options != null && options.getModel() != null ? options.getModel() : defaultModel;
+        Set<OllamaEndpoint> tried = new HashSet<>();
+        while (true) {
+            OllamaEndpoint endpoint = pool.acquire(model, tried);
+            boolean failed = false;
+            try {
+                return endpoint.getEmbeddingModel().call(request);
+            } catch (RuntimeException e) {
+                failed = OllamaEndpointPool.isEndpointFailure(e);
+                tried.add(endpoint);
+                if (!failed || tried.size() >= pool.getEndpoints().size()) {
+                    throw e;
+                }
+                log.warn("Embedding call to Ollama endpoint {} failed, trying another one: {}", endpoint, e.getMessage());
+            } finally {
+                pool.release(endpoint, failed);
+            }
+        }
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    /**
+     * Dimensions of the model, found out with one embedding call and then remembered
+     */
+    @Override
+    public int dimensions() {
+        if (dimensions < 0) {
+            dimensions = embed("Test String").length;
+        }
+        return dimensions;
+    }
+}
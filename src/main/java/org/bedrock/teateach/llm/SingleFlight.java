@@ -0,0 +1,105 @@
+package org.bedrock.teateach.llm;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent operations: while an operation with the same name and arguments is running, further
+ * callers do not start it again but share its {@link CompletableFuture}, including its exception.
+ * <p>
+ * The first caller runs the operation on its own thread. Nothing is kept after it finished, so a later call starts a
+ * new one; repeated results are the business of {@link LlmResponseCache}. Shared results must not be modified.
+ * <p>
+ * Metrics: {@code llm.singleflight.calls} (tags operation and result=executed|deduplicated) and
+ * {@code llm.singleflight.in-flight}.
+ */
+@Component
+@Slf4j
+public class SingleFlight {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SingleFlight(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        meterRegistry.gauge("llm.singleflight.in-flight", inFlight, Map::size);
+    }
+
+    /**
+     * Run the operation, or wait for the identical one already running, and return its result
+     *
+     * @param operation name of the operation, also the metrics tag
+     * @param arguments everything the result depends on; compared by their string form
+     * @throws RuntimeException the exception the operation threw
+     */
+    public <T> T call(String operation, List<?> arguments, Supplier<T> supplier) {
+        try {
+            return execute(operation, arguments, supplier).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Future of the operation: the one already in flight for these arguments, or a new one that is completed before
+     * this method returns
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> execute(String operation, List<?> arguments, Supplier<T> supplier) {
+        String key = operation + ':' + arguments;
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            counter(operation, "deduplicated").increment();
+            log.debug("Joined the running {} call for {}", operation, arguments);
+            return (CompletableFuture<T>) running;
+        }
+
+        counter(operation, "executed").increment();
+        try {
+            flight.complete(supplier.get());
+        } catch (Throwable e) {
+            flight.completeExceptionally(e);
+        } finally {
+            inFlight.remove(key, flight);
+        }
+        return (CompletableFuture<T>) flight;
+    }
+
+    /**
+     * Calls of the operation that joined a running one instead of executing it
+     */
+    public long getDeduplicatedCount(String operation) {
+        return (long) counter(operation, "deduplicated").count();
+    }
+
+    public long getExecutedCount(String operation) {
+        return (long) counter(operation, "executed").count();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private Counter counter(String operation, String result) {
+        return meterRegistry.counter("llm.singleflight.calls", "operation", operation, "result", result);
+    }
+}
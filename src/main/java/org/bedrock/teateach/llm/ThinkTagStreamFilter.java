@@ -0,0 +1,115 @@
+package org.bedrock.teateach.llm;
+
+/**
+ * Streaming counterpart of removing {@code <think>...</think>} blocks from a model response.
+ * <p>
+ * Chunks arrive in arbitrary pieces, so a tag may be split across them. Text that could still be the start of a
+ * tag is held back until the next chunk decides it; everything inside a think block is dropped. Not thread-safe:
+ * use one instance per stream.
+ */
+final class ThinkTagStreamFilter {
+
+    private static final String OPEN_TAG = "<think>";
+    private static final String CLOSE_TAG = "</think>";
+
+    private final StringBuilder pending = new StringBuilder();
+    private boolean insideThink;
+    // Whitespace at the start of the answer and after a think block is dropped, like removeThinkTags does
+    private boolean skipLeadingWhitespace = true;
+
+    /**
+     * @return the visible text that can be emitted now, possibly empty
+     */
+    String accept(String chunk) {
+        if (chunk != null) {
+            pending.append(chunk);
+        }
+        StringBuilder visible = new StringBuilder();
+
+        while (pending.length() > 0) {
+            if (insideThink) {
+                int close = indexOfIgnoreCase(pending, CLOSE_TAG);
+                if (close < 0) {
+                    // Only a possible start of the closing tag is worth keeping
+                    pending.delete(0, pending.length() - partialTagLength(pending, CLOSE_TAG));
+                    break;
+                }
+                pending.delete(0, close + CLOSE_TAG.length());
+                insideThink = false;
+                skipLeadingWhitespace = true;
+            } else {
+                int open = indexOfIgnoreCase(pending, OPEN_TAG);
+                int strayClose = indexOfIgnoreCase(pending, CLOSE_TAG);
+                if (strayClose >= 0 && (open < 0 || strayClose < open)) {
+                    // Some chat templates open the think block in the prompt, so only the closing tag is streamed
+                    emit(visible, pending.substring(0, strayClose));
+                    pending.delete(0, strayClose + CLOSE_TAG.length());
+                    skipLeadingWhitespace = true;
+                } else if (open >= 0) {
+                    emit(visible, pending.substring(0, open));
+                    pending.delete(0, open + OPEN_TAG.length());
+                    insideThink = true;
+                } else {
+                    int keep = Math.max(partialTagLength(pending, OPEN_TAG), partialTagLength(pending, CLOSE_TAG));
+                    emit(visible, pending.substring(0, pending.length() - keep));
+                    pending.delete(0, pending.length() - keep);
+                    break;
+                }
+            }
+        }
+        return visible.toString();
+    }
+
+    /**
+     * Flush the held-back text once the stream has ended. An unterminated think block is dropped.
+     */
+    String finish() {
+        StringBuilder visible = new StringBuilder();
+        if (!insideThink) {
+            emit(visible, pending.toString());
+        }
+        pending.setLength(0);
+        return visible.toString();
+    }
+
+    private void emit(StringBuilder visible, String text) {
+        if (skipLeadingWhitespace) {
+            text = text.stripLeading();
+            if (text.isEmpty()) {
+                return;
+            }
+            skipLeadingWhitespace = false;
+        }
+        visible.append(text);
+    }
+
+    private static int indexOfIgnoreCase(CharSequence text, String tag) {
+        for (int i = 0; i + tag.length() <= text.length(); i++) {
+            if (regionMatchesIgnoreCase(text, i, tag, tag.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Length of the longest suffix of text that is a proper prefix of tag
+     */
+    private static int partialTagLength(CharSequence text, String tag) {
+        for (int length = Math.min(tag.length() - 1, text.length()); length > 0; length--) {
+            if (regionMatchesIgnoreCase(text, text.length() - length, tag, length)) {
+                return length;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean regionMatchesIgnoreCase(CharSequence text, int offset, String tag, int length) {
+        for (int i = 0; i < length; i++) {
+            if (Character.toLowerCase(text.charAt(offset + i)) != tag.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
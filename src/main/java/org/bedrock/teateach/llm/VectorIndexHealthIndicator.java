@@ -0,0 +1,40 @@
+package org.bedrock.teateach.llm;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the initial vector store indexing as the "vectorIndex" health component, with its progress in the details:
+ * UP once every resource was processed (resources whose embedding failed are counted, not fatal), UNKNOWN while it
+ * runs or waits to retry a failed attempt. Never DOWN: until indexing finishes RAG searches resource metadata, so the
+ * application is fully usable and neither readiness nor the aggregate health should hold it back.
+ */
+@Component
+public class VectorIndexHealthIndicator implements HealthIndicator {
+
+    private final ResourceVectorIndexer indexer;
+
+    @Autowired
+    public VectorIndexHealthIndicator(ResourceVectorIndexer indexer) {
+        this.indexer = indexer;
+    }
+
+    @Override
+    public Health health() {
+        ResourceVectorIndexer.State state = indexer.getState();
+        Health.Builder builder = state == ResourceVectorIndexer.State.READY ? Health.up() : Health.unknown();
+        if (state == ResourceVectorIndexer.State.FAILED) {
+            builder.withDetail("error", String.valueOf(indexer.getError()));
+        }
+        return builder
+                .withDetail("state", state.name())
+                .withDetail("total", indexer.getTotal())
+                .withDetail("processed", indexer.getProcessed())
+                .withDetail("embedded", indexer.getEmbedded())
+                .withDetail("failed", indexer.getFailed())
+                .withDetail("attempts", indexer.getAttempts())
+                .build();
+    }
+}
@@ -0,0 +1,239 @@
+package org.bedrock.teateach.llm;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.bedrock.teateach.vectorstore.HnswVectorStore;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the resource embeddings of the in-memory vector store in a local snapshot file, so a restart only embeds
+ * resources that were added or changed since the snapshot was written.
+ * <p>
+ * Every resource is stored as one document with a stable id ({@link #documentId}) and its content hash in the
+ * {@code contentHash} metadata. The hash covers the embedding model, so switching models re-embeds everything.
+ * The snapshot is the vector store's own file format; it is written every {@code llm.vector-store.snapshot-interval-ms}
+ * when something changed, and at shutdown.
+ * <p>
+ * Only {@link SimpleVectorStore} and {@link HnswVectorStore} can be persisted; with any other store every call here
+ * is a no-op.
+ */
+@Component
+@Slf4j
+public class VectorStoreSnapshot {
+
+    static final String RESOURCE_ID = "resourceId";
+    static final String CONTENT_HASH = "contentHash";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final VectorStore vectorStore;
+    private final Path snapshotPath;
+    private final String embeddingModel;
+    private final Map<Long, String> indexedHashes = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    @Autowired
+    public VectorStoreSnapshot(VectorStore vectorStore,
+                               @Value("${llm.vector-store.snapshot-enabled:true}") boolean enabled,
+                               @Value("${llm.vector-store.snapshot-path:./data/vector-store.snapshot}") String snapshotPath,
+                               @Value("${spring.ai.ollama.embedding.model:}") String embeddingModel) {
+        boolean persistable = vectorStore instanceof SimpleVectorStore || vectorStore instanceof HnswVectorStore;
+        this.vectorStore = enabled && persistable ? vectorStore : null;
+        this.snapshotPath = Paths.get(snapshotPath);
+        this.embeddingModel = embeddingModel;
+        if (enabled && this.vectorStore == null) {
+            log.warn("Vector store snapshots are not supported for {}", vectorStore.getClass().getName());
+        }
+    }
+
+    public boolean isEnabled() {
+        return vectorStore != null;
+    }
+
+    /**
+     * Load the snapshot into the vector store, if there is one
+     *
+     * @return the number of resources restored
+     */
+    public int load() {
+        if (!isEnabled() || !Files.isRegularFile(snapshotPath)) {
+            return 0;
+        }
+        try {
+            Map<Long, String> hashes;
+            if (vectorStore instanceof HnswVectorStore hnsw) {
+                hnsw.load(snapshotPath.toFile());
+                hashes = contentHashes(hnsw.getDocuments().stream().map(Document::getMetadata).toList());
+            } else {
+                hashes = readContentHashes(snapshotPath);
+                ((SimpleVectorStore) vectorStore).load(snapshotPath.toFile());
+            }
+            indexedHashes.clear();
+            indexedHashes.putAll(hashes);
+            log.info("Loaded vector store snapshot {} with {} resources", snapshotPath, hashes.size());
+            return hashes.size();
+        } catch (IOException | RuntimeException e) {
+            // An unreadable snapshot only costs a full re-embedding
+            log.warn("Could not load vector store snapshot {}: {}", snapshotPath, e.getMessage());
+            indexedHashes.clear();
+            return 0;
+        }
+    }
+
+    /**
+     * Whether the resource is already embedded with exactly this content
+     */
+    public boolean isIndexed(Long resourceId, String contentHash) {
+        return contentHash.equals(indexedHashes.get(resourceId));
+    }
+
+    public void recordIndexed(Long resourceId, String contentHash) {
+        indexedHashes.put(resourceId, contentHash);
+        dirty.set(true);
+    }
+
+    public void recordRemoved(Long resourceId) {
+        if (indexedHashes.remove(resourceId) != null) {
+            dirty.set(true);
+        }
+    }
+
+    /**
+     * Resources that have a document in the store
+     */
+    public Set<Long> getIndexedResourceIds() {
+        return Set.copyOf(indexedHashes.keySet());
+    }
+
+    /**
+     * Hash identifying the embedded content of a resource
+     */
+    public String contentHash(String content) {
+        return sha256("model=" + embeddingModel + "\n" + content);
+    }
+
+    /**
+     * Stable document id of a resource, so re-embedding it replaces its previous document
+     */
+    public static String documentId(Long resourceId) {
+        return UUID.nameUUIDFromBytes(("resource:" + resourceId).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    @Scheduled(fixedDelayString = "${llm.vector-store.snapshot-interval-ms:60000}")
+    public void saveIfChanged() {
+        if (isEnabled() && dirty.get()) {
+            save();
+        }
+    }
+
+    /**
+     * Write the snapshot through a temporary file, so a crash never leaves a truncated snapshot behind. The temporary
+     * file name is unique, so replicas sharing the snapshot directory never write to the same file; the last complete
+     * snapshot moved into place wins.
+     */
+    public synchronized void save() {
+        if (!isEnabled()) {
+            return;
+        }
+        // Changes made while writing mark the snapshot dirty again
+        dirty.set(false);
+        Path temporary = snapshotPath.resolveSibling(snapshotPath.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            Path directory = snapshotPath.toAbsolutePath().getParent();
+            if (directory != null) {
+                Files.createDirectories(directory);
+            }
+            File file = temporary.toFile();
+            if (vectorStore instanceof HnswVectorStore hnsw) {
+                hnsw.save(file);
+            } else {
+                ((SimpleVectorStore) vectorStore).save(file);
+            }
+            Files.move(temporary, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Saved vector store snapshot {} with {} resources", snapshotPath, indexedHashes.size());
+        } catch (IOException | RuntimeException e) {
+            dirty.set(true);
+            log.warn("Could not save vector store snapshot {}: {}", snapshotPath, e.getMessage());
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+                // Only a leftover temporary file
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        saveIfChanged();
+    }
+
+    /**
+     * Read the resource ids and content hashes from the documents of a SimpleVectorStore snapshot file
+     */
+    @SuppressWarnings("unchecked")
+    static Map<Long, String> readContentHashes(Path file) throws IOException {
+        List<Map<String, Object>> metadata = new ArrayList<>();
+        Iterator<JsonNode> documents = objectMapper.readTree(file.toFile()).elements();
+        while (documents.hasNext()) {
+            JsonNode node = documents.next().path("metadata");
+            if (node.isObject()) {
+                metadata.add(objectMapper.convertValue(node, Map.class));
+            }
+        }
+        return contentHashes(metadata);
+    }
+
+    private static Map<Long, String> contentHashes(List<Map<String, Object>> documentMetadata) {
+        Map<Long, String> hashes = new HashMap<>();
+        for (Map<String, Object> metadata : documentMetadata) {
+            Object resourceId = metadata != null ? metadata.get(RESOURCE_ID) : null;
+            Object contentHash = metadata != null ? metadata.get(CONTENT_HASH) : null;
+            // Documents without a hash predate snapshots and are embedded again
+            if (resourceId != null && contentHash != null) {
+                try {
+                    hashes.put(Long.valueOf(resourceId.toString()), contentHash.toString());
+                } catch (NumberFormatException e) {
+                    log.debug("Ignoring snapshot document with resource id {}", resourceId);
+                }
+            }
+        }
+        return hashes;
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
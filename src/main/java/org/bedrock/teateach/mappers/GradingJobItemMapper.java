@@ -0,0 +1,54 @@
+package org.bedrock.teateach.mappers;
+
+import org.apache.ibatis.annotations.*;
+import org.bedrock.teateach.beans.GradingJobItem;
+
+import java.util.List;
+
+@Mapper
+public interface GradingJobItemMapper {
+
+    @Insert("<script>" +
+            "INSERT INTO grading_job_items (job_id, submission_id, status, score, feedback, attempts) VALUES " +
+            "<foreach collection='items' item='i' separator=','>" +
+            "(#{i.jobId}, #{i.submissionId}, #{i.status}, #{i.score}, #{i.feedback}, #{i.attempts})" +
+            "</foreach>" +
+            "</script>")
+    void insertBatch(@Param("items") List<GradingJobItem> items);
+
+    @Select("SELECT * FROM grading_job_items WHERE job_id = #{jobId} ORDER BY id")
+    @Results({
+            @Result(property = "id", column = "id"),
+            @Result(property = "jobId", column = "job_id"),
+            @Result(property = "submissionId", column = "submission_id"),
+            @Result(property = "status", column = "status"),
+            @Result(property = "score", column = "score"),
+            @Result(property = "feedback", column = "feedback"),
+            @Result(property = "error", column = "error"),
+            @Result(property = "attempts", column = "attempts"),
+            @Result(property = "updatedAt", column = "updated_at")
+    })
+    List<GradingJobItem> findByJobId(Long jobId);
+
+    @Select("SELECT submission_id FROM grading_job_items WHERE job_id = #{jobId} AND status = 'PENDING' ORDER BY id")
+    List<Long> findPendingSubmissionIds(Long jobId);
+
+    /**
+     * Store the outcome of one run; attempts are added to those of earlier runs of a resumed job.
+     * Only a pending item is updated, so an outcome is counted once even if the item was graded twice.
+     *
+     * @return 1 if the item was pending, 0 if it already had an outcome
+     */
+    @Update("UPDATE grading_job_items SET status = #{status}, score = #{score}, feedback = #{feedback}, " +
+            "error = #{error}, attempts = attempts + #{attempts} WHERE job_id = #{jobId} AND submission_id = #{submissionId} " +
+            "AND status = 'PENDING'")
+    int updateResult(GradingJobItem item);
+
+    /**
+     * Put failed items back in the queue
+     *
+     * @return the number of items reset
+     */
+    @Update("UPDATE grading_job_items SET status = 'PENDING', error = NULL WHERE job_id = #{jobId} AND status = 'FAILED'")
+    int resetFailed(Long jobId);
+}
@@ -0,0 +1,78 @@
+package org.bedrock.teateach.mappers;
+
+import org.apache.ibatis.annotations.*;
+import org.bedrock.teateach.beans.GradingJob;
+import org.bedrock.teateach.enums.GradingJobStatus;
+
+import java.util.List;
+
+@Mapper
+public interface GradingJobMapper {
+
+    @Insert("INSERT INTO grading_jobs (status, grading_rubric, total_items, succeeded_items, failed_items, skipped_items, created_at) " +
+            "VALUES (#{status}, #{gradingRubric}, #{totalItems}, #{succeededItems}, #{failedItems}, #{skippedItems}, CURRENT_TIMESTAMP)")
+    @Options(useGeneratedKeys = true, keyProperty = "id")
+    void insert(GradingJob job);
+
+    @Select("SELECT * FROM grading_jobs WHERE id = #{id}")
+    @Results({
+            @Result(property = "id", column = "id"),
+            @Result(property = "status", column = "status"),
+            @Result(property = "owner", column = "owner"),
+            @Result(property = "heartbeatAt", column = "heartbeat_at"),
+            @Result(property = "gradingRubric", column = "grading_rubric"),
+            @Result(property = "totalItems", column = "total_items"),
+            @Result(property = "succeededItems", column = "succeeded_items"),
+            @Result(property = "failedItems", column = "failed_items"),
+            @Result(property = "skippedItems", column = "skipped_items"),
+            @Result(property = "lastError", column = "last_error"),
+            @Result(property = "createdAt", column = "created_at"),
+            @Result(property = "startedAt", column = "started_at"),
+            @Result(property = "finishedAt", column = "finished_at")
+    })
+    GradingJob findById(Long id);
+
+    /**
+     * Jobs that are queued, or running without a fresh heartbeat because their instance stopped
+     */
+    @Select("SELECT id FROM grading_jobs WHERE status = 'PENDING' OR (status = 'RUNNING' AND (owner IS NULL " +
+            "OR owner = #{owner} OR heartbeat_at IS NULL OR heartbeat_at < CURRENT_TIMESTAMP - INTERVAL #{staleSeconds} SECOND)) " +
+            "ORDER BY id")
+    List<Long> findClaimableIds(@Param("owner") String owner, @Param("staleSeconds") long staleSeconds);
+
+    /**
+     * Mark a job running for this owner, unless another instance is running it and its heartbeat is still fresh
+     *
+     * @return 1 if the job was claimed, 0 if it is someone else's
+     */
+    @Update("UPDATE grading_jobs SET status = 'RUNNING', owner = #{owner}, heartbeat_at = CURRENT_TIMESTAMP, " +
+            "started_at = COALESCE(started_at, CURRENT_TIMESTAMP), finished_at = NULL " +
+            "WHERE id = #{id} AND (status <> 'RUNNING' OR owner IS NULL OR owner = #{owner} OR heartbeat_at IS NULL " +
+            "OR heartbeat_at < CURRENT_TIMESTAMP - INTERVAL #{staleSeconds} SECOND)")
+    int claim(@Param("id") Long id, @Param("owner") String owner, @Param("staleSeconds") long staleSeconds);
+
+    /**
+     * @return 0 if the job was claimed by another instance in the meantime
+     */
+    @Update("UPDATE grading_jobs SET heartbeat_at = CURRENT_TIMESTAMP WHERE id = #{id} AND owner = #{owner} " +
+            "AND status = 'RUNNING'")
+    int heartbeat(@Param("id") Long id, @Param("owner") String owner);
+
+    /**
+     * @return 0 if the job was claimed by another instance in the meantime, which then finishes it
+     */
+    @Update("UPDATE grading_jobs SET status = #{status}, last_error = #{lastError}, finished_at = CURRENT_TIMESTAMP " +
+            "WHERE id = #{id} AND owner = #{owner}")
+    int markFinished(@Param("id") Long id, @Param("owner") String owner, @Param("status") GradingJobStatus status,
+                     @Param("lastError") String lastError);
+
+    @Update("UPDATE grading_jobs SET succeeded_items = succeeded_items + #{succeeded}, " +
+            "failed_items = failed_items + #{failed} WHERE id = #{id}")
+    void incrementProgress(@Param("id") Long id, @Param("succeeded") int succeeded, @Param("failed") int failed);
+
+    /**
+     * Failed items are graded again when a job is resumed, so they stop counting as finished
+     */
+    @Update("UPDATE grading_jobs SET failed_items = failed_items - #{count} WHERE id = #{id}")
+    void decrementFailed(@Param("id") Long id, @Param("count") int count);
+}
@@ -0,0 +1,30 @@
+package org.bedrock.teateach.mappers;
+
+import org.apache.ibatis.annotations.*;
+
+/**
+ * Last playback event offset applied to playback_vectors, per consumer group and topic partition
+ */
+@Mapper
+public interface PlaybackEventOffsetMapper {
+
+    @Select("SELECT last_offset FROM playback_event_offsets " +
+            "WHERE consumer_group = #{consumerGroup} AND topic = #{topic} AND partition_id = #{partition} FOR UPDATE")
+    Long findLastOffsetForUpdate(@Param("consumerGroup") String consumerGroup, @Param("topic") String topic,
+                                 @Param("partition") int partition);
+
+    /**
+     * Create the row for a partition that has not been consumed yet, unless another consumer just did
+     *
+     * @return 1 if a row was inserted, 0 if it already existed
+     */
+    @Insert("INSERT IGNORE INTO playback_event_offsets (consumer_group, topic, partition_id, last_offset, last_updated) " +
+            "VALUES (#{consumerGroup}, #{topic}, #{partition}, -1, CURRENT_TIMESTAMP)")
+    int insertIgnore(@Param("consumerGroup") String consumerGroup, @Param("topic") String topic,
+                     @Param("partition") int partition);
+
+    @Update("UPDATE playback_event_offsets SET last_offset = #{lastOffset}, last_updated = CURRENT_TIMESTAMP " +
+            "WHERE consumer_group = #{consumerGroup} AND topic = #{topic} AND partition_id = #{partition}")
+    void updateLastOffset(@Param("consumerGroup") String consumerGroup, @Param("topic") String topic,
+                          @Param("partition") int partition, @Param("lastOffset") long lastOffset);
+}
@@ -0,0 +1,37 @@
+package org.bedrock.teateach.mappers;
+
+import org.apache.ibatis.annotations.*;
+import org.bedrock.teateach.beans.PlaybackHotTierSnapshot;
+
+import java.util.List;
+
+/**
+ * Redis hot-tier snapshots whose increments are committed to playback_vectors but may not be deleted from Redis yet
+ */
+@Mapper
+public interface PlaybackHotTierSnapshotMapper {
+
+    /**
+     * Lock the rows of the given snapshots that are already applied
+     *
+     * @return the ids of the applied snapshots
+     */
+    @Select("<script>" +
+            "SELECT snapshot_id FROM playback_hot_tier_snapshots WHERE (snapshot_id, member) IN " +
+            "<foreach collection='snapshots' item='s' open='(' separator=',' close=')'>(#{s.snapshotId}, #{s.member})</foreach> " +
+            "FOR UPDATE" +
+            "</script>")
+    List<Long> findAppliedForUpdate(@Param("snapshots") List<PlaybackHotTierSnapshot> snapshots);
+
+    @Insert("<script>" +
+            "INSERT INTO playback_hot_tier_snapshots (snapshot_id, member, applied_at) VALUES " +
+            "<foreach collection='snapshots' item='s' separator=','>(#{s.snapshotId}, #{s.member}, #{s.appliedAt})</foreach>" +
+            "</script>")
+    void insertBatch(@Param("snapshots") List<PlaybackHotTierSnapshot> snapshots);
+
+    @Delete("<script>" +
+            "DELETE FROM playback_hot_tier_snapshots WHERE snapshot_id IN " +
+            "<foreach collection='snapshotIds' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    void deleteByIds(@Param("snapshotIds") List<Long> snapshotIds);
+}
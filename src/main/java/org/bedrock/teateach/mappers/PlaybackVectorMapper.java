@@ -1,22 +1,57 @@
 package org.bedrock.teateach.mappers;
 
 import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
+import org.bedrock.teateach.beans.PlaybackDelta;
 import org.bedrock.teateach.beans.PlaybackVector;
+import org.bedrock.teateach.dto.PlaybackVectorSummary;
 
 import java.util.List;
 
 @Mapper
 public interface PlaybackVectorMapper {
 
-    @Insert("INSERT INTO playback_vectors (student_id, resource_id, playback_data, video_duration, last_updated) " +
-            "VALUES (#{studentId}, #{resourceId}, COALESCE(#{playbackData, typeHandler=org.bedrock.teateach.typehandler.IntArrayJsonTypeHandler}, CAST('[]' AS JSON)), #{videoDuration}, #{lastUpdated})")
+    @Insert("INSERT INTO playback_vectors (student_id, resource_id, playback_data, video_duration, covered_seconds, total_play_count, last_updated) " +
+            "VALUES (#{studentId}, #{resourceId}, #{playbackData, typeHandler=org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler}, #{videoDuration}, #{coveredSeconds}, #{totalPlayCount}, #{lastUpdated})")
     @Options(useGeneratedKeys = true, keyProperty = "id")
     void insert(PlaybackVector playbackVector);
 
-    @Update("UPDATE playback_vectors SET playback_data = COALESCE(#{playbackData, typeHandler=org.bedrock.teateach.typehandler.IntArrayJsonTypeHandler}, CAST('[]' AS JSON)), last_updated = #{lastUpdated} " +
+    /**
+     * Insert the row, or leave an existing row for the same (student_id, resource_id) untouched.
+     * Either way the row is X-locked and its id is written back: LAST_INSERT_ID(id) makes the driver
+     * report the existing id as the generated key on a duplicate.
+     */
+    @Insert("INSERT INTO playback_vectors (student_id, resource_id, playback_data, video_duration, covered_seconds, total_play_count, last_updated) " +
+            "VALUES (#{studentId}, #{resourceId}, #{playbackData, typeHandler=org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler}, #{videoDuration}, #{coveredSeconds}, #{totalPlayCount}, #{lastUpdated}) " +
+            "ON DUPLICATE KEY UPDATE id = LAST_INSERT_ID(id)")
+    @Options(useGeneratedKeys = true, keyProperty = "id")
+    void upsert(PlaybackVector playbackVector);
+
+    @Update("UPDATE playback_vectors SET playback_data = #{playbackData, typeHandler=org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler}, " +
+            "covered_seconds = #{coveredSeconds}, total_play_count = #{totalPlayCount}, last_updated = #{lastUpdated} " +
             "WHERE id = #{id}")
     void update(PlaybackVector playbackVector);
 
+    @Update("<script>" +
+            "UPDATE playback_vectors SET " +
+            "playback_data = CASE id " +
+            "<foreach collection='vectors' item='v'>WHEN #{v.id} THEN #{v.playbackData, typeHandler=org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler} </foreach>" +
+            "END, " +
+            "covered_seconds = CASE id " +
+            "<foreach collection='vectors' item='v'>WHEN #{v.id} THEN #{v.coveredSeconds} </foreach>" +
+            "END, " +
+            "total_play_count = CASE id " +
+            "<foreach collection='vectors' item='v'>WHEN #{v.id} THEN #{v.totalPlayCount} </foreach>" +
+            "END, " +
+            "last_updated = CASE id " +
+            "<foreach collection='vectors' item='v'>WHEN #{v.id} THEN #{v.lastUpdated} </foreach>" +
+            "END " +
+            "WHERE id IN <foreach collection='vectors' item='v' open='(' separator=',' close=')'>#{v.id}</foreach>" +
+            "</script>")
+    void updateBatch(@Param("vectors") List<PlaybackVector> vectors);
+
     @Delete("DELETE FROM playback_vectors WHERE id = #{id}")
     void delete(Long id);
 
@@ -25,7 +60,7 @@ public interface PlaybackVectorMapper {
             @Result(property = "id", column = "id"),
             @Result(property = "studentId", column = "student_id"),
             @Result(property = "resourceId", column = "resource_id"),
-            @Result(property = "playbackData", column = "playback_data", typeHandler = org.bedrock.teateach.typehandler.IntArrayJsonTypeHandler.class),
+            @Result(property = "playbackData", column = "playback_data", typeHandler = org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler.class),
             @Result(property = "videoDuration", column = "video_duration"),
             @Result(property = "lastUpdated", column = "last_updated")
     })
@@ -36,18 +71,40 @@ public interface PlaybackVectorMapper {
             @Result(property = "id", column = "id"),
             @Result(property = "studentId", column = "student_id"),
             @Result(property = "resourceId", column = "resource_id"),
-            @Result(property = "playbackData", column = "playback_data", typeHandler = org.bedrock.teateach.typehandler.IntArrayJsonTypeHandler.class),
+            @Result(property = "playbackData", column = "playback_data", typeHandler = org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler.class),
             @Result(property = "videoDuration", column = "video_duration"),
             @Result(property = "lastUpdated", column = "last_updated")
     })
     PlaybackVector findByStudentAndResource(Long studentId, Long resourceId);
 
+    @Select("SELECT * FROM playback_vectors WHERE student_id = #{studentId} AND resource_id = #{resourceId} FOR UPDATE")
+    @Results({
+            @Result(property = "id", column = "id"),
+            @Result(property = "studentId", column = "student_id"),
+            @Result(property = "resourceId", column = "resource_id"),
+            @Result(property = "playbackData", column = "playback_data", typeHandler = org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler.class),
+            @Result(property = "videoDuration", column = "video_duration"),
+            @Result(property = "lastUpdated", column = "last_updated")
+    })
+    PlaybackVector findByStudentAndResourceForUpdate(Long studentId, Long resourceId);
+
+    @Select("SELECT * FROM playback_vectors WHERE id = #{id} FOR UPDATE")
+    @Results({
+            @Result(property = "id", column = "id"),
+            @Result(property = "studentId", column = "student_id"),
+            @Result(property = "resourceId", column = "resource_id"),
+            @Result(property = "playbackData", column = "playback_data", typeHandler = org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler.class),
+            @Result(property = "videoDuration", column = "video_duration"),
+            @Result(property = "lastUpdated", column = "last_updated")
+    })
+    PlaybackVector findByIdForUpdate(Long id);
+
     @Select("SELECT * FROM playback_vectors WHERE student_id = #{studentId}")
     @Results({
             @Result(property = "id", column = "id"),
             @Result(property = "studentId", column = "student_id"),
             @Result(property = "resourceId", column = "resource_id"),
-            @Result(property = "playbackData", column = "playback_data", typeHandler = org.bedrock.teateach.typehandler.IntArrayJsonTypeHandler.class),
+            @Result(property = "playbackData", column = "playback_data", typeHandler = org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler.class),
             @Result(property = "videoDuration", column = "video_duration"),
             @Result(property = "lastUpdated", column = "last_updated")
     })
@@ -58,7 +115,7 @@ public interface PlaybackVectorMapper {
             @Result(property = "id", column = "id"),
             @Result(property = "studentId", column = "student_id"),
             @Result(property = "resourceId", column = "resource_id"),
-            @Result(property = "playbackData", column = "playback_data", typeHandler = org.bedrock.teateach.typehandler.IntArrayJsonTypeHandler.class),
+            @Result(property = "playbackData", column = "playback_data", typeHandler = org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler.class),
             @Result(property = "videoDuration", column = "video_duration"),
             @Result(property = "lastUpdated", column = "last_updated")
     })
@@ -69,9 +126,132 @@ public interface PlaybackVectorMapper {
             @Result(property = "id", column = "id"),
             @Result(property = "studentId", column = "student_id"),
             @Result(property = "resourceId", column = "resource_id"),
-            @Result(property = "playbackData", column = "playback_data", typeHandler = org.bedrock.teateach.typehandler.IntArrayJsonTypeHandler.class),
+            @Result(property = "playbackData", column = "playback_data", typeHandler = org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler.class),
             @Result(property = "videoDuration", column = "video_duration"),
             @Result(property = "lastUpdated", column = "last_updated")
     })
     List<PlaybackVector> findAll();
+
+    /**
+     * Per-resource summaries of a student's vectors, from the counter columns only; playback_data is never read
+     */
+    @Select("SELECT id, student_id, resource_id, video_duration, covered_seconds, total_play_count, last_updated " +
+            "FROM playback_vectors WHERE student_id = #{studentId} ORDER BY last_updated DESC")
+    @Results({
+            @Result(property = "id", column = "id"),
+            @Result(property = "studentId", column = "student_id"),
+            @Result(property = "resourceId", column = "resource_id"),
+            @Result(property = "videoDuration", column = "video_duration"),
+            @Result(property = "coveredSeconds", column = "covered_seconds"),
+            @Result(property = "totalPlayCount", column = "total_play_count"),
+            @Result(property = "lastUpdated", column = "last_updated")
+    })
+    List<PlaybackVectorSummary> findSummariesByStudentId(Long studentId);
+
+    /**
+     * Per-student summaries of a resource's vectors, from the counter columns only; playback_data is never read
+     */
+    @Select("SELECT id, student_id, resource_id, video_duration, covered_seconds, total_play_count, last_updated " +
+            "FROM playback_vectors WHERE resource_id = #{resourceId} ORDER BY student_id")
+    @Results({
+            @Result(property = "id", column = "id"),
+            @Result(property = "studentId", column = "student_id"),
+            @Result(property = "resourceId", column = "resource_id"),
+            @Result(property = "videoDuration", column = "video_duration"),
+            @Result(property = "coveredSeconds", column = "covered_seconds"),
+            @Result(property = "totalPlayCount", column = "total_play_count"),
+            @Result(property = "lastUpdated", column = "last_updated")
+    })
+    List<PlaybackVectorSummary> findSummariesByResourceId(Long resourceId);
+
+    @Select("SELECT COUNT(*) FROM playback_vectors WHERE resource_id = #{resourceId}")
+    int countByResourceId(Long resourceId);
+
+    /**
+     * Stream the vectors of a resource one row at a time; must be consumed inside a transaction.
+     * fetchSize = Integer.MIN_VALUE makes MySQL Connector/J stream rows instead of buffering the whole result.
+     */
+    @Select("SELECT * FROM playback_vectors WHERE resource_id = #{resourceId}")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @Results({
+            @Result(property = "id", column = "id"),
+            @Result(property = "studentId", column = "student_id"),
+            @Result(property = "resourceId", column = "resource_id"),
+            @Result(property = "playbackData", column = "playback_data", typeHandler = org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler.class),
+            @Result(property = "videoDuration", column = "video_duration"),
+            @Result(property = "lastUpdated", column = "last_updated")
+    })
+    Cursor<PlaybackVector> streamByResourceId(Long resourceId);
+
+    /**
+     * Push every vector to the handler, grouped by resource, without building a result list
+     */
+    @Select("SELECT * FROM playback_vectors ORDER BY resource_id")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @Results({
+            @Result(property = "id", column = "id"),
+            @Result(property = "studentId", column = "student_id"),
+            @Result(property = "resourceId", column = "resource_id"),
+            @Result(property = "playbackData", column = "playback_data", typeHandler = org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler.class),
+            @Result(property = "videoDuration", column = "video_duration"),
+            @Result(property = "lastUpdated", column = "last_updated")
+    })
+    @ResultType(PlaybackVector.class)
+    void streamAllOrderedByResource(ResultHandler<PlaybackVector> handler);
+
+    @Select("<script>" +
+            "SELECT * FROM playback_vectors WHERE (student_id, resource_id) IN " +
+            "<foreach collection='deltas' item='d' open='(' separator=',' close=')'>(#{d.studentId}, #{d.resourceId})</foreach> " +
+            "FOR UPDATE" +
+            "</script>")
+    @Results({
+            @Result(property = "id", column = "id"),
+            @Result(property = "studentId", column = "student_id"),
+            @Result(property = "resourceId", column = "resource_id"),
+            @Result(property = "playbackData", column = "playback_data", typeHandler = org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler.class),
+            @Result(property = "videoDuration", column = "video_duration"),
+            @Result(property = "lastUpdated", column = "last_updated")
+    })
+    List<PlaybackVector> findByStudentResourcePairsForUpdate(@Param("deltas") List<PlaybackDelta> deltas);
+
+    /**
+     * Ids of rows still stored in the legacy JSON text format, in id order for keyset pagination
+     */
+    @Select("SELECT id FROM playback_vectors WHERE id > #{afterId} AND playback_data LIKE '[%' ORDER BY id LIMIT #{limit}")
+    List<Long> findLegacyEncodedIds(@Param("afterId") Long afterId, @Param("limit") int limit);
+
+    @Select("<script>" +
+            "SELECT * FROM playback_vectors WHERE id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach> " +
+            "FOR UPDATE" +
+            "</script>")
+    @Results({
+            @Result(property = "id", column = "id"),
+            @Result(property = "studentId", column = "student_id"),
+            @Result(property = "resourceId", column = "resource_id"),
+            @Result(property = "playbackData", column = "playback_data", typeHandler = org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler.class),
+            @Result(property = "videoDuration", column = "video_duration"),
+            @Result(property = "lastUpdated", column = "last_updated")
+    })
+    List<PlaybackVector> findByIdsForUpdate(@Param("ids") List<Long> ids);
+
+    /**
+     * Ids of rows written before the covered_seconds/total_play_count columns existed, in id order for keyset pagination
+     */
+    @Select("SELECT id FROM playback_vectors WHERE id > #{afterId} AND covered_seconds = 0 AND total_play_count = 0 " +
+            "AND playback_data IS NOT NULL ORDER BY id LIMIT #{limit}")
+    List<Long> findIdsWithoutCounters(@Param("afterId") Long afterId, @Param("limit") int limit);
+
+    @Select("SELECT DISTINCT resource_id FROM playback_vectors ORDER BY resource_id")
+    List<Long> findDistinctResourceIds();
+
+    /**
+     * (student_id, resource_id) pairs stored in more than one row, left over from before uk_student_resource
+     */
+    @Select("SELECT student_id, resource_id FROM playback_vectors GROUP BY student_id, resource_id HAVING COUNT(*) > 1")
+    @Results({
+            @Result(property = "studentId", column = "student_id"),
+            @Result(property = "resourceId", column = "resource_id")
+    })
+    List<PlaybackDelta> findDuplicateStudentResourcePairs();
 }
@@ -0,0 +1,34 @@
+package org.bedrock.teateach.mappers;
+
+import org.apache.ibatis.annotations.*;
+import org.bedrock.teateach.beans.ResourceHeatmapLevel;
+
+import java.util.List;
+
+@Mapper
+public interface ResourceHeatmapLevelMapper {
+
+    @Select("SELECT * FROM resource_heatmap_levels WHERE resource_id = #{resourceId} ORDER BY resolution_seconds")
+    @Results({
+            @Result(property = "resourceId", column = "resource_id"),
+            @Result(property = "resolutionSeconds", column = "resolution_seconds"),
+            @Result(property = "sumData", column = "sum_data", typeHandler = org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler.class),
+            @Result(property = "maxData", column = "max_data", typeHandler = org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler.class),
+            @Result(property = "duration", column = "duration"),
+            @Result(property = "lastUpdated", column = "last_updated")
+    })
+    List<ResourceHeatmapLevel> findByResourceId(Long resourceId);
+
+    @Insert("<script>" +
+            "INSERT INTO resource_heatmap_levels (resource_id, resolution_seconds, sum_data, max_data, duration, last_updated) VALUES " +
+            "<foreach collection='levels' item='l' separator=','>" +
+            "(#{l.resourceId}, #{l.resolutionSeconds}, " +
+            "#{l.sumData, typeHandler=org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler}, " +
+            "#{l.maxData, typeHandler=org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler}, " +
+            "#{l.duration}, #{l.lastUpdated})" +
+            "</foreach> " +
+            "ON DUPLICATE KEY UPDATE sum_data = VALUES(sum_data), max_data = VALUES(max_data), " +
+            "duration = VALUES(duration), last_updated = VALUES(last_updated)" +
+            "</script>")
+    void upsertBatch(@Param("levels") List<ResourceHeatmapLevel> levels);
+}
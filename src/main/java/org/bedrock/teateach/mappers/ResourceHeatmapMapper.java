@@ -0,0 +1,39 @@
+package org.bedrock.teateach.mappers;
+
+import org.apache.ibatis.annotations.*;
+import org.bedrock.teateach.beans.ResourceHeatmap;
+
+@Mapper
+public interface ResourceHeatmapMapper {
+
+    @Select("SELECT * FROM resource_heatmaps WHERE resource_id = #{resourceId}")
+    @Results({
+            @Result(property = "resourceId", column = "resource_id"),
+            @Result(property = "heatmapData", column = "heatmap_data", typeHandler = org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler.class),
+            @Result(property = "duration", column = "duration"),
+            @Result(property = "lastUpdated", column = "last_updated")
+    })
+    ResourceHeatmap findByResourceId(Long resourceId);
+
+    @Select("SELECT * FROM resource_heatmaps WHERE resource_id = #{resourceId} FOR UPDATE")
+    @Results({
+            @Result(property = "resourceId", column = "resource_id"),
+            @Result(property = "heatmapData", column = "heatmap_data", typeHandler = org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler.class),
+            @Result(property = "duration", column = "duration"),
+            @Result(property = "lastUpdated", column = "last_updated")
+    })
+    ResourceHeatmap findByResourceIdForUpdate(Long resourceId);
+
+    /**
+     * Create an empty aggregate row unless one exists
+     *
+     * @return 1 if a row was inserted, 0 if it already existed
+     */
+    @Insert("INSERT IGNORE INTO resource_heatmaps (resource_id, heatmap_data, duration, last_updated) " +
+            "VALUES (#{resourceId}, NULL, 0, CURRENT_TIMESTAMP)")
+    int insertIgnore(Long resourceId);
+
+    @Update("UPDATE resource_heatmaps SET heatmap_data = #{heatmapData, typeHandler=org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler}, " +
+            "duration = #{duration}, last_updated = #{lastUpdated} WHERE resource_id = #{resourceId}")
+    void update(ResourceHeatmap resourceHeatmap);
+}
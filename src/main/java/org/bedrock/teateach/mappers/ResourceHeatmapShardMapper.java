@@ -0,0 +1,53 @@
+package org.bedrock.teateach.mappers;
+
+import org.apache.ibatis.annotations.*;
+import org.bedrock.teateach.beans.ResourceHeatmapShard;
+
+import java.util.List;
+
+@Mapper
+public interface ResourceHeatmapShardMapper {
+
+    @Select("SELECT * FROM resource_heatmap_shards WHERE resource_id = #{resourceId} ORDER BY shard")
+    @Results(id = "resourceHeatmapShardResult", value = {
+            @Result(property = "resourceId", column = "resource_id"),
+            @Result(property = "shard", column = "shard"),
+            @Result(property = "deltaData", column = "delta_data", typeHandler = org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler.class),
+            @Result(property = "lastUpdated", column = "last_updated")
+    })
+    List<ResourceHeatmapShard> findByResourceId(Long resourceId);
+
+    @Select("SELECT * FROM resource_heatmap_shards WHERE resource_id = #{resourceId} ORDER BY shard FOR UPDATE")
+    @ResultMap("resourceHeatmapShardResult")
+    List<ResourceHeatmapShard> findByResourceIdForUpdate(Long resourceId);
+
+    @Select("SELECT * FROM resource_heatmap_shards WHERE resource_id = #{resourceId} AND shard = #{shard} FOR UPDATE")
+    @ResultMap("resourceHeatmapShardResult")
+    ResourceHeatmapShard findForUpdate(@Param("resourceId") Long resourceId, @Param("shard") int shard);
+
+    /**
+     * Resources with deltas waiting to be folded into resource_heatmaps
+     */
+    @Select("SELECT DISTINCT resource_id FROM resource_heatmap_shards WHERE pending = TRUE ORDER BY resource_id LIMIT #{limit}")
+    List<Long> findPendingResourceIds(int limit);
+
+    /**
+     * Create an empty shard row unless one exists
+     *
+     * @return 1 if a row was inserted, 0 if it already existed
+     */
+    @Insert("INSERT IGNORE INTO resource_heatmap_shards (resource_id, shard, delta_data, pending, last_updated) " +
+            "VALUES (#{resourceId}, #{shard}, NULL, FALSE, CURRENT_TIMESTAMP)")
+    int insertIgnore(@Param("resourceId") Long resourceId, @Param("shard") int shard);
+
+    @Update("UPDATE resource_heatmap_shards SET delta_data = #{deltaData, typeHandler=org.bedrock.teateach.typehandler.IntArrayCompactTypeHandler}, " +
+            "pending = TRUE, last_updated = #{lastUpdated} WHERE resource_id = #{resourceId} AND shard = #{shard}")
+    void update(ResourceHeatmapShard resourceHeatmapShard);
+
+    /**
+     * Empty the shards of a resource once their deltas are part of resource_heatmaps
+     */
+    @Update("UPDATE resource_heatmap_shards SET delta_data = NULL, pending = FALSE, last_updated = CURRENT_TIMESTAMP " +
+            "WHERE resource_id = #{resourceId}")
+    void clearByResourceId(Long resourceId);
+}
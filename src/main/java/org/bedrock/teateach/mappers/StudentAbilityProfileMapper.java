@@ -0,0 +1,37 @@
+package org.bedrock.teateach.mappers;
+
+import org.apache.ibatis.annotations.*;
+import org.bedrock.teateach.beans.StudentAbilityProfile;
+
+import java.util.List;
+
+@Mapper
+public interface StudentAbilityProfileMapper {
+
+    @Select("SELECT * FROM student_ability_profiles WHERE student_id = #{studentId}")
+    @Results({
+            @Result(property = "studentId", column = "student_id"),
+            @Result(property = "profileData", column = "profile_data"),
+            @Result(property = "stale", column = "stale"),
+            @Result(property = "computedAt", column = "computed_at"),
+            @Result(property = "updatedAt", column = "updated_at")
+    })
+    StudentAbilityProfile findByStudentId(Long studentId);
+
+    /**
+     * Store a freshly computed profile and clear the stale flag
+     */
+    @Insert("INSERT INTO student_ability_profiles (student_id, profile_data, stale, computed_at) " +
+            "VALUES (#{studentId}, #{profileData}, 0, CURRENT_TIMESTAMP) " +
+            "ON DUPLICATE KEY UPDATE profile_data = VALUES(profile_data), stale = 0, computed_at = VALUES(computed_at)")
+    void upsert(@Param("studentId") Long studentId, @Param("profileData") String profileData);
+
+    /**
+     * Flag an existing profile for recomputation; students without a profile are computed on first read
+     */
+    @Update("UPDATE student_ability_profiles SET stale = 1 WHERE student_id = #{studentId}")
+    int markStale(Long studentId);
+
+    @Select("SELECT student_id FROM student_ability_profiles WHERE stale = 1 ORDER BY computed_at")
+    List<Long> findStaleStudentIds();
+}
@@ -1,8 +1,10 @@
 package org.bedrock.teateach.mappers;
 
 import org.apache.ibatis.annotations.*;
+import org.bedrock.teateach.beans.LearningTask;
 import org.bedrock.teateach.beans.TaskResource;
 import org.bedrock.teateach.beans.Resource;
+import org.bedrock.teateach.enums.TaskType;
 
 import java.util.List;
 
@@ -44,6 +46,28 @@ public interface TaskResourceMapper {
     })
     List<Resource> findResourcesByTaskId(Long taskId);
 
+    /**
+     * Finds all tasks a specific resource is associated with, and through them its courses.
+     *
+     * @param resourceId The ID of the resource.
+     * @return List of LearningTask objects the resource is associated with.
+     */
+    @Select("SELECT lt.id, lt.course_id, lt.task_name, lt.task_type, lt.task_description, lt.deadline, lt.submission_method " +
+            "FROM learning_tasks lt " +
+            "INNER JOIN task_resources tr ON lt.id = tr.task_id " +
+            "WHERE tr.resource_id = #{resourceId} " +
+            "ORDER BY lt.id ASC")
+    @Results({
+            @Result(property = "id", column = "id"),
+            @Result(property = "courseId", column = "course_id"),
+            @Result(property = "taskName", column = "task_name"),
+            @Result(property = "taskType", column = "task_type", javaType = TaskType.class),
+            @Result(property = "taskDescription", column = "task_description"),
+            @Result(property = "deadline", column = "deadline"),
+            @Result(property = "submissionMethod", column = "submission_method")
+    })
+    List<LearningTask> findTasksByResourceId(Long resourceId);
+
     /**
      * Finds all task-resource relationships for a specific task.
      *
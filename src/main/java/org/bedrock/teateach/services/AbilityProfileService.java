@@ -0,0 +1,205 @@
+package org.bedrock.teateach.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.bedrock.teateach.beans.StudentAbilityProfile;
+import org.bedrock.teateach.llm.LLMService;
+import org.bedrock.teateach.llm.SingleFlight;
+import org.bedrock.teateach.mappers.StudentAbilityProfileMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the LLM ability analysis of students from the student_ability_profiles table.
+ * <p>
+ * A profile is computed on its first read and then only recomputed in the background after a
+ * {@link StudentAbilityDataChangedEvent} for that student, i.e. a new grade or an enrollment change. Changes are
+ * debounced: the recomputation starts once no change arrived for {@code llm.ability-profile.debounce-ms}, but never
+ * later than {@code llm.ability-profile.max-delay-ms} after the first change, so a batch of grades costs one
+ * analysis. Until then the previous profile is served with {@code stale = true}.
+ * <p>
+ * Recomputations run one at a time. A recomputation requested while one for the same student is running, e.g. by the
+ * dashboard's concurrent first reads, waits for it instead of analysing again. Profiles still flagged stale at
+ * startup (pending when the application stopped, or whose analysis failed) are recomputed once the application is
+ * ready.
+ */
+@Service
+@Slf4j
+public class AbilityProfileService {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final StudentAbilityProfileMapper profileMapper;
+    private final LLMService llmService;
+    private final SingleFlight singleFlight;
+    private final long debounceMs;
+    private final long maxDelayMs;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final Map<Long, PendingRecompute> pending = new ConcurrentHashMap<>();
+
+    @Autowired
+    public AbilityProfileService(StudentAbilityProfileMapper profileMapper,
+                                 LLMService llmService,
+                                 SingleFlight singleFlight,
+                                 @Value("${llm.ability-profile.debounce-ms:30000}") long debounceMs,
+                                 @Value("${llm.ability-profile.max-delay-ms:300000}") long maxDelayMs) {
+        this.profileMapper = profileMapper;
+        this.llmService = llmService;
+        this.singleFlight = singleFlight;
+        this.debounceMs = Math.max(0, debounceMs);
+        this.maxDelayMs = Math.max(this.debounceMs, maxDelayMs);
+        this.scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "ability-profile");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * The stored profile of a student, or a freshly computed one if the student has none yet
+     *
+     * @param studentId student number
+     */
+    public Map<String, Object> getProfile(Long studentId) {
+        StudentAbilityProfile stored = profileMapper.findByStudentId(studentId);
+        if (stored != null) {
+            Map<String, Object> profile = parse(stored);
+            if (profile != null) {
+                profile.put("stale", stored.isStale());
+                return profile;
+            }
+        }
+        return recompute(studentId);
+    }
+
+    /**
+     * Run the analysis now, or join the one running for the student, and store the result unless the analysis failed
+     *
+     * @return the analysis, which holds default scores if it failed
+     */
+    public Map<String, Object> recompute(Long studentId) {
+        return singleFlight.call("ability-analysis", List.of(studentId), () -> analyseAndStore(studentId));
+    }
+
+    private Map<String, Object> analyseAndStore(Long studentId) {
+        Map<String, Object> analysis = llmService.analyzeStudentAbilities(studentId);
+        if (Boolean.TRUE.equals(analysis.get(LLMService.ANALYSIS_FAILED))) {
+            // Keep serving the previous profile; it stays stale and is retried on the next change or restart
+            log.warn("Ability analysis of student {} failed, profile not updated", studentId);
+            return analysis;
+        }
+
+        try {
+            profileMapper.upsert(studentId, objectMapper.writeValueAsString(analysis));
+        } catch (JsonProcessingException e) {
+            log.error("Could not serialize ability profile of student {}", studentId, e);
+        }
+        return analysis;
+    }
+
+    /**
+     * Flag the stored profile as stale and schedule its recomputation. Runs after the change was committed, so
+     * the analysis sees it; the flag is written in its own transaction for the same reason.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onAbilityDataChanged(StudentAbilityDataChangedEvent event) {
+        Long studentId = event.getStudentId();
+        if (studentId == null) {
+            return;
+        }
+        // Students without a profile are analysed on their first read
+        if (profileMapper.markStale(studentId) > 0) {
+            log.debug("Ability profile of student {} is stale: {}", studentId, event.getReason());
+            scheduleRecompute(studentId);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recomputeStaleProfiles() {
+        List<Long> studentIds = profileMapper.findStaleStudentIds();
+        if (!studentIds.isEmpty()) {
+            log.info("Recomputing {} stale ability profiles", studentIds.size());
+        }
+        studentIds.forEach(this::scheduleRecompute);
+    }
+
+    /**
+     * Schedule a background recomputation, postponing one that is already scheduled for the student
+     */
+    public void scheduleRecompute(Long studentId) {
+        long now = System.currentTimeMillis();
+        pending.compute(studentId, (id, current) -> {
+            long firstRequestedAt = now;
+            if (current != null) {
+                current.future.cancel(false);
+                firstRequestedAt = current.firstRequestedAt;
+            }
+            long delay = Math.min(debounceMs, Math.max(0, firstRequestedAt + maxDelayMs - now));
+
+            PendingRecompute next = new PendingRecompute(firstRequestedAt);
+            next.future = scheduler.schedule(() -> runPending(id, next), delay, TimeUnit.MILLISECONDS);
+            return next;
+        });
+    }
+
+    /**
+     * Number of students whose recomputation is scheduled but has not started
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    private void runPending(Long studentId, PendingRecompute task) {
+        // A change that arrived after this task was scheduled replaced it; the replacement will run instead
+        if (!pending.remove(studentId, task)) {
+            return;
+        }
+        try {
+            recompute(studentId);
+        } catch (RuntimeException e) {
+            log.error("Recomputing the ability profile of student {} failed", studentId, e);
+        }
+    }
+
+    private Map<String, Object> parse(StudentAbilityProfile stored) {
+        try {
+            return objectMapper.readValue(stored.getProfileData(), new TypeReference<Map<String, Object>>() {
+            });
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            log.warn("Unreadable ability profile of student {}, recomputing: {}", stored.getStudentId(), e.getMessage());
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private static class PendingRecompute {
+        private final long firstRequestedAt;
+        private volatile ScheduledFuture<?> future;
+
+        private PendingRecompute(long firstRequestedAt) {
+            this.firstRequestedAt = firstRequestedAt;
+        }
+    }
+}
@@ -9,6 +9,7 @@ import org.bedrock.teateach.mappers.StudentMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -21,14 +22,17 @@ public class CourseEnrollmentService {
     private final CourseEnrollmentMapper courseEnrollmentMapper;
     private final CourseMapper courseMapper;
     private final StudentMapper studentMapper;
+    private final ApplicationEventPublisher eventPublisher;
     
     @Autowired
     public CourseEnrollmentService(CourseEnrollmentMapper courseEnrollmentMapper,
                                  CourseMapper courseMapper,
-                                 StudentMapper studentMapper) {
+                                 StudentMapper studentMapper,
+                                 ApplicationEventPublisher eventPublisher) {
         this.courseEnrollmentMapper = courseEnrollmentMapper;
         this.courseMapper = courseMapper;
         this.studentMapper = studentMapper;
+        this.eventPublisher = eventPublisher;
     }
     
     @Transactional
@@ -60,6 +64,7 @@ public class CourseEnrollmentService {
         enrollment.setStatus("ACTIVE");
         
         courseEnrollmentMapper.insert(enrollment);
+        publishAbilityDataChanged(student, "enrolled in course " + courseId);
         return enrollment;
     }
     
@@ -72,6 +77,7 @@ public class CourseEnrollmentService {
         }
         
         courseEnrollmentMapper.deleteByStudentAndCourse(courseId, studentId);
+        publishAbilityDataChanged(studentMapper.findById(studentId), "unenrolled from course " + courseId);
     }
     
     @Transactional
@@ -84,6 +90,8 @@ public class CourseEnrollmentService {
         
         enrollment.setStatus(status);
         courseEnrollmentMapper.update(enrollment);
+        publishAbilityDataChanged(studentMapper.findById(enrollment.getStudentId()),
+                "enrollment " + enrollmentId + " set to " + status);
     }
     
     @Cacheable(value = "courseStudents", key = "#courseId")
@@ -132,4 +140,21 @@ public class CourseEnrollmentService {
             }
         }
     }
+
+    /**
+     * Enrollments use the internal student id, ability profiles the student number
+     */
+    private void publishAbilityDataChanged(Student student, String reason) {
+        if (student == null || student.getStudentId() == null) {
+            return;
+        }
+        Long studentNumber;
+        try {
+            studentNumber = Long.valueOf(student.getStudentId().trim());
+        } catch (NumberFormatException e) {
+            // The ability endpoints only address numeric student numbers, so there is no profile to refresh
+            return;
+        }
+        eventPublisher.publishEvent(new StudentAbilityDataChangedEvent(studentNumber, reason));
+    }
 }
\ No newline at end of file
@@ -9,6 +9,7 @@ import org.bedrock.teateach.mappers.StudentTaskSubmissionMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -21,14 +22,17 @@ public class GradeService {
     private final StudentTaskSubmissionMapper submissionMapper;
     private final GradeAnalysisMapper gradeAnalysisMapper;
     private final LearningTaskMapper learningTaskMapper;
+    private final ApplicationEventPublisher eventPublisher;
     // Potentially inject LLMService here for intelligent feedback/grading
 
     @Autowired
     public GradeService(StudentTaskSubmissionMapper submissionMapper,
-                        GradeAnalysisMapper gradeAnalysisMapper, LearningTaskMapper learningTaskMapper) {
+                        GradeAnalysisMapper gradeAnalysisMapper, LearningTaskMapper learningTaskMapper,
+                        ApplicationEventPublisher eventPublisher) {
         this.submissionMapper = submissionMapper;
         this.gradeAnalysisMapper = gradeAnalysisMapper;
         this.learningTaskMapper = learningTaskMapper;
+        this.eventPublisher = eventPublisher;
     }
 
     @Transactional
@@ -50,6 +54,8 @@ public class GradeService {
                 // Handle case where associated learning task is not found (e.g., log error)
                 System.err.println("Error: LearningTask not found for taskId: " + submission.getTaskId());
             }
+            eventPublisher.publishEvent(new StudentAbilityDataChangedEvent(submission.getStudentId(),
+                    "submission " + submissionId + " graded"));
         }
         return submission;
     }
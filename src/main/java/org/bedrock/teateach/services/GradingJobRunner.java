@@ -0,0 +1,180 @@
+package org.bedrock.teateach.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bedrock.teateach.beans.GradingJob;
+import org.bedrock.teateach.beans.StudentTaskSubmission;
+import org.bedrock.teateach.enums.GradingJobStatus;
+import org.bedrock.teateach.llm.LLMService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs grading jobs in the background, {@code llm.grading.job-workers} jobs at a time. The submissions within a
+ * job are graded in parallel by the batch grading engine.
+ * <p>
+ * Several application instances can share the jobs: an instance claims a job before grading it and refreshes the
+ * job's heartbeat while it runs. Queued jobs, and running jobs whose instance stopped sending heartbeats for
+ * {@code llm.grading.job-stale-ms}, are picked up once the application is ready and then periodically.
+ */
+@Component
+@Slf4j
+public class GradingJobRunner {
+
+    private final GradingJobService gradingJobService;
+    private final LLMService llmService;
+    private final long staleSeconds;
+    private final String owner;
+    private final ExecutorService executor;
+    private final Set<Long> activeJobs = ConcurrentHashMap.newKeySet();
+    private final Set<Long> claimedJobs = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public GradingJobRunner(GradingJobService gradingJobService,
+                            LLMService llmService,
+                            @Value("${llm.grading.job-workers:1}") int jobWorkers,
+                            @Value("${llm.grading.job-stale-ms:120000}") long staleMs) {
+        this.gradingJobService = gradingJobService;
+        this.llmService = llmService;
+        this.staleSeconds = Math.max(1, staleMs / 1000);
+        // Pod name in Kubernetes, plus a random part so a restarted instance does not look like its predecessor
+        this.owner = System.getenv().getOrDefault("HOSTNAME", "local") + "-" + UUID.randomUUID().toString().substring(0, 8);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, jobWorkers), runnable -> {
+            Thread thread = new Thread(runnable, "grading-job-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queue a job for background processing
+     *
+     * @return false if the job is already queued or running
+     */
+    public boolean submit(Long jobId) {
+        if (!activeJobs.add(jobId)) {
+            return false;
+        }
+        executor.execute(() -> {
+            try {
+                run(jobId);
+            } finally {
+                activeJobs.remove(jobId);
+            }
+        });
+        return true;
+    }
+
+    public boolean isActive(Long jobId) {
+        return activeJobs.contains(jobId);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinishedJobs() {
+        List<Long> jobIds = gradingJobService.findClaimableJobIds(owner, staleSeconds).stream()
+                .filter(jobId -> !activeJobs.contains(jobId))
+                .toList();
+        if (!jobIds.isEmpty()) {
+            log.info("Resuming {} unfinished grading jobs: {}", jobIds.size(), jobIds);
+        }
+        jobIds.forEach(this::submit);
+    }
+
+    /**
+     * Pick up jobs queued while no worker was free and jobs abandoned by a stopped instance
+     */
+    @Scheduled(initialDelayString = "${llm.grading.job-resume-interval-ms:60000}",
+            fixedDelayString = "${llm.grading.job-resume-interval-ms:60000}")
+    public void resumeAbandonedJobs() {
+        try {
+            resumeUnfinishedJobs();
+        } catch (RuntimeException e) {
+            log.warn("Could not look for unfinished grading jobs: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Tell other instances the jobs of this instance are still being graded
+     */
+    @Scheduled(fixedDelayString = "${llm.grading.job-heartbeat-ms:30000}")
+    public void sendHeartbeats() {
+        for (Long jobId : claimedJobs) {
+            try {
+                if (!gradingJobService.heartbeat(jobId, owner)) {
+                    log.warn("Grading job {} was taken over by another instance", jobId);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Could not refresh the heartbeat of grading job {}: {}", jobId, e.getMessage());
+            }
+        }
+    }
+
+    void run(Long jobId) {
+        try {
+            GradingJob job = gradingJobService.getJob(jobId);
+            if (job == null) {
+                log.warn("Grading job {} no longer exists", jobId);
+                return;
+            }
+            if (!gradingJobService.claim(jobId, owner, staleSeconds)) {
+                log.info("Grading job {} is being graded by another instance", jobId);
+                return;
+            }
+            claimedJobs.add(jobId);
+
+            List<StudentTaskSubmission> pending = gradingJobService.loadPendingSubmissions(jobId);
+            if (!pending.isEmpty()) {
+                llmService.batchGradeSubmissions(pending, job.getGradingRubric(), outcome -> {
+                    try {
+                        gradingJobService.recordOutcome(jobId, outcome);
+                    } catch (RuntimeException e) {
+                        // The item stays pending and is graded again when the job is resumed
+                        log.error("Failed to store grading outcome of submission {} in job {}", outcome.getId(), jobId, e);
+                    }
+                });
+            }
+
+            int unsaved = gradingJobService.countPendingItems(jobId);
+            if (unsaved > 0) {
+                finish(jobId, GradingJobStatus.FAILED, "Outcome of " + unsaved + " submissions could not be stored");
+                return;
+            }
+            finish(jobId, GradingJobStatus.COMPLETED, null);
+            log.info("Grading job {} completed ({} submissions graded in this run)", jobId, pending.size());
+        } catch (RuntimeException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                // Shutting down: leave the job running so it is resumed on the next start
+                log.info("Grading job {} interrupted, it will be resumed on restart", jobId);
+                return;
+            }
+            log.error("Grading job {} failed", jobId, e);
+            finish(jobId, GradingJobStatus.FAILED, e.getMessage());
+        } finally {
+            claimedJobs.remove(jobId);
+        }
+    }
+
+    private void finish(Long jobId, GradingJobStatus status, String lastError) {
+        if (!gradingJobService.markFinished(jobId, owner, status, lastError)) {
+            log.warn("Grading job {} was taken over by another instance, leaving its status to it", jobId);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,234 @@
+package org.bedrock.teateach.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bedrock.teateach.beans.GradingJob;
+import org.bedrock.teateach.beans.GradingJobItem;
+import org.bedrock.teateach.beans.StudentTaskSubmission;
+import org.bedrock.teateach.dto.GradingJobProgress;
+import org.bedrock.teateach.enums.GradingItemStatus;
+import org.bedrock.teateach.enums.GradingJobStatus;
+import org.bedrock.teateach.llm.BatchGradingEngine;
+import org.bedrock.teateach.mappers.GradingJobItemMapper;
+import org.bedrock.teateach.mappers.GradingJobMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Persistent state of background LLM grading jobs. Every finished submission is written back to the
+ * submission and the overall grade in the same transaction as its job item, so a restarted job only
+ * grades the items that are still pending.
+ */
+@Service
+@Slf4j
+public class GradingJobService {
+
+    static final int GRADED_STATUS = 3;
+
+    private final GradingJobMapper gradingJobMapper;
+    private final GradingJobItemMapper gradingJobItemMapper;
+    private final StudentTaskSubmissionService studentTaskSubmissionService;
+    private final GradeService gradeService;
+
+    @Autowired
+    public GradingJobService(GradingJobMapper gradingJobMapper,
+                             GradingJobItemMapper gradingJobItemMapper,
+                             StudentTaskSubmissionService studentTaskSubmissionService,
+                             GradeService gradeService) {
+        this.gradingJobMapper = gradingJobMapper;
+        this.gradingJobItemMapper = gradingJobItemMapper;
+        this.studentTaskSubmissionService = studentTaskSubmissionService;
+        this.gradeService = gradeService;
+    }
+
+    /**
+     * Create a job for the given submissions. Unknown submissions are recorded as failed items, and submissions
+     * that are already graded are skipped unless regradeGraded is set.
+     *
+     * @param submissionIds submissions to grade, duplicates are ignored
+     * @param gradingRubric custom rubric, or null for the default one
+     * @param regradeGraded whether submissions that already have a grade are graded again
+     * @return the new job with its initial counters
+     */
+    @Transactional
+    public GradingJob createJob(List<Long> submissionIds, String gradingRubric, boolean regradeGraded) {
+        List<GradingJobItem> items = new ArrayList<>();
+        for (Long submissionId : new LinkedHashSet<>(submissionIds)) {
+            GradingJobItem item = new GradingJobItem();
+            item.setSubmissionId(submissionId);
+            item.setStatus(GradingItemStatus.PENDING);
+
+            Optional<StudentTaskSubmission> submission = studentTaskSubmissionService.getSubmissionById(submissionId);
+            if (submission.isEmpty()) {
+                item.setStatus(GradingItemStatus.FAILED);
+                item.setError("Submission not found");
+            } else if (!regradeGraded && isGraded(submission.get())) {
+                item.setStatus(GradingItemStatus.SKIPPED);
+                item.setScore(submission.get().getScore());
+                item.setFeedback(submission.get().getFeedback());
+            }
+            items.add(item);
+        }
+
+        GradingJob job = new GradingJob();
+        job.setStatus(GradingJobStatus.PENDING);
+        job.setGradingRubric(gradingRubric);
+        job.setTotalItems(items.size());
+        job.setFailedItems(countByStatus(items, GradingItemStatus.FAILED));
+        job.setSkippedItems(countByStatus(items, GradingItemStatus.SKIPPED));
+        gradingJobMapper.insert(job);
+
+        items.forEach(item -> item.setJobId(job.getId()));
+        if (!items.isEmpty()) {
+            gradingJobItemMapper.insertBatch(items);
+        }
+        log.info("Created grading job {} with {} submissions ({} skipped, {} not found)", job.getId(),
+                job.getTotalItems(), job.getSkippedItems(), job.getFailedItems());
+        return job;
+    }
+
+    public GradingJob getJob(Long jobId) {
+        return gradingJobMapper.findById(jobId);
+    }
+
+    public Optional<GradingJobProgress> getProgress(Long jobId) {
+        GradingJob job = gradingJobMapper.findById(jobId);
+        if (job == null) {
+            return Optional.empty();
+        }
+        double percentage = job.getTotalItems() == 0
+                ? 100.0
+                : job.getFinishedItems() * 100.0 / job.getTotalItems();
+        return Optional.of(new GradingJobProgress(job, percentage, gradingJobItemMapper.findByJobId(jobId)));
+    }
+
+    /**
+     * Jobs this instance may pick up: queued ones, and running ones whose instance stopped sending heartbeats
+     */
+    public List<Long> findClaimableJobIds(String owner, long staleSeconds) {
+        return gradingJobMapper.findClaimableIds(owner, staleSeconds);
+    }
+
+    /**
+     * Load the submissions of a job that still have to be graded.
+     * Items whose submission was deleted in the meantime are failed instead.
+     */
+    public List<StudentTaskSubmission> loadPendingSubmissions(Long jobId) {
+        List<StudentTaskSubmission> pending = new ArrayList<>();
+        for (Long submissionId : gradingJobItemMapper.findPendingSubmissionIds(jobId)) {
+            Optional<StudentTaskSubmission> submission = studentTaskSubmissionService.getSubmissionById(submissionId);
+            if (submission.isPresent()) {
+                pending.add(submission.get());
+            } else {
+                recordOutcome(jobId, new BatchGradingEngine.GradingOutcome(submissionId, false, null,
+                        "Submission not found", 0, 0));
+            }
+        }
+        return pending;
+    }
+
+    public int countPendingItems(Long jobId) {
+        return gradingJobItemMapper.findPendingSubmissionIds(jobId).size();
+    }
+
+    /**
+     * Store the outcome of one submission. A successful grade is written to the submission and the
+     * overall grade together with the job item, so the two never disagree after a crash.
+     */
+    @Transactional
+    public void recordOutcome(Long jobId, BatchGradingEngine.GradingOutcome outcome) {
+        GradingJobItem item = new GradingJobItem();
+        item.setJobId(jobId);
+        item.setSubmissionId(outcome.getId());
+        item.setAttempts(outcome.getAttempts());
+
+        StudentTaskSubmission submission = null;
+        if (outcome.isSuccess()) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> result = (Map<String, Object>) outcome.getResult();
+            Double score = result.get("score") instanceof Number ? ((Number) result.get("score")).doubleValue() : null;
+            String feedback = (String) result.get("feedback");
+
+            submission = studentTaskSubmissionService.getSubmissionById(outcome.getId()).orElse(null);
+            if (submission != null) {
+                item.setStatus(GradingItemStatus.SUCCEEDED);
+                item.setScore(score);
+                item.setFeedback(feedback);
+            } else {
+                item.setStatus(GradingItemStatus.FAILED);
+                item.setError("Submission was deleted while it was being graded");
+            }
+        } else {
+            item.setStatus(GradingItemStatus.FAILED);
+            item.setError(outcome.getError());
+        }
+
+        // The item row is updated first: if it already had an outcome, this one changes nothing
+        if (gradingJobItemMapper.updateResult(item) == 0) {
+            log.warn("Submission {} of grading job {} already has an outcome, ignoring this one", outcome.getId(), jobId);
+            return;
+        }
+        if (item.getStatus() == GradingItemStatus.SUCCEEDED) {
+            submission.setScore(item.getScore());
+            submission.setFeedback(item.getFeedback());
+            submission.setCompletionStatus(GRADED_STATUS);
+            studentTaskSubmissionService.updateSubmission(submission);
+            gradeService.recordSubmissionScore(outcome.getId(), item.getScore());
+        }
+        boolean succeeded = item.getStatus() == GradingItemStatus.SUCCEEDED;
+        gradingJobMapper.incrementProgress(jobId, succeeded ? 1 : 0, succeeded ? 0 : 1);
+    }
+
+    /**
+     * Take over a job for this instance, unless another instance is running it and still sends heartbeats
+     *
+     * @param staleSeconds how long without a heartbeat before a running job is considered abandoned
+     * @return whether the job is now this instance's to grade
+     */
+    public boolean claim(Long jobId, String owner, long staleSeconds) {
+        return gradingJobMapper.claim(jobId, owner, staleSeconds) > 0;
+    }
+
+    /**
+     * @return false if another instance took the job over
+     */
+    public boolean heartbeat(Long jobId, String owner) {
+        return gradingJobMapper.heartbeat(jobId, owner) > 0;
+    }
+
+    /**
+     * @return false if another instance took the job over, which then finishes it
+     */
+    public boolean markFinished(Long jobId, String owner, GradingJobStatus status, String lastError) {
+        return gradingJobMapper.markFinished(jobId, owner, status, lastError) > 0;
+    }
+
+    /**
+     * Queue the failed items of a finished job again
+     *
+     * @return the number of items that will be graded again
+     */
+    @Transactional
+    public int prepareRetry(Long jobId) {
+        int reset = gradingJobItemMapper.resetFailed(jobId);
+        if (reset > 0) {
+            gradingJobMapper.decrementFailed(jobId, reset);
+        }
+        return reset;
+    }
+
+    private static boolean isGraded(StudentTaskSubmission submission) {
+        return submission.getCompletionStatus() != null && submission.getCompletionStatus() == GRADED_STATUS
+                && submission.getScore() != null;
+    }
+
+    private static int countByStatus(List<GradingJobItem> items, GradingItemStatus status) {
+        return (int) items.stream().filter(item -> item.getStatus() == status).count();
+    }
+}
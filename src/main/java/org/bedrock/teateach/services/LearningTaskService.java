@@ -10,6 +10,7 @@ import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.cache.annotation.Caching;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -20,11 +21,14 @@ public class LearningTaskService {
 
     private final LearningTaskMapper learningTaskMapper;
     private final TaskResourceMapper taskResourceMapper;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public LearningTaskService(LearningTaskMapper learningTaskMapper, TaskResourceMapper taskResourceMapper) {
+    public LearningTaskService(LearningTaskMapper learningTaskMapper, TaskResourceMapper taskResourceMapper,
+                               ApplicationEventPublisher eventPublisher) {
         this.learningTaskMapper = learningTaskMapper;
         this.taskResourceMapper = taskResourceMapper;
+        this.eventPublisher = eventPublisher;
     }
 
     @Transactional
@@ -45,6 +49,8 @@ public class LearningTaskService {
              })
     public LearningTask updateTask(LearningTask task) {
         learningTaskMapper.update(task);
+        // The course may have changed, which moves the task's resources to another course
+        publishResourceLinksChanged(task.getId());
         return task;
     }
 
@@ -57,7 +63,9 @@ public class LearningTaskService {
     public void deleteTask(Long id) {
         // Get the task first to know which course cache to invalidate
         LearningTask task = getTaskById(id);
+        List<Long> resourceIds = resourceIdsOfTask(id);
         learningTaskMapper.delete(id);
+        publishResourceLinksChanged(resourceIds);
     }
 
     @Cacheable(value = "learningTasks", key = "#id")
@@ -94,6 +102,7 @@ public class LearningTaskService {
         
         TaskResource taskResource = new TaskResource(taskId, resourceId);
         taskResourceMapper.insert(taskResource);
+        publishResourceLinksChanged(List.of(resourceId));
         return taskResource;
     }
 
@@ -107,6 +116,7 @@ public class LearningTaskService {
     @CacheEvict(value = {"taskResources"}, key = "#taskId")
     public void removeResourceFromTask(Long taskId, Long resourceId) {
         taskResourceMapper.deleteByTaskIdAndResourceId(taskId, resourceId);
+        publishResourceLinksChanged(List.of(resourceId));
     }
 
     /**
@@ -120,6 +130,16 @@ public class LearningTaskService {
         return taskResourceMapper.findResourcesByTaskId(taskId);
     }
 
+    /**
+     * Gets all tasks a resource is associated with.
+     *
+     * @param resourceId The ID of the resource.
+     * @return List of tasks, each carrying the ID of its course.
+     */
+    public List<LearningTask> getTasksByResourceId(Long resourceId) {
+        return taskResourceMapper.findTasksByResourceId(resourceId);
+    }
+
     /**
      * Gets all task-resource relationships for a task.
      *
@@ -138,6 +158,22 @@ public class LearningTaskService {
     @Transactional
     @CacheEvict(value = {"taskResources"}, key = "#taskId")
     public void removeAllResourcesFromTask(Long taskId) {
+        List<Long> resourceIds = resourceIdsOfTask(taskId);
         taskResourceMapper.deleteByTaskId(taskId);
+        publishResourceLinksChanged(resourceIds);
+    }
+
+    private List<Long> resourceIdsOfTask(Long taskId) {
+        return taskResourceMapper.findByTaskId(taskId).stream().map(TaskResource::getResourceId).toList();
+    }
+
+    private void publishResourceLinksChanged(Long taskId) {
+        publishResourceLinksChanged(resourceIdsOfTask(taskId));
+    }
+
+    private void publishResourceLinksChanged(List<Long> resourceIds) {
+        if (!resourceIds.isEmpty()) {
+            eventPublisher.publishEvent(new ResourceLinksChangedEvent(resourceIds));
+        }
     }
 }
\ No newline at end of file
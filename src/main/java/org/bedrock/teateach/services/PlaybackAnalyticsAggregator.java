@@ -0,0 +1,101 @@
+package org.bedrock.teateach.services;
+
+import org.bedrock.teateach.beans.PlaybackVector;
+import org.bedrock.teateach.dto.ResourceEngagementAnalytics;
+
+import java.util.function.Consumer;
+
+/**
+ * Single-pass aggregator for the playback vectors of one resource.
+ * <p>
+ * Memory is O(video duration) no matter how many vectors are fed in, so it can consume a streaming
+ * MyBatis Cursor or ResultHandler without materializing the result list. Each vector contributes up to
+ * its own video duration, matching {@link PlaybackVector#getPlaybackDataAsIntArray()}.
+ */
+public class PlaybackAnalyticsAggregator implements Consumer<PlaybackVector> {
+
+    static final int COMPLETION_BUCKETS = 10;
+
+    private final Long resourceId;
+    private int[] heatmap = new int[0];
+    private int[] reachDiff = new int[1]; // Difference array of the drop-off curve
+    private final int[] completionDistribution = new int[COMPLETION_BUCKETS];
+    private int maxDuration;
+    private int studentCount;
+    private double watchPercentageSum;
+
+    public PlaybackAnalyticsAggregator(Long resourceId) {
+        this.resourceId = resourceId;
+    }
+
+    /**
+     * Aggregate every vector of an iterable, e.g. an open Cursor
+     */
+    public static ResourceEngagementAnalytics aggregate(Long resourceId, Iterable<PlaybackVector> vectors) {
+        PlaybackAnalyticsAggregator aggregator = new PlaybackAnalyticsAggregator(resourceId);
+        for (PlaybackVector vector : vectors) {
+            aggregator.accept(vector);
+        }
+        return aggregator.result();
+    }
+
+    @Override
+    public void accept(PlaybackVector vector) {
+        int duration = vector.getVideoDuration() != null ? vector.getVideoDuration() : 0;
+        int[] data = vector.getPlaybackData() != null ? vector.getPlaybackData() : new int[0];
+        ensureCapacity(duration);
+
+        int limit = Math.min(data.length, duration);
+        int watchedSeconds = 0;
+        int furthestSecond = -1;
+        for (int i = 0; i < limit; i++) {
+            int count = data[i];
+            if (count != 0) {
+                heatmap[i] += count;
+                if (count > 0) {
+                    watchedSeconds++;
+                    furthestSecond = i;
+                }
+            }
+        }
+
+        double watchPercentage = duration > 0 ? (double) watchedSeconds / duration * 100.0 : 0.0;
+        int bucket = Math.min(COMPLETION_BUCKETS - 1, (int) (watchPercentage / (100.0 / COMPLETION_BUCKETS)));
+        completionDistribution[bucket]++;
+        watchPercentageSum += watchPercentage;
+
+        if (furthestSecond >= 0) {
+            reachDiff[0]++;
+            reachDiff[furthestSecond + 1]--;
+        }
+        studentCount++;
+    }
+
+    public ResourceEngagementAnalytics result() {
+        int[] dropOffCurve = new int[maxDuration];
+        int running = 0;
+        for (int i = 0; i < maxDuration; i++) {
+            running += reachDiff[i];
+            dropOffCurve[i] = running;
+        }
+
+        double average = studentCount > 0 ? watchPercentageSum / studentCount : 0.0;
+        return new ResourceEngagementAnalytics(resourceId, studentCount, maxDuration, heatmap.clone(),
+                completionDistribution.clone(), average, dropOffCurve);
+    }
+
+    private void ensureCapacity(int duration) {
+        if (duration <= maxDuration) {
+            return;
+        }
+        int[] newHeatmap = new int[duration];
+        System.arraycopy(heatmap, 0, newHeatmap, 0, heatmap.length);
+        heatmap = newHeatmap;
+
+        int[] newReachDiff = new int[duration + 1];
+        System.arraycopy(reachDiff, 0, newReachDiff, 0, reachDiff.length);
+        reachDiff = newReachDiff;
+
+        maxDuration = duration;
+    }
+}
@@ -0,0 +1,71 @@
+package org.bedrock.teateach.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.bedrock.teateach.beans.PlaybackVector;
+import org.bedrock.teateach.dto.ResourceEngagementAnalytics;
+import org.bedrock.teateach.mappers.PlaybackVectorMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Engagement analytics computed by streaming playback_vectors rather than loading them into a list.
+ * Heap use is bounded by one decoded row plus one {@link PlaybackAnalyticsAggregator} per resource.
+ */
+@Service
+@Slf4j
+public class PlaybackAnalyticsService {
+
+    private final PlaybackVectorMapper playbackVectorMapper;
+
+    @Autowired
+    public PlaybackAnalyticsService(PlaybackVectorMapper playbackVectorMapper) {
+        this.playbackVectorMapper = playbackVectorMapper;
+    }
+
+    /**
+     * Heatmap, completion distribution, average watch percentage and drop-off curve of one resource
+     */
+    @Transactional(readOnly = true)
+    public ResourceEngagementAnalytics analyzeResource(Long resourceId) {
+        // The cursor needs the connection held by the surrounding transaction
+        try (Cursor<PlaybackVector> cursor = playbackVectorMapper.streamByResourceId(resourceId)) {
+            return PlaybackAnalyticsAggregator.aggregate(resourceId, cursor);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to close playback vector cursor", e);
+        }
+    }
+
+    /**
+     * Analytics of every resource in one scan; rows arrive ordered by resource, so only one aggregator is open at a time
+     */
+    @Transactional(readOnly = true)
+    public List<ResourceEngagementAnalytics> analyzeAllResources() {
+        List<ResourceEngagementAnalytics> results = new ArrayList<>();
+        PlaybackAnalyticsAggregator[] current = new PlaybackAnalyticsAggregator[1];
+        Long[] currentResourceId = new Long[1];
+
+        playbackVectorMapper.streamAllOrderedByResource(context -> {
+            PlaybackVector vector = context.getResultObject();
+            if (current[0] == null || !vector.getResourceId().equals(currentResourceId[0])) {
+                if (current[0] != null) {
+                    results.add(current[0].result());
+                }
+                current[0] = new PlaybackAnalyticsAggregator(vector.getResourceId());
+                currentResourceId[0] = vector.getResourceId();
+            }
+            current[0].accept(vector);
+        });
+
+        if (current[0] != null) {
+            results.add(current[0].result());
+        }
+        log.debug("Computed engagement analytics for {} resources", results.size());
+        return results;
+    }
+}
@@ -0,0 +1,144 @@
+package org.bedrock.teateach.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.bedrock.teateach.beans.PlaybackDelta;
+import org.bedrock.teateach.mappers.PlaybackEventOffsetMapper;
+import org.bedrock.teateach.typehandler.CompactIntArrayCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Applies batches of playback events published by {@link PlaybackEventPublisher} to playback_vectors.
+ * Events are summed per (student, resource) and written with one {@link PlaybackVectorService#applyDeltas} call.
+ * The last applied offset of each partition is stored in the same transaction, so a batch that is redelivered
+ * after a crash or rebalance is recognised and not counted twice.
+ * Events for unknown resources, or longer than the resource's video, are dropped before their counts are allocated.
+ */
+@Service
+@Slf4j
+public class PlaybackEventIngestService {
+
+    private static final Comparator<TopicPartition> PARTITION_ORDER =
+            Comparator.comparing(TopicPartition::topic).thenComparingInt(TopicPartition::partition);
+
+    private final PlaybackVectorService playbackVectorService;
+    private final PlaybackEventOffsetMapper playbackEventOffsetMapper;
+    private final ResourceService resourceService;
+    private final String consumerGroup;
+
+    @Autowired
+    public PlaybackEventIngestService(PlaybackVectorService playbackVectorService,
+                                      PlaybackEventOffsetMapper playbackEventOffsetMapper,
+                                      ResourceService resourceService,
+                                      @Value("${playback.kafka.group-id:playback-aggregator}") String consumerGroup) {
+        this.playbackVectorService = playbackVectorService;
+        this.playbackEventOffsetMapper = playbackEventOffsetMapper;
+        this.resourceService = resourceService;
+        this.consumerGroup = consumerGroup;
+    }
+
+    /**
+     * Apply one polled batch of events
+     *
+     * @return the number of playback vectors written
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public int ingest(List<ConsumerRecord<String, byte[]>> records) {
+        if (records == null || records.isEmpty()) {
+            return 0;
+        }
+
+        // Lock the offset rows in a fixed order so overlapping consumers during a rebalance cannot deadlock
+        Map<TopicPartition, List<ConsumerRecord<String, byte[]>>> byPartition = new TreeMap<>(PARTITION_ORDER);
+        for (ConsumerRecord<String, byte[]> record : records) {
+            byPartition.computeIfAbsent(new TopicPartition(record.topic(), record.partition()), tp -> new ArrayList<>()).add(record);
+        }
+
+        Map<String, PlaybackDelta> merged = new LinkedHashMap<>();
+        Map<TopicPartition, Long> appliedOffsets = new LinkedHashMap<>();
+        Map<Long, Integer> videoDurations = new HashMap<>();
+        int redelivered = 0;
+        for (Map.Entry<TopicPartition, List<ConsumerRecord<String, byte[]>>> entry : byPartition.entrySet()) {
+            TopicPartition partition = entry.getKey();
+            long lastOffset = lockLastOffset(partition);
+            long maxOffset = lastOffset;
+
+            for (ConsumerRecord<String, byte[]> record : entry.getValue()) {
+                if (record.offset() <= lastOffset) {
+                    redelivered++;
+                    continue;
+                }
+                maxOffset = Math.max(maxOffset, record.offset());
+
+                PlaybackDelta delta = toDelta(record, videoDurations);
+                if (delta == null) {
+                    continue;
+                }
+                merged.merge(PlaybackHotTier.member(delta.getStudentId(), delta.getResourceId()), delta, (a, b) -> {
+                    a.setCounts(PlaybackHotTier.addCounts(a.getCounts(), b.getCounts()));
+                    return a;
+                });
+            }
+
+            if (maxOffset > lastOffset) {
+                appliedOffsets.put(partition, maxOffset);
+            }
+        }
+
+        int written = merged.isEmpty() ? 0 : playbackVectorService.applyDeltas(new ArrayList<>(merged.values()));
+        for (Map.Entry<TopicPartition, Long> entry : appliedOffsets.entrySet()) {
+            playbackEventOffsetMapper.updateLastOffset(consumerGroup, entry.getKey().topic(), entry.getKey().partition(), entry.getValue());
+        }
+
+        if (redelivered > 0) {
+            log.info("Skipped {} already applied playback events", redelivered);
+        }
+        return written;
+    }
+
+    private long lockLastOffset(TopicPartition partition) {
+        Long lastOffset = playbackEventOffsetMapper.findLastOffsetForUpdate(consumerGroup, partition.topic(), partition.partition());
+        if (lastOffset == null) {
+            playbackEventOffsetMapper.insertIgnore(consumerGroup, partition.topic(), partition.partition());
+            lastOffset = playbackEventOffsetMapper.findLastOffsetForUpdate(consumerGroup, partition.topic(), partition.partition());
+        }
+        return lastOffset != null ? lastOffset : -1L;
+    }
+
+    /**
+     * Decode an event; malformed events, events for unknown resources and events longer than the video are logged
+     * and skipped, since any of them would fail the whole batch forever
+     */
+    private PlaybackDelta toDelta(ConsumerRecord<String, byte[]> record, Map<Long, Integer> videoDurations) {
+        Long[] ids = record.key() != null ? PlaybackHotTier.parseMember(record.key()) : null;
+        if (ids == null) {
+            log.warn("Dropping playback event at {}-{}@{} with invalid key {}", record.topic(), record.partition(), record.offset(), record.key());
+            return null;
+        }
+        int videoDuration = videoDurations.computeIfAbsent(ids[1], id -> resourceService.getResourceById(id).isPresent()
+                ? playbackVectorService.getVideoDuration(id) : -1);
+        if (videoDuration < 0) {
+            log.warn("Dropping playback event at {}-{}@{} for unknown resource {}", record.topic(), record.partition(), record.offset(), ids[1]);
+            return null;
+        }
+        try {
+            return new PlaybackDelta(ids[0], ids[1], CompactIntArrayCodec.decode(record.value(), videoDuration));
+        } catch (IllegalArgumentException e) {
+            log.warn("Dropping invalid playback event at {}-{}@{}: {}", record.topic(), record.partition(), record.offset(), e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.bedrock.teateach.services;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Consumes the playback event topic in micro-batches; only started when playback.kafka.enabled is set.
+ * Scale out by adding instances or raising playback.kafka.concurrency, up to the number of partitions.
+ */
+@Component
+public class PlaybackEventListener {
+
+    private final PlaybackEventIngestService playbackEventIngestService;
+
+    @Autowired
+    public PlaybackEventListener(PlaybackEventIngestService playbackEventIngestService) {
+        this.playbackEventIngestService = playbackEventIngestService;
+    }
+
+    @KafkaListener(id = "playback-events",
+            topics = "${playback.kafka.topic:playback-events}",
+            groupId = "${playback.kafka.group-id:playback-aggregator}",
+            containerFactory = "playbackEventListenerContainerFactory",
+            autoStartup = "${playback.kafka.enabled:false}")
+    public void onEvents(List<ConsumerRecord<String, byte[]>> records) {
+        playbackEventIngestService.ingest(records);
+    }
+}
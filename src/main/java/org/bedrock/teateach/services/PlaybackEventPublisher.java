@@ -0,0 +1,75 @@
+package org.bedrock.teateach.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.bedrock.teateach.config.PlaybackKafkaConfig;
+import org.bedrock.teateach.typehandler.CompactIntArrayCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.boot.ssl.SslBundles;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+
+/**
+ * Publishes playback heartbeats to Kafka instead of writing them to MySQL.
+ * Events are keyed by "studentId:resourceId", so all events of a vector land on one partition and are applied
+ * by one consumer; the value is the delta count vector in the compact encoding of {@link CompactIntArrayCodec}.
+ * Sends are asynchronous: the request is acknowledged once the event is handed to the producer.
+ */
+@Service
+@Slf4j
+public class PlaybackEventPublisher {
+
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final boolean enabled;
+    private final String topic;
+
+    @Autowired
+    public PlaybackEventPublisher(KafkaProperties kafkaProperties,
+                                  SslBundles sslBundles,
+                                  @Value("${playback.kafka.enabled:false}") boolean enabled,
+                                  @Value("${playback.kafka.topic:playback-events}") String topic,
+                                  @Value("${playback.kafka.linger-ms:20}") int lingerMs) {
+        // A template of our own: declaring a ProducerFactory bean would replace Spring Boot's String template
+        this(new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(
+                PlaybackKafkaConfig.producerProperties(kafkaProperties.buildProducerProperties(sslBundles), lingerMs),
+                new StringSerializer(), new ByteArraySerializer())), enabled, topic);
+    }
+
+    PlaybackEventPublisher(KafkaTemplate<String, byte[]> kafkaTemplate, boolean enabled, String topic) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.enabled = enabled;
+        this.topic = topic;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queue a delta count vector for a student's playback vector
+     */
+    public void publish(Long studentId, Long resourceId, int[] delta) {
+        kafkaTemplate.send(topic, PlaybackHotTier.member(studentId, resourceId), CompactIntArrayCodec.encode(delta))
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        log.error("Failed to publish playback event for student {} and resource {}", studentId, resourceId, e);
+                    }
+                });
+    }
+
+    @PreDestroy
+    public void close() {
+        if (!enabled) {
+            return;
+        }
+        // Flush events still lingering in the producer before shutdown
+        kafkaTemplate.flush();
+        kafkaTemplate.getProducerFactory().reset();
+    }
+}
@@ -0,0 +1,461 @@
+package org.bedrock.teateach.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bedrock.teateach.beans.PlaybackDelta;
+import org.bedrock.teateach.dto.HotTierConsistencyReport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Redis hot tier for live playback tracking.
+ * <p>
+ * Each (studentId, resourceId) has a hash of pending per-second increments ({@code playback:hot:v:<s>:<r>}, field = second)
+ * that heartbeats update with pipelined HINCRBY, plus a member in the dirty set. {@link PlaybackHotTierCompactor}
+ * atomically moves a live hash to a snapshot key ({@code playback:hot:c:<s>:<r>}) stamped with a sequence id, merges the
+ * snapshot into playback_vectors and then deletes it. Snapshots whose merge failed stay in the compacting set and are
+ * retried unchanged, so newer increments of the pair wait in the live hash until the snapshot is gone. The merge
+ * records the snapshot id in the same transaction, so a crash between the MySQL commit and the snapshot delete does
+ * not count the snapshot twice ({@link PlaybackHotTierIngestService}).
+ * <p>
+ * The counts a pair already has in playback_vectors, and its video duration, are cached in a base hash
+ * ({@code playback:hot:b:<s>:<r>}) so heartbeats can answer with the full vector without reading MySQL.
+ * Acknowledging a snapshot drops the base it is now part of, so the next heartbeat of the pair reloads it.
+ */
+@Component
+@Slf4j
+public class PlaybackHotTier {
+
+    static final String LIVE_PREFIX = "playback:hot:v:";
+    static final String SNAPSHOT_PREFIX = "playback:hot:c:";
+    static final String BASE_PREFIX = "playback:hot:b:";
+    static final String DURATION_FIELD = "duration";
+    static final String DIRTY_SET = "playback:hot:dirty";
+    static final String COMPACTING_SET = "playback:hot:compacting";
+    static final String SNAPSHOT_SEQUENCE = "playback:hot:seq";
+    static final String SNAPSHOT_ID_FIELD = "id";
+
+    /**
+     * Move the live hash into a new snapshot with the next sequence id and track it as compacting, or return the id of
+     * a failed snapshot that is still there, keeping the live hash dirty for the next run; 0 if there is nothing
+     */
+    private static final RedisScript<Long> SNAPSHOT_SCRIPT = new DefaultRedisScript<>(
+            "local live, snap, compacting, dirty, seq = KEYS[1], KEYS[2], KEYS[3], KEYS[4], KEYS[5]\n" +
+            "if redis.call('exists', snap) == 1 then\n" +
+            "  if redis.call('exists', live) == 1 then redis.call('sadd', dirty, ARGV[1]) end\n" +
+            "  local id = redis.call('hget', snap, ARGV[2])\n" +
+            "  if not id then\n" +
+            "    id = redis.call('incr', seq)\n" +
+            "    redis.call('hset', snap, ARGV[2], id)\n" +
+            "  end\n" +
+            "  redis.call('sadd', compacting, ARGV[1])\n" +
+            "  return tonumber(id)\n" +
+            "end\n" +
+            "if redis.call('exists', live) == 1 then\n" +
+            "  redis.call('rename', live, snap)\n" +
+            "  local id = redis.call('incr', seq)\n" +
+            "  redis.call('hset', snap, ARGV[2], id)\n" +
+            "  redis.call('sadd', compacting, ARGV[1])\n" +
+            "  return id\n" +
+            "end\n" +
+            "redis.call('srem', compacting, ARGV[1])\n" +
+            "return 0",
+            Long.class);
+
+    /**
+     * Create the base hash from field/value pairs unless another heartbeat already did, and let it expire
+     */
+    private static final RedisScript<Long> CACHE_BASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 1 then return 0 end\n" +
+            "for i = 2, #ARGV, 2 do redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1]) end\n" +
+            "redis.call('expire', KEYS[1], ARGV[1])\n" +
+            "return 1",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final boolean enabled;
+    private final long baseTtlSeconds;
+
+    @Autowired
+    public PlaybackHotTier(StringRedisTemplate redisTemplate,
+                           @Value("${playback.redis-tier.enabled:false}") boolean enabled,
+                           @Value("${playback.redis-tier.base-ttl-seconds:3600}") long baseTtlSeconds) {
+        this.redisTemplate = redisTemplate;
+        this.enabled = enabled;
+        this.baseTtlSeconds = Math.max(1, baseTtlSeconds);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Add a delta to the pending increments in one pipelined round trip
+     *
+     * @return all increments for the pair that are not in playback_vectors yet, including this delta,
+     * and the cached counts that are
+     */
+    public Recorded record(Long studentId, Long resourceId, int[] delta) {
+        String member = member(studentId, resourceId);
+        byte[] liveKey = bytes(LIVE_PREFIX + member);
+        byte[] snapshotKey = bytes(SNAPSHOT_PREFIX + member);
+        byte[] baseKey = bytes(BASE_PREFIX + member);
+
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            if (delta != null) {
+                for (int second = 0; second < delta.length; second++) {
+                    if (delta[second] != 0) {
+                        connection.hashCommands().hIncrBy(liveKey, bytes(Integer.toString(second)), delta[second]);
+                    }
+                }
+            }
+            connection.setCommands().sAdd(bytes(DIRTY_SET), bytes(member));
+            connection.hashCommands().hGetAll(liveKey);
+            connection.hashCommands().hGetAll(snapshotKey);
+            connection.hashCommands().hGetAll(baseKey);
+            return null;
+        });
+
+        int size = results.size();
+        int[] pending = addCounts(toCounts(results.get(size - 3)), toCounts(results.get(size - 2)));
+        Object base = results.get(size - 1);
+        if (!(base instanceof Map<?, ?> fields) || !fields.containsKey(DURATION_FIELD)) {
+            return new Recorded(pending, null, 0);
+        }
+        int duration = Integer.parseInt(fields.get(DURATION_FIELD).toString());
+        int[] stored = toCounts(base);
+        return new Recorded(pending, Arrays.copyOf(stored, Math.max(stored.length, duration)), duration);
+    }
+
+    /**
+     * Cache the counts a pair has in playback_vectors, unless a newer base is already cached
+     */
+    public void cacheStored(Long studentId, Long resourceId, int[] stored, int duration) {
+        List<String> args = new ArrayList<>();
+        args.add(Long.toString(baseTtlSeconds));
+        args.add(DURATION_FIELD);
+        args.add(Integer.toString(duration));
+        if (stored != null) {
+            for (int second = 0; second < stored.length; second++) {
+                if (stored[second] != 0) {
+                    args.add(Integer.toString(second));
+                    args.add(Integer.toString(stored[second]));
+                }
+            }
+        }
+        redisTemplate.execute(CACHE_BASE_SCRIPT, List.of(BASE_PREFIX + member(studentId, resourceId)), args.toArray());
+    }
+
+    /**
+     * Increments for the pair that are not in playback_vectors yet
+     */
+    public int[] pendingCounts(Long studentId, Long resourceId) {
+        String member = member(studentId, resourceId);
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.hashCommands().hGetAll(bytes(LIVE_PREFIX + member));
+            connection.hashCommands().hGetAll(bytes(SNAPSHOT_PREFIX + member));
+            return null;
+        });
+        return addCounts(toCounts(results.get(0)), toCounts(results.get(1)));
+    }
+
+    /**
+     * Snapshot up to limit dirty pairs for compaction; snapshots left over from a failed run come first
+     */
+    public List<Snapshot> takeSnapshots(int limit) {
+        Set<String> members = new LinkedHashSet<>();
+        Set<String> retries = redisTemplate.opsForSet().members(COMPACTING_SET);
+        if (retries != null) {
+            members.addAll(retries);
+        }
+        if (members.size() < limit) {
+            List<String> popped = redisTemplate.opsForSet().pop(DIRTY_SET, limit - members.size());
+            if (popped != null) {
+                members.addAll(popped);
+            }
+        }
+        if (members.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<String> snapshotted = new ArrayList<>(members.size());
+        List<Long> snapshotIds = new ArrayList<>(members.size());
+        for (String member : members) {
+            Long id = redisTemplate.execute(SNAPSHOT_SCRIPT,
+                    List.of(LIVE_PREFIX + member, SNAPSHOT_PREFIX + member, COMPACTING_SET, DIRTY_SET, SNAPSHOT_SEQUENCE),
+                    member, SNAPSHOT_ID_FIELD);
+            if (id != null && id > 0) {
+                snapshotted.add(member);
+                snapshotIds.add(id);
+            }
+        }
+        if (snapshotted.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Object> hashes = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String member : snapshotted) {
+                connection.hashCommands().hGetAll(bytes(SNAPSHOT_PREFIX + member));
+            }
+            return null;
+        });
+
+        List<Snapshot> snapshots = new ArrayList<>(snapshotted.size());
+        for (int i = 0; i < snapshotted.size(); i++) {
+            String member = snapshotted.get(i);
+            Long[] ids = parseMember(member);
+            if (ids == null) {
+                log.warn("Dropping malformed playback hot-tier member {}", member);
+                acknowledge(List.of(new Snapshot(snapshotIds.get(i), member, null, null, new int[0])));
+                continue;
+            }
+            snapshots.add(new Snapshot(snapshotIds.get(i), member, ids[0], ids[1], toCounts(hashes.get(i))));
+        }
+        return snapshots;
+    }
+
+    /**
+     * Delete snapshots whose increments are committed to playback_vectors
+     */
+    public void acknowledge(List<Snapshot> snapshots) {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Snapshot snapshot : snapshots) {
+                connection.keyCommands().del(bytes(SNAPSHOT_PREFIX + snapshot.getMember()),
+                        bytes(BASE_PREFIX + snapshot.getMember()));
+                connection.setCommands().sRem(bytes(COMPACTING_SET), bytes(snapshot.getMember()));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Check that the bookkeeping of the hot tier matches its data: every live hash is in the dirty set, every snapshot
+     * is in the compacting set, and no set member points at nothing. Optionally repair what does not match.
+     * Hashes or members that are not tracked are never compacted, so they are the ways the tiers could diverge.
+     */
+    public HotTierConsistencyReport checkConsistency(boolean repair) {
+        Set<String> liveMembers = scanMembers(LIVE_PREFIX);
+        Set<String> snapshotMembers = scanMembers(SNAPSHOT_PREFIX);
+        Set<String> dirty = nullToEmpty(redisTemplate.opsForSet().members(DIRTY_SET));
+        Set<String> compacting = nullToEmpty(redisTemplate.opsForSet().members(COMPACTING_SET));
+
+        Set<String> untrackedLive = new HashSet<>(liveMembers);
+        untrackedLive.removeAll(dirty);
+        untrackedLive.removeAll(compacting);
+
+        Set<String> untrackedSnapshots = new HashSet<>(snapshotMembers);
+        untrackedSnapshots.removeAll(compacting);
+
+        Set<String> danglingMembers = new HashSet<>();
+        for (String member : dirty) {
+            if (!liveMembers.contains(member) && !snapshotMembers.contains(member)) {
+                danglingMembers.add(member);
+            }
+        }
+        for (String member : compacting) {
+            if (!snapshotMembers.contains(member) && !liveMembers.contains(member)) {
+                danglingMembers.add(member);
+            }
+        }
+
+        long pendingIncrements = sumIncrements(LIVE_PREFIX, liveMembers) + sumIncrements(SNAPSHOT_PREFIX, snapshotMembers);
+
+        if (repair) {
+            if (!untrackedLive.isEmpty()) {
+                redisTemplate.opsForSet().add(DIRTY_SET, untrackedLive.toArray(new String[0]));
+            }
+            if (!untrackedSnapshots.isEmpty()) {
+                redisTemplate.opsForSet().add(COMPACTING_SET, untrackedSnapshots.toArray(new String[0]));
+            }
+            if (!danglingMembers.isEmpty()) {
+                redisTemplate.opsForSet().remove(DIRTY_SET, danglingMembers.toArray());
+                redisTemplate.opsForSet().remove(COMPACTING_SET, danglingMembers.toArray());
+            }
+        }
+
+        boolean consistent = untrackedLive.isEmpty() && untrackedSnapshots.isEmpty() && danglingMembers.isEmpty();
+        if (!consistent) {
+            log.warn("Playback hot tier inconsistent: {} untracked live, {} untracked snapshots, {} dangling members (repair={})",
+                    untrackedLive.size(), untrackedSnapshots.size(), danglingMembers.size(), repair);
+        }
+        return new HotTierConsistencyReport(consistent, liveMembers.size(), snapshotMembers.size(), pendingIncrements,
+                untrackedLive.size(), untrackedSnapshots.size(), danglingMembers.size(), repair && !consistent);
+    }
+
+    private Set<String> scanMembers(String prefix) {
+        Set<String> members = new HashSet<>();
+        ScanOptions options = ScanOptions.scanOptions().match(prefix + "*").count(500).build();
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                members.add(cursor.next().substring(prefix.length()));
+            }
+        }
+        return members;
+    }
+
+    private long sumIncrements(String prefix, Set<String> members) {
+        long total = 0;
+        for (String member : members) {
+            for (Map.Entry<Object, Object> entry : redisTemplate.opsForHash().entries(prefix + member).entrySet()) {
+                if (parseSecond(entry.getKey()) >= 0) {
+                    total += Long.parseLong(entry.getValue().toString());
+                }
+            }
+        }
+        return total;
+    }
+
+    static String member(Long studentId, Long resourceId) {
+        return studentId + ":" + resourceId;
+    }
+
+    static Long[] parseMember(String member) {
+        int separator = member.indexOf(':');
+        if (separator <= 0) {
+            return null;
+        }
+        try {
+            return new Long[]{Long.parseLong(member.substring(0, separator)), Long.parseLong(member.substring(separator + 1))};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Convert a hash of second -> count into a count vector; fields that are not valid seconds are ignored
+     */
+    static int[] toCounts(Object hash) {
+        if (!(hash instanceof Map<?, ?> entries) || entries.isEmpty()) {
+            return new int[0];
+        }
+
+        int length = 0;
+        for (Object field : entries.keySet()) {
+            int second = parseSecond(field);
+            length = Math.max(length, second + 1);
+        }
+
+        int[] counts = new int[length];
+        for (Map.Entry<?, ?> entry : entries.entrySet()) {
+            int second = parseSecond(entry.getKey());
+            if (second >= 0) {
+                counts[second] += Integer.parseInt(entry.getValue().toString());
+            }
+        }
+        return counts;
+    }
+
+    private static int parseSecond(Object field) {
+        try {
+            return Integer.parseInt(field.toString());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static int[] addCounts(int[] a, int[] b) {
+        int[] sum = new int[Math.max(a.length, b.length)];
+        for (int i = 0; i < a.length; i++) {
+            sum[i] += a[i];
+        }
+        for (int i = 0; i < b.length; i++) {
+            sum[i] += b[i];
+        }
+        return sum;
+    }
+
+    private static Set<String> nullToEmpty(Set<String> set) {
+        return set != null ? set : Collections.emptySet();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Pending increments of a pair after a heartbeat, with its playback_vectors counts if they are cached
+     */
+    public static final class Recorded {
+        private final int[] pending;
+        private final int[] stored;
+        private final int duration;
+
+        Recorded(int[] pending, int[] stored, int duration) {
+            this.pending = pending;
+            this.stored = stored;
+            this.duration = duration;
+        }
+
+        public int[] getPending() {
+            return pending;
+        }
+
+        /**
+         * @return the counts in playback_vectors padded to the video duration, or null if they are not cached
+         */
+        public int[] getStored() {
+            return stored;
+        }
+
+        public int getDuration() {
+            return duration;
+        }
+    }
+
+    /**
+     * Increments of one (studentId, resourceId) pair taken out of the live hash for compaction
+     */
+    public static final class Snapshot {
+        private final long id;
+        private final String member;
+        private final Long studentId;
+        private final Long resourceId;
+        private final int[] counts;
+
+        Snapshot(long id, String member, Long studentId, Long resourceId, int[] counts) {
+            this.id = id;
+            this.member = member;
+            this.studentId = studentId;
+            this.resourceId = resourceId;
+            this.counts = counts;
+        }
+
+        /**
+         * Sequence id of the snapshot, the same on every retry until it is acknowledged
+         */
+        public long getId() {
+            return id;
+        }
+
+        public String getMember() {
+            return member;
+        }
+
+        public int[] getCounts() {
+            return counts;
+        }
+
+        public PlaybackDelta toDelta() {
+            return new PlaybackDelta(studentId, resourceId, counts);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.bedrock.teateach.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Periodically merges the increments held in the Redis hot tier ({@link PlaybackHotTier}) into playback_vectors
+ */
+@Component
+@Slf4j
+public class PlaybackHotTierCompactor {
+
+    private final PlaybackHotTier playbackHotTier;
+    private final PlaybackHotTierIngestService playbackHotTierIngestService;
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+    private final ReentrantLock compactLock = new ReentrantLock();
+
+    @Autowired
+    public PlaybackHotTierCompactor(PlaybackHotTier playbackHotTier,
+                                    PlaybackHotTierIngestService playbackHotTierIngestService,
+                                    @Value("${playback.redis-tier.batch-size:200}") int batchSize,
+                                    @Value("${playback.redis-tier.max-batches-per-run:50}") int maxBatchesPerRun) {
+        this.playbackHotTier = playbackHotTier;
+        this.playbackHotTierIngestService = playbackHotTierIngestService;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxBatchesPerRun = Math.max(1, maxBatchesPerRun);
+    }
+
+    @Scheduled(fixedDelayString = "${playback.redis-tier.compact-interval-ms:10000}")
+    public void scheduledCompact() {
+        if (playbackHotTier.isEnabled()) {
+            compact();
+        }
+    }
+
+    /**
+     * Move batches of pending increments into MySQL until the hot tier is drained or the per-run limit is hit
+     *
+     * @return the number of playback vectors written
+     */
+    public int compact() {
+        if (!compactLock.tryLock()) {
+            return 0;
+        }
+        try {
+            int written = 0;
+            for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+                List<PlaybackHotTier.Snapshot> snapshots = playbackHotTier.takeSnapshots(batchSize);
+                if (snapshots.isEmpty()) {
+                    break;
+                }
+
+                try {
+                    written += playbackHotTierIngestService.ingest(snapshots);
+                } catch (Exception e) {
+                    // Snapshots stay in the compacting set and are retried on the next run
+                    log.error("Failed to compact {} playback hot-tier entries, will retry", snapshots.size(), e);
+                    break;
+                }
+                playbackHotTier.acknowledge(snapshots);
+                playbackHotTierIngestService.forget(snapshots);
+
+                if (snapshots.size() < batchSize) {
+                    break;
+                }
+            }
+
+            if (written > 0) {
+                log.debug("Compacted {} playback vectors from Redis", written);
+            }
+            return written;
+        } finally {
+            compactLock.unlock();
+        }
+    }
+}
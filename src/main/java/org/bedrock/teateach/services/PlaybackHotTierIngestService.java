@@ -0,0 +1,88 @@
+package org.bedrock.teateach.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bedrock.teateach.beans.PlaybackDelta;
+import org.bedrock.teateach.beans.PlaybackHotTierSnapshot;
+import org.bedrock.teateach.mappers.PlaybackHotTierSnapshotMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Applies Redis hot-tier snapshots taken by {@link PlaybackHotTierCompactor} to playback_vectors.
+ * The ids of the applied snapshots are stored in the same transaction, so a snapshot that is retried because the
+ * process died between the commit and its deletion from Redis is recognised and not counted twice.
+ */
+@Service
+@Slf4j
+public class PlaybackHotTierIngestService {
+
+    private final PlaybackVectorService playbackVectorService;
+    private final PlaybackHotTierSnapshotMapper playbackHotTierSnapshotMapper;
+
+    @Autowired
+    public PlaybackHotTierIngestService(PlaybackVectorService playbackVectorService,
+                                        PlaybackHotTierSnapshotMapper playbackHotTierSnapshotMapper) {
+        this.playbackVectorService = playbackVectorService;
+        this.playbackHotTierSnapshotMapper = playbackHotTierSnapshotMapper;
+    }
+
+    /**
+     * Apply a batch of snapshots, skipping those already applied
+     *
+     * @return the number of playback vectors written
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public int ingest(List<PlaybackHotTier.Snapshot> snapshots) {
+        if (snapshots == null || snapshots.isEmpty()) {
+            return 0;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<PlaybackHotTierSnapshot> rows = new ArrayList<>(snapshots.size());
+        for (PlaybackHotTier.Snapshot snapshot : snapshots) {
+            rows.add(new PlaybackHotTierSnapshot(snapshot.getId(), snapshot.getMember(), now));
+        }
+        Set<Long> applied = new HashSet<>(playbackHotTierSnapshotMapper.findAppliedForUpdate(rows));
+
+        List<PlaybackHotTierSnapshot> pendingRows = new ArrayList<>(rows.size());
+        List<PlaybackDelta> deltas = new ArrayList<>(snapshots.size());
+        for (int i = 0; i < snapshots.size(); i++) {
+            if (!applied.contains(snapshots.get(i).getId())) {
+                pendingRows.add(rows.get(i));
+                deltas.add(snapshots.get(i).toDelta());
+            }
+        }
+        if (!applied.isEmpty()) {
+            log.info("Skipped {} already applied playback hot-tier snapshots", applied.size());
+        }
+        if (deltas.isEmpty()) {
+            return 0;
+        }
+
+        // A concurrent compactor applying the same snapshot fails on the primary key and rolls back
+        playbackHotTierSnapshotMapper.insertBatch(pendingRows);
+        return playbackVectorService.applyDeltas(deltas);
+    }
+
+    /**
+     * Forget snapshots that are deleted from Redis, so their ids are never looked up again
+     */
+    public void forget(List<PlaybackHotTier.Snapshot> snapshots) {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(snapshots.size());
+        for (PlaybackHotTier.Snapshot snapshot : snapshots) {
+            ids.add(snapshot.getId());
+        }
+        playbackHotTierSnapshotMapper.deleteByIds(ids);
+    }
+}
@@ -0,0 +1,114 @@
+package org.bedrock.teateach.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bedrock.teateach.beans.PlaybackDelta;
+import org.bedrock.teateach.dto.HeatmapRebuildResult;
+import org.bedrock.teateach.mappers.PlaybackVectorMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Offline backfills for playback storage: re-encoding legacy JSON rows into the compact binary format,
+ * filling the playback counter columns, merging duplicate vectors and rebuilding the derived resource heatmaps. Each unit of work runs in its own transaction,
+ * so these can run online.
+ */
+@Service
+@Slf4j
+public class PlaybackStorageMigrationService {
+
+    private final PlaybackVectorMapper playbackVectorMapper;
+    private final PlaybackVectorService playbackVectorService;
+    private final ResourceHeatmapService resourceHeatmapService;
+
+    @Autowired
+    public PlaybackStorageMigrationService(PlaybackVectorMapper playbackVectorMapper,
+                                           PlaybackVectorService playbackVectorService,
+                                           ResourceHeatmapService resourceHeatmapService) {
+        this.playbackVectorMapper = playbackVectorMapper;
+        this.playbackVectorService = playbackVectorService;
+        this.resourceHeatmapService = resourceHeatmapService;
+    }
+
+    /**
+     * Re-encode all legacy rows, one locked batch per transaction
+     *
+     * @param batchSize number of rows per batch
+     * @return the number of rows converted
+     */
+    public int backfillCompactEncoding(int batchSize) {
+        int limit = Math.max(1, batchSize);
+        long afterId = 0L;
+        int converted = 0;
+
+        while (true) {
+            List<Long> ids = playbackVectorMapper.findLegacyEncodedIds(afterId, limit);
+            if (ids.isEmpty()) {
+                break;
+            }
+            converted += playbackVectorService.reencodeVectors(ids);
+            afterId = ids.get(ids.size() - 1);
+            log.info("Converted {} playback vectors to compact encoding (last id {})", converted, afterId);
+        }
+
+        return converted;
+    }
+
+    /**
+     * Fill covered_seconds and total_play_count for rows written before those columns existed,
+     * one locked batch per transaction
+     *
+     * @param batchSize number of rows per batch
+     * @return the number of rows updated
+     */
+    public int backfillPlaybackCounters(int batchSize) {
+        int limit = Math.max(1, batchSize);
+        long afterId = 0L;
+        int updated = 0;
+
+        while (true) {
+            List<Long> ids = playbackVectorMapper.findIdsWithoutCounters(afterId, limit);
+            if (ids.isEmpty()) {
+                break;
+            }
+            updated += playbackVectorService.reencodeVectors(ids);
+            afterId = ids.get(ids.size() - 1);
+            log.info("Backfilled playback counters of {} vectors (last id {})", updated, afterId);
+        }
+
+        return updated;
+    }
+
+    /**
+     * Merge playback vectors that were stored more than once for the same student and resource.
+     * Must run before uk_student_resource (V7) is added to a database that predates it.
+     *
+     * @return the number of duplicate rows removed
+     */
+    public int mergeDuplicateVectors() {
+        int removed = 0;
+        for (PlaybackDelta pair : playbackVectorMapper.findDuplicateStudentResourcePairs()) {
+            removed += playbackVectorService.mergeDuplicateVectors(pair.getStudentId(), pair.getResourceId());
+        }
+        log.info("Removed {} duplicate playback vectors", removed);
+        return removed;
+    }
+
+    /**
+     * Recompute every resource heatmap from the raw playback vectors and verify the incremental aggregates
+     *
+     * @return one result per resource that has playback data
+     */
+    public List<HeatmapRebuildResult> rebuildAllHeatmaps() {
+        List<HeatmapRebuildResult> results = new ArrayList<>();
+        for (Long resourceId : playbackVectorMapper.findDistinctResourceIds()) {
+            results.add(resourceHeatmapService.rebuildHeatmap(resourceId));
+        }
+
+        long mismatched = results.stream().filter(r -> r.isPreviouslyMaterialized() && !r.isMatched()).count();
+        log.info("Rebuilt {} resource heatmaps, {} differed from their incremental aggregate", results.size(), mismatched);
+        return results;
+    }
+}
@@ -1,36 +1,78 @@
 package org.bedrock.teateach.services;
 
 import lombok.extern.slf4j.Slf4j;
+import org.bedrock.teateach.beans.PlaybackDelta;
 import org.bedrock.teateach.beans.PlaybackVector;
 import org.bedrock.teateach.beans.Resource;
+import org.bedrock.teateach.beans.ResourceHeatmapLevel;
+import org.bedrock.teateach.dto.PlaybackVectorSummary;
+import org.bedrock.teateach.dto.ResourceWatchRoster;
+import org.bedrock.teateach.dto.StudentEngagementSummary;
 import org.bedrock.teateach.mappers.PlaybackVectorMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @Slf4j
 public class PlaybackVectorService {
 
+    /** A resource counts as completed once this much of it has been watched */
+    static final double COMPLETION_THRESHOLD_PERCENTAGE = 90.0;
+
     private final PlaybackVectorMapper playbackVectorMapper;
     private final ResourceService resourceService;
+    private final PlaybackWriteBuffer playbackWriteBuffer;
+    private final ResourceHeatmapService resourceHeatmapService;
+    private final PlaybackHotTier playbackHotTier;
 
     @Autowired
-    public PlaybackVectorService(PlaybackVectorMapper playbackVectorMapper, ResourceService resourceService) {
+    public PlaybackVectorService(PlaybackVectorMapper playbackVectorMapper, ResourceService resourceService,
+                                 PlaybackWriteBuffer playbackWriteBuffer, ResourceHeatmapService resourceHeatmapService,
+                                 PlaybackHotTier playbackHotTier) {
         this.playbackVectorMapper = playbackVectorMapper;
         this.resourceService = resourceService;
+        this.playbackWriteBuffer = playbackWriteBuffer;
+        this.resourceHeatmapService = resourceHeatmapService;
+        this.playbackHotTier = playbackHotTier;
     }
 
     /**
-     * Get the playback vector for a specific student and resource
+     * Get the playback vector for a specific student and resource.
+     * In write-behind or Redis hot-tier mode, increments that have not reached MySQL yet are included.
      */
     public PlaybackVector getPlaybackVector(Long studentId, Long resourceId) {
+        if (isHotTier()) {
+            PlaybackVector stored = playbackVectorMapper.findByStudentAndResource(studentId, resourceId);
+            int[] pending = playbackHotTier.pendingCounts(studentId, resourceId);
+            if (stored == null) {
+                if (pending.length == 0) {
+                    return null;
+                }
+                // The row is created by the compactor, until then the pair only has its increments in Redis
+                int videoDuration = getVideoDuration(resourceId);
+                stored = new PlaybackVector(null, studentId, resourceId, new int[videoDuration], videoDuration, null);
+            }
+            return withPending(stored, pending);
+        }
+        if (isWriteBehind()) {
+            PlaybackVector buffered = playbackWriteBuffer.overlay(studentId, resourceId);
+            if (buffered != null) {
+                return buffered;
+            }
+        }
         return playbackVectorMapper.findByStudentAndResource(studentId, resourceId);
     }
 
@@ -48,52 +90,100 @@ public class PlaybackVectorService {
         return playbackVectorMapper.findByStudentId(studentId);
     }
 
+    /**
+     * Summarize a student's viewing across all resources without reading any playback data.
+     * Increments still pending in write-behind or Redis hot-tier mode are not included.
+     */
+    public StudentEngagementSummary getStudentEngagementSummary(Long studentId) {
+        List<PlaybackVectorSummary> resources = playbackVectorMapper.findSummariesByStudentId(studentId);
+
+        int completed = 0;
+        double percentageSum = 0.0;
+        long coveredSeconds = 0;
+        long totalPlayCount = 0;
+        LocalDateTime lastActivity = null;
+        for (PlaybackVectorSummary summary : resources) {
+            double percentage = summary.getWatchPercentage();
+            if (percentage >= COMPLETION_THRESHOLD_PERCENTAGE) {
+                completed++;
+            }
+            percentageSum += percentage;
+            coveredSeconds += summary.getCoveredSeconds();
+            totalPlayCount += summary.getTotalPlayCount();
+            if (summary.getLastUpdated() != null && (lastActivity == null || summary.getLastUpdated().isAfter(lastActivity))) {
+                lastActivity = summary.getLastUpdated();
+            }
+        }
+
+        double average = resources.isEmpty() ? 0.0 : percentageSum / resources.size();
+        return new StudentEngagementSummary(studentId, resources.size(), completed, average,
+                coveredSeconds, totalPlayCount, lastActivity, resources);
+    }
+
+    /**
+     * List the watch percentage of every student of a resource without reading any playback data.
+     * Increments still pending in write-behind or Redis hot-tier mode are not included.
+     */
+    public ResourceWatchRoster getResourceWatchRoster(Long resourceId) {
+        List<PlaybackVectorSummary> students = playbackVectorMapper.findSummariesByResourceId(resourceId);
+
+        int completed = 0;
+        double percentageSum = 0.0;
+        for (PlaybackVectorSummary summary : students) {
+            double percentage = summary.getWatchPercentage();
+            if (percentage >= COMPLETION_THRESHOLD_PERCENTAGE) {
+                completed++;
+            }
+            percentageSum += percentage;
+        }
+
+        double average = students.isEmpty() ? 0.0 : percentageSum / students.size();
+        return new ResourceWatchRoster(resourceId, students.size(), completed, average, students);
+    }
+
+    /**
+     * Number of students with a playback vector for a resource
+     */
+    public int countViewers(Long resourceId) {
+        return playbackVectorMapper.countByResourceId(resourceId);
+    }
+
     /**
      * Create a new playback vector for a student and resource
      */
-    @Transactional
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public PlaybackVector createPlaybackVector(Long studentId, Long resourceId) {
         // Check if playback vector already exists
         PlaybackVector existing = playbackVectorMapper.findByStudentAndResource(studentId, resourceId);
         if (existing != null) {
             return existing;
         }
-
-        // Get resource to determine video duration
-        Resource resource = resourceService.getResourceById(resourceId)
-                .orElseThrow(() -> new IllegalArgumentException("Resource not found: " + resourceId));
-
-        // Create new playback vector
-        PlaybackVector playbackVector = new PlaybackVector();
-        playbackVector.setStudentId(studentId);
-        playbackVector.setResourceId(resourceId);
-        playbackVector.setVideoDuration(getVideoDuration(resource)); // Implement this method based on resource metadata
-        // Initialize with empty array that has proper length
-        int[] emptyData = new int[playbackVector.getVideoDuration()];
-        playbackVector.setPlaybackData(emptyData); // Initialize empty vector with zeros
-        playbackVector.setLastUpdated(LocalDateTime.now());
-
-        playbackVectorMapper.insert(playbackVector);
-        return playbackVector;
+        return insertOrLock(studentId, resourceId);
     }
 
     /**
      * Update playback vector with seconds that were played once
      */
-    @Transactional
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public PlaybackVector updatePlaybackVector(Long studentId, Long resourceId, int[] playedSeconds) {
-        // Get existing playback vector or create new one
-        PlaybackVector playbackVector = playbackVectorMapper.findByStudentAndResource(studentId, resourceId);
-        if (playbackVector == null) {
-            playbackVector = createPlaybackVector(studentId, resourceId);
+        if (isHotTier()) {
+            return recordHot(studentId, resourceId, PlaybackVector.toCountVector(playedSeconds, getVideoDuration(resourceId)));
+        }
+        if (isWriteBehind()) {
+            return bufferDelta(studentId, resourceId, PlaybackVector.toCountVector(playedSeconds, getVideoDuration(resourceId)));
         }
 
+        // Lock the existing playback vector, or create and lock a new one
+        PlaybackVector playbackVector = lockOrCreate(studentId, resourceId);
+
         // Update the playback data with the played seconds
+        int[] before = snapshot(playbackVector);
         playbackVector.incrementPlayCounts(playedSeconds);
         playbackVector.setLastUpdated(LocalDateTime.now());
 
-        // Save the updated playback vector
+        // Save the updated playback vector and fold the change into the resource heatmap
         playbackVectorMapper.update(playbackVector);
+        applyHeatmapDelta(resourceId, effectiveDelta(before, playbackVector));
 
         return playbackVector;
     }
@@ -104,54 +194,186 @@ public class PlaybackVectorService {
      * @param resourceId The resource ID
      * @param playbackCountVector Array where each index represents a second and the value represents how many times it was played
      * @return The updated PlaybackVector
+     * @throws IllegalArgumentException if the vector is longer than the video
      */
-    @Transactional
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public PlaybackVector updatePlaybackVectorWithCounts(Long studentId, Long resourceId, int[] playbackCountVector) {
-        // Get existing playback vector or create new one
-        PlaybackVector playbackVector = playbackVectorMapper.findByStudentAndResource(studentId, resourceId);
-        if (playbackVector == null) {
-            playbackVector = createPlaybackVector(studentId, resourceId);
+        if (isHotTier()) {
+            return recordHot(studentId, resourceId, PlaybackVector.checkCountVector(playbackCountVector, getVideoDuration(resourceId)));
+        }
+        if (isWriteBehind()) {
+            return bufferDelta(studentId, resourceId, PlaybackVector.checkCountVector(playbackCountVector, getVideoDuration(resourceId)));
+        }
+
+        // Lock the existing playback vector, or create and lock a new one
+        PlaybackVector playbackVector = lockOrCreate(studentId, resourceId);
+        if (playbackVector.getVideoDuration() != null) {
+            PlaybackVector.checkCountVector(playbackCountVector, playbackVector.getVideoDuration());
         }
 
         // Update the playback data with the count vector
+        int[] before = snapshot(playbackVector);
         playbackVector.updatePlayCountVector(playbackCountVector);
         playbackVector.setLastUpdated(LocalDateTime.now());
 
-        // Save the updated playback vector
+        // Save the updated playback vector and fold the change into the resource heatmap
         playbackVectorMapper.update(playbackVector);
+        applyHeatmapDelta(resourceId, effectiveDelta(before, playbackVector));
 
         return playbackVector;
     }
 
+    /**
+     * Update playback vector with watched [start, end) intervals
+     * @param studentId The student ID
+     * @param resourceId The resource ID
+     * @param intervals Watched intervals in seconds, each as [start, end)
+     * @return The updated PlaybackVector
+     * @throws IllegalArgumentException if an interval is empty or reaches past the video duration
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public PlaybackVector updatePlaybackVectorWithIntervals(Long studentId, Long resourceId, int[][] intervals) {
+        if (isHotTier()) {
+            return recordHot(studentId, resourceId, PlaybackVector.intervalsToCountVector(intervals, getVideoDuration(resourceId)));
+        }
+        if (isWriteBehind()) {
+            return bufferDelta(studentId, resourceId, PlaybackVector.intervalsToCountVector(intervals, getVideoDuration(resourceId)));
+        }
+
+        // Lock the existing playback vector, or create and lock a new one
+        PlaybackVector playbackVector = lockOrCreate(studentId, resourceId);
+
+        // Sweep the intervals into the playback data
+        int[] before = snapshot(playbackVector);
+        playbackVector.incrementIntervals(intervals);
+        playbackVector.setLastUpdated(LocalDateTime.now());
+
+        // Save the updated playback vector and fold the change into the resource heatmap
+        playbackVectorMapper.update(playbackVector);
+        applyHeatmapDelta(resourceId, effectiveDelta(before, playbackVector));
+
+        return playbackVector;
+    }
+
+    /**
+     * Merge a batch of deltas into playback_vectors with one locking read and one batched UPDATE.
+     * Rows that do not exist yet are created first with an upsert.
+     *
+     * @return the number of playback vectors written
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public int applyDeltas(List<PlaybackDelta> deltas) {
+        if (deltas == null || deltas.isEmpty()) {
+            return 0;
+        }
+
+        Map<String, PlaybackVector> vectors = new HashMap<>();
+        for (PlaybackVector vector : playbackVectorMapper.findByStudentResourcePairsForUpdate(deltas)) {
+            vectors.put(vectorKey(vector.getStudentId(), vector.getResourceId()), vector);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, PlaybackVector> touched = new LinkedHashMap<>();
+        Map<String, int[]> before = new HashMap<>();
+        for (PlaybackDelta delta : deltas) {
+            String key = vectorKey(delta.getStudentId(), delta.getResourceId());
+            PlaybackVector vector = vectors.get(key);
+            if (vector == null) {
+                vector = insertOrLock(delta.getStudentId(), delta.getResourceId());
+                vectors.put(key, vector);
+            }
+            before.putIfAbsent(key, snapshot(vector));
+            vector.applyDelta(delta.getCounts());
+            vector.setLastUpdated(now);
+            touched.put(key, vector);
+        }
+
+        playbackVectorMapper.updateBatch(new ArrayList<>(touched.values()));
+
+        // Sum the effective changes per resource and apply them to the heatmaps in the same transaction
+        Map<Long, int[]> heatmapDeltas = new HashMap<>();
+        for (Map.Entry<String, PlaybackVector> entry : touched.entrySet()) {
+            PlaybackVector vector = entry.getValue();
+            int[] change = effectiveDelta(before.get(entry.getKey()), vector);
+            heatmapDeltas.merge(vector.getResourceId(), change, PlaybackVectorService::addCounts);
+        }
+        resourceHeatmapService.applyDeltas(heatmapDeltas);
+
+        return touched.size();
+    }
+
+    /**
+     * Fold every row stored for a (student, resource) pair into the one with the lowest id and delete the rest.
+     * The summed counts stay the same, so the resource heatmap is unaffected.
+     *
+     * @return the number of rows deleted
+     */
+    @Transactional
+    public int mergeDuplicateVectors(Long studentId, Long resourceId) {
+        List<PlaybackVector> rows = new ArrayList<>(playbackVectorMapper.findByStudentResourcePairsForUpdate(
+                List.of(new PlaybackDelta(studentId, resourceId, null))));
+        if (rows.size() < 2) {
+            return 0;
+        }
+        rows.sort(Comparator.comparing(PlaybackVector::getId));
+
+        PlaybackVector keeper = rows.get(0);
+        for (PlaybackVector duplicate : rows.subList(1, rows.size())) {
+            keeper.applyDelta(duplicate.getPlaybackDataAsIntArray());
+        }
+        keeper.setLastUpdated(LocalDateTime.now());
+        playbackVectorMapper.update(keeper);
+        for (PlaybackVector duplicate : rows.subList(1, rows.size())) {
+            playbackVectorMapper.delete(duplicate.getId());
+        }
+        return rows.size() - 1;
+    }
+
+    /**
+     * Rewrite the given rows so they are stored in the current playback_data encoding,
+     * with covered_seconds and total_play_count recomputed from the data
+     *
+     * @return the number of rows rewritten
+     */
+    @Transactional
+    public int reencodeVectors(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return 0;
+        }
+        List<PlaybackVector> vectors = playbackVectorMapper.findByIdsForUpdate(ids);
+        if (!vectors.isEmpty()) {
+            playbackVectorMapper.updateBatch(vectors);
+        }
+        return vectors.size();
+    }
+
     /**
      * Generate a heatmap for a resource showing which seconds are most watched
-     * The heatmap represents the total count of plays for each second across all students
+     * The heatmap represents the total count of plays for each second across all students.
+     * It is read from the resource_heatmaps aggregate, which is built from the raw vectors the first time it is needed.
      */
     public int[] generateHeatmap(Long resourceId) {
-        // Get all playback vectors for this resource
-        List<PlaybackVector> playbackVectors = getPlaybackVectorsByResource(resourceId);
-        if (playbackVectors.isEmpty()) {
-            return new int[0];
-        }
-
-        // Determine the max duration
-        int maxDuration = playbackVectors.stream()
-                .mapToInt(PlaybackVector::getVideoDuration)
-                .max()
-                .orElse(0);
-
-        // Initialize heatmap array
-        int[] heatmap = new int[maxDuration];
-
-        // Aggregate data from all playback vectors by adding play counts for each second
-        for (PlaybackVector vector : playbackVectors) {
-            int[] playbackData = vector.getPlaybackDataAsIntArray();
-            for (int i = 0; i < playbackData.length && i < maxDuration; i++) {
-                heatmap[i] += playbackData[i];
-            }
+        int[] heatmap = resourceHeatmapService.findHeatmap(resourceId);
+        if (heatmap == null) {
+            resourceHeatmapService.rebuildHeatmap(resourceId);
+            heatmap = resourceHeatmapService.findHeatmap(resourceId);
         }
+        return heatmap != null ? heatmap : new int[0];
+    }
 
-        return heatmap;
+    /**
+     * Generate a bucketed heatmap with sum and max play counts per bucket, served from the precomputed levels
+     *
+     * @param targetBuckets maximum number of buckets, used when resolutionSeconds is null
+     * @param resolutionSeconds bucket width in seconds, e.g. 1, 10 or 60
+     */
+    public ResourceHeatmapLevel generateHeatmapLevel(Long resourceId, Integer targetBuckets, Integer resolutionSeconds) {
+        ResourceHeatmapLevel level = resourceHeatmapService.findHeatmapLevel(resourceId, targetBuckets, resolutionSeconds);
+        if (level == null) {
+            resourceHeatmapService.rebuildHeatmap(resourceId);
+            level = resourceHeatmapService.findHeatmapLevel(resourceId, targetBuckets, resolutionSeconds);
+        }
+        return level;
     }
 
     /**
@@ -165,6 +387,140 @@ public class PlaybackVectorService {
         return playbackVector.calculatePlaybackPercentage();
     }
 
+    /**
+     * Video duration in seconds of a resource, which bounds the deltas built from client input
+     *
+     * @throws IllegalArgumentException if the resource does not exist
+     */
+    public int getVideoDuration(Long resourceId) {
+        Resource resource = resourceService.getResourceById(resourceId)
+                .orElseThrow(() -> new IllegalArgumentException("Resource not found: " + resourceId));
+        return getVideoDuration(resource);
+    }
+
+    private boolean isWriteBehind() {
+        return playbackWriteBuffer != null && playbackWriteBuffer.isEnabled();
+    }
+
+    private boolean isHotTier() {
+        return playbackHotTier != null && playbackHotTier.isEnabled();
+    }
+
+    /**
+     * Locking read of the (student, resource) row. READ COMMITTED keeps a miss from taking a gap lock,
+     * so two first heartbeats for the same pair queue on the insert instead of deadlocking.
+     */
+    private PlaybackVector lockOrCreate(Long studentId, Long resourceId) {
+        PlaybackVector playbackVector = playbackVectorMapper.findByStudentAndResourceForUpdate(studentId, resourceId);
+        return playbackVector != null ? playbackVector : insertOrLock(studentId, resourceId);
+    }
+
+    /**
+     * Insert an empty vector, or lock the row a concurrent request inserted first (uk_student_resource),
+     * and return the stored row
+     */
+    private PlaybackVector insertOrLock(Long studentId, Long resourceId) {
+        // Get resource to determine video duration
+        Resource resource = resourceService.getResourceById(resourceId)
+                .orElseThrow(() -> new IllegalArgumentException("Resource not found: " + resourceId));
+
+        // Create new playback vector
+        PlaybackVector playbackVector = new PlaybackVector();
+        playbackVector.setStudentId(studentId);
+        playbackVector.setResourceId(resourceId);
+        playbackVector.setVideoDuration(getVideoDuration(resource)); // Implement this method based on resource metadata
+        // Initialize with empty array that has proper length
+        int[] emptyData = new int[playbackVector.getVideoDuration()];
+        playbackVector.setPlaybackData(emptyData); // Initialize empty vector with zeros
+        playbackVector.setLastUpdated(LocalDateTime.now());
+
+        playbackVectorMapper.upsert(playbackVector);
+
+        // On a duplicate the upsert kept the other request's row, so read back what is actually stored
+        PlaybackVector stored = playbackVectorMapper.findByIdForUpdate(playbackVector.getId());
+        return stored != null ? stored : playbackVector;
+    }
+
+    /**
+     * Record a delta in Redis. The counts already in playback_vectors come from the base cached in Redis next to the
+     * increments, so MySQL is read once per pair after each compaction, and a pair without a row gets one when the
+     * compactor writes its increments.
+     * A base loaded just before a compaction commits can miss that compaction until the pair is compacted again.
+     */
+    private PlaybackVector recordHot(Long studentId, Long resourceId, int[] delta) {
+        // Cached per resource, and fails for an unknown resource before anything is queued for the compactor
+        int videoDuration = getVideoDuration(resourceId);
+        PlaybackHotTier.Recorded recorded = playbackHotTier.record(studentId, resourceId, delta);
+
+        PlaybackVector stored;
+        if (recorded.getStored() != null) {
+            stored = new PlaybackVector(null, studentId, resourceId, recorded.getStored(), recorded.getDuration(), null);
+        } else {
+            stored = playbackVectorMapper.findByStudentAndResource(studentId, resourceId);
+            if (stored == null) {
+                stored = new PlaybackVector(null, studentId, resourceId, new int[videoDuration], videoDuration, null);
+            }
+            int storedDuration = stored.getVideoDuration() != null ? stored.getVideoDuration() : videoDuration;
+            playbackHotTier.cacheStored(studentId, resourceId, stored.getPlaybackData(), storedDuration);
+        }
+        return withPending(stored, recorded.getPending());
+    }
+
+    private static PlaybackVector withPending(PlaybackVector stored, int[] pending) {
+        if (pending.length == 0) {
+            return stored;
+        }
+        PlaybackVector view = stored.copy();
+        view.applyDelta(pending);
+        return view;
+    }
+
+    /**
+     * Record a delta in the write-behind buffer; the database is only read the first time a key is seen since the last flush
+     */
+    private PlaybackVector bufferDelta(Long studentId, Long resourceId, int[] delta) {
+        return playbackWriteBuffer.record(studentId, resourceId, delta, () -> {
+            PlaybackVector stored = playbackVectorMapper.findByStudentAndResource(studentId, resourceId);
+            return stored != null ? stored : createPlaybackVector(studentId, resourceId);
+        });
+    }
+
+    private void applyHeatmapDelta(Long resourceId, int[] delta) {
+        Map<Long, int[]> deltas = new HashMap<>();
+        deltas.put(resourceId, delta);
+        resourceHeatmapService.applyDeltas(deltas);
+    }
+
+    private static int[] snapshot(PlaybackVector vector) {
+        return vector.getPlaybackData() != null ? vector.getPlaybackData().clone() : new int[0];
+    }
+
+    /**
+     * The change a vector contributes to the resource heatmap: after - before, limited to the video duration
+     * like {@link PlaybackVector#getPlaybackDataAsIntArray()}
+     */
+    static int[] effectiveDelta(int[] before, PlaybackVector vector) {
+        int[] after = vector.getPlaybackDataAsIntArray();
+        int[] delta = new int[after.length];
+        for (int i = 0; i < after.length; i++) {
+            delta[i] = after[i] - (before != null && i < before.length ? before[i] : 0);
+        }
+        return delta;
+    }
+
+    private static int[] addCounts(int[] a, int[] b) {
+        int[] sum = a.length >= b.length ? a : b;
+        int[] other = sum == a ? b : a;
+        for (int i = 0; i < other.length; i++) {
+            sum[i] += other[i];
+        }
+        return sum;
+    }
+
+    private static String vectorKey(Long studentId, Long resourceId) {
+        return studentId + ":" + resourceId;
+    }
+
     /**
      * Helper method to determine video duration from resource metadata
      * In a real application, this would extract the duration from the video file
@@ -0,0 +1,131 @@
+package org.bedrock.teateach.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bedrock.teateach.beans.PlaybackDelta;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Periodically merges the deltas held in {@link PlaybackWriteBuffer} into playback_vectors.
+ * A flush is also forced when the buffer grows past its memory bound and when the application shuts down.
+ */
+@Component
+@Slf4j
+public class PlaybackWriteBehindFlusher {
+
+    private final PlaybackWriteBuffer playbackWriteBuffer;
+    private final PlaybackVectorService playbackVectorService;
+    private final int batchSize;
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ExecutorService forcedFlushExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "playback-forced-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public PlaybackWriteBehindFlusher(PlaybackWriteBuffer playbackWriteBuffer,
+                                      PlaybackVectorService playbackVectorService,
+                                      @Value("${playback.write-behind.batch-size:200}") int batchSize) {
+        this.playbackWriteBuffer = playbackWriteBuffer;
+        this.playbackVectorService = playbackVectorService;
+        this.batchSize = Math.max(1, batchSize);
+        playbackWriteBuffer.setOverflowListener(this::requestFlush);
+    }
+
+    @Scheduled(fixedDelayString = "${playback.write-behind.flush-interval-ms:5000}")
+    public void scheduledFlush() {
+        if (playbackWriteBuffer.isEnabled()) {
+            flush();
+        }
+    }
+
+    /**
+     * Flush in the background because the buffer exceeded its memory bound
+     */
+    public void requestFlush() {
+        if (forcedFlushExecutor.isShutdown() || !flushRequested.compareAndSet(false, true)) {
+            return;
+        }
+        forcedFlushExecutor.execute(() -> {
+            flushRequested.set(false);
+            flush();
+        });
+    }
+
+    /**
+     * Drain the buffer and apply it in batched updates
+     *
+     * @return the number of playback vectors written
+     */
+    public int flush() {
+        if (!flushLock.tryLock()) {
+            // Another flush is already draining the buffer
+            return 0;
+        }
+        try {
+            return drainAndApply();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private int drainAndApply() {
+        List<PlaybackWriteBuffer.Pending> drained = playbackWriteBuffer.drain();
+        if (drained.isEmpty()) {
+            return 0;
+        }
+
+        int written = 0;
+        for (int start = 0; start < drained.size(); start += batchSize) {
+            List<PlaybackWriteBuffer.Pending> batch = drained.subList(start, Math.min(start + batchSize, drained.size()));
+            List<PlaybackDelta> deltas = new ArrayList<>(batch.size());
+            for (PlaybackWriteBuffer.Pending pending : batch) {
+                deltas.add(pending.toDelta());
+            }
+
+            try {
+                written += playbackVectorService.applyDeltas(deltas);
+            } catch (Exception e) {
+                log.error("Failed to flush {} playback deltas, requeueing", batch.size(), e);
+                playbackWriteBuffer.requeue(new ArrayList<>(batch));
+            }
+        }
+
+        log.debug("Flushed {} playback vectors", written);
+        return written;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        forcedFlushExecutor.shutdown();
+        try {
+            forcedFlushExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (playbackWriteBuffer.isEnabled()) {
+            log.info("Flushing {} pending playback entries before shutdown", playbackWriteBuffer.size());
+            // Wait for any in-flight flush instead of skipping, so nothing is left in memory
+            flushLock.lock();
+            try {
+                drainAndApply();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+}
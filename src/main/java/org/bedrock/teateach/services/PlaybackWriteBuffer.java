@@ -0,0 +1,279 @@
+package org.bedrock.teateach.services;
+
+import org.bedrock.teateach.beans.PlaybackDelta;
+import org.bedrock.teateach.beans.PlaybackVector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Striped in-memory accumulator for playback deltas (write-behind mode).
+ * Heartbeats for the same (studentId, resourceId) are merged here and written to
+ * playback_vectors in batches by {@link PlaybackWriteBehindFlusher}.
+ * Memory is bounded by the number of pending entries and by the ints they hold (the stored vector each entry was
+ * started from plus its accumulated delta), since one entry of a long video holds far more than one of a short one.
+ */
+@Component
+public class PlaybackWriteBuffer {
+
+    private final boolean enabled;
+    private final int maxPendingEntries;
+    private final long maxPendingInts;
+    private final Stripe[] stripes;
+    private final AtomicInteger pendingEntries = new AtomicInteger();
+    private final AtomicLong pendingInts = new AtomicLong();
+    private volatile Runnable overflowListener;
+
+    public PlaybackWriteBuffer(@Value("${playback.write-behind.enabled:false}") boolean enabled,
+                               @Value("${playback.write-behind.stripes:16}") int stripeCount,
+                               @Value("${playback.write-behind.max-pending-entries:5000}") int maxPendingEntries,
+                               @Value("${playback.write-behind.max-pending-ints:5000000}") long maxPendingInts) {
+        this.enabled = enabled;
+        this.maxPendingEntries = maxPendingEntries;
+        this.maxPendingInts = maxPendingInts;
+        this.stripes = new Stripe[Math.max(1, stripeCount)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Register a callback that is run when the pending entries or the ints they hold exceed the memory bound
+     */
+    public void setOverflowListener(Runnable overflowListener) {
+        this.overflowListener = overflowListener;
+    }
+
+    /**
+     * Merge a delta into the pending entry for the student and resource.
+     * The base vector is loaded (outside the stripe lock) only the first time a key is seen since the last flush.
+     *
+     * @return a detached view of the stored vector with all pending deltas applied
+     */
+    public PlaybackVector record(Long studentId, Long resourceId, int[] delta, Supplier<PlaybackVector> baseLoader) {
+        Key key = new Key(studentId, resourceId);
+        Stripe stripe = stripeFor(key);
+        PlaybackVector view = null;
+        long totalHeld = 0;
+
+        stripe.lock.lock();
+        try {
+            Pending pending = stripe.entries.get(key);
+            if (pending != null) {
+                int held = pending.heldInts();
+                pending.merge(delta);
+                totalHeld = pendingInts.addAndGet(pending.heldInts() - held);
+                view = pending.view.copy();
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+        if (view != null) {
+            if (totalHeld > maxPendingInts) {
+                notifyOverflow();
+            }
+            return view;
+        }
+
+        PlaybackVector base = baseLoader.get();
+        boolean added = false;
+
+        stripe.lock.lock();
+        try {
+            Pending pending = stripe.entries.get(key);
+            int held = 0;
+            if (pending == null) {
+                pending = new Pending(key, base.copy());
+                stripe.entries.put(key, pending);
+                added = true;
+            } else {
+                held = pending.heldInts();
+            }
+            pending.merge(delta);
+            totalHeld = pendingInts.addAndGet(pending.heldInts() - held);
+            view = pending.view.copy();
+        } finally {
+            stripe.lock.unlock();
+        }
+
+        if ((added && pendingEntries.incrementAndGet() > maxPendingEntries) || totalHeld > maxPendingInts) {
+            notifyOverflow();
+        }
+        return view;
+    }
+
+    /**
+     * Get the stored vector with pending deltas applied, or null if nothing is pending for the key
+     */
+    public PlaybackVector overlay(Long studentId, Long resourceId) {
+        Key key = new Key(studentId, resourceId);
+        Stripe stripe = stripeFor(key);
+
+        stripe.lock.lock();
+        try {
+            Pending pending = stripe.entries.get(key);
+            return pending != null ? pending.view.copy() : null;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Remove and return all pending entries
+     */
+    public List<Pending> drain() {
+        List<Pending> drained = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            Map<Key, Pending> entries;
+            stripe.lock.lock();
+            try {
+                entries = stripe.entries;
+                stripe.entries = new HashMap<>();
+            } finally {
+                stripe.lock.unlock();
+            }
+            drained.addAll(entries.values());
+        }
+        pendingEntries.addAndGet(-drained.size());
+        long held = 0;
+        for (Pending pending : drained) {
+            held += pending.heldInts();
+        }
+        pendingInts.addAndGet(-held);
+        return drained;
+    }
+
+    /**
+     * Put entries back after a failed flush so that no counts are lost
+     */
+    public void requeue(List<Pending> failed) {
+        int added = 0;
+        long held = 0;
+        for (Pending entry : failed) {
+            Stripe stripe = stripeFor(entry.key);
+            stripe.lock.lock();
+            try {
+                Pending current = stripe.entries.get(entry.key);
+                if (current == null) {
+                    stripe.entries.put(entry.key, entry);
+                    added++;
+                    held += entry.heldInts();
+                } else {
+                    // A newer entry was started from the pre-flush row, so it is missing the failed delta too
+                    int before = current.heldInts();
+                    current.merge(entry.delta);
+                    held += current.heldInts() - before;
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        pendingEntries.addAndGet(added);
+        pendingInts.addAndGet(held);
+    }
+
+    public int size() {
+        return pendingEntries.get();
+    }
+
+    /**
+     * Ints held by the pending entries
+     */
+    public long heldInts() {
+        return pendingInts.get();
+    }
+
+    public boolean isOverCapacity() {
+        return pendingEntries.get() > maxPendingEntries || pendingInts.get() > maxPendingInts;
+    }
+
+    private void notifyOverflow() {
+        Runnable listener = overflowListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    private Stripe stripeFor(Key key) {
+        return stripes[Math.floorMod(key.hashCode(), stripes.length)];
+    }
+
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private Map<Key, Pending> entries = new HashMap<>();
+    }
+
+    private static final class Key {
+        private final Long studentId;
+        private final Long resourceId;
+
+        private Key(Long studentId, Long resourceId) {
+            this.studentId = studentId;
+            this.resourceId = resourceId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return Objects.equals(studentId, other.studentId) && Objects.equals(resourceId, other.resourceId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(studentId, resourceId);
+        }
+    }
+
+    /**
+     * Accumulated delta for one (studentId, resourceId) plus the stored vector it was started from
+     */
+    public static final class Pending {
+        private final Key key;
+        private final PlaybackVector view;
+        private int[] delta = new int[0];
+
+        private Pending(Key key, PlaybackVector base) {
+            this.key = key;
+            this.view = base;
+        }
+
+        private void merge(int[] counts) {
+            if (counts == null || counts.length == 0) {
+                return;
+            }
+            if (delta.length < counts.length) {
+                int[] grown = new int[counts.length];
+                System.arraycopy(delta, 0, grown, 0, delta.length);
+                delta = grown;
+            }
+            for (int i = 0; i < counts.length; i++) {
+                delta[i] += counts[i];
+            }
+            view.applyDelta(counts);
+        }
+
+        private int heldInts() {
+            int[] data = view.getPlaybackData();
+            return (data != null ? data.length : 0) + delta.length;
+        }
+
+        public PlaybackDelta toDelta() {
+            return new PlaybackDelta(key.studentId, key.resourceId, delta.clone());
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package org.bedrock.teateach.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.bedrock.teateach.beans.PlaybackVector;
+import org.bedrock.teateach.beans.ResourceHeatmap;
+import org.bedrock.teateach.beans.ResourceHeatmapLevel;
+import org.bedrock.teateach.beans.ResourceHeatmapShard;
+import org.bedrock.teateach.dto.HeatmapRebuildResult;
+import org.bedrock.teateach.mappers.PlaybackVectorMapper;
+import org.bedrock.teateach.mappers.ResourceHeatmapLevelMapper;
+import org.bedrock.teateach.mappers.ResourceHeatmapMapper;
+import org.bedrock.teateach.mappers.ResourceHeatmapShardMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maintains the resource_heatmaps aggregate so that a heatmap read is a fetch of one row plus a few shard rows.
+ * <p>
+ * Playback writes add their effective deltas, in the same transaction, to one of the resource's
+ * resource_heatmap_shards rows picked by the writing thread, so viewers of the same video lock different rows.
+ * Reads add the shards to the aggregate, and {@link #foldShards} periodically moves them into it.
+ * A missing aggregate row means "not materialized yet": it is built from the raw vectors on first read or by
+ * {@link #rebuildHeatmap}. The rebuild locks the aggregate row and the shards before reading the vectors, and a
+ * writer creating a shard row locks the aggregate row first, so a concurrent writer either is already part of the
+ * recomputed sum or waits for the locks and adds its delta afterwards.
+ * <p>
+ * Downsampled 10s/60s levels (sum and max per bucket) are kept next to the 1s aggregate, so a bucketed heatmap read
+ * costs O(buckets) however long the video is. A fold updates only the buckets its deltas touch, and they lag the
+ * aggregate by at most a fold interval; the rebuild rewrites them whole.
+ */
+@Service
+@Slf4j
+public class ResourceHeatmapService {
+
+    /** Stored downsampled levels, finest first; the 1s level is resource_heatmaps itself */
+    static final int[] LEVEL_RESOLUTIONS = {10, 60};
+    static final int DEFAULT_BUCKETS = 200;
+
+    private final ResourceHeatmapMapper resourceHeatmapMapper;
+    private final ResourceHeatmapLevelMapper resourceHeatmapLevelMapper;
+    private final ResourceHeatmapShardMapper resourceHeatmapShardMapper;
+    private final PlaybackVectorMapper playbackVectorMapper;
+    private final int shards;
+
+    @Autowired
+    public ResourceHeatmapService(ResourceHeatmapMapper resourceHeatmapMapper,
+                                  ResourceHeatmapLevelMapper resourceHeatmapLevelMapper,
+                                  ResourceHeatmapShardMapper resourceHeatmapShardMapper,
+                                  PlaybackVectorMapper playbackVectorMapper,
+                                  @Value("${playback.heatmap.shards:16}") int shards) {
+        this.resourceHeatmapMapper = resourceHeatmapMapper;
+        this.resourceHeatmapLevelMapper = resourceHeatmapLevelMapper;
+        this.resourceHeatmapShardMapper = resourceHeatmapShardMapper;
+        this.playbackVectorMapper = playbackVectorMapper;
+        this.shards = Math.max(1, shards);
+    }
+
+    /**
+     * Get the materialized heatmap of a resource
+     *
+     * @return the heatmap, or null if the aggregate has not been built for this resource yet
+     */
+    public int[] findHeatmap(Long resourceId) {
+        ResourceHeatmap heatmap = resourceHeatmapMapper.findByResourceId(resourceId);
+        if (heatmap == null) {
+            return null;
+        }
+        addShards(heatmap, resourceHeatmapShardMapper.findByResourceId(resourceId));
+        return toArray(heatmap);
+    }
+
+    /**
+     * Get a bucketed heatmap of a resource, either with a fixed bucket resolution or with at most targetBuckets buckets.
+     * The coarsest stored level that is fine enough is merged down, so the work is bounded by about ten times the
+     * number of buckets returned.
+     *
+     * @param targetBuckets maximum number of buckets, used when resolutionSeconds is null (default 200)
+     * @param resolutionSeconds bucket width in seconds, e.g. 1, 10 or 60
+     * @return the level, or null if the aggregate has not been built for this resource yet
+     */
+    public ResourceHeatmapLevel findHeatmapLevel(Long resourceId, Integer targetBuckets, Integer resolutionSeconds) {
+        List<ResourceHeatmapLevel> stored = resourceHeatmapLevelMapper.findByResourceId(resourceId);
+        if (stored.size() < LEVEL_RESOLUTIONS.length) {
+            return null;
+        }
+
+        if (resolutionSeconds != null) {
+            int resolution = Math.max(1, resolutionSeconds);
+            for (int i = stored.size() - 1; i >= 0; i--) {
+                ResourceHeatmapLevel level = stored.get(i);
+                if (resolution % level.getResolutionSeconds() == 0) {
+                    return level.coarsen(resolution / level.getResolutionSeconds());
+                }
+            }
+            ResourceHeatmapLevel perSecond = findPerSecondLevel(resourceId);
+            return perSecond != null ? perSecond.coarsen(resolution) : null;
+        }
+
+        int target = targetBuckets != null ? Math.max(1, targetBuckets) : DEFAULT_BUCKETS;
+        ResourceHeatmapLevel source = null;
+        for (int i = stored.size() - 1; i >= 0 && source == null; i--) {
+            if (stored.get(i).getBucketCount() >= target) {
+                source = stored.get(i);
+            }
+        }
+        if (source == null) {
+            source = findPerSecondLevel(resourceId);
+            if (source == null) {
+                return null;
+            }
+        }
+        int factor = (source.getBucketCount() + target - 1) / target;
+        return source.coarsen(factor);
+    }
+
+    /**
+     * Add per-resource playback deltas to a shard of the materialized aggregates.
+     * Rows are locked in resource id order so concurrent batches cannot deadlock on each other.
+     *
+     * @param deltasByResource effective change of the summed play counts, keyed by resource id
+     */
+    @Transactional
+    public void applyDeltas(Map<Long, int[]> deltasByResource) {
+        if (deltasByResource == null || deltasByResource.isEmpty()) {
+            return;
+        }
+
+        // The same shard for every write of a transaction, so it never waits for the aggregate row while holding a shard
+        int shard = (int) Math.floorMod(Thread.currentThread().getId(), (long) shards);
+        LocalDateTime now = LocalDateTime.now();
+        for (Map.Entry<Long, int[]> entry : new TreeMap<>(deltasByResource).entrySet()) {
+            ResourceHeatmapShard row = lockShard(entry.getKey(), shard);
+            if (row == null) {
+                // Not materialized yet; the rebuild will pick this change up from the raw vectors
+                continue;
+            }
+            row.add(entry.getValue());
+            row.setLastUpdated(now);
+            resourceHeatmapShardMapper.update(row);
+        }
+    }
+
+    /**
+     * Resources whose shards hold deltas that are not part of resource_heatmaps yet
+     */
+    public List<Long> findResourcesWithPendingShards(int limit) {
+        return resourceHeatmapShardMapper.findPendingResourceIds(limit);
+    }
+
+    /**
+     * Move the pending shard deltas of a resource into its aggregate and refresh the downsampled levels
+     *
+     * @return whether any delta was folded
+     */
+    @Transactional
+    public boolean foldShards(Long resourceId) {
+        // Aggregate row before shards, the same order as the rebuild and as writers creating a shard
+        ResourceHeatmap heatmap = resourceHeatmapMapper.findByResourceIdForUpdate(resourceId);
+        List<ResourceHeatmapShard> pending = resourceHeatmapShardMapper.findByResourceIdForUpdate(resourceId);
+        if (heatmap == null || pending.stream().allMatch(row -> row.getDeltaData() == null)) {
+            return false;
+        }
+
+        ResourceHeatmapShard folded = new ResourceHeatmapShard();
+        for (ResourceHeatmapShard row : pending) {
+            folded.add(row.getDeltaData());
+        }
+        heatmap.add(folded.getDeltaData());
+        heatmap.setLastUpdated(LocalDateTime.now());
+        resourceHeatmapMapper.update(heatmap);
+        resourceHeatmapShardMapper.clearByResourceId(resourceId);
+        updateLevels(heatmap, folded.getDeltaData());
+        return true;
+    }
+
+    /**
+     * Recompute a resource heatmap from the raw playback vectors, compare it with the incremental aggregate and store it
+     */
+    @Transactional
+    public HeatmapRebuildResult rebuildHeatmap(Long resourceId) {
+        // Take the row locks before reading the vectors
+        boolean created = resourceHeatmapMapper.insertIgnore(resourceId) > 0;
+        ResourceHeatmap heatmap = resourceHeatmapMapper.findByResourceIdForUpdate(resourceId);
+        List<ResourceHeatmapShard> pending = resourceHeatmapShardMapper.findByResourceIdForUpdate(resourceId);
+        int[] incremental = null;
+        if (!created) {
+            ResourceHeatmap sum = new ResourceHeatmap(resourceId, toArray(heatmap), null, null);
+            addShards(sum, pending);
+            incremental = toArray(sum);
+        }
+
+        int[] recomputed = sumPlaybackVectors(resourceId);
+
+        int mismatched = 0;
+        int firstMismatch = -1;
+        if (incremental != null) {
+            int length = Math.max(incremental.length, recomputed.length);
+            for (int i = 0; i < length; i++) {
+                int expected = i < recomputed.length ? recomputed[i] : 0;
+                int actual = i < incremental.length ? incremental[i] : 0;
+                if (expected != actual) {
+                    mismatched++;
+                    if (firstMismatch < 0) {
+                        firstMismatch = i;
+                    }
+                }
+            }
+            if (mismatched > 0) {
+                log.warn("Heatmap aggregate for resource {} differed from raw vectors at {} seconds (first at {})",
+                        resourceId, mismatched, firstMismatch);
+            }
+        }
+
+        heatmap.setHeatmapData(recomputed);
+        heatmap.setDuration(recomputed.length);
+        heatmap.setLastUpdated(LocalDateTime.now());
+        resourceHeatmapMapper.update(heatmap);
+        if (!pending.isEmpty()) {
+            resourceHeatmapShardMapper.clearByResourceId(resourceId);
+        }
+        refreshLevels(heatmap);
+
+        return new HeatmapRebuildResult(resourceId, !created, mismatched == 0, mismatched, firstMismatch);
+    }
+
+    /**
+     * Sum the raw playback vectors of a resource, streaming them so a popular resource does not spike the heap
+     */
+    private int[] sumPlaybackVectors(Long resourceId) {
+        try (Cursor<PlaybackVector> cursor = playbackVectorMapper.streamByResourceId(resourceId)) {
+            return PlaybackAnalyticsAggregator.aggregate(resourceId, cursor).getHeatmap();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to close playback vector cursor", e);
+        }
+    }
+
+    /**
+     * Lock a shard row of a materialized aggregate, creating it on the first write to that shard
+     *
+     * @return the locked row, or null if the aggregate has not been built for this resource yet
+     */
+    private ResourceHeatmapShard lockShard(Long resourceId, int shard) {
+        ResourceHeatmapShard row = resourceHeatmapShardMapper.findForUpdate(resourceId, shard);
+        if (row != null) {
+            return row;
+        }
+        // Waits for a running rebuild, which locks the aggregate row before the shards it reads
+        if (resourceHeatmapMapper.findByResourceIdForUpdate(resourceId) == null) {
+            return null;
+        }
+        resourceHeatmapShardMapper.insertIgnore(resourceId, shard);
+        return resourceHeatmapShardMapper.findForUpdate(resourceId, shard);
+    }
+
+    private static void addShards(ResourceHeatmap heatmap, List<ResourceHeatmapShard> shardRows) {
+        for (ResourceHeatmapShard row : shardRows) {
+            heatmap.add(row.getDeltaData());
+        }
+    }
+
+    /**
+     * Update only the level buckets covering the non-zero range of a delta already added to the 1s aggregate,
+     * so the cost follows the length of the change rather than of the video; callers hold the aggregate row lock
+     */
+    private void updateLevels(ResourceHeatmap heatmap, int[] delta) {
+        int from = 0;
+        while (from < delta.length && delta[from] == 0) {
+            from++;
+        }
+        int to = delta.length;
+        while (to > from && delta[to - 1] == 0) {
+            to--;
+        }
+        if (from == to) {
+            return;
+        }
+
+        List<ResourceHeatmapLevel> levels = resourceHeatmapLevelMapper.findByResourceId(heatmap.getResourceId());
+        if (levels.size() < LEVEL_RESOLUTIONS.length) {
+            refreshLevels(heatmap);
+            return;
+        }
+        for (ResourceHeatmapLevel level : levels) {
+            level.applyDelta(delta, heatmap.getHeatmapData(), heatmap.getDuration(), from, to);
+            level.setLastUpdated(heatmap.getLastUpdated());
+        }
+        resourceHeatmapLevelMapper.upsertBatch(levels);
+    }
+
+    /**
+     * Rewrite the downsampled levels from the 1s aggregate; callers hold the aggregate row lock
+     */
+    private void refreshLevels(ResourceHeatmap heatmap) {
+        int[] perSecond = toArray(heatmap);
+        List<ResourceHeatmapLevel> levels = new ArrayList<>(LEVEL_RESOLUTIONS.length);
+        for (int resolution : LEVEL_RESOLUTIONS) {
+            ResourceHeatmapLevel level = ResourceHeatmapLevel.downsample(heatmap.getResourceId(), perSecond, resolution);
+            level.setLastUpdated(heatmap.getLastUpdated());
+            levels.add(level);
+        }
+        resourceHeatmapLevelMapper.upsertBatch(levels);
+    }
+
+    private ResourceHeatmapLevel findPerSecondLevel(Long resourceId) {
+        ResourceHeatmap heatmap = resourceHeatmapMapper.findByResourceId(resourceId);
+        if (heatmap == null) {
+            return null;
+        }
+        ResourceHeatmapLevel level = ResourceHeatmapLevel.downsample(resourceId, toArray(heatmap), 1);
+        level.setLastUpdated(heatmap.getLastUpdated());
+        return level;
+    }
+
+    private static int[] toArray(ResourceHeatmap heatmap) {
+        if (heatmap == null || heatmap.getHeatmapData() == null) {
+            return new int[0];
+        }
+        int duration = heatmap.getDuration() != null ? heatmap.getDuration() : heatmap.getHeatmapData().length;
+        int[] result = new int[duration];
+        System.arraycopy(heatmap.getHeatmapData(), 0, result, 0, Math.min(duration, heatmap.getHeatmapData().length));
+        return result;
+    }
+}
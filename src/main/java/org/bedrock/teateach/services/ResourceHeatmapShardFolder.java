@@ -0,0 +1,65 @@
+package org.bedrock.teateach.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Periodically folds the pending resource_heatmap_shards deltas into resource_heatmaps, one resource per transaction
+ */
+@Component
+@Slf4j
+public class ResourceHeatmapShardFolder {
+
+    private final ResourceHeatmapService resourceHeatmapService;
+    private final int batchSize;
+    private final ReentrantLock foldLock = new ReentrantLock();
+
+    @Autowired
+    public ResourceHeatmapShardFolder(ResourceHeatmapService resourceHeatmapService,
+                                      @Value("${playback.heatmap.fold-batch-size:500}") int batchSize) {
+        this.resourceHeatmapService = resourceHeatmapService;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Scheduled(fixedDelayString = "${playback.heatmap.fold-interval-ms:5000}")
+    public void scheduledFold() {
+        fold();
+    }
+
+    /**
+     * Fold the shards of up to one batch of resources
+     *
+     * @return the number of resources whose aggregate changed
+     */
+    public int fold() {
+        if (!foldLock.tryLock()) {
+            return 0;
+        }
+        try {
+            int folded = 0;
+            List<Long> resourceIds = resourceHeatmapService.findResourcesWithPendingShards(batchSize);
+            for (Long resourceId : resourceIds) {
+                try {
+                    if (resourceHeatmapService.foldShards(resourceId)) {
+                        folded++;
+                    }
+                } catch (Exception e) {
+                    // The deltas stay in the shards and are folded on the next run
+                    log.error("Failed to fold heatmap shards of resource {}, will retry", resourceId, e);
+                }
+            }
+            if (folded > 0) {
+                log.debug("Folded heatmap shards of {} resources", folded);
+            }
+            return folded;
+        } finally {
+            foldLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package org.bedrock.teateach.services;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Published when the tasks, and with them the courses, that resources are associated with changed
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class ResourceLinksChangedEvent {
+    private final List<Long> resourceIds;
+}
@@ -90,6 +90,13 @@ public class ResourceService {
     public Resource updateResource(Resource resource) {
         resource.setUpdatedAt(LocalDateTime.now());
         resourceMapper.update(resource);
+
+        // Re-embed the resource if its searchable content changed
+        try {
+            llmService.addResourceToVectorStore(resource);
+        } catch (Exception e) {
+            System.err.println("Failed to update resource in vector store: " + e.getMessage());
+        }
         return resource;
     }
 
@@ -109,6 +116,12 @@ public class ResourceService {
             }
             // Then delete the database entry
             resourceMapper.delete(id);
+
+            try {
+                llmService.removeResourceFromVectorStore(id);
+            } catch (Exception e) {
+                System.err.println("Failed to remove resource from vector store: " + e.getMessage());
+            }
         }
     }
 
@@ -0,0 +1,17 @@
+package org.bedrock.teateach.services;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Published when data that feeds the ability analysis of a student changed:
+ * a submission was graded or an enrollment was added, removed or changed
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class StudentAbilityDataChangedEvent {
+    private final Long studentId; // Student number (students.student_id), the key of the ability profile
+    private final String reason;
+}
@@ -0,0 +1,150 @@
+package org.bedrock.teateach.typehandler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Versioned binary encoding for playback count vectors.
+ * <p>
+ * Layout (version 1): MAGIC, VERSION, varint(length), then (varint(runLength), zigzag varint(value)) pairs
+ * until the runs cover the whole array. Playback vectors are mostly long runs of 0 or 1, so a 2-hour
+ * lecture usually fits in a few dozen bytes instead of ~15KB of JSON text.
+ * <p>
+ * Anything that does not start with MAGIC is treated as the legacy JSON text format, so rows written
+ * before the migration stay readable.
+ */
+public final class CompactIntArrayCodec {
+
+    /** 0xC1 can never appear in UTF-8 text, so it cannot be confused with a JSON array */
+    static final byte MAGIC = (byte) 0xC1;
+    static final byte VERSION_RLE_VARINT = 1;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private CompactIntArrayCodec() {
+    }
+
+    public static byte[] encode(int[] values) {
+        int[] safeValues = values != null ? values : new int[0];
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16);
+        out.write(MAGIC);
+        out.write(VERSION_RLE_VARINT);
+        writeVarint(out, safeValues.length);
+
+        int i = 0;
+        while (i < safeValues.length) {
+            int value = safeValues[i];
+            int run = 1;
+            while (i + run < safeValues.length && safeValues[i + run] == value) {
+                run++;
+            }
+            writeVarint(out, run);
+            writeVarint(out, zigzag(value));
+            i += run;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode either the compact format or legacy JSON text
+     */
+    public static int[] decode(byte[] bytes) {
+        return decode(bytes, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Decode either the compact format or legacy JSON text, rejecting arrays longer than maxLength.
+     * The compact length is checked before anything is allocated, so a few bytes from an untrusted source cannot
+     * claim a gigabyte array.
+     *
+     * @throws IllegalArgumentException if the data is corrupt or longer than maxLength
+     */
+    public static int[] decode(byte[] bytes, int maxLength) {
+        if (bytes == null || bytes.length == 0) {
+            return new int[0];
+        }
+        if (!isCompact(bytes)) {
+            return checkLength(decodeLegacyJson(bytes), maxLength);
+        }
+        if (bytes[1] != VERSION_RLE_VARINT) {
+            throw new IllegalArgumentException("Unsupported playback data encoding version: " + bytes[1]);
+        }
+
+        int[] position = {2};
+        int length = readVarint(bytes, position);
+        if (length < 0 || length > maxLength) {
+            throw new IllegalArgumentException("Playback data of length " + length + " exceeds " + maxLength);
+        }
+        int[] values = new int[length];
+        int filled = 0;
+        while (filled < length) {
+            int run = readVarint(bytes, position);
+            int value = unzigzag(readVarint(bytes, position));
+            if (run <= 0 || filled + run > length) {
+                throw new IllegalArgumentException("Corrupt playback data: run of " + run + " at index " + filled);
+            }
+            if (value != 0) {
+                Arrays.fill(values, filled, filled + run, value);
+            }
+            filled += run;
+        }
+        return values;
+    }
+
+    private static int[] checkLength(int[] values, int maxLength) {
+        if (values.length > maxLength) {
+            throw new IllegalArgumentException("Playback data of length " + values.length + " exceeds " + maxLength);
+        }
+        return values;
+    }
+
+    public static boolean isCompact(byte[] bytes) {
+        return bytes != null && bytes.length >= 2 && bytes[0] == MAGIC;
+    }
+
+    private static int[] decodeLegacyJson(byte[] bytes) {
+        try {
+            return objectMapper.readValue(new String(bytes, StandardCharsets.UTF_8), int[].class);
+        } catch (IOException e) {
+            // Same behaviour as IntArrayJsonTypeHandler: unreadable data becomes an empty vector
+            return new int[0];
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] bytes, int[] position) {
+        int result = 0;
+        int shift = 0;
+        while (shift < 35) {
+            if (position[0] >= bytes.length) {
+                throw new IllegalArgumentException("Corrupt playback data: truncated varint");
+            }
+            byte b = bytes[position[0]++];
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+            shift += 7;
+        }
+        throw new IllegalArgumentException("Corrupt playback data: varint too long");
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,42 @@
+package org.bedrock.teateach.typehandler;
+
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+
+import java.sql.*;
+
+/**
+ * TypeHandler that stores int[] playback vectors as a compact binary BLOB (see {@link CompactIntArrayCodec}).
+ * Reading also accepts the legacy JSON text format written by {@link IntArrayJsonTypeHandler}.
+ * Not registered for int[] globally; mappers opt in with typeHandler=...
+ */
+public class IntArrayCompactTypeHandler extends BaseTypeHandler<int[]> {
+
+    @Override
+    public void setNonNullParameter(PreparedStatement ps, int i, int[] parameter, JdbcType jdbcType) throws SQLException {
+        ps.setBytes(i, CompactIntArrayCodec.encode(parameter));
+    }
+
+    @Override
+    public int[] getNullableResult(ResultSet rs, String columnName) throws SQLException {
+        return decode(rs.getBytes(columnName));
+    }
+
+    @Override
+    public int[] getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
+        return decode(rs.getBytes(columnIndex));
+    }
+
+    @Override
+    public int[] getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+        return decode(cs.getBytes(columnIndex));
+    }
+
+    private int[] decode(byte[] bytes) throws SQLException {
+        try {
+            return CompactIntArrayCodec.decode(bytes);
+        } catch (IllegalArgumentException e) {
+            throw new SQLException("Error decoding compact int[] data", e);
+        }
+    }
+}
@@ -0,0 +1,541 @@
+package org.bedrock.teateach.vectorstore;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+/**
+ * Hierarchical Navigable Small World graph (Malkov and Yashunin, 2016) for approximate cosine similarity search.
+ * <p>
+ * Vectors are normalized on insertion, so similarity is a dot product. Nodes are addressed by dense ids in insertion
+ * order. Removing a node only marks it deleted: it is left out of results but still routes searches, until the owner
+ * rebuilds the graph from the live vectors.
+ * <p>
+ * Not thread-safe; {@link HnswVectorStore} guards it with a read-write lock.
+ */
+final class HnswIndex {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final int dimensions;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random;
+
+    private float[][] vectors = new float[16][];
+    /** links[node][level] holds the neighbour count in slot 0, followed by the neighbour ids */
+    private int[][][] links = new int[16][][];
+    private final BitSet deleted = new BitSet();
+    private int size;
+    private int deletedCount;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    HnswIndex(int dimensions, int m, int efConstruction, long seed) {
+        if (dimensions <= 0 || m < 2 || efConstruction < 1) {
+            throw new IllegalArgumentException("Invalid HNSW parameters: dimensions=" + dimensions + ", m=" + m
+                    + ", efConstruction=" + efConstruction);
+        }
+        this.dimensions = dimensions;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.random = new Random(seed);
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int liveCount() {
+        return size - deletedCount;
+    }
+
+    int deletedCount() {
+        return deletedCount;
+    }
+
+    boolean isDeleted(int node) {
+        return deleted.get(node);
+    }
+
+    /**
+     * The normalized vector of a node
+     */
+    float[] vector(int node) {
+        return vectors[node];
+    }
+
+    /**
+     * Insert a vector
+     *
+     * @return the id of the new node
+     */
+    int add(float[] vector) {
+        float[] normalized = normalize(vector);
+        int node = size;
+        ensureCapacity(node + 1);
+        int level = randomLevel();
+        vectors[node] = normalized;
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[maxConnections(l) + 1];
+        }
+        size++;
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(normalized, current, l);
+        }
+
+        int[] entryPoints = {current};
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            NodeHeap candidates = searchLayer(normalized, entryPoints, efConstruction, l, n -> true);
+            int[] neighbours = selectNeighbours(normalized, candidates.sortedDescending(), m);
+            for (int neighbour : neighbours) {
+                connect(node, neighbour, l);
+                connect(neighbour, node, l);
+            }
+            entryPoints = candidates.ids();
+        }
+
+        if (level > maxLevel) {
+            entryPoint = node;
+            maxLevel = level;
+        }
+        return node;
+    }
+
+    void markDeleted(int node) {
+        if (node >= 0 && node < size && !deleted.get(node)) {
+            deleted.set(node);
+            deletedCount++;
+        }
+    }
+
+    /**
+     * Approximate k nearest live nodes accepted by the filter
+     *
+     * @param ef     size of the dynamic candidate list; larger is slower and more accurate
+     * @param accept filter on node ids, applied during the search so that k matches are found when they exist
+     * @return the nodes and their similarities, best first
+     */
+    SearchResult search(float[] query, int k, int ef, IntPredicate accept) {
+        if (entryPoint < 0 || k <= 0) {
+            return new SearchResult(new int[0], new float[0]);
+        }
+        float[] normalized = normalize(query);
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedyClosest(normalized, current, l);
+        }
+
+        IntPredicate live = node -> !deleted.get(node) && accept.test(node);
+        NodeHeap results = searchLayer(normalized, new int[]{current}, Math.max(ef, k), 0, live);
+        int[] sorted = results.sortedDescending();
+        int count = Math.min(k, sorted.length);
+        int[] nodes = Arrays.copyOf(sorted, count);
+        float[] similarities = new float[count];
+        for (int i = 0; i < count; i++) {
+            similarities[i] = dot(normalized, vectors[nodes[i]]);
+        }
+        return new SearchResult(nodes, similarities);
+    }
+
+    /**
+     * Exact k nearest live nodes accepted by the filter, by scanning every vector
+     */
+    SearchResult exactSearch(float[] query, int k, IntPredicate accept) {
+        float[] normalized = normalize(query);
+        NodeHeap results = new NodeHeap(Math.max(k, 1) + 1, false);
+        for (int node = 0; node < size; node++) {
+            if (deleted.get(node) || !accept.test(node)) {
+                continue;
+            }
+            float similarity = dot(normalized, vectors[node]);
+            if (results.size() < k) {
+                results.push(node, similarity);
+            } else if (k > 0 && similarity > results.peekScore()) {
+                results.pop();
+                results.push(node, similarity);
+            }
+        }
+        int[] nodes = results.sortedDescending();
+        float[] similarities = new float[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            similarities[i] = dot(normalized, vectors[nodes[i]]);
+        }
+        return new SearchResult(nodes, similarities);
+    }
+
+    /**
+     * Hill-climb towards the query on one level
+     */
+    private int greedyClosest(float[] query, int start, int level) {
+        int best = start;
+        float bestSimilarity = dot(query, vectors[best]);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] neighbours = links[best][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int candidate = neighbours[i];
+                float similarity = dot(query, vectors[candidate]);
+                if (similarity > bestSimilarity) {
+                    best = candidate;
+                    bestSimilarity = similarity;
+                    changed = true;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Best-first search of one level. Every node is traversed, but only accepted nodes enter the result set,
+     * and the search goes on until it holds ef of them or no candidate can improve it.
+     *
+     * @return min-heap of up to ef accepted nodes
+     */
+    private NodeHeap searchLayer(float[] query, int[] entryPoints, int ef, int level, IntPredicate accept) {
+        BitSet visited = new BitSet(size);
+        NodeHeap candidates = new NodeHeap(Math.max(16, ef), true);
+        NodeHeap results = new NodeHeap(ef + 1, false);
+
+        for (int entry : entryPoints) {
+            if (visited.get(entry)) {
+                continue;
+            }
+            visited.set(entry);
+            float similarity = dot(query, vectors[entry]);
+            candidates.push(entry, similarity);
+            if (accept.test(entry)) {
+                results.push(entry, similarity);
+                if (results.size() > ef) {
+                    results.pop();
+                }
+            }
+        }
+
+        while (candidates.size() > 0) {
+            float candidateSimilarity = candidates.peekScore();
+            if (results.size() >= ef && candidateSimilarity < results.peekScore()) {
+                break;
+            }
+            int candidate = candidates.pop();
+            int[] neighbours = links[candidate][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float similarity = dot(query, vectors[neighbour]);
+                if (results.size() < ef || similarity > results.peekScore()) {
+                    candidates.push(neighbour, similarity);
+                    if (accept.test(neighbour)) {
+                        results.push(neighbour, similarity);
+                        if (results.size() > ef) {
+                            results.pop();
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Neighbour selection heuristic: a candidate is kept only if it is closer to the base than to every neighbour
+     * kept so far, which keeps links pointing in different directions
+     *
+     * @param candidates candidate ids, best first
+     */
+    private int[] selectNeighbours(float[] base, int[] candidates, int limit) {
+        int[] selected = new int[Math.min(limit, candidates.length)];
+        int count = 0;
+        for (int candidate : candidates) {
+            if (count == selected.length) {
+                break;
+            }
+            float similarityToBase = dot(base, vectors[candidate]);
+            boolean keep = true;
+            for (int i = 0; i < count; i++) {
+                if (dot(vectors[candidate], vectors[selected[i]]) > similarityToBase) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[count++] = candidate;
+            }
+        }
+        return Arrays.copyOf(selected, count);
+    }
+
+    /**
+     * Add a directed link, pruning the neighbour list with the heuristic when it is full
+     */
+    private void connect(int from, int to, int level) {
+        int[] neighbours = links[from][level];
+        int count = neighbours[0];
+        for (int i = 1; i <= count; i++) {
+            if (neighbours[i] == to) {
+                return;
+            }
+        }
+        int limit = maxConnections(level);
+        if (count < limit) {
+            neighbours[count + 1] = to;
+            neighbours[0] = count + 1;
+            return;
+        }
+
+        float[] base = vectors[from];
+        NodeHeap byDistance = new NodeHeap(count + 1, false);
+        for (int i = 1; i <= count; i++) {
+            byDistance.push(neighbours[i], dot(base, vectors[neighbours[i]]));
+        }
+        byDistance.push(to, dot(base, vectors[to]));
+        int[] kept = selectNeighbours(base, byDistance.sortedDescending(), limit);
+        neighbours[0] = kept.length;
+        System.arraycopy(kept, 0, neighbours, 1, kept.length);
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    private int randomLevel() {
+        return (int) Math.floor(-Math.log(1 - random.nextDouble()) * levelMultiplier);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > vectors.length) {
+            int newCapacity = Math.max(capacity, vectors.length + (vectors.length >> 1));
+            vectors = Arrays.copyOf(vectors, newCapacity);
+            links = Arrays.copyOf(links, newCapacity);
+        }
+    }
+
+    private float[] normalize(float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected a vector of " + dimensions + " dimensions, got " + vector.length);
+        }
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        float[] normalized = new float[vector.length];
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                normalized[i] = (float) (vector[i] / norm);
+            }
+        }
+        return normalized;
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(dimensions);
+        out.writeInt(m);
+        out.writeInt(efConstruction);
+        out.writeInt(size);
+        out.writeInt(entryPoint);
+        out.writeInt(maxLevel);
+        for (int node = 0; node < size; node++) {
+            out.writeBoolean(deleted.get(node));
+            for (float value : vectors[node]) {
+                out.writeFloat(value);
+            }
+            out.writeInt(links[node].length);
+            for (int[] level : links[node]) {
+                out.writeInt(level[0]);
+                for (int i = 1; i <= level[0]; i++) {
+                    out.writeInt(level[i]);
+                }
+            }
+        }
+    }
+
+    static HnswIndex read(DataInputStream in, long seed) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported HNSW index version: " + version);
+        }
+        HnswIndex index = new HnswIndex(in.readInt(), in.readInt(), in.readInt(), seed);
+        int size = in.readInt();
+        index.entryPoint = in.readInt();
+        index.maxLevel = in.readInt();
+        index.ensureCapacity(size);
+        for (int node = 0; node < size; node++) {
+            if (in.readBoolean()) {
+                index.deleted.set(node);
+                index.deletedCount++;
+            }
+            float[] vector = new float[index.dimensions];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = in.readFloat();
+            }
+            index.vectors[node] = vector;
+            int levels = in.readInt();
+            index.links[node] = new int[levels][];
+            for (int l = 0; l < levels; l++) {
+                int count = in.readInt();
+                int[] neighbours = new int[index.maxConnections(l) + 1];
+                if (count >= neighbours.length) {
+                    throw new IOException("Corrupt HNSW index: " + count + " links on level " + l + " of node " + node);
+                }
+                neighbours[0] = count;
+                for (int i = 1; i <= count; i++) {
+                    neighbours[i] = in.readInt();
+                }
+                index.links[node][l] = neighbours;
+            }
+        }
+        index.size = size;
+        return index;
+    }
+
+    /**
+     * Nodes and similarities of a search, best first
+     */
+    static final class SearchResult {
+        private final int[] nodes;
+        private final float[] similarities;
+
+        SearchResult(int[] nodes, float[] similarities) {
+            this.nodes = nodes;
+            this.similarities = similarities;
+        }
+
+        int[] nodes() {
+            return nodes;
+        }
+
+        float[] similarities() {
+            return similarities;
+        }
+    }
+
+    /**
+     * Binary heap of (node, score) pairs, either max-first or min-first by score
+     */
+    private static final class NodeHeap {
+        private int[] ids;
+        private float[] scores;
+        private int size;
+        private final boolean maxFirst;
+
+        private NodeHeap(int capacity, boolean maxFirst) {
+            this.ids = new int[Math.max(1, capacity)];
+            this.scores = new float[ids.length];
+            this.maxFirst = maxFirst;
+        }
+
+        int size() {
+            return size;
+        }
+
+        float peekScore() {
+            return scores[0];
+        }
+
+        void push(int id, float score) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(score, scores[parent])) {
+                    break;
+                }
+                ids[i] = ids[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            ids[i] = id;
+            scores[i] = score;
+        }
+
+        int pop() {
+            int top = ids[0];
+            size--;
+            if (size > 0) {
+                int lastId = ids[size];
+                float lastScore = scores[size];
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && before(scores[child + 1], scores[child])) {
+                        child++;
+                    }
+                    if (!before(scores[child], lastScore)) {
+                        break;
+                    }
+                    ids[i] = ids[child];
+                    scores[i] = scores[child];
+                    i = child;
+                }
+                ids[i] = lastId;
+                scores[i] = lastScore;
+            }
+            return top;
+        }
+
+        int[] ids() {
+            return Arrays.copyOf(ids, size);
+        }
+
+        /**
+         * Ids ordered by descending score; leaves the heap unchanged
+         */
+        int[] sortedDescending() {
+            NodeHeap copy = new NodeHeap(1, maxFirst);
+            copy.ids = Arrays.copyOf(ids, size);
+            copy.scores = Arrays.copyOf(scores, size);
+            copy.size = size;
+            int[] sorted = new int[size];
+            for (int i = 0; i < sorted.length; i++) {
+                // A max-first heap pops best first, a min-first heap worst first
+                sorted[maxFirst ? i : sorted.length - 1 - i] = copy.pop();
+            }
+            return sorted;
+        }
+
+        private boolean before(float a, float b) {
+            return maxFirst ? a > b : a < b;
+        }
+    }
+}
@@ -0,0 +1,528 @@
+package org.bedrock.teateach.vectorstore;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.converter.SimpleVectorStoreFilterExpressionConverter;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * In-process {@link VectorStore} backed by {@link HnswIndex} graphs, for collections where the brute-force scan of
+ * {@code SimpleVectorStore} is too slow.
+ * <p>
+ * Adding a document with an existing id replaces it. Deleted documents stay in the graph as tombstones until they
+ * make up {@code compactRatio} of it; the graph is then rebuilt from the stored vectors without calling the
+ * embedding model. Metadata filters use the same SpEL evaluation as {@code SimpleVectorStore} and are applied
+ * during the graph search, so a selective filter still returns topK matches when they exist.
+ * <p>
+ * With a partition key, every value of that metadata field (a single value or a collection) gets its own graph,
+ * and a document is inserted into the graph of each of its values; documents without a value share one graph.
+ * A filter of the form {@code key == value} or {@code key IN [...]}, alone or as one side of an AND, then only
+ * searches the matching graphs instead of filtering the whole collection.
+ * <p>
+ * Searches run concurrently; writes are serialized.
+ */
+@Slf4j
+public class HnswVectorStore implements VectorStore {
+
+    private static final int FILE_MAGIC = 0x484E5357; // "HNSW"
+    private static final int FILE_VERSION = 2;
+    private static final long SEED = 42L;
+    private static final String UNPARTITIONED = "";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final EmbeddingModel embeddingModel;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double compactRatio;
+    private final String partitionKey;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final SimpleVectorStoreFilterExpressionConverter filterConverter = new SimpleVectorStoreFilterExpressionConverter();
+    private final SpelExpressionParser expressionParser = new SpelExpressionParser();
+
+    /** Live documents by id, kept without embedding or score */
+    private Map<String, Document> documents = new HashMap<>();
+    private Map<String, Partition> partitions = new HashMap<>();
+
+    /**
+     * One graph and the document id of each of its nodes
+     */
+    private static final class Partition {
+        private HnswIndex index;
+        /** Document id of each node, null for deleted nodes */
+        private List<String> nodeIds = new ArrayList<>();
+        private Map<String, Integer> nodeById = new HashMap<>();
+    }
+
+    /**
+     * The partitions a filter restricts a search to, and the rest of the filter
+     */
+    private static final class PartitionQuery {
+        private final Set<String> partitions; // null for all partitions
+        private final Filter.Expression residual; // null when the partitions are the whole filter
+
+        private PartitionQuery(Set<String> partitions, Filter.Expression residual) {
+            this.partitions = partitions;
+            this.residual = residual;
+        }
+    }
+
+    public HnswVectorStore(EmbeddingModel embeddingModel, int m, int efConstruction, int efSearch, double compactRatio) {
+        this(embeddingModel, m, efConstruction, efSearch, compactRatio, null);
+    }
+
+    /**
+     * @param partitionKey metadata field to keep a separate graph per value of, or null for a single graph
+     */
+    public HnswVectorStore(EmbeddingModel embeddingModel, int m, int efConstruction, int efSearch, double compactRatio,
+                           String partitionKey) {
+        this.embeddingModel = embeddingModel;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.compactRatio = compactRatio;
+        this.partitionKey = partitionKey == null || partitionKey.isBlank() ? null : partitionKey;
+    }
+
+    /**
+     * The metadata field documents are partitioned by, or null
+     */
+    public String getPartitionKey() {
+        return partitionKey;
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        // Embed outside the lock, the model call is by far the slowest part
+        List<float[]> embeddings = embeddingModel.embed(documents.stream().map(Document::getText).toList());
+        addEmbedded(documents, embeddings);
+    }
+
+    /**
+     * Add documents whose embeddings are already known, e.g. when rebuilding from another store
+     */
+    public void addEmbedded(List<Document> documents, List<float[]> embeddings) {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < documents.size(); i++) {
+                Document document = documents.get(i);
+                addEmbedded(document.getId(), document.getText(), document.getMetadata(), embeddings.get(i));
+            }
+            // Replacing a document leaves its old node behind as a tombstone, like a delete
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        lock.writeLock().lock();
+        try {
+            for (String id : idList) {
+                removeDocument(id);
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        lock.writeLock().lock();
+        try {
+            PartitionQuery query = partitionQuery(filterExpression);
+            Predicate<Document> residual = residualPredicate(query);
+            List<String> ids = new ArrayList<>();
+            for (Document document : documents.values()) {
+                boolean inPartition = query.partitions == null
+                        || partitionsOf(document.getMetadata()).stream().anyMatch(query.partitions::contains);
+                if (inPartition && residual.test(document)) {
+                    ids.add(document.getId());
+                }
+            }
+            ids.forEach(this::removeDocument);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        float[] query = embeddingModel.embed(request.getQuery());
+        return similaritySearch(query, request);
+    }
+
+    /**
+     * Search with an already embedded query
+     */
+    public List<Document> similaritySearch(float[] query, SearchRequest request) {
+        lock.readLock().lock();
+        try {
+            PartitionQuery partitionQuery = request.hasFilterExpression()
+                    ? partitionQuery(request.getFilterExpression()) : new PartitionQuery(null, null);
+            Predicate<Document> residual = residualPredicate(partitionQuery);
+            Iterable<String> targets = partitionQuery.partitions != null ? partitionQuery.partitions : partitions.keySet();
+
+            // A document in several searched partitions is found once per partition
+            Map<String, Double> similarities = new HashMap<>();
+            for (String name : targets) {
+                Partition partition = partitions.get(name);
+                if (partition == null || partition.index == null) {
+                    continue;
+                }
+                HnswIndex.SearchResult result = partition.index.search(query, request.getTopK(), efSearch,
+                        node -> residual.test(documents.get(partition.nodeIds.get(node))));
+                for (int i = 0; i < result.nodes().length; i++) {
+                    similarities.merge(partition.nodeIds.get(result.nodes()[i]), (double) result.similarities()[i], Math::max);
+                }
+            }
+
+            List<Document> results = new ArrayList<>();
+            similarities.entrySet().stream()
+                    .filter(entry -> entry.getValue() >= request.getSimilarityThreshold())
+                    .sorted(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()))
+                    .limit(request.getTopK())
+                    .forEach(entry -> {
+                        Document stored = documents.get(entry.getKey());
+                        Map<String, Object> metadata = new HashMap<>(stored.getMetadata());
+                        metadata.put("distance", 1 - entry.getValue());
+                        results.add(Document.builder()
+                                .id(stored.getId())
+                                .text(stored.getText())
+                                .metadata(metadata)
+                                .score(entry.getValue())
+                                .build());
+                    });
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of live documents
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of nodes in all graphs, tombstones included
+     */
+    int graphSize() {
+        lock.readLock().lock();
+        try {
+            return partitions.values().stream().mapToInt(partition -> partition.index == null ? 0 : partition.index.size()).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copies of the live documents, without embeddings
+     */
+    public List<Document> getDocuments() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(documents.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Write the documents and the graphs to a file
+     */
+    public void save(File file) {
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            writeString(out, partitionKey != null ? partitionKey : UNPARTITIONED);
+            out.writeInt(documents.size());
+            for (Document document : documents.values()) {
+                writeString(out, document.getId());
+                writeString(out, document.getText());
+                writeString(out, objectMapper.writeValueAsString(document.getMetadata()));
+            }
+            out.writeInt(partitions.size());
+            for (Map.Entry<String, Partition> entry : partitions.entrySet()) {
+                Partition partition = entry.getValue();
+                writeString(out, entry.getKey());
+                out.writeInt(partition.nodeIds.size());
+                for (String id : partition.nodeIds) {
+                    out.writeBoolean(id != null);
+                    if (id != null) {
+                        writeString(out, id);
+                    }
+                }
+                out.writeBoolean(partition.index != null);
+                if (partition.index != null) {
+                    partition.index.write(out);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not save HNSW vector store to " + file, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replace the contents of the store with a file written by {@link #save}
+     */
+    public void load(File file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != FILE_MAGIC) {
+                throw new IOException("Not an HNSW vector store file");
+            }
+            int version = in.readInt();
+            if (version != FILE_VERSION) {
+                throw new IOException("Unsupported HNSW vector store file version: " + version);
+            }
+            String filePartitionKey = readString(in);
+            if (!filePartitionKey.equals(partitionKey != null ? partitionKey : UNPARTITIONED)) {
+                throw new IOException("HNSW vector store file is partitioned by '" + filePartitionKey + "'");
+            }
+
+            int documentCount = in.readInt();
+            Map<String, Document> loadedDocuments = new HashMap<>();
+            for (int i = 0; i < documentCount; i++) {
+                String id = readString(in);
+                String text = readString(in);
+                Map<String, Object> metadata = objectMapper.readValue(readString(in), new TypeReference<Map<String, Object>>() {
+                });
+                loadedDocuments.put(id, Document.builder().id(id).text(text).metadata(metadata).build());
+            }
+
+            int partitionCount = in.readInt();
+            Map<String, Partition> loadedPartitions = new HashMap<>();
+            for (int p = 0; p < partitionCount; p++) {
+                String name = readString(in);
+                Partition partition = new Partition();
+                int nodeCount = in.readInt();
+                for (int node = 0; node < nodeCount; node++) {
+                    String id = in.readBoolean() ? readString(in) : null;
+                    if (id != null && !loadedDocuments.containsKey(id)) {
+                        throw new IOException("HNSW vector store file has a node for unknown document " + id);
+                    }
+                    partition.nodeIds.add(id);
+                    if (id != null) {
+                        partition.nodeById.put(id, node);
+                    }
+                }
+                partition.index = in.readBoolean() ? HnswIndex.read(in, SEED) : null;
+                if ((partition.index == null ? 0 : partition.index.size()) != nodeCount) {
+                    throw new IOException("HNSW vector store partition '" + name + "' has " + nodeCount
+                            + " nodes but " + (partition.index == null ? 0 : partition.index.size()) + " vectors");
+                }
+                loadedPartitions.put(name, partition);
+            }
+
+            lock.writeLock().lock();
+            try {
+                documents = loadedDocuments;
+                partitions = loadedPartitions;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load HNSW vector store from " + file, e);
+        }
+    }
+
+    private void addEmbedded(String id, String text, Map<String, Object> metadata, float[] embedding) {
+        removeDocument(id);
+        Document document = Document.builder().id(id).text(text).metadata(new HashMap<>(metadata)).build();
+        documents.put(id, document);
+        for (String name : partitionsOf(metadata)) {
+            Partition partition = partitions.computeIfAbsent(name, key -> new Partition());
+            if (partition.index == null) {
+                partition.index = new HnswIndex(embedding.length, m, efConstruction, SEED);
+            }
+            int node = partition.index.add(embedding);
+            partition.nodeIds.add(id);
+            partition.nodeById.put(id, node);
+        }
+    }
+
+    private void removeDocument(String id) {
+        Document document = documents.remove(id);
+        if (document == null) {
+            return;
+        }
+        for (String name : partitionsOf(document.getMetadata())) {
+            Partition partition = partitions.get(name);
+            Integer node = partition != null ? partition.nodeById.remove(id) : null;
+            if (node != null) {
+                partition.index.markDeleted(node);
+                partition.nodeIds.set(node, null);
+            }
+        }
+    }
+
+    /**
+     * The partitions a document belongs to, from the value of the partition key in its metadata
+     */
+    private Set<String> partitionsOf(Map<String, Object> metadata) {
+        Object value = partitionKey != null ? metadata.get(partitionKey) : null;
+        Set<String> names = new LinkedHashSet<>();
+        if (value instanceof Collection<?> values) {
+            values.stream().filter(Objects::nonNull).map(Object::toString).forEach(names::add);
+        } else if (value != null) {
+            names.add(value.toString());
+        }
+        if (names.isEmpty()) {
+            names.add(UNPARTITIONED);
+        }
+        return names;
+    }
+
+    /**
+     * Rebuild each graph from its live vectors once tombstones make up compactRatio of it; drop empty graphs
+     */
+    private void compactIfNeeded() {
+        partitions.values().removeIf(partition -> partition.nodeById.isEmpty());
+        for (Map.Entry<String, Partition> entry : partitions.entrySet()) {
+            Partition partition = entry.getValue();
+            HnswIndex index = partition.index;
+            if (index.deletedCount() == 0 || index.deletedCount() < compactRatio * index.size()) {
+                continue;
+            }
+            HnswIndex rebuilt = new HnswIndex(index.dimensions(), m, efConstruction, SEED);
+            List<String> nodeIds = new ArrayList<>(index.liveCount());
+            Map<String, Integer> nodeById = new HashMap<>();
+            for (int node = 0; node < index.size(); node++) {
+                String id = partition.nodeIds.get(node);
+                if (id != null) {
+                    nodeById.put(id, rebuilt.add(index.vector(node)));
+                    nodeIds.add(id);
+                }
+            }
+            log.info("Compacted HNSW vector store partition '{}' from {} to {} nodes", entry.getKey(), index.size(), rebuilt.size());
+            partition.index = rebuilt;
+            partition.nodeIds = nodeIds;
+            partition.nodeById = nodeById;
+        }
+    }
+
+    /**
+     * Split a filter into the partitions it selects and the remaining condition
+     */
+    private PartitionQuery partitionQuery(Filter.Expression expression) {
+        if (partitionKey == null || expression == null) {
+            return new PartitionQuery(null, expression);
+        }
+        Set<String> selected = selectedPartitions(expression);
+        if (selected != null) {
+            return new PartitionQuery(selected, null);
+        }
+        if (expression.type() == Filter.ExpressionType.AND
+                && expression.left() instanceof Filter.Expression left
+                && expression.right() instanceof Filter.Expression right) {
+            Set<String> fromLeft = selectedPartitions(left);
+            if (fromLeft != null) {
+                return new PartitionQuery(fromLeft, right);
+            }
+            Set<String> fromRight = selectedPartitions(right);
+            if (fromRight != null) {
+                return new PartitionQuery(fromRight, left);
+            }
+        }
+        return new PartitionQuery(null, expression);
+    }
+
+    /**
+     * The partitions of a {@code key == value} or {@code key IN [...]} condition on the partition key, otherwise null
+     */
+    private Set<String> selectedPartitions(Filter.Expression expression) {
+        if (!(expression.left() instanceof Filter.Key key) || !partitionKey.equals(unquote(key.key()))
+                || !(expression.right() instanceof Filter.Value value) || value.value() == null) {
+            return null;
+        }
+        if (expression.type() == Filter.ExpressionType.EQ) {
+            return Set.of(value.value().toString());
+        }
+        if (expression.type() == Filter.ExpressionType.IN && value.value() instanceof Collection<?> values) {
+            Set<String> names = new LinkedHashSet<>();
+            values.stream().filter(Objects::nonNull).map(Object::toString).forEach(names::add);
+            return names;
+        }
+        return null;
+    }
+
+    private Predicate<Document> residualPredicate(PartitionQuery query) {
+        if (query.residual == null) {
+            return document -> true;
+        }
+        Expression expression = expressionParser.parseExpression(filterConverter.convertExpression(query.residual));
+        return document -> {
+            StandardEvaluationContext context = new StandardEvaluationContext();
+            context.setVariable("metadata", document.getMetadata());
+            return Boolean.TRUE.equals(expression.getValue(context, Boolean.class));
+        };
+    }
+
+    private static String unquote(String key) {
+        if (key.length() >= 2 && (key.startsWith("'") && key.endsWith("'") || key.startsWith("\"") && key.endsWith("\""))) {
+            return key.substring(1, key.length() - 1);
+        }
+        return key;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
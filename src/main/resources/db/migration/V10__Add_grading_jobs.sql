@@ -0,0 +1,29 @@
+-- Background LLM grading jobs and their per-submission state, so a batch can be polled and resumed after a restart.
+CREATE TABLE teateach.grading_jobs (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    status VARCHAR(20) NOT NULL COMMENT 'PENDING, RUNNING, COMPLETED or FAILED',
+    grading_rubric TEXT NULL,
+    total_items INT NOT NULL DEFAULT 0,
+    succeeded_items INT NOT NULL DEFAULT 0,
+    failed_items INT NOT NULL DEFAULT 0,
+    skipped_items INT NOT NULL DEFAULT 0 COMMENT 'Submissions that were already graded',
+    last_error TEXT NULL,
+    created_at DATETIME NULL DEFAULT CURRENT_TIMESTAMP,
+    started_at DATETIME NULL,
+    finished_at DATETIME NULL,
+    INDEX idx_grading_jobs_status (status)
+);
+
+CREATE TABLE teateach.grading_job_items (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    job_id BIGINT NOT NULL,
+    submission_id BIGINT NOT NULL,
+    status VARCHAR(20) NOT NULL COMMENT 'PENDING, SUCCEEDED, FAILED or SKIPPED',
+    score DOUBLE NULL,
+    feedback TEXT NULL,
+    error TEXT NULL,
+    attempts INT NOT NULL DEFAULT 0,
+    updated_at DATETIME NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    CONSTRAINT uk_job_submission UNIQUE (job_id, submission_id),
+    CONSTRAINT grading_job_items_ibfk_1 FOREIGN KEY (job_id) REFERENCES teateach.grading_jobs (id) ON DELETE CASCADE
+);
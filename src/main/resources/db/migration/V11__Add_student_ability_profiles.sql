@@ -0,0 +1,9 @@
+-- Persisted LLM ability analysis per student (student number), recomputed in the background after grade or enrollment changes.
+CREATE TABLE teateach.student_ability_profiles (
+    student_id BIGINT NOT NULL PRIMARY KEY,
+    profile_data TEXT NOT NULL COMMENT 'JSON ability analysis as returned by the LLM service',
+    stale TINYINT(1) NOT NULL DEFAULT 0 COMMENT 'Set when a grade or enrollment changed after computed_at',
+    computed_at DATETIME NULL,
+    updated_at DATETIME NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    INDEX idx_student_ability_profiles_stale (stale)
+);
@@ -0,0 +1,11 @@
+-- Pending heatmap deltas, spread over a few rows per resource so concurrent viewers of one video do not queue on the
+-- resource_heatmaps row lock. Heatmap reads add them to resource_heatmaps; a scheduled fold moves them into it.
+CREATE TABLE teateach.resource_heatmap_shards (
+    resource_id BIGINT NOT NULL,
+    shard INT NOT NULL,
+    delta_data MEDIUMBLOB NULL COMMENT 'Compact encoded play counts per second not yet folded into resource_heatmaps',
+    pending BOOLEAN NOT NULL DEFAULT FALSE,
+    last_updated TIMESTAMP NULL,
+    PRIMARY KEY (resource_id, shard),
+    INDEX idx_resource_heatmap_shards_pending (pending, resource_id)
+);
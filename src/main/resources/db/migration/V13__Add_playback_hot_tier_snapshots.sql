@@ -0,0 +1,7 @@
+-- Redis hot-tier snapshots applied to playback_vectors, written in the same transaction as the counts so a snapshot
+-- that is retried after the commit is skipped. Rows are deleted once the snapshot is deleted from Redis.
+CREATE TABLE teateach.playback_hot_tier_snapshots (
+    snapshot_id BIGINT NOT NULL PRIMARY KEY COMMENT 'Sequence id Redis gave the snapshot',
+    member VARCHAR(64) NOT NULL COMMENT 'studentId:resourceId of the snapshot',
+    applied_at TIMESTAMP NULL
+);
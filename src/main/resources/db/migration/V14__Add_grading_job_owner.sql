@@ -0,0 +1,5 @@
+-- Grading jobs are claimed by one application instance at a time. The owner refreshes heartbeat_at while it grades,
+-- and a RUNNING job whose heartbeat is stale (its instance stopped) can be claimed by another instance.
+ALTER TABLE teateach.grading_jobs
+    ADD COLUMN owner VARCHAR(100) NULL COMMENT 'Instance grading the job' AFTER status,
+    ADD COLUMN heartbeat_at DATETIME NULL COMMENT 'Last sign of life of the owner' AFTER owner;
@@ -0,0 +1,5 @@
+-- Store playback_data as a compact binary BLOB instead of a JSON int array.
+-- Existing JSON values are kept as their UTF-8 text form, which IntArrayCompactTypeHandler still reads.
+-- Run POST /api/playback/admin/compact-storage afterwards to re-encode the legacy rows.
+ALTER TABLE teateach.playback_vectors
+    MODIFY playback_data MEDIUMBLOB NULL COMMENT 'Compact RLE/varint encoded play counts (legacy rows: JSON text)';
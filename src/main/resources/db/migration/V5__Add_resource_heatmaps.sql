@@ -0,0 +1,8 @@
+-- Incrementally maintained sum of all playback vectors per resource.
+-- Rows are materialized on the first heatmap read, or all at once with POST /api/playback/admin/heatmaps/rebuild.
+CREATE TABLE teateach.resource_heatmaps (
+    resource_id BIGINT NOT NULL PRIMARY KEY,
+    heatmap_data MEDIUMBLOB NULL COMMENT 'Compact RLE/varint encoded total play count per second',
+    duration INT NOT NULL DEFAULT 0,
+    last_updated TIMESTAMP NULL
+);
@@ -0,0 +1,11 @@
+-- Downsampled resource heatmap levels (10s and 60s buckets); the 1s level is resource_heatmaps itself.
+-- Levels are refreshed together with resource_heatmaps, and built for existing resources by the heatmap rebuild.
+CREATE TABLE teateach.resource_heatmap_levels (
+    resource_id BIGINT NOT NULL,
+    resolution_seconds INT NOT NULL,
+    sum_data MEDIUMBLOB NULL COMMENT 'Compact encoded total play count per bucket',
+    max_data MEDIUMBLOB NULL COMMENT 'Compact encoded highest per-second play count per bucket',
+    duration INT NOT NULL DEFAULT 0,
+    last_updated TIMESTAMP NULL,
+    PRIMARY KEY (resource_id, resolution_seconds)
+);
@@ -0,0 +1,5 @@
+-- One playback vector per (student, resource), so recording can upsert instead of find-then-insert.
+-- Existing duplicates must be merged first: POST /api/playback/admin/merge-duplicates.
+ALTER TABLE teateach.playback_vectors
+    ADD CONSTRAINT uk_student_resource UNIQUE (student_id, resource_id),
+    DROP INDEX idx_student_resource;
@@ -0,0 +1,5 @@
+-- Coverage and total-play counters written together with playback_data, so summaries and rosters never read the BLOB.
+-- Fill them for existing rows with POST /api/playback/admin/backfill-counters.
+ALTER TABLE teateach.playback_vectors
+    ADD COLUMN covered_seconds INT NOT NULL DEFAULT 0 COMMENT 'Seconds played at least once, kept in step with playback_data' AFTER video_duration,
+    ADD COLUMN total_play_count BIGINT NOT NULL DEFAULT 0 COMMENT 'Sum of playback_data, kept in step with playback_data' AFTER covered_seconds;
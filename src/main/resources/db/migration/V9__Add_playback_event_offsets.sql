@@ -0,0 +1,10 @@
+-- Offsets of the playback events applied by the Kafka consumer group, written in the same transaction as the counts
+-- so redelivered events are skipped.
+CREATE TABLE teateach.playback_event_offsets (
+    consumer_group VARCHAR(255) NOT NULL,
+    topic VARCHAR(255) NOT NULL,
+    partition_id INT NOT NULL,
+    last_offset BIGINT NOT NULL COMMENT 'Offset of the last playback event applied to playback_vectors',
+    last_updated TIMESTAMP NULL,
+    PRIMARY KEY (consumer_group, topic, partition_id)
+);
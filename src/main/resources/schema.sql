@@ -80,13 +80,65 @@ create table teateach.playback_vectors
         primary key,
     student_id     bigint    not null,
     resource_id    bigint    not null,
-    playback_data  json      null,
+    playback_data  mediumblob null comment 'Compact RLE/varint encoded play counts (legacy rows: JSON text)',
     video_duration int       null,
-    last_updated   timestamp null
+    covered_seconds  int    default 0 not null comment 'Seconds played at least once, kept in step with playback_data',
+    total_play_count bigint default 0 not null comment 'Sum of playback_data, kept in step with playback_data',
+    last_updated   timestamp null,
+    constraint uk_student_resource
+        unique (student_id, resource_id)
 );
 
-create index idx_student_resource
-    on teateach.playback_vectors (student_id, resource_id);
+create table teateach.playback_event_offsets
+(
+    consumer_group varchar(255) not null,
+    topic          varchar(255) not null,
+    partition_id   int          not null,
+    last_offset    bigint       not null comment 'Offset of the last playback event applied to playback_vectors',
+    last_updated   timestamp    null,
+    primary key (consumer_group, topic, partition_id)
+);
+
+create table teateach.playback_hot_tier_snapshots
+(
+    snapshot_id bigint      not null comment 'Sequence id Redis gave the snapshot'
+        primary key,
+    member      varchar(64) not null comment 'studentId:resourceId of the snapshot',
+    applied_at  timestamp   null
+);
+
+create table teateach.resource_heatmaps
+(
+    resource_id  bigint         not null
+        primary key,
+    heatmap_data mediumblob     null comment 'Compact RLE/varint encoded total play count per second',
+    duration     int default 0  not null,
+    last_updated timestamp      null
+);
+
+create table teateach.resource_heatmap_levels
+(
+    resource_id        bigint        not null,
+    resolution_seconds int           not null,
+    sum_data           mediumblob    null comment 'Compact encoded total play count per bucket',
+    max_data           mediumblob    null comment 'Compact encoded highest per-second play count per bucket',
+    duration           int default 0 not null,
+    last_updated       timestamp     null,
+    primary key (resource_id, resolution_seconds)
+);
+
+create table teateach.resource_heatmap_shards
+(
+    resource_id  bigint               not null,
+    shard        int                  not null,
+    delta_data   mediumblob           null comment 'Compact encoded play counts per second not yet folded into resource_heatmaps',
+    pending      tinyint(1) default 0 not null,
+    last_updated timestamp            null,
+    primary key (resource_id, shard)
+);
+
+create index idx_resource_heatmap_shards_pending
+    on teateach.resource_heatmap_shards (pending, resource_id);
 
 create table teateach.questions
 (
@@ -220,6 +272,59 @@ create index idx_submissions_student_task
 create index idx_students_email
     on teateach.students (email);
 
+create table teateach.grading_jobs
+(
+    id              bigint auto_increment
+        primary key,
+    status          varchar(20)                        not null comment 'PENDING, RUNNING, COMPLETED or FAILED',
+    owner           varchar(100)                       null comment 'Instance grading the job',
+    heartbeat_at    datetime                           null comment 'Last sign of life of the owner',
+    grading_rubric  text                               null,
+    total_items     int      default 0                 not null,
+    succeeded_items int      default 0                 not null,
+    failed_items    int      default 0                 not null,
+    skipped_items   int      default 0                 not null comment 'Submissions that were already graded',
+    last_error      text                               null,
+    created_at      datetime default CURRENT_TIMESTAMP null,
+    started_at      datetime                           null,
+    finished_at     datetime                           null
+);
+
+create index idx_grading_jobs_status
+    on teateach.grading_jobs (status);
+
+create table teateach.grading_job_items
+(
+    id            bigint auto_increment
+        primary key,
+    job_id        bigint                             not null,
+    submission_id bigint                             not null,
+    status        varchar(20)                        not null comment 'PENDING, SUCCEEDED, FAILED or SKIPPED',
+    score         double                             null,
+    feedback      text                               null,
+    error         text                               null,
+    attempts      int      default 0                 not null,
+    updated_at    datetime default CURRENT_TIMESTAMP null on update CURRENT_TIMESTAMP,
+    constraint uk_job_submission
+        unique (job_id, submission_id),
+    constraint grading_job_items_ibfk_1
+        foreign key (job_id) references teateach.grading_jobs (id)
+            on delete cascade
+);
+
+create table teateach.student_ability_profiles
+(
+    student_id   bigint                             not null
+        primary key,
+    profile_data text                               not null comment 'JSON ability analysis as returned by the LLM service',
+    stale        tinyint(1) default 0               not null comment 'Set when a grade or enrollment changed after computed_at',
+    computed_at  datetime                           null,
+    updated_at   datetime default CURRENT_TIMESTAMP null on update CURRENT_TIMESTAMP
+);
+
+create index idx_student_ability_profiles_stale
+    on teateach.student_ability_profiles (stale);
+
 create table teateach.submission_files
 (
     id               bigint auto_increment
@@ -2,7 +2,18 @@ package org.bedrock.teateach.controllers;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.bedrock.teateach.beans.PlaybackVector;
+import org.bedrock.teateach.beans.ResourceHeatmapLevel;
+import org.bedrock.teateach.dto.HeatmapRebuildResult;
+import org.bedrock.teateach.dto.HotTierConsistencyReport;
+import org.bedrock.teateach.dto.PlaybackVectorSummary;
+import org.bedrock.teateach.dto.ResourceEngagementAnalytics;
+import org.bedrock.teateach.dto.ResourceWatchRoster;
+import org.bedrock.teateach.services.PlaybackAnalyticsService;
+import org.bedrock.teateach.services.PlaybackEventPublisher;
+import org.bedrock.teateach.services.PlaybackHotTier;
+import org.bedrock.teateach.services.PlaybackStorageMigrationService;
 import org.bedrock.teateach.services.PlaybackVectorService;
+import org.bedrock.teateach.services.ResourceHeatmapService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -14,11 +25,14 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 import static org.hamcrest.Matchers.is;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -33,6 +47,21 @@ class PlaybackVectorControllerTest {
     @Mock
     private PlaybackVectorService playbackVectorService;
 
+    @Mock
+    private PlaybackStorageMigrationService playbackStorageMigrationService;
+
+    @Mock
+    private ResourceHeatmapService resourceHeatmapService;
+
+    @Mock
+    private PlaybackAnalyticsService playbackAnalyticsService;
+
+    @Mock
+    private PlaybackHotTier playbackHotTier;
+
+    @Mock
+    private PlaybackEventPublisher playbackEventPublisher;
+
     @InjectMocks
     private PlaybackVectorController controller;
 
@@ -107,7 +136,7 @@ class PlaybackVectorControllerTest {
         heatmapData[60] = 10;
 
         when(playbackVectorService.generateHeatmap(resourceId)).thenReturn(heatmapData);
-        when(playbackVectorService.getPlaybackVectorsByResource(resourceId)).thenReturn(java.util.List.of(testVector));
+        when(playbackVectorService.countViewers(resourceId)).thenReturn(1);
 
         // When & Then
         mockMvc.perform(get("/api/playback/heatmap/{resourceId}", resourceId))
@@ -165,4 +194,180 @@ class PlaybackVectorControllerTest {
                 .andExpect(jsonPath("$.totalPlayCount", is(expectedTotalCount)))
                 .andExpect(jsonPath("$.maxPlayCount", is(expectedMaxCount)));
     }
+
+    @Test
+    void backfillCompactStorage_ShouldReturnConvertedRowCount() throws Exception {
+        // Given
+        when(playbackStorageMigrationService.backfillCompactEncoding(100)).thenReturn(42);
+
+        // When & Then
+        mockMvc.perform(post("/api/playback/admin/compact-storage")
+                .param("batchSize", "100"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.success", is(true)))
+                .andExpect(jsonPath("$.convertedRows", is(42)));
+    }
+
+    @Test
+    void rebuildHeatmaps_ShouldReportMismatchedResource() throws Exception {
+        // Given
+        when(resourceHeatmapService.rebuildHeatmap(resourceId))
+                .thenReturn(new HeatmapRebuildResult(resourceId, true, false, 4, 7));
+
+        // When & Then
+        mockMvc.perform(post("/api/playback/admin/heatmaps/rebuild")
+                .param("resourceId", resourceId.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.success", is(true)))
+                .andExpect(jsonPath("$.rebuiltResources", is(1)))
+                .andExpect(jsonPath("$.mismatchedResources", is(1)))
+                .andExpect(jsonPath("$.results[0].firstMismatchSecond", is(7)));
+    }
+
+    @Test
+    void recordPlayedIntervals_ShouldReturnSuccess() throws Exception {
+        // Given
+        int[][] intervals = {{0, 30}, {60, 90}};
+        when(playbackVectorService.updatePlaybackVectorWithIntervals(eq(studentId), eq(resourceId), any(int[][].class)))
+                .thenReturn(testVector);
+
+        // When & Then
+        mockMvc.perform(post("/api/playback/record-intervals")
+                .param("studentId", studentId.toString())
+                .param("resourceId", resourceId.toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(intervals)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.success", is(true)))
+                .andExpect(jsonPath("$.totalPlayCount", is(20)));
+    }
+
+    @Test
+    void getEngagementAnalytics_ShouldReturnAnalytics() throws Exception {
+        // Given
+        ResourceEngagementAnalytics analytics = new ResourceEngagementAnalytics(resourceId, 3, 2,
+                new int[]{3, 1}, new int[10], 66.7, new int[]{3, 1});
+        when(playbackAnalyticsService.analyzeResource(resourceId)).thenReturn(analytics);
+
+        // When & Then
+        mockMvc.perform(get("/api/playback/analytics/" + resourceId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.studentCount", is(3)))
+                .andExpect(jsonPath("$.dropOffCurve[1]", is(1)));
+    }
+
+    @Test
+    void getHeatmapBuckets_ShouldReturnSumsAndMaxes() throws Exception {
+        // Given
+        ResourceHeatmapLevel level = new ResourceHeatmapLevel(resourceId, 60, new int[]{30, 12}, new int[]{3, 1}, 120, null);
+        when(playbackVectorService.generateHeatmapLevel(resourceId, 2, null)).thenReturn(level);
+
+        // When & Then
+        mockMvc.perform(get("/api/playback/heatmap/" + resourceId + "/buckets")
+                .param("buckets", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.resolutionSeconds", is(60)))
+                .andExpect(jsonPath("$.sums[0]", is(30)))
+                .andExpect(jsonPath("$.maxes[1]", is(1)));
+    }
+
+    @Test
+    void checkHotTierConsistency_ShouldReturnReport() throws Exception {
+        // Given
+        when(playbackHotTier.checkConsistency(true))
+                .thenReturn(new HotTierConsistencyReport(false, 3, 0, 42, 1, 0, 0, true));
+
+        // When & Then
+        mockMvc.perform(get("/api/playback/admin/hot-tier/consistency").param("repair", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.consistent", is(false)))
+                .andExpect(jsonPath("$.untrackedLiveKeys", is(1)))
+                .andExpect(jsonPath("$.repaired", is(true)));
+    }
+
+    @Test
+    void getResourceWatchRoster_shouldReturnPerStudentPercentages() throws Exception {
+        // Given
+        PlaybackVectorSummary summary = new PlaybackVectorSummary(1L, studentId, resourceId, 120, 60, 90L, LocalDateTime.now());
+        when(playbackVectorService.getResourceWatchRoster(resourceId))
+                .thenReturn(new ResourceWatchRoster(resourceId, 1, 0, 50.0, List.of(summary)));
+
+        // When & Then
+        mockMvc.perform(get("/api/playback/resources/{resourceId}/roster", resourceId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.studentCount", is(1)))
+                .andExpect(jsonPath("$.students[0].studentId", is(studentId.intValue())))
+                .andExpect(jsonPath("$.students[0].watchPercentage", is(50.0)))
+                .andExpect(jsonPath("$.students[0].playbackData").doesNotExist());
+    }
+
+    @Test
+    void recordPlayedIntervals_shouldPublishAndAccept_whenKafkaPipelineEnabled() throws Exception {
+        // Given
+        when(playbackEventPublisher.isEnabled()).thenReturn(true);
+        when(playbackVectorService.getVideoDuration(resourceId)).thenReturn(120);
+        int[][] intervals = {{2, 5}};
+
+        // When & Then
+        mockMvc.perform(post("/api/playback/record-intervals")
+                .param("studentId", studentId.toString())
+                .param("resourceId", resourceId.toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(intervals)))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.queued", is(true)));
+        verify(playbackEventPublisher).publish(studentId, resourceId, new int[]{0, 0, 1, 1, 1});
+        verify(playbackVectorService, never()).updatePlaybackVectorWithIntervals(any(), any(), any());
+    }
+
+    @Test
+    void recordPlaybackCounts_shouldRejectCountsPastTheVideo_whenKafkaPipelineEnabled() throws Exception {
+        // Given
+        when(playbackEventPublisher.isEnabled()).thenReturn(true);
+        when(playbackVectorService.getVideoDuration(resourceId)).thenReturn(3);
+
+        // When & Then
+        mockMvc.perform(post("/api/playback/record-counts")
+                .param("studentId", studentId.toString())
+                .param("resourceId", resourceId.toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new int[]{1, 1, 1, 1})))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.success", is(false)));
+        verify(playbackEventPublisher, never()).publish(any(), any(), any());
+    }
+
+    @Test
+    void recordPlaybackCounts_shouldPublishCountsWithinTheVideo_whenKafkaPipelineEnabled() throws Exception {
+        // Given
+        when(playbackEventPublisher.isEnabled()).thenReturn(true);
+        when(playbackVectorService.getVideoDuration(resourceId)).thenReturn(3);
+
+        // When & Then
+        mockMvc.perform(post("/api/playback/record-counts")
+                .param("studentId", studentId.toString())
+                .param("resourceId", resourceId.toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new int[]{1, 0, 2})))
+                .andExpect(status().isAccepted());
+        verify(playbackEventPublisher).publish(studentId, resourceId, new int[]{1, 0, 2});
+    }
+
+    @Test
+    void recordPlayedIntervals_shouldRejectIntervalsPastTheVideo_whenKafkaPipelineEnabled() throws Exception {
+        // Given
+        when(playbackEventPublisher.isEnabled()).thenReturn(true);
+        when(playbackVectorService.getVideoDuration(resourceId)).thenReturn(120);
+        int[][] intervals = {{0, 10}, {100, Integer.MAX_VALUE}};
+
+        // When & Then
+        mockMvc.perform(post("/api/playback/record-intervals")
+                .param("studentId", studentId.toString())
+                .param("resourceId", resourceId.toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(intervals)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.success", is(false)));
+        verify(playbackEventPublisher, never()).publish(any(), any(), any());
+    }
 }
@@ -2,6 +2,7 @@ package org.bedrock.teateach.controllers;
 
 import org.bedrock.teateach.beans.Course;
 import org.bedrock.teateach.llm.LLMService;
+import org.bedrock.teateach.services.AbilityProfileService;
 import org.bedrock.teateach.services.CourseEnrollmentService;
 import org.bedrock.teateach.services.CourseService;
 import org.bedrock.teateach.services.StudentService;
@@ -35,6 +36,9 @@ class StudentAbilityControllerTest {
     @Mock
     private StudentService studentService;
 
+    @Mock
+    private AbilityProfileService abilityProfileService;
+
     @InjectMocks
     private StudentAbilityController studentAbilityController;
 
@@ -79,7 +83,7 @@ class StudentAbilityControllerTest {
     void analyzeStudentAbilities_WhenSuccessful_ShouldReturnAnalysis() {
         // Given
         Long studentId = 1L;
-        when(llmService.analyzeStudentAbilities(studentId)).thenReturn(testAbilityAnalysis);
+        when(abilityProfileService.getProfile(studentId)).thenReturn(testAbilityAnalysis);
 
         // When
         ResponseEntity<Map<String, Object>> response = studentAbilityController.analyzeStudentAbilities(studentId);
@@ -87,14 +91,14 @@ class StudentAbilityControllerTest {
         // Then
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(testAbilityAnalysis, response.getBody());
-        verify(llmService, times(1)).analyzeStudentAbilities(studentId);
+        verify(abilityProfileService, times(1)).getProfile(studentId);
     }
 
     @Test
     void analyzeStudentAbilities_WhenExceptionOccurs_ShouldReturnInternalServerError() {
         // Given
         Long studentId = 1L;
-        when(llmService.analyzeStudentAbilities(studentId)).thenThrow(new RuntimeException("Analysis failed"));
+        when(abilityProfileService.getProfile(studentId)).thenThrow(new RuntimeException("Analysis failed"));
 
         // When
         ResponseEntity<Map<String, Object>> response = studentAbilityController.analyzeStudentAbilities(studentId);
@@ -105,7 +109,7 @@ class StudentAbilityControllerTest {
         assertEquals("Analysis failed", response.getBody().get("error"));
         assertEquals("Analysis failed", response.getBody().get("message"));
         assertEquals(studentId, response.getBody().get("studentId"));
-        verify(llmService, times(1)).analyzeStudentAbilities(studentId);
+        verify(abilityProfileService, times(1)).getProfile(studentId);
     }
 
     @Test
@@ -116,7 +120,7 @@ class StudentAbilityControllerTest {
         List<String> interestedFields = (List<String>) testAbilityAnalysis.get("interestedFields");
         List<String> enrolledCourses = (List<String>) testAbilityAnalysis.get("enrolledCourses");
         
-        when(llmService.analyzeStudentAbilities(studentId)).thenReturn(testAbilityAnalysis);
+        when(abilityProfileService.getProfile(studentId)).thenReturn(testAbilityAnalysis);
         when(llmService.recommendResources(abilities, interestedFields, enrolledCourses, "all"))
             .thenReturn(testRecommendations);
 
@@ -126,7 +130,7 @@ class StudentAbilityControllerTest {
         // Then
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(testRecommendations, response.getBody());
-        verify(llmService, times(1)).analyzeStudentAbilities(studentId);
+        verify(abilityProfileService, times(1)).getProfile(studentId);
         verify(llmService, times(1)).recommendResources(abilities, interestedFields, enrolledCourses, "all");
     }
 
@@ -139,7 +143,7 @@ class StudentAbilityControllerTest {
         List<String> interestedFields = (List<String>) testAbilityAnalysis.get("interestedFields");
         List<String> enrolledCourses = (List<String>) testAbilityAnalysis.get("enrolledCourses");
         
-        when(llmService.analyzeStudentAbilities(studentId)).thenReturn(testAbilityAnalysis);
+        when(abilityProfileService.getProfile(studentId)).thenReturn(testAbilityAnalysis);
         when(llmService.recommendResources(abilities, interestedFields, enrolledCourses, resourceType))
             .thenReturn(testRecommendations);
 
@@ -149,7 +153,7 @@ class StudentAbilityControllerTest {
         // Then
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(testRecommendations, response.getBody());
-        verify(llmService, times(1)).analyzeStudentAbilities(studentId);
+        verify(abilityProfileService, times(1)).getProfile(studentId);
         verify(llmService, times(1)).recommendResources(abilities, interestedFields, enrolledCourses, resourceType);
     }
 
@@ -158,7 +162,7 @@ class StudentAbilityControllerTest {
         // Given
         Long studentId = 1L;
         String resourceType = "course";
-        when(llmService.analyzeStudentAbilities(studentId)).thenThrow(new RuntimeException("Recommendation failed"));
+        when(abilityProfileService.getProfile(studentId)).thenThrow(new RuntimeException("Recommendation failed"));
 
         // When
         ResponseEntity<Map<String, Object>> response = studentAbilityController.recommendResources(studentId, resourceType);
@@ -170,14 +174,14 @@ class StudentAbilityControllerTest {
         assertEquals("Recommendation failed", response.getBody().get("message"));
         assertEquals(studentId, response.getBody().get("studentId"));
         assertEquals(resourceType, response.getBody().get("resourceType"));
-        verify(llmService, times(1)).analyzeStudentAbilities(studentId);
+        verify(abilityProfileService, times(1)).getProfile(studentId);
     }
 
     @Test
     void getComprehensiveRecommendations_WhenExceptionOccurs_ShouldReturnInternalServerError() {
         // Given
         Long studentId = 1L;
-        when(llmService.analyzeStudentAbilities(studentId)).thenThrow(new RuntimeException("Comprehensive recommendation failed"));
+        when(abilityProfileService.getProfile(studentId)).thenThrow(new RuntimeException("Comprehensive recommendation failed"));
 
         // When
         ResponseEntity<Map<String, Object>> response = studentAbilityController.getComprehensiveRecommendations(studentId);
@@ -188,7 +192,7 @@ class StudentAbilityControllerTest {
         assertEquals("Comprehensive recommendation failed", response.getBody().get("error"));
         assertEquals("Comprehensive recommendation failed", response.getBody().get("message"));
         assertEquals(studentId, response.getBody().get("studentId"));
-        verify(llmService, times(1)).analyzeStudentAbilities(studentId);
+        verify(abilityProfileService, times(1)).getProfile(studentId);
     }
 
     @Test
@@ -1,7 +1,12 @@
 package org.bedrock.teateach.controllers;
 
+import org.bedrock.teateach.beans.GradingJob;
 import org.bedrock.teateach.beans.StudentTaskSubmission;
+import org.bedrock.teateach.dto.GradingJobProgress;
+import org.bedrock.teateach.enums.GradingJobStatus;
 import org.bedrock.teateach.services.GradeService;
+import org.bedrock.teateach.services.GradingJobRunner;
+import org.bedrock.teateach.services.GradingJobService;
 import org.bedrock.teateach.services.StudentTaskSubmissionService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -37,6 +42,12 @@ class StudentTaskSubmissionControllerTest {
     @Mock
     private GradeService gradeService;
 
+    @Mock
+    private GradingJobService gradingJobService;
+
+    @Mock
+    private GradingJobRunner gradingJobRunner;
+
     @InjectMocks
     private StudentTaskSubmissionController studentTaskSubmissionController;
 
@@ -261,6 +272,22 @@ class StudentTaskSubmissionControllerTest {
     }
 
 
+    @Test
+    void testStreamGradeSubmissionWithLLM_SubmissionNotFound() {
+        // Given
+        Long submissionId = 1L;
+
+        when(studentTaskSubmissionService.getSubmissionById(submissionId)).thenReturn(Optional.empty());
+
+        // When
+        ResponseEntity<?> response = studentTaskSubmissionController.streamGradeSubmissionWithLLM(submissionId, null);
+
+        // Then
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        assertNull(response.getBody());
+    }
+
+
     @Test
     void testGenerateFeedbackWithLLM_SubmissionNotFound() {
         // Given
@@ -295,4 +322,92 @@ class StudentTaskSubmissionControllerTest {
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
         verify(studentTaskSubmissionService, times(1)).getSubmissionById(1L);
     }
+
+    @Test
+    void submitBatchGradingJob_ShouldReturnAcceptedWithJobId() {
+        // Given: JSON numbers arrive as Integers
+        Map<String, Object> request = new HashMap<>();
+        request.put("submissionIds", Arrays.asList(1, 2));
+        GradingJob job = new GradingJob();
+        job.setId(7L);
+        job.setTotalItems(2);
+        when(gradingJobService.createJob(Arrays.asList(1L, 2L), null, false)).thenReturn(job);
+
+        // When
+        ResponseEntity<?> response = studentTaskSubmissionController.submitBatchGradingJob(request);
+
+        // Then
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertEquals(7L, ((Map<?, ?>) response.getBody()).get("jobId"));
+        verify(gradingJobRunner).submit(7L);
+    }
+
+    @Test
+    void submitBatchGradingJob_WhenNoIds_ShouldReturnBadRequest() {
+        // When
+        ResponseEntity<?> response = studentTaskSubmissionController.submitBatchGradingJob(new HashMap<>());
+
+        // Then
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(gradingJobService, gradingJobRunner);
+    }
+
+    @Test
+    void getBatchGradingJob_ShouldReturnProgress() {
+        // Given
+        GradingJobProgress progress = new GradingJobProgress(new GradingJob(), 50.0, new ArrayList<>());
+        when(gradingJobService.getProgress(7L)).thenReturn(Optional.of(progress));
+
+        // When
+        ResponseEntity<GradingJobProgress> response = studentTaskSubmissionController.getBatchGradingJob(7L);
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(50.0, response.getBody().getProgressPercentage());
+    }
+
+    @Test
+    void getBatchGradingJob_WhenUnknown_ShouldReturnNotFound() {
+        // Given
+        when(gradingJobService.getProgress(7L)).thenReturn(Optional.empty());
+
+        // When
+        ResponseEntity<GradingJobProgress> response = studentTaskSubmissionController.getBatchGradingJob(7L);
+
+        // Then
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
+    @Test
+    void retryBatchGradingJob_ShouldRequeueFailedItems() {
+        // Given
+        when(gradingJobService.getJob(7L)).thenReturn(new GradingJob());
+        when(gradingJobRunner.isActive(7L)).thenReturn(false);
+        when(gradingJobService.prepareRetry(7L)).thenReturn(3);
+
+        // When
+        ResponseEntity<?> response = studentTaskSubmissionController.retryBatchGradingJob(7L);
+
+        // Then
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertEquals(3, ((Map<?, ?>) response.getBody()).get("requeuedItems"));
+        verify(gradingJobRunner).submit(7L);
+    }
+
+    @Test
+    void retryBatchGradingJob_ShouldConflict_WhenAnotherInstanceIsGradingTheJob() {
+        // Given
+        GradingJob job = new GradingJob();
+        job.setStatus(GradingJobStatus.RUNNING);
+        when(gradingJobService.getJob(7L)).thenReturn(job);
+        when(gradingJobRunner.isActive(7L)).thenReturn(false);
+
+        // When
+        ResponseEntity<?> response = studentTaskSubmissionController.retryBatchGradingJob(7L);
+
+        // Then
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        verify(gradingJobService, never()).prepareRetry(anyLong());
+        verify(gradingJobRunner, never()).submit(anyLong());
+    }
 }
@@ -0,0 +1,96 @@
+package org.bedrock.teateach.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bedrock.teateach.beans.StudentTaskSubmission;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.mock.env.MockEnvironment;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * batchGradeSubmissions against a stub model with a fixed latency per call. How many calls the model sees at once is
+ * what llm.grading.concurrency controls; throughput is printed for reference but not asserted, as it depends on the
+ * machine running the build.
+ */
+class BatchGradingBenchmarkTest {
+
+    private static final int SUBMISSIONS = 32;
+    private static final long MODEL_LATENCY_MS = 50;
+
+    /**
+     * Answers every prompt with a fixed grading after a fixed delay, like a model server with free capacity, and
+     * records the most calls it served at once
+     */
+    private static class StubChatModel implements ChatModel {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(MODEL_LATENCY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(
+                    "<think>short</think>{\"score\": 88, \"feedback\": \"good\", \"criteriaBreakdown\": {}}"))));
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            return Mono.fromCallable(() -> call(prompt)).flux();
+        }
+    }
+
+    private static List<StudentTaskSubmission> submissions() {
+        List<StudentTaskSubmission> submissions = new ArrayList<>();
+        for (long id = 1; id <= SUBMISSIONS; id++) {
+            StudentTaskSubmission submission = new StudentTaskSubmission();
+            submission.setId(id);
+            submission.setStudentId(id);
+            submission.setTaskId(1L);
+            submission.setSubmissionContent("Essay " + id);
+            submissions.add(submission);
+        }
+        return submissions;
+    }
+
+    @Test
+    void batchGradeSubmissions_shouldKeepAsManyModelCallsInFlightAsConfigured() {
+        for (int concurrency : new int[]{1, 2, 4, 8}) {
+            StubChatModel model = new StubChatModel();
+            BatchGradingEngine engine = new BatchGradingEngine(concurrency, 10_000, 1, 0);
+            try {
+                LLMService service = TestLLMServices.create(model, engine,
+                        new LlmResponseCache(null, new MockEnvironment(), false, false, "stub", 60, 10,
+                                new SimpleMeterRegistry()),
+                        new ModelRouter(new MockEnvironment(), new SimpleMeterRegistry(), "stub", ""));
+                long started = System.nanoTime();
+                Map<String, Object> result = service.batchGradeSubmissions(submissions(), null);
+                double seconds = (System.nanoTime() - started) / 1e9;
+                System.out.printf("concurrency=%d: %.1f submissions/s%n", concurrency, SUBMISSIONS / seconds);
+
+                assertEquals(SUBMISSIONS, result.get("successCount"));
+                assertEquals(concurrency, model.maxInFlight.get(), "Peak concurrent model calls");
+            } finally {
+                engine.shutdown();
+            }
+        }
+    }
+}
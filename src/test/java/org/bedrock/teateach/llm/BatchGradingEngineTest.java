@@ -0,0 +1,144 @@
+package org.bedrock.teateach.llm;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchGradingEngineTest {
+
+    private BatchGradingEngine engine;
+
+    @AfterEach
+    void tearDown() {
+        if (engine != null) {
+            engine.shutdown();
+        }
+    }
+
+    private static List<Long> ids(int count) {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= count; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    void gradeAll_shouldNeverExceedConcurrencyLimit() {
+        // Given
+        engine = new BatchGradingEngine(3, 5_000, 1, 0);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        // When
+        List<BatchGradingEngine.GradingOutcome> outcomes = engine.gradeAll(ids(12), id -> id, id -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            sleep(30);
+            inFlight.decrementAndGet();
+            return "ok";
+        }, null);
+
+        // Then
+        assertEquals(12, outcomes.size());
+        assertTrue(outcomes.stream().allMatch(BatchGradingEngine.GradingOutcome::isSuccess));
+        assertEquals(3, maxInFlight.get());
+    }
+
+    @Test
+    void gradeAll_shouldRetryFailedAttempts() {
+        // Given
+        engine = new BatchGradingEngine(2, 5_000, 3, 1);
+        Map<Long, AtomicInteger> calls = new ConcurrentHashMap<>();
+
+        // When
+        List<BatchGradingEngine.GradingOutcome> outcomes = engine.gradeAll(ids(2), id -> id, id -> {
+            if (calls.computeIfAbsent(id, k -> new AtomicInteger()).incrementAndGet() < 3) {
+                throw new IllegalStateException("model overloaded");
+            }
+            return "graded " + id;
+        }, null);
+
+        // Then
+        for (BatchGradingEngine.GradingOutcome outcome : outcomes) {
+            assertTrue(outcome.isSuccess());
+            assertEquals(3, outcome.getAttempts());
+            assertEquals("graded " + outcome.getId(), outcome.getResult());
+        }
+    }
+
+    @Test
+    void gradeAll_shouldReportFailure_whenEveryAttemptTimesOut() {
+        // Given
+        engine = new BatchGradingEngine(1, 50, 2, 1);
+
+        // When
+        List<BatchGradingEngine.GradingOutcome> outcomes = engine.gradeAll(ids(1), id -> id, id -> {
+            sleep(5_000);
+            return "too late";
+        }, null);
+
+        // Then
+        BatchGradingEngine.GradingOutcome outcome = outcomes.get(0);
+        assertFalse(outcome.isSuccess());
+        assertEquals(2, outcome.getAttempts());
+        assertTrue(outcome.getError().contains("Timed out"));
+        assertTrue(outcome.getElapsedMs() < 2_000, "Timed-out calls must be abandoned, not awaited");
+    }
+
+    @Test
+    void gradeAll_shouldKeepAbandonedCallsWithinConcurrencyLimit() {
+        // Given a model call that, like a blocking HTTP request, ignores the interrupt sent when its attempt times out
+        engine = new BatchGradingEngine(2, 50, 3, 1);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        // When
+        List<BatchGradingEngine.GradingOutcome> outcomes = engine.gradeAll(ids(4), id -> id, id -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            long until = System.nanoTime() + 200_000_000L;
+            while (System.nanoTime() < until) {
+                Thread.onSpinWait();
+            }
+            inFlight.decrementAndGet();
+            return "too late";
+        }, null);
+
+        // Then
+        assertEquals(4, outcomes.size());
+        assertTrue(outcomes.stream().noneMatch(BatchGradingEngine.GradingOutcome::isSuccess));
+        assertEquals(2, maxInFlight.get());
+    }
+
+    @Test
+    void gradeAll_shouldReportOutcomesInCompletionOrder() {
+        // Given
+        engine = new BatchGradingEngine(2, 5_000, 1, 0);
+        List<Long> reported = new ArrayList<>();
+
+        // When
+        List<BatchGradingEngine.GradingOutcome> outcomes = engine.gradeAll(List.of(1L, 2L), id -> id, id -> {
+            sleep(id == 1L ? 300 : 10);
+            return "ok";
+        }, outcome -> reported.add(outcome.getId()));
+
+        // Then
+        assertEquals(List.of(2L, 1L), reported);
+        assertEquals(2L, outcomes.get(0).getId());
+    }
+}
@@ -0,0 +1,129 @@
+package org.bedrock.teateach.llm;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingEmbeddingModelTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Embeds a text as {length, first character} and records the texts of every call
+     */
+    private static class RecordingEmbeddingModel implements EmbeddingModel {
+        private final List<List<String>> calls = new ArrayList<>();
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            calls.add(List.copyOf(request.getInstructions()));
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                String text = request.getInstructions().get(i);
+                embeddings.add(new Embedding(new float[]{text.length(), text.charAt(0)}, i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private final RecordingEmbeddingModel delegate = new RecordingEmbeddingModel();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private CachingEmbeddingModel model(int batchSize, int maxEntries, Path cachePath) {
+        CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, "nomic-embed-text", batchSize, maxEntries,
+                cachePath, meterRegistry);
+        model.load();
+        return model;
+    }
+
+    @Test
+    void embed_shouldBatchMissesAndEmbedDuplicatesOnce() {
+        CachingEmbeddingModel model = model(2, 100, null);
+
+        List<float[]> vectors = model.embed(List.of("alpha", "beta", "alpha", "gamma", "delta", "epsilon"));
+
+        assertEquals(6, vectors.size());
+        assertArrayEquals(new float[]{5, 'a'}, vectors.get(0));
+        assertArrayEquals(vectors.get(0), vectors.get(2));
+        assertArrayEquals(new float[]{7, 'e'}, vectors.get(5));
+        assertEquals(List.of(List.of("alpha", "beta"), List.of("gamma", "delta"), List.of("epsilon")), delegate.calls);
+    }
+
+    @Test
+    void embed_shouldAnswerRepeatedTextsFromTheCacheAndReportHitRatio() {
+        CachingEmbeddingModel model = model(8, 100, null);
+
+        model.embed(List.of("alpha", "beta"));
+        model.embed(List.of("alpha", "beta", "gamma"));
+        model.embed(new Document("alpha"));
+
+        assertEquals(List.of(List.of("alpha", "beta"), List.of("gamma")), delegate.calls);
+        assertEquals(3, model.getHitCount());
+        assertEquals(3, model.getMissCount());
+        assertEquals(0.5, meterRegistry.get("llm.embedding.cache.hit.ratio").gauge().value(), 1e-9);
+        assertEquals(3, meterRegistry.get("llm.embedding.computed").counter().count(), 1e-9);
+        assertEquals(2, meterRegistry.get("llm.embedding.model.calls").timer().count());
+        assertTrue(model.getThroughput() > 0);
+    }
+
+    @Test
+    void cache_shouldDependOnTheModel() {
+        CachingEmbeddingModel nomic = model(8, 100, null);
+        CachingEmbeddingModel other = new CachingEmbeddingModel(delegate, "mxbai-embed-large", 8, 100, null, meterRegistry);
+
+        assertNotEquals(nomic.key("alpha"), other.key("alpha"));
+        assertEquals(nomic.key("alpha"), nomic.key("alpha"));
+    }
+
+    @Test
+    void cache_shouldSurviveRestartAndDropTruncatedRecord() throws IOException {
+        Path file = tempDir.resolve("data").resolve("embedding-cache.bin");
+        CachingEmbeddingModel first = model(8, 100, file);
+        first.embed(List.of("alpha", "beta"));
+        first.close();
+        // A crash while appending leaves half a record behind
+        Files.write(file, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        CachingEmbeddingModel restarted = model(8, 100, file);
+        restarted.embed(List.of("alpha", "beta", "gamma"));
+        restarted.close();
+        CachingEmbeddingModel again = model(8, 100, file);
+
+        assertEquals(List.of(List.of("alpha", "beta"), List.of("gamma")), delegate.calls);
+        assertEquals(3, again.size());
+        again.close();
+    }
+
+    @Test
+    void cache_shouldBeBypassedWithoutEntries() {
+        CachingEmbeddingModel model = model(8, 0, tempDir.resolve("embedding-cache.bin"));
+
+        model.embed(List.of("alpha"));
+        model.embed(List.of("alpha"));
+
+        assertEquals(2, delegate.calls.size());
+        assertEquals(0, model.size());
+        assertFalse(Files.exists(tempDir.resolve("embedding-cache.bin")));
+    }
+}
@@ -0,0 +1,56 @@
+package org.bedrock.teateach.llm;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonStreamExtractorTest {
+
+    @Test
+    void accept_shouldCompleteWithTheFirstTopLevelValue() {
+        // Given
+        JsonStreamExtractor extractor = new JsonStreamExtractor();
+
+        // When / Then
+        assertFalse(extractor.accept("<think>maybe {\"score\": 1}</think>```json\n{\"score\": 90, "));
+        assertFalse(extractor.accept("\"criteria\": [{\"a\": 1}, {\"b\": [2, 3]}]"));
+        assertTrue(extractor.accept("}\n```\nThe essay is strong because"));
+        assertTrue(extractor.accept(" anything after the answer is ignored {"));
+        assertEquals("{\"score\": 90, \"criteria\": [{\"a\": 1}, {\"b\": [2, 3]}]}", extractor.finish());
+    }
+
+    @Test
+    void accept_shouldIgnoreBracketsInsideStrings() {
+        // Given
+        JsonStreamExtractor extractor = new JsonStreamExtractor();
+
+        // When / Then
+        assertFalse(extractor.accept("[\"a } ] b\", \"quote \\\"]\\\" and slash \\\\"));
+        assertTrue(extractor.accept("\"]"));
+        assertEquals("[\"a } ] b\", \"quote \\\"]\\\" and slash \\\\\"]", extractor.finish());
+    }
+
+    @Test
+    void accept_shouldHandleThinkTagsSplitAcrossChunks() {
+        // Given
+        JsonStreamExtractor extractor = new JsonStreamExtractor();
+
+        // When / Then
+        assertFalse(extractor.accept("<thi"));
+        assertFalse(extractor.accept("nk>{\"draft\": "));
+        assertFalse(extractor.accept("1}</th"));
+        assertTrue(extractor.accept("ink>{\"final\": 2}"));
+        assertEquals("{\"final\": 2}", extractor.finish());
+    }
+
+    @Test
+    void finish_shouldReturnTheVisibleTextWhenNoJsonValueCompleted() {
+        // Given
+        JsonStreamExtractor extractor = new JsonStreamExtractor();
+        extractor.accept("<think>hmm</think>\nI cannot grade this {");
+
+        // When / Then
+        assertFalse(extractor.isComplete());
+        assertEquals("I cannot grade this {", extractor.finish());
+    }
+}
@@ -0,0 +1,221 @@
+package org.bedrock.teateach.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bedrock.teateach.beans.StudentTaskSubmission;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.mock.env.MockEnvironment;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Streaming LLM responses against a stub model whose chunks are released by the test
+ */
+class LLMServiceStreamingTest {
+
+    private Sinks.Many<ChatResponse> modelOutput;
+    private LlmResponseCache responseCache;
+    private LLMService llmService;
+    private String escalatedAnswer;
+    private final List<String> escalatedModels = new CopyOnWriteArrayList<>();
+    private StudentTaskSubmission submission;
+
+    private static ChatResponse chunk(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+
+    private LLMService service(ModelRouter modelRouter) {
+        ChatModel model = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new UnsupportedOperationException("Only streaming is expected");
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                // Prompts for the default model carry no options; with escalatedAnswer set, those are escalated calls
+                if (escalatedAnswer != null && (prompt.getOptions() == null || prompt.getOptions().getModel() == null)) {
+                    escalatedModels.add("stub");
+                    return Flux.just(chunk(escalatedAnswer));
+                }
+                return modelOutput.asFlux();
+            }
+        };
+        return TestLLMServices.create(model, mock(BatchGradingEngine.class), responseCache, modelRouter);
+    }
+
+    @BeforeEach
+    void setUp() {
+        modelOutput = Sinks.many().unicast().onBackpressureBuffer();
+        responseCache = new LlmResponseCache(null, new MockEnvironment(), true, false, "stub", 60, 10,
+                new SimpleMeterRegistry());
+        llmService = service(new ModelRouter(new MockEnvironment(), new SimpleMeterRegistry(), "stub", ""));
+
+        submission = new StudentTaskSubmission();
+        submission.setId(1L);
+        submission.setStudentId(101L);
+        submission.setTaskId(201L);
+        submission.setSubmissionContent("Essay");
+    }
+
+    @Test
+    void streamGradeSubmission_shouldEmitTokensBeforeTheModelFinishes() throws InterruptedException {
+        // Given
+        List<LlmStreamEvent> events = new CopyOnWriteArrayList<>();
+        CountDownLatch firstToken = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        llmService.streamGradeSubmission(submission, null).subscribe(event -> {
+            events.add(event);
+            if (LlmStreamEvent.TOKEN.equals(event.getType())) {
+                firstToken.countDown();
+            }
+        }, error -> done.countDown(), done::countDown);
+
+        // When: the model is still reasoning, then starts its answer
+        modelOutput.tryEmitNext(chunk("<think>weighing the rubric"));
+        modelOutput.tryEmitNext(chunk(" carefully</think>\n{\"score\": 9"));
+
+        // Then: the answer is visible while the stream is still open
+        assertTrue(firstToken.await(2, TimeUnit.SECONDS));
+        assertEquals(1, done.getCount());
+
+        // When
+        modelOutput.tryEmitNext(chunk("0, \"feedback\": \"Clear argument\"}"));
+        modelOutput.tryEmitComplete();
+
+        // Then
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        String visible = events.stream()
+                .filter(event -> LlmStreamEvent.TOKEN.equals(event.getType()))
+                .map(event -> (String) ((Map<?, ?>) event.getData()).get("text"))
+                .collect(Collectors.joining());
+        assertEquals("{\"score\": 90, \"feedback\": \"Clear argument\"}", visible);
+
+        LlmStreamEvent last = events.get(events.size() - 1);
+        assertTrue(last.isResult());
+        Map<?, ?> result = (Map<?, ?>) last.getData();
+        assertEquals(true, result.get("success"));
+        assertEquals(90.0, result.get("score"));
+        assertEquals("Clear argument", result.get("feedback"));
+    }
+
+    @Test
+    void streamGradeSubmission_shouldReplayCachedResponseWithoutCallingTheModel() throws InterruptedException {
+        // Given: a first stream that completes and is cached
+        CountDownLatch firstDone = new CountDownLatch(1);
+        llmService.streamGradeSubmission(submission, null).subscribe(event -> { }, error -> firstDone.countDown(), firstDone::countDown);
+        modelOutput.tryEmitNext(chunk("<think>x</think>{\"score\": 70, \"feedback\": \"ok\"}"));
+        modelOutput.tryEmitComplete();
+        assertTrue(firstDone.await(2, TimeUnit.SECONDS));
+
+        // When: the model sink is single-use, so a second model call would end in an error event
+        List<LlmStreamEvent> events = llmService.streamGradeSubmission(submission, null).collectList().block();
+
+        // Then
+        assertNotNull(events);
+        assertEquals(2, events.size());
+        assertEquals("{\"score\": 70, \"feedback\": \"ok\"}", ((Map<?, ?>) events.get(0).getData()).get("text"));
+        assertEquals(70.0, ((Map<?, ?>) events.get(1).getData()).get("score"));
+        assertEquals(1, responseCache.getStats().get(0).getLocalHits());
+    }
+
+    @Test
+    void streamGradeSubmission_shouldEndWithError_whenAnswerIsNotJson() throws InterruptedException {
+        // Given
+        List<LlmStreamEvent> events = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        llmService.streamGradeSubmission(submission, null).subscribe(events::add, error -> done.countDown(), done::countDown);
+
+        // When
+        modelOutput.tryEmitNext(chunk("<think>hmm</think>I cannot grade this"));
+        modelOutput.tryEmitComplete();
+
+        // Then
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals(LlmStreamEvent.ERROR, events.get(events.size() - 1).getType());
+    }
+
+    @Test
+    void streamGradeSubmission_shouldEscalateToTheLargeModel_whenTheSmallModelsAnswerIsNotJson() throws InterruptedException {
+        // Given: grading routed to a small model, the default model answers the escalated call
+        MockEnvironment environment = new MockEnvironment().withProperty("llm.routing.grading.model", "small");
+        ModelRouter modelRouter = new ModelRouter(environment, new SimpleMeterRegistry(), "stub", "");
+        llmService = service(modelRouter);
+        escalatedAnswer = "{\"score\": 95, \"feedback\": \"Escalated\"}";
+        List<LlmStreamEvent> events = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        llmService.streamGradeSubmission(submission, null).subscribe(events::add, error -> done.countDown(), done::countDown);
+
+        // When
+        modelOutput.tryEmitNext(chunk("I cannot grade this"));
+        modelOutput.tryEmitComplete();
+
+        // Then
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        LlmStreamEvent last = events.get(events.size() - 1);
+        assertTrue(last.isResult());
+        assertEquals(95.0, ((Map<?, ?>) last.getData()).get("score"));
+        assertEquals(List.of("stub"), escalatedModels);
+        assertEquals(1, modelRouter.getEscalationCount(ModelRouter.Task.GRADING));
+        assertEquals(1.0, modelRouter.getEscalationRate(ModelRouter.Task.GRADING));
+    }
+
+    @Test
+    void gradeStudentReport_shouldCancelTheModelStreamOnceTheJsonIsComplete() {
+        // Given: the model keeps talking after its answer and never closes the stream
+        modelOutput.tryEmitNext(chunk("<think>{draft}</think>```json\n{\"score\": 8"));
+        modelOutput.tryEmitNext(chunk("2, \"feedback\": \"Uses \\\"}\\\" well {really}\"}\n```"));
+        modelOutput.tryEmitNext(chunk("\nLet me also explain the score in detail..."));
+
+        // When
+        Map<String, Object> result = llmService.gradeStudentReport(submission, "rubric");
+
+        // Then
+        assertEquals(82, ((Number) result.get("score")).intValue());
+        assertEquals("Uses \"}\" well {really}", result.get("feedback"));
+        assertEquals(0, modelOutput.currentSubscriberCount());
+    }
+
+    @Test
+    void gradeStudentReport_shouldCacheOnlyTheJsonOfTheAnswer() {
+        // Given
+        modelOutput.tryEmitNext(chunk("{\"score\": 75, \"feedback\": \"ok\"} and some closing remarks"));
+        llmService.gradeStudentReport(submission, "rubric");
+
+        // When: the model sink is single-use, so only the cache can answer
+        Map<String, Object> again = llmService.gradeStudentReport(submission, "rubric");
+
+        // Then
+        assertEquals(75, ((Number) again.get("score")).intValue());
+        assertEquals(1, responseCache.getStats().get(0).getLocalHits());
+    }
+
+    @Test
+    void streamFeedback_shouldRejectEmptySubmissionWithoutCallingTheModel() {
+        // Given
+        submission.setSubmissionContent("  ");
+
+        // When
+        List<LlmStreamEvent> events = llmService.streamFeedback(submission, null).collectList().block();
+
+        // Then
+        assertNotNull(events);
+        assertEquals(1, events.size());
+        assertEquals(LlmStreamEvent.ERROR, events.get(0).getType());
+    }
+}
@@ -0,0 +1,155 @@
+package org.bedrock.teateach.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bedrock.teateach.dto.LlmCacheStats;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LlmResponseCacheTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    private MockEnvironment environment;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        environment = new MockEnvironment();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    private static Prompt prompt(String system, String user) {
+        return new Prompt(List.of(new SystemMessage(system), new UserMessage(user)));
+    }
+
+    @Test
+    void key_shouldDependOnModelAndEveryMessage() {
+        // Given
+        LlmResponseCache cache = new LlmResponseCache(redisTemplate, environment, true, false, "deepseek-r1:70b", 60, 10,
+                meterRegistry);
+        LlmResponseCache otherModel = new LlmResponseCache(redisTemplate, environment, true, false, "llama3:8b", 60, 10,
+                meterRegistry);
+
+        // Then
+        assertEquals(cache.key(prompt("grader", "essay")), cache.key(prompt("grader", "essay")));
+        assertNotEquals(cache.key(prompt("grader", "essay")), cache.key(prompt("grader", "essay 2")));
+        assertNotEquals(cache.key(prompt("grader", "essay")), cache.key(prompt("feedback", "essay")));
+        assertNotEquals(cache.key(prompt("grader", "essay")), otherModel.key(prompt("grader", "essay")));
+        assertEquals(64, cache.key(prompt("grader", "essay")).length());
+    }
+
+    @Test
+    void get_shouldCountHitsAndMisses() {
+        // Given
+        LlmResponseCache cache = new LlmResponseCache(redisTemplate, environment, true, false, "m", 60, 10,
+                meterRegistry);
+
+        // When
+        Optional<String> miss = cache.get("grading", "k");
+        cache.put("grading", "k", "{\"score\": 90}");
+        Optional<String> hit = cache.get("grading", "k");
+
+        // Then
+        assertTrue(miss.isEmpty());
+        assertEquals("{\"score\": 90}", hit.orElseThrow());
+        LlmCacheStats stats = cache.getStats().get(0);
+        assertEquals(1, stats.getLocalHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(50.0, stats.getHitRate());
+        assertEquals(1.0, meterRegistry.get("llm.response.cache.requests")
+                .tags("site", "grading", "result", "local-hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("llm.response.cache.requests")
+                .tags("site", "grading", "result", "miss").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("llm.response.cache.size").tag("site", "grading").gauge().value());
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    void get_shouldBypassSiteDisabledByProperty() {
+        // Given
+        environment.setProperty("llm.cache.grading.enabled", "false");
+        LlmResponseCache cache = new LlmResponseCache(redisTemplate, environment, true, false, "m", 60, 10,
+                meterRegistry);
+
+        // When
+        cache.put("grading", "k", "response");
+        cache.put("recommendations", "k", "response");
+
+        // Then
+        assertTrue(cache.get("grading", "k").isEmpty());
+        assertTrue(cache.get("recommendations", "k").isPresent());
+        LlmCacheStats grading = cache.getStats().get(0);
+        assertEquals("grading", grading.getSite());
+        assertFalse(grading.isEnabled());
+        assertEquals(1, grading.getBypassed());
+    }
+
+    @Test
+    void get_shouldFallBackToRedisAndKeepTheResponseLocally() {
+        // Given
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get(LlmResponseCache.REDIS_PREFIX + "grading:k")).thenReturn("shared");
+        LlmResponseCache cache = new LlmResponseCache(redisTemplate, environment, true, true, "m", 60, 10,
+                meterRegistry);
+
+        // When
+        Optional<String> first = cache.get("grading", "k");
+        Optional<String> second = cache.get("grading", "k");
+
+        // Then
+        assertEquals("shared", first.orElseThrow());
+        assertEquals("shared", second.orElseThrow());
+        verify(valueOperations, times(1)).get(LlmResponseCache.REDIS_PREFIX + "grading:k");
+        LlmCacheStats stats = cache.getStats().get(0);
+        assertEquals(1, stats.getRedisHits());
+        assertEquals(1, stats.getLocalHits());
+    }
+
+    @Test
+    void put_shouldWriteToRedisWithSiteTtl() {
+        // Given
+        environment.setProperty("llm.cache.recommendations.ttl-seconds", "120");
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        LlmResponseCache cache = new LlmResponseCache(redisTemplate, environment, true, true, "m", 60, 10,
+                meterRegistry);
+
+        // When
+        cache.put("recommendations", "k", "[\"a\"]");
+
+        // Then
+        verify(valueOperations).set(LlmResponseCache.REDIS_PREFIX + "recommendations:k", "[\"a\"]", Duration.ofSeconds(120));
+    }
+
+    @Test
+    void get_shouldTreatRedisFailureAsMiss() {
+        // Given
+        when(redisTemplate.opsForValue()).thenThrow(new IllegalStateException("connection refused"));
+        LlmResponseCache cache = new LlmResponseCache(redisTemplate, environment, true, true, "m", 60, 10,
+                meterRegistry);
+
+        // When / Then
+        assertTrue(cache.get("grading", "k").isEmpty());
+        assertEquals(1, cache.getStats().get(0).getMisses());
+    }
+}
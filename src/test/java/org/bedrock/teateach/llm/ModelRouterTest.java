@@ -0,0 +1,85 @@
+package org.bedrock.teateach.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelRouterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ModelRouter router(MockEnvironment environment) {
+        return new ModelRouter(environment, meterRegistry, "deepseek-r1:70b", "");
+    }
+
+    private static String modelOf(Prompt prompt) {
+        return prompt.getOptions() != null ? prompt.getOptions().getModel() : "default";
+    }
+
+    @Test
+    void call_shouldUseTheModelConfiguredForTheTask() {
+        ModelRouter router = router(new MockEnvironment().withProperty("llm.routing.extraction.model", "llama3:8b"));
+
+        assertEquals("llama3:8b", router.call(ModelRouter.Task.EXTRACTION, new Prompt("q"), ModelRouterTest::modelOf));
+        // Tasks without a model keep the default model and the prompt unchanged
+        assertEquals("default", router.call(ModelRouter.Task.GRADING, new Prompt("q"), ModelRouterTest::modelOf));
+        assertFalse(router.escalates(ModelRouter.Task.GRADING));
+    }
+
+    @Test
+    void call_shouldEscalateToTheLargeModel_whenTheSmallModelsAnswerCannotBeParsed() {
+        ModelRouter router = router(new MockEnvironment().withProperty("llm.routing.analysis.model", "llama3:8b"));
+        List<String> models = new ArrayList<>();
+
+        String answer = router.call(ModelRouter.Task.ANALYSIS, new Prompt("q"), prompt -> {
+            models.add(modelOf(prompt));
+            if (models.size() == 1) {
+                throw new LlmResponseFormatException("not JSON", null);
+            }
+            return "{}";
+        });
+
+        assertEquals("{}", answer);
+        assertEquals(List.of("llama3:8b", "default"), models);
+        assertEquals(1, router.getEscalationCount(ModelRouter.Task.ANALYSIS));
+        assertEquals(1.0, meterRegistry.get("llm.task.escalations")
+                .tags("task", "analysis", "reason", "invalid-response").counter().count());
+        assertEquals(1, meterRegistry.get("llm.task.latency")
+                .tags("task", "analysis", "model", "llama3:8b", "outcome", "failure").timer().count());
+    }
+
+    @Test
+    void call_shouldReportTheEscalationRatePerTask() {
+        ModelRouter router = router(new MockEnvironment().withProperty("llm.routing.feedback.model", "llama3:8b"));
+
+        for (int i = 0; i < 4; i++) {
+            int n = i;
+            router.call(ModelRouter.Task.FEEDBACK, new Prompt("q"), prompt -> {
+                if (n == 0 && "llama3:8b".equals(modelOf(prompt))) {
+                    throw new IllegalStateException("model not found");
+                }
+                return "ok";
+            });
+        }
+
+        assertEquals(0.25, router.getEscalationRate(ModelRouter.Task.FEEDBACK));
+        assertEquals(0.25, meterRegistry.get("llm.task.escalation.rate").tags("task", "feedback").gauge().value());
+        assertEquals(0.0, router.getEscalationRate(ModelRouter.Task.GRADING));
+    }
+
+    @Test
+    void call_shouldRethrowWhenTheEscalationModelFailsToo() {
+        ModelRouter router = router(new MockEnvironment().withProperty("llm.routing.recommendation.model", "llama3:8b"));
+
+        assertThrows(LlmResponseFormatException.class, () -> router.call(ModelRouter.Task.RECOMMENDATION, new Prompt("q"),
+                prompt -> {
+                    throw new LlmResponseFormatException("not JSON", null);
+                }));
+    }
+}
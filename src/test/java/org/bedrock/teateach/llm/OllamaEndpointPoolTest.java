@@ -0,0 +1,132 @@
+package org.bedrock.teateach.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OllamaEndpointPoolTest {
+
+    private static OllamaEndpoint endpoint(String url, int maxConcurrency, String... models) {
+        return new OllamaEndpoint(url, maxConcurrency, Set.of(models), null, null);
+    }
+
+    private static OllamaEndpointPool pool(boolean modelAffinity, OllamaEndpoint... endpoints) {
+        return new OllamaEndpointPool(List.of(endpoints), modelAffinity, 2, 2, 200, 1000, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void acquire_shouldPickTheEndpointWithFewestOutstandingRequests() {
+        OllamaEndpoint a = endpoint("http://a", 4);
+        OllamaEndpoint b = endpoint("http://b", 4);
+        OllamaEndpointPool pool = pool(false, a, b);
+
+        OllamaEndpoint first = pool.acquire(null, Set.of());
+        OllamaEndpoint second = pool.acquire(null, Set.of());
+        OllamaEndpoint third = pool.acquire(null, Set.of());
+        pool.release(third, false);
+        pool.release(first, false);
+
+        assertNotSame(first, second);
+        assertEquals(0, first.getOutstanding());
+        assertEquals(1, second.getOutstanding());
+        // The endpoint without outstanding requests is chosen whichever endpoint's turn it is
+        assertSame(first, pool.acquire(null, Set.of()));
+    }
+
+    @Test
+    void acquire_shouldWaitForAFreeSlotWhenEveryEndpointIsAtItsCap() throws Exception {
+        OllamaEndpoint a = endpoint("http://a", 1);
+        OllamaEndpointPool pool = pool(false, a);
+        pool.acquire(null, Set.of());
+
+        CompletableFuture<OllamaEndpoint> waiting = CompletableFuture.supplyAsync(() -> pool.acquire(null, Set.of()));
+        Thread.sleep(50);
+        assertFalse(waiting.isDone());
+        pool.release(a, false);
+
+        assertSame(a, waiting.get(1, TimeUnit.SECONDS));
+        assertEquals(1, a.getOutstanding());
+    }
+
+    @Test
+    void acquire_shouldGiveUpAfterTheAcquireTimeout() {
+        OllamaEndpointPool pool = pool(false, endpoint("http://a", 1));
+        pool.acquire(null, Set.of());
+
+        assertThrows(IllegalStateException.class, () -> pool.acquire(null, Set.of()));
+    }
+
+    @Test
+    void acquire_shouldRouteModelsToTheEndpointsServingThemWithAffinity() {
+        OllamaEndpoint large = endpoint("http://large", 4, "deepseek-r1:70b");
+        OllamaEndpoint small = endpoint("http://small", 4, "llama3:8b", "nomic-embed-text");
+        OllamaEndpointPool pool = pool(true, large, small);
+
+        for (int i = 0; i < 3; i++) {
+            assertSame(large, pool.acquire("deepseek-r1:70b", Set.of()));
+            assertSame(small, pool.acquire("nomic-embed-text:latest", Set.of()));
+        }
+        // A model no endpoint lists may go anywhere
+        assertNotNull(pool.acquire("qwen2:7b", Set.of()));
+    }
+
+    @Test
+    void release_shouldEjectAnEndpointAfterConsecutiveFailures() {
+        OllamaEndpoint a = endpoint("http://a", 4);
+        OllamaEndpoint b = endpoint("http://b", 4);
+        OllamaEndpointPool pool = pool(false, a, b);
+
+        pool.release(pool.acquire(null, Set.of(b)), true);
+        assertTrue(a.isHealthy());
+        pool.release(pool.acquire(null, Set.of(b)), true);
+
+        assertFalse(a.isHealthy());
+        for (int i = 0; i < 3; i++) {
+            assertSame(b, pool.acquire(null, Set.of()));
+        }
+    }
+
+    @Test
+    void acquire_shouldUseEjectedEndpointsWhenNoneIsHealthy() {
+        OllamaEndpoint a = endpoint("http://a", 4);
+        OllamaEndpointPool pool = pool(false, a);
+        a.healthy = false;
+
+        assertSame(a, pool.acquire(null, Set.of()));
+        assertThrows(IllegalStateException.class, () -> pool.acquire(null, Set.of(a)));
+    }
+
+    @Test
+    void probe_shouldEjectAndReadmitAfterConsecutiveSuccessfulProbes() throws IOException {
+        try (StubOllamaServer server = new StubOllamaServer(0, "[{\"name\":\"llama3:8b\"},{\"name\":\"nomic-embed-text:latest\"}]")) {
+            OllamaEndpoint endpoint = endpoint(server.url(), 4);
+            OllamaEndpointPool pool = pool(true, endpoint);
+
+            server.down = true;
+            pool.probe();
+            assertFalse(endpoint.isHealthy());
+
+            server.down = false;
+            pool.probe();
+            assertFalse(endpoint.isHealthy());
+            pool.probe();
+            assertTrue(endpoint.isHealthy());
+            assertTrue(endpoint.serves("nomic-embed-text"));
+            assertFalse(endpoint.serves("deepseek-r1:70b"));
+        }
+    }
+
+    @Test
+    void isEndpointFailure_shouldOnlyBlameTheEndpointForIoAndServerErrors() {
+        assertTrue(OllamaEndpointPool.isEndpointFailure(new RuntimeException(new ConnectException("refused"))));
+        assertFalse(OllamaEndpointPool.isEndpointFailure(new IllegalArgumentException("bad prompt")));
+    }
+}
@@ -0,0 +1,128 @@
+package org.bedrock.teateach.llm;
+
+import org.bedrock.teateach.beans.KnowledgePoint;
+import org.bedrock.teateach.beans.StudentTaskSubmission;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PromptBudgetTest {
+
+    private static final String HEADER = "Analyze the following student data:\n\nENROLLED COURSES:\n- Algorithms (CS201)\n- 数据结构 (CS202)\n";
+    private static final String FOOTER = "\nOVERALL AVERAGE SCORE: 71.50/100\n\nProvide a JSON response.";
+
+    private final PromptBudget budget = new PromptBudget(1500, 120, 0.6);
+
+    private static StudentTaskSubmission submission(long id, double score, String feedback) {
+        StudentTaskSubmission submission = new StudentTaskSubmission();
+        submission.setId(id);
+        submission.setTaskId(1000 + id);
+        submission.setScore(score);
+        submission.setFeedback(feedback);
+        submission.setCompletionStatus(3);
+        submission.setSubmissionTime(LocalDateTime.of(2024, 1, 1, 8, 0).plusHours(id));
+        return submission;
+    }
+
+    private static KnowledgePoint knowledgePoint(long id, long courseId, String name, Long... prerequisites) {
+        KnowledgePoint knowledgePoint = new KnowledgePoint();
+        knowledgePoint.setId(id);
+        knowledgePoint.setCourseId(courseId);
+        knowledgePoint.setName(name);
+        knowledgePoint.setDifficultyLevel("INTERMEDIATE");
+        knowledgePoint.setPrerequisiteKnowledgePointIds(List.of(prerequisites));
+        return knowledgePoint;
+    }
+
+    /**
+     * A senior student: 400 graded submissions with long feedback in Chinese and English, 600 knowledge points
+     */
+    private static List<StudentTaskSubmission> seniorSubmissions() {
+        List<StudentTaskSubmission> submissions = new ArrayList<>();
+        for (long id = 1; id <= 400; id++) {
+            submissions.add(submission(id, 40 + id % 60, "递归的基本情况处理得不够清晰。".repeat(10) + " Recursion needs work. ".repeat(10)));
+        }
+        return submissions;
+    }
+
+    private static List<KnowledgePoint> seniorKnowledgePoints() {
+        List<KnowledgePoint> knowledgePoints = new ArrayList<>();
+        for (long id = 1; id <= 600; id++) {
+            knowledgePoints.add(knowledgePoint(id, id % 3, "Knowledge point " + id + " with a fairly long descriptive name"));
+        }
+        return knowledgePoints;
+    }
+
+    @Test
+    void estimateTokens_shouldCountCjkCharactersHigherThanLatinText() {
+        assertEquals(0, budget.estimateTokens(""));
+        assertEquals(1, budget.estimateTokens("abcd"));
+        assertEquals(3, budget.estimateTokens("递归"));
+    }
+
+    @Test
+    void fitAbilityAnalysis_shouldStayWithinTheBudgetForLargeHistories() {
+        String prompt = budget.fitAbilityAnalysis(HEADER, FOOTER, seniorKnowledgePoints(), seniorSubmissions());
+
+        assertTrue(budget.estimateTokens(prompt) <= 1500, "estimated " + budget.estimateTokens(prompt) + " tokens");
+        assertTrue(prompt.startsWith(HEADER));
+        assertTrue(prompt.endsWith(FOOTER));
+        // The most recent submission is listed, the older ones summarized, and the left out knowledge points counted
+        assertTrue(prompt.contains("- Task ID: 1400, Score: "));
+        assertTrue(prompt.contains("earlier graded submissions: average"));
+        assertTrue(prompt.contains("more knowledge points"));
+    }
+
+    @Test
+    void fitAbilityAnalysis_shouldKeepSmallHistoriesComplete() {
+        List<StudentTaskSubmission> submissions = List.of(submission(1, 80, "Good loops"), submission(2, 65, null));
+        List<KnowledgePoint> knowledgePoints = List.of(knowledgePoint(1, 1, "Loops"), knowledgePoint(2, 1, "Recursion"));
+
+        String prompt = budget.fitAbilityAnalysis(HEADER, FOOTER, knowledgePoints, submissions);
+
+        assertTrue(prompt.contains("- Task ID: 1001, Score: 80.0/100, Feedback: Good loops\n"));
+        assertTrue(prompt.contains("- Task ID: 1002, Score: 65.0/100\n"));
+        assertTrue(prompt.contains("- Loops (Difficulty: INTERMEDIATE)\n"));
+        assertTrue(prompt.contains("- Recursion (Difficulty: INTERMEDIATE)\n"));
+        assertFalse(prompt.contains("earlier graded submissions"));
+    }
+
+    @Test
+    void fitAbilityAnalysis_shouldNotDependOnTheOrderOfItsInput() {
+        List<StudentTaskSubmission> submissions = seniorSubmissions();
+        List<KnowledgePoint> knowledgePoints = seniorKnowledgePoints();
+        String expected = budget.fitAbilityAnalysis(HEADER, FOOTER, knowledgePoints, submissions);
+
+        Random random = new Random(7);
+        for (int i = 0; i < 5; i++) {
+            List<StudentTaskSubmission> shuffledSubmissions = new ArrayList<>(submissions);
+            List<KnowledgePoint> shuffledKnowledgePoints = new ArrayList<>(knowledgePoints);
+            Collections.shuffle(shuffledSubmissions, random);
+            Collections.shuffle(shuffledKnowledgePoints, random);
+
+            assertEquals(expected, budget.fitAbilityAnalysis(HEADER, FOOTER, shuffledKnowledgePoints, shuffledSubmissions));
+        }
+    }
+
+    @Test
+    void rankKnowledgePoints_shouldPreferPointsNamedInFeedbackAndPrerequisitesAndTakeCoursesInTurn() {
+        List<KnowledgePoint> knowledgePoints = List.of(
+                knowledgePoint(1, 1, "Loops"),
+                knowledgePoint(2, 1, "Recursion"),
+                knowledgePoint(3, 1, "Arrays"),
+                knowledgePoint(4, 1, "Sorting", 3L),
+                knowledgePoint(5, 2, "Graphs"));
+        List<StudentTaskSubmission> submissions = List.of(submission(1, 50, "Recursion base case missing"));
+
+        List<Long> ranked = budget.rankKnowledgePoints(knowledgePoints, submissions).stream()
+                .map(KnowledgePoint::getId).toList();
+
+        assertEquals(List.of(2L, 5L, 3L, 1L, 4L), ranked);
+    }
+}
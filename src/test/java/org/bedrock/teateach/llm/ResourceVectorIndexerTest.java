@@ -0,0 +1,184 @@
+package org.bedrock.teateach.llm;
+
+import org.bedrock.teateach.beans.LearningTask;
+import org.bedrock.teateach.beans.Resource;
+import org.bedrock.teateach.services.LearningTaskService;
+import org.bedrock.teateach.services.ResourceLinksChangedEvent;
+import org.bedrock.teateach.services.ResourceService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ResourceVectorIndexerTest {
+
+    @Mock
+    private VectorStore vectorStore;
+
+    @Mock
+    private VectorStoreSnapshot vectorStoreSnapshot;
+
+    @Mock
+    private ResourceService resourceService;
+
+    @Mock
+    private LearningTaskService learningTaskService;
+
+    private ResourceVectorIndexer indexer;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(vectorStoreSnapshot.contentHash(anyString())).thenAnswer(invocation -> "hash:" + invocation.getArgument(0).hashCode());
+        indexer = new ResourceVectorIndexer(vectorStore, vectorStoreSnapshot, resourceService, learningTaskService, 2, 2, 1, 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        indexer.shutdown();
+    }
+
+    private static Resource resource(long id, String name, String description) {
+        Resource resource = new Resource();
+        resource.setId(id);
+        resource.setResourceName(name);
+        resource.setDescription(description);
+        resource.setFileType("pdf");
+        resource.setFilePath("/tmp/" + name + ".pdf");
+        return resource;
+    }
+
+    private static LearningTask task(long id, long courseId) {
+        LearningTask task = new LearningTask();
+        task.setId(id);
+        task.setCourseId(courseId);
+        return task;
+    }
+
+    @Test
+    void indexAll_shouldEmbedChangedResourcesInBatchesAndRemoveDeletedOnes() {
+        // Given: resource 2 is up to date, resource 9 was deleted since the snapshot
+        List<Resource> resources = List.of(resource(1, "Loops", "for and while"), resource(2, "Arrays", "indexing"),
+                resource(3, "Recursion", "base case"), resource(4, "Sorting", "quicksort"));
+        when(resourceService.getAllResources()).thenReturn(resources);
+        when(vectorStoreSnapshot.isIndexed(anyLong(), anyString())).thenAnswer(invocation -> invocation.<Long>getArgument(0) == 2L);
+        when(vectorStoreSnapshot.getIndexedResourceIds()).thenReturn(Set.of(1L, 2L, 3L, 4L, 9L));
+        List<List<Document>> batches = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> batches.add(invocation.getArgument(0))).when(vectorStore).add(anyList());
+
+        // When
+        indexer.indexAll();
+
+        // Then: three changed resources in batches of two
+        assertEquals(ResourceVectorIndexer.State.READY, indexer.getState());
+        assertTrue(indexer.isReady());
+        assertEquals(2, batches.size());
+        assertEquals(3, batches.stream().mapToInt(List::size).sum());
+        assertEquals(4, indexer.getTotal());
+        assertEquals(4, indexer.getProcessed());
+        assertEquals(3, indexer.getEmbedded());
+        verify(vectorStoreSnapshot).recordIndexed(eq(1L), anyString());
+        verify(vectorStoreSnapshot, never()).recordIndexed(eq(2L), anyString());
+        verify(vectorStore).delete(List.of(VectorStoreSnapshot.documentId(9L)));
+        verify(vectorStoreSnapshot).recordRemoved(9L);
+        verify(vectorStoreSnapshot).saveIfChanged();
+    }
+
+    @Test
+    void indexAll_shouldCountFailedBatchesAndStillFinish() {
+        when(resourceService.getAllResources()).thenReturn(List.of(resource(1, "Loops", null), resource(2, "Arrays", null)));
+        doThrow(new RuntimeException("embedding model unavailable")).when(vectorStore).add(anyList());
+
+        indexer.indexAll();
+
+        assertTrue(indexer.isReady());
+        assertEquals(2, indexer.getFailed());
+        assertEquals(0, indexer.getEmbedded());
+        verify(vectorStoreSnapshot, never()).recordIndexed(anyLong(), anyString());
+    }
+
+    @Test
+    void indexAll_shouldReportFailureWhenResourcesCannotBeListed() {
+        when(resourceService.getAllResources()).thenThrow(new RuntimeException("database unavailable"));
+
+        indexer.indexAll();
+
+        assertEquals(ResourceVectorIndexer.State.FAILED, indexer.getState());
+        assertFalse(indexer.isReady());
+        assertEquals("database unavailable", indexer.getError());
+    }
+
+    @Test
+    void indexUntilReady_shouldRetryAFailedIndexingWithoutReloadingTheSnapshot() {
+        when(resourceService.getAllResources())
+                .thenThrow(new RuntimeException("database unavailable"))
+                .thenThrow(new RuntimeException("database unavailable"))
+                .thenReturn(List.of(resource(1, "Loops", "for and while")));
+
+        indexer.indexUntilReady();
+
+        assertTrue(indexer.isReady());
+        assertEquals(3, indexer.getAttempts());
+        assertEquals(1, indexer.getEmbedded());
+        verify(vectorStoreSnapshot, times(1)).load();
+    }
+
+    @Test
+    void indexResource_shouldAttachCourseAndTaskIds() {
+        Resource resource = resource(1, "Loops", "for and while");
+        when(learningTaskService.getTasksByResourceId(1L)).thenReturn(List.of(task(11, 100), task(12, 100), task(13, 200)));
+
+        assertTrue(indexer.indexResource(resource));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Document>> captor = ArgumentCaptor.forClass(List.class);
+        verify(vectorStore).add(captor.capture());
+        Document document = captor.getValue().get(0);
+        assertEquals(VectorStoreSnapshot.documentId(1L), document.getId());
+        assertEquals(List.of("100", "200"), document.getMetadata().get(ResourceVectorIndexer.COURSE_IDS));
+        assertEquals(List.of("11", "12", "13"), document.getMetadata().get(ResourceVectorIndexer.TASK_IDS));
+        assertEquals("1", document.getMetadata().get(VectorStoreSnapshot.RESOURCE_ID));
+    }
+
+    @Test
+    void onResourceLinksChanged_shouldReindexOnTheIndexingPool() {
+        when(resourceService.getResourceById(1L)).thenReturn(Optional.of(resource(1, "Loops", "for and while")));
+        List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> threads.add(Thread.currentThread().getName())).when(vectorStore).add(anyList());
+
+        indexer.onResourceLinksChanged(new ResourceLinksChangedEvent(List.of(1L)));
+
+        verify(vectorStore, timeout(1_000)).add(anyList());
+        assertTrue(threads.get(0).startsWith("vector-index-"), "re-indexed on " + threads.get(0));
+    }
+
+    @Test
+    void metadataSearch_shouldRankResourcesOfTheCourseByMatchingWords() {
+        when(learningTaskService.getTasksByCourseId(100L)).thenReturn(List.of(task(11, 100), task(12, 100)));
+        when(learningTaskService.getTaskResources(11L)).thenReturn(List.of(
+                resource(1, "Loops", "for and while loops"), resource(2, "Recursion basics", "recursion and the call stack")));
+        when(learningTaskService.getTaskResources(12L)).thenReturn(List.of(
+                resource(2, "Recursion basics", "recursion and the call stack"), resource(3, "Graphs", "breadth first search")));
+
+        List<Document> results = indexer.metadataSearch(List.of("Recursion", "call stack"), 100L, 5);
+
+        assertEquals(List.of(VectorStoreSnapshot.documentId(2L)), results.stream().map(Document::getId).toList());
+        assertEquals("Recursion basics", results.get(0).getMetadata().get("resourceName"));
+        verify(resourceService, never()).getAllResources();
+    }
+}
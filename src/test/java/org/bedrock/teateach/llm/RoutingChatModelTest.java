@@ -0,0 +1,126 @@
+package org.bedrock.teateach.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Routing over local stub Ollama servers with different latencies
+ */
+class RoutingChatModelTest {
+
+    private final List<StubOllamaServer> servers = new ArrayList<>();
+    private final ExecutorService callers = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+        servers.forEach(StubOllamaServer::close);
+    }
+
+    private StubOllamaServer server(long latencyMs) throws IOException {
+        StubOllamaServer server = new StubOllamaServer(latencyMs, "[]");
+        servers.add(server);
+        return server;
+    }
+
+    private static OllamaEndpointPool pool(int ejectAfterFailures, OllamaEndpoint... endpoints) {
+        return new OllamaEndpointPool(List.of(endpoints), false, ejectAfterFailures, 1, 10_000, 1000,
+                new SimpleMeterRegistry());
+    }
+
+    private static OllamaEndpoint endpoint(StubOllamaServer server, int maxConcurrency) {
+        return OllamaEndpoint.create(server.url(), maxConcurrency, Set.of(), "stub", "stub-embed");
+    }
+
+    private List<String> callConcurrently(RoutingChatModel model, int calls) throws Exception {
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < calls; i++) {
+            int n = i;
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> model.call(new Prompt("question " + n)).getResult().getOutput().getText(), callers));
+        }
+        List<String> answers = new ArrayList<>();
+        for (CompletableFuture<String> future : futures) {
+            answers.add(future.get(30, TimeUnit.SECONDS));
+        }
+        return answers;
+    }
+
+    @Test
+    void call_shouldSendMoreRequestsToTheFasterEndpoint() throws Exception {
+        StubOllamaServer fast = server(20);
+        StubOllamaServer slow = server(400);
+        RoutingChatModel model = new RoutingChatModel(pool(3, endpoint(fast, 4), endpoint(slow, 4)), "stub");
+
+        List<String> answers = callConcurrently(model, 24);
+
+        assertEquals(24, answers.size());
+        assertEquals(24, fast.chatRequests.get() + slow.chatRequests.get());
+        assertTrue(fast.chatRequests.get() > 2 * slow.chatRequests.get(),
+                "fast " + fast.chatRequests.get() + ", slow " + slow.chatRequests.get());
+    }
+
+    @Test
+    void call_shouldNeverExceedAnEndpointsConcurrencyCap() throws Exception {
+        StubOllamaServer a = server(100);
+        StubOllamaServer b = server(100);
+        RoutingChatModel model = new RoutingChatModel(pool(3, endpoint(a, 1), endpoint(b, 2)), "stub");
+
+        callConcurrently(model, 12);
+
+        assertEquals(1, a.maxInFlight.get());
+        assertTrue(b.maxInFlight.get() <= 2);
+    }
+
+    @Test
+    void call_shouldFailOverAndEjectAnOverloadedEndpointUntilItRecovers() throws Exception {
+        StubOllamaServer healthy = server(10);
+        StubOllamaServer overloaded = server(10);
+        overloaded.down = true;
+        OllamaEndpoint overloadedEndpoint = endpoint(overloaded, 4);
+        OllamaEndpointPool pool = pool(1, endpoint(healthy, 4), overloadedEndpoint);
+        RoutingChatModel model = new RoutingChatModel(pool, "stub");
+
+        // Every call is answered, the overloaded endpoint is ejected after its first failure
+        for (int i = 0; i < 4; i++) {
+            assertEquals(healthy.url(), model.call(new Prompt("question")).getResult().getOutput().getText());
+        }
+        assertFalse(overloadedEndpoint.isHealthy());
+        assertTrue(overloaded.chatRequests.get() <= 1);
+
+        overloaded.down = false;
+        pool.probe();
+
+        assertTrue(overloadedEndpoint.isHealthy());
+        List<String> answers = callConcurrently(model, 8);
+        assertTrue(answers.contains(overloaded.url()));
+    }
+
+    @Test
+    void embeddingCall_shouldBeRoutedOverTheEndpoints() throws IOException {
+        StubOllamaServer a = server(5);
+        StubOllamaServer b = server(5);
+        RoutingEmbeddingModel model = new RoutingEmbeddingModel(pool(3, endpoint(a, 4), endpoint(b, 4)), "stub-embed");
+
+        for (int i = 0; i < 4; i++) {
+            assertArrayEquals(new float[]{0.1f, 0.2f, 0.3f}, model.embed("text " + i));
+        }
+
+        // Sequential calls leave both endpoints idle, so they take turns
+        assertEquals(2, a.embedRequests.get());
+        assertEquals(2, b.embedRequests.get());
+    }
+}
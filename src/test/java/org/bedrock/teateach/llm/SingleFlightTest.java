@@ -0,0 +1,83 @@
+package org.bedrock.teateach.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SingleFlight singleFlight = new SingleFlight(meterRegistry);
+
+    @Test
+    void call_shouldShareTheRunningOperationWithIdenticalCalls() throws Exception {
+        // Given: an operation that blocks until released
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // When
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> singleFlight.call("analysis", List.of(1L), () -> {
+            executions.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "result";
+        }));
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+        CompletableFuture<String> follower = singleFlight.execute("analysis", List.of(1L), () -> {
+            executions.incrementAndGet();
+            return "second";
+        });
+        assertFalse(follower.isDone());
+        release.countDown();
+
+        // Then
+        assertEquals("result", leader.get(2, TimeUnit.SECONDS));
+        assertEquals("result", follower.get(2, TimeUnit.SECONDS));
+        assertEquals(1, executions.get());
+        assertEquals(1, singleFlight.getExecutedCount("analysis"));
+        assertEquals(1, singleFlight.getDeduplicatedCount("analysis"));
+        assertEquals(1.0, meterRegistry.get("llm.singleflight.calls")
+                .tags("operation", "analysis", "result", "deduplicated").counter().count());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    void call_shouldRunAgainOnceTheOperationFinished() {
+        AtomicInteger executions = new AtomicInteger();
+
+        singleFlight.call("analysis", List.of(1L), executions::incrementAndGet);
+        int second = singleFlight.call("analysis", List.of(1L), executions::incrementAndGet);
+
+        assertEquals(2, second);
+        assertEquals(0, singleFlight.getDeduplicatedCount("analysis"));
+    }
+
+    @Test
+    void call_shouldNotShareBetweenDifferentArguments() {
+        assertEquals("1", singleFlight.call("analysis", List.of(1L), () -> singleFlight.call("analysis", List.of(2L), () -> "1")));
+        assertEquals(2, singleFlight.getExecutedCount("analysis"));
+    }
+
+    @Test
+    void call_shouldRethrowTheExceptionOfTheOperation() {
+        IllegalStateException thrown = assertThrows(IllegalStateException.class,
+                () -> singleFlight.call("analysis", List.of(1L), () -> {
+                    throw new IllegalStateException("model unavailable");
+                }));
+
+        assertEquals("model unavailable", thrown.getMessage());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+}
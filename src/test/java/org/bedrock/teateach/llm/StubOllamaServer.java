@@ -0,0 +1,85 @@
+package org.bedrock.teateach.llm;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local HTTP server answering the Ollama endpoints the routing models use, after a fixed latency. Counts the
+ * requests it served and the most it handled at once; can be switched to answer 503 like an overloaded server.
+ */
+class StubOllamaServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final long latencyMs;
+    private final String models;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger maxInFlight = new AtomicInteger();
+    final AtomicInteger chatRequests = new AtomicInteger();
+    final AtomicInteger embedRequests = new AtomicInteger();
+    volatile boolean down;
+
+    /**
+     * @param models JSON array of the model objects /api/tags lists
+     */
+    StubOllamaServer(long latencyMs, String models) throws IOException {
+        this.latencyMs = latencyMs;
+        this.models = models;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/api/tags", exchange -> respond(exchange, "{\"models\":" + this.models + "}"));
+        server.createContext("/api/chat", exchange -> {
+            chatRequests.incrementAndGet();
+            handleSlowly(exchange, "{\"model\":\"stub\",\"created_at\":\"2024-01-01T00:00:00Z\","
+                    + "\"message\":{\"role\":\"assistant\",\"content\":\"" + url() + "\"},"
+                    + "\"done\":true,\"done_reason\":\"stop\",\"total_duration\":1000,\"load_duration\":100,"
+                    + "\"prompt_eval_count\":1,\"prompt_eval_duration\":100,\"eval_count\":1,\"eval_duration\":100}");
+        });
+        server.createContext("/api/embed", exchange -> {
+            embedRequests.incrementAndGet();
+            handleSlowly(exchange, "{\"model\":\"stub\",\"embeddings\":[[0.1,0.2,0.3]]}");
+        });
+        server.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void handleSlowly(HttpExchange exchange, String body) throws IOException {
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        try {
+            Thread.sleep(latencyMs);
+            respond(exchange, body);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void respond(HttpExchange exchange, String body) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        byte[] bytes = (down ? "{\"error\":\"overloaded\"}" : body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(down ? 503 : 200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,34 @@
+package org.bedrock.teateach.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bedrock.teateach.services.CourseEnrollmentService;
+import org.bedrock.teateach.services.CourseService;
+import org.bedrock.teateach.services.KnowledgePointService;
+import org.bedrock.teateach.services.LearningTaskService;
+import org.bedrock.teateach.services.ResourceService;
+import org.bedrock.teateach.services.StudentService;
+import org.bedrock.teateach.services.StudentTaskSubmissionService;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Builds an {@link LLMService} around a stub model, with the collaborators the LLM tests don't exercise mocked, so
+ * those tests don't each repeat its constructor
+ */
+final class TestLLMServices {
+
+    private TestLLMServices() {
+    }
+
+    static LLMService create(ChatModel model, BatchGradingEngine engine, LlmResponseCache responseCache,
+                             ModelRouter modelRouter) {
+        return new LLMService("local", ChatClient.builder(model), mock(VectorStore.class),
+                mock(ResourceService.class), mock(StudentTaskSubmissionService.class), mock(CourseEnrollmentService.class),
+                mock(KnowledgePointService.class), mock(StudentService.class), mock(CourseService.class),
+                mock(LearningTaskService.class), engine, responseCache, mock(ResourceVectorIndexer.class),
+                new SingleFlight(new SimpleMeterRegistry()), modelRouter, new PromptBudget(3000, 300, 0.6));
+    }
+}
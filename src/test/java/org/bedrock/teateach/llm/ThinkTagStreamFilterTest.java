@@ -0,0 +1,60 @@
+package org.bedrock.teateach.llm;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThinkTagStreamFilterTest {
+
+    private static String filter(String... chunks) {
+        ThinkTagStreamFilter filter = new ThinkTagStreamFilter();
+        StringBuilder visible = new StringBuilder();
+        for (String chunk : chunks) {
+            visible.append(filter.accept(chunk));
+        }
+        return visible.append(filter.finish()).toString();
+    }
+
+    @Test
+    void accept_shouldDropThinkBlockAndLeadingWhitespace() {
+        assertEquals("{\"score\": 90}", filter("<think>\nweighing the rubric\n</think>\n\n{\"score\": 90}"));
+    }
+
+    @Test
+    void accept_shouldHandleTagsSplitAcrossChunks() {
+        assertEquals("{\"a\": 1}", filter("<th", "ink>reason", "ing</th", "INK>", " {\"a\"", ": 1}"));
+    }
+
+    @Test
+    void accept_shouldEmitAnswerTokensAsSoonAsTheyArrive() {
+        // Given
+        ThinkTagStreamFilter filter = new ThinkTagStreamFilter();
+
+        // When / Then
+        assertEquals("", filter.accept("<think>plan</think>"));
+        assertEquals("{\"feedback\": \"Go", filter.accept("{\"feedback\": \"Go"));
+        assertEquals("od\"}", filter.accept("od\"}"));
+    }
+
+    @Test
+    void accept_shouldHoldBackOnlyWhatCouldStartATag() {
+        // Given
+        ThinkTagStreamFilter filter = new ThinkTagStreamFilter();
+
+        // When / Then
+        assertEquals("x ", filter.accept("x <"));
+        assertEquals("<b>", filter.accept("b>"));
+        assertEquals("", filter.finish());
+    }
+
+    @Test
+    void accept_shouldDropStrayClosingTag() {
+        // Chat templates that open the think block in the prompt only stream the closing tag
+        assertEquals("[\"a\", \"b\"]", filter("</thi", "nk>", "\n[\"a\", \"b\"]"));
+    }
+
+    @Test
+    void finish_shouldDropUnterminatedThinkBlock() {
+        assertEquals("ok", filter("ok<think>never closed"));
+    }
+}
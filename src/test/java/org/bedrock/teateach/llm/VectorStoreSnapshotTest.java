@@ -0,0 +1,126 @@
+package org.bedrock.teateach.llm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class VectorStoreSnapshotTest {
+
+    @Mock
+    private SimpleVectorStore vectorStore;
+
+    @TempDir
+    Path tempDir;
+
+    private VectorStoreSnapshot snapshot(Path file) {
+        return new VectorStoreSnapshot(vectorStore, true, file.toString(), "nomic-embed-text");
+    }
+
+    @Test
+    void load_shouldRestoreStoreAndContentHashes() throws IOException {
+        // Given: the vector store's own JSON format, one document without hash from before snapshots
+        Path file = tempDir.resolve("vector-store.json");
+        Files.writeString(file, "{"
+                + "\"a\":{\"id\":\"a\",\"text\":\"one\",\"metadata\":{\"resourceId\":\"1\",\"contentHash\":\"h1\"},\"embedding\":[0.1]},"
+                + "\"b\":{\"id\":\"b\",\"text\":\"two\",\"metadata\":{\"resourceId\":\"2\",\"contentHash\":\"h2\"},\"embedding\":[0.2]},"
+                + "\"c\":{\"id\":\"c\",\"text\":\"old\",\"metadata\":{\"resourceId\":\"3\"},\"embedding\":[0.3]}}");
+        VectorStoreSnapshot snapshot = snapshot(file);
+
+        // When
+        int restored = snapshot.load();
+
+        // Then
+        assertEquals(2, restored);
+        verify(vectorStore).load(file.toFile());
+        assertEquals(Set.of(1L, 2L), snapshot.getIndexedResourceIds());
+        assertTrue(snapshot.isIndexed(1L, "h1"));
+        assertFalse(snapshot.isIndexed(2L, "changed"));
+        assertFalse(snapshot.isIndexed(3L, "anything"));
+    }
+
+    @Test
+    void load_shouldStartEmptyWithoutSnapshotFile() {
+        VectorStoreSnapshot snapshot = snapshot(tempDir.resolve("missing.json"));
+
+        assertEquals(0, snapshot.load());
+        verify(vectorStore, never()).load(any(File.class));
+        assertTrue(snapshot.getIndexedResourceIds().isEmpty());
+    }
+
+    @Test
+    void load_shouldIgnoreUnreadableSnapshot() throws IOException {
+        Path file = tempDir.resolve("vector-store.json");
+        Files.writeString(file, "{ truncated");
+
+        assertEquals(0, snapshot(file).load());
+        verify(vectorStore, never()).load(any(File.class));
+    }
+
+    @Test
+    void saveIfChanged_shouldWriteSnapshotOnlyAfterChanges() throws IOException {
+        // Given
+        Path file = tempDir.resolve("data").resolve("vector-store.json");
+        doAnswer(invocation -> {
+            Files.writeString(((File) invocation.getArgument(0)).toPath(), "{}");
+            return null;
+        }).when(vectorStore).save(any(File.class));
+        VectorStoreSnapshot snapshot = snapshot(file);
+
+        // When / Then
+        snapshot.saveIfChanged();
+        verify(vectorStore, never()).save(any(File.class));
+
+        snapshot.recordIndexed(1L, "h1");
+        snapshot.saveIfChanged();
+        snapshot.saveIfChanged();
+        verify(vectorStore, times(1)).save(any(File.class));
+        assertTrue(Files.exists(file));
+        assertFalse(Files.exists(tempDir.resolve("data").resolve("vector-store.json.tmp")));
+
+        snapshot.recordRemoved(1L);
+        snapshot.saveIfChanged();
+        verify(vectorStore, times(2)).save(any(File.class));
+    }
+
+    @Test
+    void contentHash_shouldDependOnEmbeddingModel() {
+        VectorStoreSnapshot nomic = snapshot(tempDir.resolve("a.json"));
+        VectorStoreSnapshot other = new VectorStoreSnapshot(vectorStore, true, tempDir.resolve("b.json").toString(), "mxbai-embed-large");
+
+        assertEquals(nomic.contentHash("text"), nomic.contentHash("text"));
+        assertNotEquals(nomic.contentHash("text"), nomic.contentHash("other text"));
+        assertNotEquals(nomic.contentHash("text"), other.contentHash("text"));
+    }
+
+    @Test
+    void documentId_shouldBeStablePerResource() {
+        assertEquals(VectorStoreSnapshot.documentId(7L), VectorStoreSnapshot.documentId(7L));
+        assertNotEquals(VectorStoreSnapshot.documentId(7L), VectorStoreSnapshot.documentId(8L));
+    }
+
+    @Test
+    void snapshot_shouldBeDisabledForOtherStores() {
+        VectorStoreSnapshot snapshot = new VectorStoreSnapshot(mock(VectorStore.class), true,
+                tempDir.resolve("vector-store.json").toString(), "nomic-embed-text");
+
+        assertFalse(snapshot.isEnabled());
+        snapshot.recordIndexed(1L, "h1");
+        snapshot.save();
+        assertFalse(Files.exists(tempDir.resolve("vector-store.json")));
+    }
+}
@@ -0,0 +1,199 @@
+package org.bedrock.teateach.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bedrock.teateach.beans.StudentAbilityProfile;
+import org.bedrock.teateach.llm.LLMService;
+import org.bedrock.teateach.llm.SingleFlight;
+import org.bedrock.teateach.mappers.StudentAbilityProfileMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AbilityProfileServiceTest {
+
+    @Mock
+    private StudentAbilityProfileMapper profileMapper;
+
+    @Mock
+    private LLMService llmService;
+
+    private final SingleFlight singleFlight = new SingleFlight(new SimpleMeterRegistry());
+
+    private AbilityProfileService service;
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    private static Map<String, Object> analysis(String text) {
+        Map<String, Object> analysis = new HashMap<>();
+        analysis.put("analysis", text);
+        analysis.put("interestedFields", List.of("Algorithms"));
+        analysis.put("totalSubmissions", 3);
+        return analysis;
+    }
+
+    @Test
+    void getProfile_shouldServeStoredProfileWithoutAnalysing() {
+        // Given
+        service = new AbilityProfileService(profileMapper, llmService, singleFlight, 50, 500);
+        when(profileMapper.findByStudentId(1001L)).thenReturn(new StudentAbilityProfile(1001L,
+                "{\"analysis\":\"stored\",\"totalSubmissions\":3}", true, LocalDateTime.now(), LocalDateTime.now()));
+
+        // When
+        Map<String, Object> profile = service.getProfile(1001L);
+
+        // Then
+        assertEquals("stored", profile.get("analysis"));
+        assertEquals(3, profile.get("totalSubmissions"));
+        assertEquals(true, profile.get("stale"));
+        verifyNoInteractions(llmService);
+    }
+
+    @Test
+    void getProfile_shouldAnalyseAndStoreWhenStudentHasNoProfile() {
+        // Given
+        service = new AbilityProfileService(profileMapper, llmService, singleFlight, 50, 500);
+        when(profileMapper.findByStudentId(1001L)).thenReturn(null);
+        when(llmService.analyzeStudentAbilities(1001L)).thenReturn(analysis("fresh"));
+
+        // When
+        Map<String, Object> profile = service.getProfile(1001L);
+
+        // Then
+        assertEquals("fresh", profile.get("analysis"));
+        verify(profileMapper).upsert(eq(1001L), contains("\"analysis\":\"fresh\""));
+    }
+
+    @Test
+    void recompute_shouldNotStoreFailedAnalysis() {
+        // Given
+        service = new AbilityProfileService(profileMapper, llmService, singleFlight, 50, 500);
+        Map<String, Object> failed = analysis("Insufficient data for comprehensive analysis. Default scores provided.");
+        failed.put(LLMService.ANALYSIS_FAILED, true);
+        when(llmService.analyzeStudentAbilities(1001L)).thenReturn(failed);
+
+        // When
+        Map<String, Object> result = service.recompute(1001L);
+
+        // Then
+        assertSame(failed, result);
+        verify(profileMapper, never()).upsert(anyLong(), anyString());
+    }
+
+    @Test
+    void getProfile_shouldAnalyseOnceForConcurrentFirstReads() throws Exception {
+        // Given: the dashboard loads three views of a student without a profile at once
+        service = new AbilityProfileService(profileMapper, llmService, singleFlight, 50, 500);
+        when(profileMapper.findByStudentId(1001L)).thenReturn(null);
+        CountDownLatch analysing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(llmService.analyzeStudentAbilities(1001L)).thenAnswer(invocation -> {
+            analysing.countDown();
+            release.await(2, TimeUnit.SECONDS);
+            return analysis("fresh");
+        });
+
+        // When
+        CompletableFuture<Map<String, Object>> first = CompletableFuture.supplyAsync(() -> service.getProfile(1001L));
+        assertTrue(analysing.await(2, TimeUnit.SECONDS));
+        CompletableFuture<Map<String, Object>> second = CompletableFuture.supplyAsync(() -> service.getProfile(1001L));
+        CompletableFuture<Map<String, Object>> third = CompletableFuture.supplyAsync(() -> service.getProfile(1001L));
+        while (singleFlight.getDeduplicatedCount("ability-analysis") < 2) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        // Then
+        assertEquals("fresh", first.get(2, TimeUnit.SECONDS).get("analysis"));
+        assertEquals("fresh", second.get(2, TimeUnit.SECONDS).get("analysis"));
+        assertEquals("fresh", third.get(2, TimeUnit.SECONDS).get("analysis"));
+        verify(llmService, times(1)).analyzeStudentAbilities(1001L);
+        verify(profileMapper, times(1)).upsert(eq(1001L), anyString());
+    }
+
+    @Test
+    void onAbilityDataChanged_shouldDebounceBurstIntoOneAnalysis() throws InterruptedException {
+        // Given
+        service = new AbilityProfileService(profileMapper, llmService, singleFlight, 200, 5000);
+        when(profileMapper.markStale(1001L)).thenReturn(1);
+        when(llmService.analyzeStudentAbilities(1001L)).thenReturn(analysis("recomputed"));
+
+        // When
+        for (int i = 0; i < 5; i++) {
+            service.onAbilityDataChanged(new StudentAbilityDataChangedEvent(1001L, "submission " + i + " graded"));
+        }
+
+        // Then
+        verify(profileMapper, timeout(2000)).upsert(eq(1001L), contains("recomputed"));
+        Thread.sleep(300);
+        verify(llmService, times(1)).analyzeStudentAbilities(1001L);
+        verify(profileMapper, times(5)).markStale(1001L);
+        assertEquals(0, service.getPendingCount());
+    }
+
+    @Test
+    void scheduleRecompute_shouldNotPostponeBeyondMaxDelay() {
+        // Given: every change postpones by 10s, but the first change must be handled within 100ms
+        service = new AbilityProfileService(profileMapper, llmService, singleFlight, 10_000, 100);
+        when(llmService.analyzeStudentAbilities(1001L)).thenReturn(analysis("recomputed"));
+
+        // When
+        service.scheduleRecompute(1001L);
+        service.scheduleRecompute(1001L);
+
+        // Then
+        verify(llmService, timeout(2000).times(1)).analyzeStudentAbilities(1001L);
+    }
+
+    @Test
+    void onAbilityDataChanged_shouldIgnoreStudentWithoutProfile() throws InterruptedException {
+        // Given
+        service = new AbilityProfileService(profileMapper, llmService, singleFlight, 0, 0);
+        when(profileMapper.markStale(1001L)).thenReturn(0);
+
+        // When
+        service.onAbilityDataChanged(new StudentAbilityDataChangedEvent(1001L, "enrolled in course 1"));
+        Thread.sleep(100);
+
+        // Then
+        verifyNoInteractions(llmService);
+        assertEquals(0, service.getPendingCount());
+    }
+
+    @Test
+    void recomputeStaleProfiles_shouldScheduleEveryStaleProfile() {
+        // Given
+        service = new AbilityProfileService(profileMapper, llmService, singleFlight, 0, 0);
+        when(profileMapper.findStaleStudentIds()).thenReturn(List.of(1001L, 1002L));
+        when(llmService.analyzeStudentAbilities(anyLong())).thenReturn(analysis("recomputed"));
+
+        // When
+        service.recomputeStaleProfiles();
+
+        // Then
+        verify(profileMapper, timeout(2000)).upsert(eq(1001L), anyString());
+        verify(profileMapper, timeout(2000)).upsert(eq(1002L), anyString());
+    }
+}
@@ -12,6 +12,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -33,6 +34,9 @@ class CourseEnrollmentServiceTest {
     @Mock
     private StudentMapper studentMapper;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private CourseEnrollmentService courseEnrollmentService;
 
@@ -85,6 +89,23 @@ class CourseEnrollmentServiceTest {
         verify(courseEnrollmentMapper).insert(any(CourseEnrollment.class));
     }
 
+    @Test
+    void enrollStudent_shouldPublishAbilityDataChangedForNumericStudentNumber() {
+        // Given
+        testStudent.setStudentId("20230001");
+        when(courseMapper.findById(1L)).thenReturn(testCourse);
+        when(studentMapper.findById(1L)).thenReturn(testStudent);
+        when(courseEnrollmentMapper.findByStudentAndCourse(1L, 1L)).thenReturn(null);
+
+        // When
+        courseEnrollmentService.enrollStudent(1L, 1L);
+
+        // Then
+        verify(eventPublisher).publishEvent(argThat((Object event) ->
+                event instanceof StudentAbilityDataChangedEvent
+                        && Long.valueOf(20230001L).equals(((StudentAbilityDataChangedEvent) event).getStudentId())));
+    }
+
     @Test
     void enrollStudent_shouldThrowExceptionWhenCourseNotFound() {
         // Given
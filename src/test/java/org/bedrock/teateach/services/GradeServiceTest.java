@@ -12,6 +12,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
@@ -33,6 +34,9 @@ class GradeServiceTest {
     @Mock
     private LearningTaskMapper learningTaskMapper;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private GradeService gradeService;
 
@@ -83,6 +87,9 @@ class GradeServiceTest {
         verify(submissionMapper, times(1)).findByStudentAndCourse(studentId, courseId); // Called by updateStudentOverallGrade
         verify(gradeAnalysisMapper, times(1)).findByStudentAndCourse(studentId, courseId); // Called by updateStudentOverallGrade
         verify(gradeAnalysisMapper, times(1)).insert(any(GradeAnalysis.class)); // New GradeAnalysis should be inserted
+        verify(eventPublisher).publishEvent(argThat((Object event) ->
+                event instanceof StudentAbilityDataChangedEvent
+                        && studentId.equals(((StudentAbilityDataChangedEvent) event).getStudentId())));
     }
 
     @Test
@@ -0,0 +1,187 @@
+package org.bedrock.teateach.services;
+
+import org.bedrock.teateach.beans.GradingJob;
+import org.bedrock.teateach.beans.StudentTaskSubmission;
+import org.bedrock.teateach.enums.GradingJobStatus;
+import org.bedrock.teateach.llm.BatchGradingEngine;
+import org.bedrock.teateach.llm.LLMService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class GradingJobRunnerTest {
+
+    @Mock
+    private GradingJobService gradingJobService;
+
+    @Mock
+    private LLMService llmService;
+
+    private GradingJobRunner runner;
+
+    @BeforeEach
+    void setUp() {
+        runner = new GradingJobRunner(gradingJobService, llmService, 1, 120_000);
+        lenient().when(gradingJobService.claim(anyLong(), anyString(), eq(120L))).thenReturn(true);
+        lenient().when(gradingJobService.markFinished(anyLong(), anyString(), any(), any())).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        runner.shutdown();
+    }
+
+    private static GradingJob job(Long id) {
+        GradingJob job = new GradingJob();
+        job.setId(id);
+        job.setStatus(GradingJobStatus.RUNNING);
+        job.setGradingRubric("rubric");
+        return job;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void run_shouldGradePendingSubmissionsAndRecordEachOutcome() {
+        // Given
+        StudentTaskSubmission submission = new StudentTaskSubmission();
+        submission.setId(1L);
+        BatchGradingEngine.GradingOutcome outcome = new BatchGradingEngine.GradingOutcome(1L, true,
+                Map.of("score", 80, "feedback", "ok"), null, 1, 10);
+        when(gradingJobService.getJob(7L)).thenReturn(job(7L));
+        when(gradingJobService.loadPendingSubmissions(7L)).thenReturn(List.of(submission));
+        when(llmService.batchGradeSubmissions(eq(List.of(submission)), eq("rubric"), any(Consumer.class)))
+                .thenAnswer(invocation -> {
+                    invocation.<Consumer<BatchGradingEngine.GradingOutcome>>getArgument(2).accept(outcome);
+                    return Map.of("success", true);
+                });
+
+        // When
+        runner.run(7L);
+
+        // Then
+        verify(gradingJobService).claim(eq(7L), anyString(), eq(120L));
+        verify(gradingJobService).recordOutcome(7L, outcome);
+        verify(gradingJobService).markFinished(eq(7L), anyString(), eq(GradingJobStatus.COMPLETED), isNull());
+    }
+
+    @Test
+    void run_shouldCompleteWithoutModelCalls_whenNothingIsPending() {
+        // Given: a resumed job whose items were all graded before the restart
+        when(gradingJobService.getJob(7L)).thenReturn(job(7L));
+        when(gradingJobService.loadPendingSubmissions(7L)).thenReturn(List.of());
+
+        // When
+        runner.run(7L);
+
+        // Then
+        verifyNoInteractions(llmService);
+        verify(gradingJobService).markFinished(eq(7L), anyString(), eq(GradingJobStatus.COMPLETED), isNull());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void run_shouldFailJob_whenOutcomesCouldNotBeStored() {
+        // Given
+        StudentTaskSubmission submission = new StudentTaskSubmission();
+        submission.setId(1L);
+        BatchGradingEngine.GradingOutcome outcome = new BatchGradingEngine.GradingOutcome(1L, true,
+                Map.of("score", 80, "feedback", "ok"), null, 1, 10);
+        when(gradingJobService.getJob(7L)).thenReturn(job(7L));
+        when(gradingJobService.loadPendingSubmissions(7L)).thenReturn(List.of(submission));
+        doThrow(new RuntimeException("database unavailable")).when(gradingJobService).recordOutcome(7L, outcome);
+        when(gradingJobService.countPendingItems(7L)).thenReturn(1);
+        when(llmService.batchGradeSubmissions(anyList(), anyString(), any(Consumer.class)))
+                .thenAnswer(invocation -> {
+                    invocation.<Consumer<BatchGradingEngine.GradingOutcome>>getArgument(2).accept(outcome);
+                    return Map.of("success", true);
+                });
+
+        // When
+        runner.run(7L);
+
+        // Then
+        verify(gradingJobService).markFinished(eq(7L), anyString(), eq(GradingJobStatus.FAILED), anyString());
+        verify(gradingJobService, never()).markFinished(eq(7L), anyString(), eq(GradingJobStatus.COMPLETED), isNull());
+    }
+
+    @Test
+    void run_shouldLeaveJobAlone_whenAnotherInstanceIsGradingIt() {
+        // Given
+        when(gradingJobService.getJob(7L)).thenReturn(job(7L));
+        when(gradingJobService.claim(eq(7L), anyString(), eq(120L))).thenReturn(false);
+
+        // When
+        runner.run(7L);
+
+        // Then
+        verify(gradingJobService, never()).loadPendingSubmissions(anyLong());
+        verify(gradingJobService, never()).markFinished(anyLong(), anyString(), any(), any());
+        verifyNoInteractions(llmService);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void sendHeartbeats_shouldRefreshJobsWhileTheyAreGraded() throws InterruptedException {
+        // Given: grading blocks until the test has sent a heartbeat
+        StudentTaskSubmission submission = new StudentTaskSubmission();
+        submission.setId(1L);
+        CountDownLatch grading = new CountDownLatch(1);
+        CountDownLatch heartbeatSent = new CountDownLatch(1);
+        when(gradingJobService.getJob(7L)).thenReturn(job(7L));
+        when(gradingJobService.loadPendingSubmissions(7L)).thenReturn(List.of(submission));
+        when(gradingJobService.heartbeat(eq(7L), anyString())).thenReturn(true);
+        when(llmService.batchGradeSubmissions(anyList(), anyString(), any(Consumer.class))).thenAnswer(invocation -> {
+            grading.countDown();
+            heartbeatSent.await(2, TimeUnit.SECONDS);
+            return Map.of("success", true);
+        });
+
+        // When
+        runner.submit(7L);
+        grading.await(2, TimeUnit.SECONDS);
+        runner.sendHeartbeats();
+        heartbeatSent.countDown();
+
+        // Then
+        verify(gradingJobService).heartbeat(eq(7L), anyString());
+        verify(gradingJobService, timeout(2000)).markFinished(eq(7L), anyString(), eq(GradingJobStatus.COMPLETED), isNull());
+        for (int i = 0; i < 200 && runner.isActive(7L); i++) {
+            Thread.sleep(10);
+        }
+        runner.sendHeartbeats();
+        verify(gradingJobService, times(1)).heartbeat(anyLong(), anyString());
+    }
+
+    @Test
+    void resumeUnfinishedJobs_shouldRequeueEveryUnfinishedJob() {
+        // Given
+        when(gradingJobService.findClaimableJobIds(anyString(), eq(120L))).thenReturn(List.of(3L, 4L));
+        when(gradingJobService.getJob(3L)).thenReturn(job(3L));
+        when(gradingJobService.getJob(4L)).thenReturn(job(4L));
+
+        // When
+        runner.resumeUnfinishedJobs();
+
+        // Then
+        verify(gradingJobService, timeout(2000)).markFinished(eq(3L), anyString(), eq(GradingJobStatus.COMPLETED), isNull());
+        verify(gradingJobService, timeout(2000)).markFinished(eq(4L), anyString(), eq(GradingJobStatus.COMPLETED), isNull());
+    }
+}
@@ -0,0 +1,207 @@
+package org.bedrock.teateach.services;
+
+import org.bedrock.teateach.beans.GradingJob;
+import org.bedrock.teateach.beans.GradingJobItem;
+import org.bedrock.teateach.beans.StudentTaskSubmission;
+import org.bedrock.teateach.dto.GradingJobProgress;
+import org.bedrock.teateach.enums.GradingItemStatus;
+import org.bedrock.teateach.enums.GradingJobStatus;
+import org.bedrock.teateach.llm.BatchGradingEngine;
+import org.bedrock.teateach.mappers.GradingJobItemMapper;
+import org.bedrock.teateach.mappers.GradingJobMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class GradingJobServiceTest {
+
+    @Mock
+    private GradingJobMapper gradingJobMapper;
+
+    @Mock
+    private GradingJobItemMapper gradingJobItemMapper;
+
+    @Mock
+    private StudentTaskSubmissionService studentTaskSubmissionService;
+
+    @Mock
+    private GradeService gradeService;
+
+    @InjectMocks
+    private GradingJobService gradingJobService;
+
+    private static StudentTaskSubmission submission(Long id, Integer completionStatus, Double score) {
+        StudentTaskSubmission submission = new StudentTaskSubmission();
+        submission.setId(id);
+        submission.setSubmissionContent("answer " + id);
+        submission.setCompletionStatus(completionStatus);
+        submission.setScore(score);
+        return submission;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void createJob_shouldSkipGradedSubmissionsAndFailUnknownOnes() {
+        // Given
+        when(studentTaskSubmissionService.getSubmissionById(1L)).thenReturn(Optional.of(submission(1L, 2, null)));
+        when(studentTaskSubmissionService.getSubmissionById(2L)).thenReturn(Optional.of(submission(2L, 3, 88.0)));
+        when(studentTaskSubmissionService.getSubmissionById(3L)).thenReturn(Optional.empty());
+        doAnswer(invocation -> {
+            invocation.<GradingJob>getArgument(0).setId(7L);
+            return null;
+        }).when(gradingJobMapper).insert(any(GradingJob.class));
+
+        // When
+        GradingJob job = gradingJobService.createJob(List.of(1L, 2L, 3L, 1L), "rubric", false);
+
+        // Then
+        assertEquals(7L, job.getId());
+        assertEquals(GradingJobStatus.PENDING, job.getStatus());
+        assertEquals(3, job.getTotalItems());
+        assertEquals(1, job.getSkippedItems());
+        assertEquals(1, job.getFailedItems());
+
+        ArgumentCaptor<List<GradingJobItem>> items = ArgumentCaptor.forClass(List.class);
+        verify(gradingJobItemMapper).insertBatch(items.capture());
+        assertEquals(List.of(GradingItemStatus.PENDING, GradingItemStatus.SKIPPED, GradingItemStatus.FAILED),
+                items.getValue().stream().map(GradingJobItem::getStatus).toList());
+        assertEquals(88.0, items.getValue().get(1).getScore());
+        assertTrue(items.getValue().stream().allMatch(item -> item.getJobId() == 7L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void createJob_shouldQueueGradedSubmissions_whenRegradeRequested() {
+        // Given
+        when(studentTaskSubmissionService.getSubmissionById(2L)).thenReturn(Optional.of(submission(2L, 3, 88.0)));
+
+        // When
+        GradingJob job = gradingJobService.createJob(List.of(2L), null, true);
+
+        // Then
+        assertEquals(0, job.getSkippedItems());
+        ArgumentCaptor<List<GradingJobItem>> items = ArgumentCaptor.forClass(List.class);
+        verify(gradingJobItemMapper).insertBatch(items.capture());
+        assertEquals(GradingItemStatus.PENDING, items.getValue().get(0).getStatus());
+    }
+
+    @Test
+    void recordOutcome_shouldWriteBackScoreAndAdvanceJob() {
+        // Given
+        StudentTaskSubmission pending = submission(1L, 2, null);
+        when(studentTaskSubmissionService.getSubmissionById(1L)).thenReturn(Optional.of(pending));
+        when(gradingJobItemMapper.updateResult(any(GradingJobItem.class))).thenReturn(1);
+        BatchGradingEngine.GradingOutcome outcome = new BatchGradingEngine.GradingOutcome(1L, true,
+                Map.of("score", 91, "feedback", "Well argued"), null, 2, 1500);
+
+        // When
+        gradingJobService.recordOutcome(7L, outcome);
+
+        // Then
+        assertEquals(91.0, pending.getScore());
+        assertEquals("Well argued", pending.getFeedback());
+        assertEquals(3, pending.getCompletionStatus());
+        verify(studentTaskSubmissionService).updateSubmission(pending);
+        verify(gradeService).recordSubmissionScore(1L, 91.0);
+
+        ArgumentCaptor<GradingJobItem> item = ArgumentCaptor.forClass(GradingJobItem.class);
+        verify(gradingJobItemMapper).updateResult(item.capture());
+        assertEquals(GradingItemStatus.SUCCEEDED, item.getValue().getStatus());
+        assertEquals(2, item.getValue().getAttempts());
+        verify(gradingJobMapper).incrementProgress(7L, 1, 0);
+    }
+
+    @Test
+    void recordOutcome_shouldOnlyRecordError_whenGradingFailed() {
+        // Given
+        BatchGradingEngine.GradingOutcome outcome = new BatchGradingEngine.GradingOutcome(1L, false, null,
+                "Timed out after 1000 ms", 3, 3000);
+        when(gradingJobItemMapper.updateResult(any(GradingJobItem.class))).thenReturn(1);
+
+        // When
+        gradingJobService.recordOutcome(7L, outcome);
+
+        // Then
+        verifyNoInteractions(gradeService);
+        verify(studentTaskSubmissionService, never()).updateSubmission(any());
+        ArgumentCaptor<GradingJobItem> item = ArgumentCaptor.forClass(GradingJobItem.class);
+        verify(gradingJobItemMapper).updateResult(item.capture());
+        assertEquals(GradingItemStatus.FAILED, item.getValue().getStatus());
+        assertEquals("Timed out after 1000 ms", item.getValue().getError());
+        verify(gradingJobMapper).incrementProgress(7L, 0, 1);
+    }
+
+    @Test
+    void recordOutcome_shouldChangeNothing_whenTheItemAlreadyHasAnOutcome() {
+        // Given: the item was graded by another run first
+        when(studentTaskSubmissionService.getSubmissionById(1L)).thenReturn(Optional.of(submission(1L, 3, 70.0)));
+        when(gradingJobItemMapper.updateResult(any(GradingJobItem.class))).thenReturn(0);
+        BatchGradingEngine.GradingOutcome outcome = new BatchGradingEngine.GradingOutcome(1L, true,
+                Map.of("score", 91, "feedback", "Well argued"), null, 1, 1500);
+
+        // When
+        gradingJobService.recordOutcome(7L, outcome);
+
+        // Then
+        verify(studentTaskSubmissionService, never()).updateSubmission(any());
+        verifyNoInteractions(gradeService);
+        verify(gradingJobMapper, never()).incrementProgress(anyLong(), anyInt(), anyInt());
+    }
+
+    @Test
+    void claim_shouldReportWhetherTheJobWasTakenOver() {
+        when(gradingJobMapper.claim(7L, "pod-a", 120L)).thenReturn(1);
+        when(gradingJobMapper.claim(8L, "pod-a", 120L)).thenReturn(0);
+
+        assertTrue(gradingJobService.claim(7L, "pod-a", 120L));
+        assertFalse(gradingJobService.claim(8L, "pod-a", 120L));
+    }
+
+    @Test
+    void getProgress_shouldCountEveryFinishedItem() {
+        // Given
+        GradingJob job = new GradingJob();
+        job.setId(7L);
+        job.setStatus(GradingJobStatus.RUNNING);
+        job.setTotalItems(8);
+        job.setSucceededItems(3);
+        job.setFailedItems(1);
+        job.setSkippedItems(2);
+        when(gradingJobMapper.findById(7L)).thenReturn(job);
+        when(gradingJobItemMapper.findByJobId(7L)).thenReturn(List.of());
+
+        // When
+        Optional<GradingJobProgress> progress = gradingJobService.getProgress(7L);
+
+        // Then
+        assertTrue(progress.isPresent());
+        assertEquals(75.0, progress.get().getProgressPercentage());
+    }
+
+    @Test
+    void prepareRetry_shouldRequeueFailedItems() {
+        // Given
+        when(gradingJobItemMapper.resetFailed(7L)).thenReturn(2);
+
+        // When
+        int requeued = gradingJobService.prepareRetry(7L);
+
+        // Then
+        assertEquals(2, requeued);
+        verify(gradingJobMapper).decrementFailed(7L, 2);
+    }
+}
@@ -11,6 +11,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
@@ -29,6 +30,9 @@ class LearningTaskServiceTest {
     @Mock
     private TaskResourceMapper taskResourceMapper;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private LearningTaskService learningTaskService;
 
@@ -212,6 +216,8 @@ class LearningTaskServiceTest {
         assertEquals(resourceId, result.getResourceId());
         verify(taskResourceMapper, times(1)).existsByTaskIdAndResourceId(taskId, resourceId);
         verify(taskResourceMapper, times(1)).insert(any(TaskResource.class));
+        verify(eventPublisher).publishEvent(argThat((Object event) -> event instanceof ResourceLinksChangedEvent changed
+                && changed.getResourceIds().equals(List.of(resourceId))));
     }
     
     @Test
@@ -228,6 +234,7 @@ class LearningTaskServiceTest {
         assertEquals("Resource is already associated with this task", exception.getMessage());
         verify(taskResourceMapper, times(1)).existsByTaskIdAndResourceId(taskId, resourceId);
         verify(taskResourceMapper, never()).insert(any(TaskResource.class));
+        verifyNoInteractions(eventPublisher);
     }
     
     @Test
@@ -333,4 +340,31 @@ class LearningTaskServiceTest {
         verify(learningTaskMapper, times(1)).findById(taskId);
         verify(learningTaskMapper, times(1)).delete(taskId);
     }
-}
\ No newline at end of file
+
+    @Test
+    void deleteTask_shouldPublishLinksOfDeletedTaskResources() {
+        // Given: the links are read before the delete cascades over them
+        Long taskId = 1L;
+        TaskResource otherLink = new TaskResource(taskId, 2L);
+        when(taskResourceMapper.findByTaskId(taskId)).thenReturn(List.of(testTaskResource, otherLink));
+
+        // When
+        learningTaskService.deleteTask(taskId);
+
+        // Then
+        var order = inOrder(taskResourceMapper, learningTaskMapper, eventPublisher);
+        order.verify(taskResourceMapper).findByTaskId(taskId);
+        order.verify(learningTaskMapper).delete(taskId);
+        order.verify(eventPublisher).publishEvent(argThat((Object event) -> event instanceof ResourceLinksChangedEvent changed
+                && changed.getResourceIds().equals(List.of(1L, 2L))));
+    }
+
+    @Test
+    void getTasksByResourceId_shouldReturnLinkedTasks() {
+        when(taskResourceMapper.findTasksByResourceId(1L)).thenReturn(List.of(testTask));
+
+        List<LearningTask> result = learningTaskService.getTasksByResourceId(1L);
+
+        assertEquals(List.of(testTask), result);
+    }
+}
@@ -0,0 +1,76 @@
+package org.bedrock.teateach.services;
+
+import org.bedrock.teateach.beans.PlaybackVector;
+import org.bedrock.teateach.dto.ResourceEngagementAnalytics;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlaybackAnalyticsAggregatorTest {
+
+    private final Long resourceId = 2L;
+
+    private PlaybackVector vector(int duration, int... playbackData) {
+        return new PlaybackVector(null, 1L, resourceId, playbackData, duration, LocalDateTime.now());
+    }
+
+    @Test
+    void aggregate_shouldSumHeatmapAcrossVectors() {
+        // Given
+        PlaybackVector vector1 = vector(100, new int[100]);
+        vector1.getPlaybackData()[1] = 2;
+        vector1.getPlaybackData()[3] = 3;
+        vector1.getPlaybackData()[11] = 2;
+        PlaybackVector vector2 = vector(100, new int[100]);
+        vector2.getPlaybackData()[1] = 1;
+        vector2.getPlaybackData()[3] = 2;
+        vector2.getPlaybackData()[12] = 2;
+
+        // When
+        int[] heatmap = PlaybackAnalyticsAggregator.aggregate(resourceId, Arrays.asList(vector1, vector2)).getHeatmap();
+
+        // Then
+        assertEquals(100, heatmap.length);
+        assertEquals(3, heatmap[1]);
+        assertEquals(5, heatmap[3]);
+        assertEquals(0, heatmap[6]);
+        assertEquals(2, heatmap[11]);
+        assertEquals(2, heatmap[12]);
+    }
+
+    @Test
+    void aggregate_shouldComputeCompletionAverageAndDropOff() {
+        // Given - watched 100%, the first half, nothing, and a vector with a shorter duration and extra stored data
+        List<PlaybackVector> vectors = List.of(
+                vector(4, 1, 2, 1, 1),
+                vector(4, 1, 1, 0, 0),
+                vector(4, 0, 0, 0, 0),
+                vector(2, 0, 1, 5, 5));
+
+        // When
+        ResourceEngagementAnalytics analytics = PlaybackAnalyticsAggregator.aggregate(resourceId, vectors);
+
+        // Then
+        assertEquals(4, analytics.getStudentCount());
+        assertEquals(4, analytics.getVideoDuration());
+        assertArrayEquals(new int[]{2, 4, 1, 1}, analytics.getHeatmap());
+        assertEquals((100.0 + 50.0 + 0.0 + 50.0) / 4, analytics.getAverageWatchPercentage(), 1e-9);
+        assertEquals(1, analytics.getCompletionDistribution()[0]);
+        assertEquals(2, analytics.getCompletionDistribution()[5]);
+        assertEquals(1, analytics.getCompletionDistribution()[9]);
+        assertArrayEquals(new int[]{3, 3, 1, 1}, analytics.getDropOffCurve());
+    }
+
+    @Test
+    void aggregate_shouldReturnEmptyResult_whenNoVectors() {
+        ResourceEngagementAnalytics analytics = PlaybackAnalyticsAggregator.aggregate(resourceId, List.of());
+
+        assertEquals(0, analytics.getStudentCount());
+        assertEquals(0, analytics.getHeatmap().length);
+        assertEquals(0.0, analytics.getAverageWatchPercentage());
+    }
+}
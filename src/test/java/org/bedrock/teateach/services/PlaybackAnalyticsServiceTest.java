@@ -0,0 +1,79 @@
+package org.bedrock.teateach.services;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.bedrock.teateach.beans.PlaybackVector;
+import org.bedrock.teateach.dto.ResourceEngagementAnalytics;
+import org.bedrock.teateach.mappers.PlaybackVectorMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PlaybackAnalyticsServiceTest {
+
+    @Mock
+    private PlaybackVectorMapper playbackVectorMapper;
+
+    @InjectMocks
+    private PlaybackAnalyticsService playbackAnalyticsService;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void analyzeResource_shouldStreamCursorAndCloseIt() throws Exception {
+        // Given
+        Cursor<PlaybackVector> cursor = mock(Cursor.class);
+        when(cursor.iterator()).thenReturn(List.of(
+                new PlaybackVector(1L, 1L, 2L, new int[]{1, 1}, 2, null),
+                new PlaybackVector(2L, 3L, 2L, new int[]{1, 0}, 2, null)).iterator());
+        when(playbackVectorMapper.streamByResourceId(2L)).thenReturn(cursor);
+
+        // When
+        ResourceEngagementAnalytics analytics = playbackAnalyticsService.analyzeResource(2L);
+
+        // Then
+        assertEquals(2, analytics.getStudentCount());
+        assertArrayEquals(new int[]{2, 1}, analytics.getHeatmap());
+        assertEquals(75.0, analytics.getAverageWatchPercentage(), 1e-9);
+        verify(cursor).close();
+        verify(playbackVectorMapper, never()).findByResourceId(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void analyzeAllResources_shouldEmitOneResultPerResourceGroup() {
+        // Given
+        List<PlaybackVector> rows = List.of(
+                new PlaybackVector(1L, 1L, 2L, new int[]{1, 1}, 2, null),
+                new PlaybackVector(2L, 3L, 2L, new int[]{0, 1}, 2, null),
+                new PlaybackVector(3L, 1L, 5L, new int[]{4}, 1, null));
+        doAnswer(invocation -> {
+            ResultHandler<PlaybackVector> handler = invocation.getArgument(0);
+            for (PlaybackVector row : rows) {
+                ResultContext<PlaybackVector> context = mock(ResultContext.class);
+                when(context.getResultObject()).thenReturn(row);
+                handler.handleResult(context);
+            }
+            return null;
+        }).when(playbackVectorMapper).streamAllOrderedByResource(any());
+
+        // When
+        List<ResourceEngagementAnalytics> results = playbackAnalyticsService.analyzeAllResources();
+
+        // Then
+        assertEquals(2, results.size());
+        assertEquals(2L, results.get(0).getResourceId());
+        assertArrayEquals(new int[]{1, 2}, results.get(0).getHeatmap());
+        assertEquals(5L, results.get(1).getResourceId());
+        assertArrayEquals(new int[]{4}, results.get(1).getHeatmap());
+    }
+}
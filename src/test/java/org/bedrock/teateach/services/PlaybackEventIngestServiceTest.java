@@ -0,0 +1,162 @@
+package org.bedrock.teateach.services;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.bedrock.teateach.beans.PlaybackDelta;
+import org.bedrock.teateach.beans.Resource;
+import org.bedrock.teateach.mappers.PlaybackEventOffsetMapper;
+import org.bedrock.teateach.typehandler.CompactIntArrayCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PlaybackEventIngestServiceTest {
+
+    private static final String GROUP = "playback-aggregator";
+    private static final String TOPIC = "playback-events";
+
+    @Mock
+    private PlaybackVectorService playbackVectorService;
+
+    @Mock
+    private PlaybackEventOffsetMapper playbackEventOffsetMapper;
+
+    @Mock
+    private ResourceService resourceService;
+
+    private PlaybackEventIngestService ingestService;
+
+    @BeforeEach
+    void setUp() {
+        ingestService = new PlaybackEventIngestService(playbackVectorService, playbackEventOffsetMapper, resourceService, GROUP);
+    }
+
+    private static ConsumerRecord<String, byte[]> event(int partition, long offset, String key, int[] delta) {
+        return new ConsumerRecord<>(TOPIC, partition, offset, key, CompactIntArrayCodec.encode(delta));
+    }
+
+    @Test
+    void ingest_shouldMergeEventsPerKeyAndStoreLastOffset() {
+        // Given
+        when(playbackEventOffsetMapper.findLastOffsetForUpdate(GROUP, TOPIC, 0)).thenReturn(-1L);
+        when(resourceService.getResourceById(2L)).thenReturn(Optional.of(new Resource()));
+        when(playbackVectorService.getVideoDuration(2L)).thenReturn(120);
+        when(playbackVectorService.applyDeltas(anyList())).thenReturn(2);
+
+        // When
+        int written = ingestService.ingest(List.of(
+                event(0, 0, "1:2", new int[]{1, 1}),
+                event(0, 1, "3:2", new int[]{1}),
+                event(0, 2, "1:2", new int[]{0, 1, 1})));
+
+        // Then
+        assertEquals(2, written);
+        ArgumentCaptor<List<PlaybackDelta>> captor = ArgumentCaptor.forClass(List.class);
+        verify(playbackVectorService).applyDeltas(captor.capture());
+        assertEquals(2, captor.getValue().size());
+        assertArrayEquals(new int[]{1, 2, 1}, captor.getValue().get(0).getCounts());
+        verify(playbackEventOffsetMapper).updateLastOffset(GROUP, TOPIC, 0, 2L);
+    }
+
+    @Test
+    void ingest_shouldSkipRedeliveredEvents() {
+        // Given
+        when(playbackEventOffsetMapper.findLastOffsetForUpdate(GROUP, TOPIC, 0)).thenReturn(1L);
+        when(resourceService.getResourceById(2L)).thenReturn(Optional.of(new Resource()));
+        when(playbackVectorService.getVideoDuration(2L)).thenReturn(120);
+
+        // When
+        ingestService.ingest(List.of(
+                event(0, 0, "1:2", new int[]{5}),
+                event(0, 1, "1:2", new int[]{5}),
+                event(0, 2, "1:2", new int[]{1})));
+
+        // Then
+        ArgumentCaptor<List<PlaybackDelta>> captor = ArgumentCaptor.forClass(List.class);
+        verify(playbackVectorService).applyDeltas(captor.capture());
+        assertArrayEquals(new int[]{1}, captor.getValue().get(0).getCounts());
+        verify(playbackEventOffsetMapper).updateLastOffset(GROUP, TOPIC, 0, 2L);
+    }
+
+    @Test
+    void ingest_shouldDoNothing_whenWholeBatchWasAlreadyApplied() {
+        // Given
+        when(playbackEventOffsetMapper.findLastOffsetForUpdate(GROUP, TOPIC, 0)).thenReturn(10L);
+
+        // When
+        int written = ingestService.ingest(List.of(event(0, 9, "1:2", new int[]{1}), event(0, 10, "1:2", new int[]{1})));
+
+        // Then
+        assertEquals(0, written);
+        verifyNoInteractions(playbackVectorService);
+        verify(playbackEventOffsetMapper, never()).updateLastOffset(anyString(), anyString(), anyInt(), anyLong());
+    }
+
+    @Test
+    void ingest_shouldCreateOffsetRow_forNewPartition() {
+        // Given
+        when(playbackEventOffsetMapper.findLastOffsetForUpdate(GROUP, TOPIC, 4)).thenReturn(null, -1L);
+        when(resourceService.getResourceById(2L)).thenReturn(Optional.of(new Resource()));
+        when(playbackVectorService.getVideoDuration(2L)).thenReturn(120);
+
+        // When
+        ingestService.ingest(List.of(event(4, 0, "1:2", new int[]{1})));
+
+        // Then
+        verify(playbackEventOffsetMapper).insertIgnore(GROUP, TOPIC, 4);
+        verify(playbackEventOffsetMapper).updateLastOffset(GROUP, TOPIC, 4, 0L);
+    }
+
+    @Test
+    void ingest_shouldDropEventsLongerThanTheVideo_butAdvanceOffset() {
+        // Given
+        when(playbackEventOffsetMapper.findLastOffsetForUpdate(GROUP, TOPIC, 0)).thenReturn(-1L);
+        when(resourceService.getResourceById(2L)).thenReturn(Optional.of(new Resource()));
+        when(playbackVectorService.getVideoDuration(2L)).thenReturn(3);
+        byte[] huge = {(byte) 0xC1, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+
+        // When
+        ingestService.ingest(List.of(
+                event(0, 0, "1:2", new int[]{1, 1, 1, 1}),
+                new ConsumerRecord<>(TOPIC, 0, 1, "1:2", huge),
+                event(0, 2, "1:2", new int[]{0, 1, 1})));
+
+        // Then
+        ArgumentCaptor<List<PlaybackDelta>> captor = ArgumentCaptor.forClass(List.class);
+        verify(playbackVectorService).applyDeltas(captor.capture());
+        assertEquals(1, captor.getValue().size());
+        assertArrayEquals(new int[]{0, 1, 1}, captor.getValue().get(0).getCounts());
+        verify(resourceService, times(1)).getResourceById(2L);
+        verify(playbackEventOffsetMapper).updateLastOffset(GROUP, TOPIC, 0, 2L);
+    }
+
+    @Test
+    void ingest_shouldDropMalformedAndUnknownResourceEvents_butAdvanceOffset() {
+        // Given
+        when(playbackEventOffsetMapper.findLastOffsetForUpdate(GROUP, TOPIC, 0)).thenReturn(-1L);
+        when(resourceService.getResourceById(9L)).thenReturn(Optional.empty());
+
+        // When
+        int written = ingestService.ingest(List.of(
+                event(0, 0, "not-a-key", new int[]{1}),
+                event(0, 1, "1:9", new int[]{1})));
+
+        // Then
+        assertEquals(0, written);
+        verifyNoInteractions(playbackVectorService);
+        verify(playbackEventOffsetMapper).updateLastOffset(GROUP, TOPIC, 0, 1L);
+    }
+}
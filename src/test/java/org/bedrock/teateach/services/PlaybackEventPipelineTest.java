@@ -0,0 +1,128 @@
+package org.bedrock.teateach.services;
+
+import org.bedrock.teateach.beans.PlaybackDelta;
+import org.bedrock.teateach.beans.Resource;
+import org.bedrock.teateach.config.PlaybackKafkaConfig;
+import org.bedrock.teateach.mappers.PlaybackEventOffsetMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.boot.ssl.DefaultSslBundleRegistry;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.listener.BatchMessageListener;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Publisher -> embedded broker -> batch listener -> ingest, with the database side mocked in memory
+ */
+@EmbeddedKafka(partitions = 3, topics = PlaybackEventPipelineTest.TOPIC)
+class PlaybackEventPipelineTest {
+
+    static final String TOPIC = "playback-events-test";
+    private static final String GROUP = "playback-aggregator-test";
+
+    private ConcurrentMessageListenerContainer<String, byte[]> container;
+    private PlaybackEventPublisher publisher;
+
+    @AfterEach
+    void tearDown() {
+        if (publisher != null) {
+            publisher.close();
+        }
+        if (container != null) {
+            container.stop();
+        }
+    }
+
+    @Test
+    void publishedHeartbeats_shouldBeAppliedInBatchesWithoutLoss(EmbeddedKafkaBroker broker) throws Exception {
+        // Given
+        KafkaProperties kafkaProperties = new KafkaProperties();
+        kafkaProperties.setBootstrapServers(List.of(broker.getBrokersAsString()));
+        DefaultSslBundleRegistry sslBundles = new DefaultSslBundleRegistry();
+
+        Map<String, int[]> applied = new ConcurrentHashMap<>();
+        AtomicInteger applyCalls = new AtomicInteger();
+        PlaybackVectorService playbackVectorService = mock(PlaybackVectorService.class);
+        when(playbackVectorService.applyDeltas(anyList())).thenAnswer(invocation -> {
+            List<PlaybackDelta> deltas = invocation.getArgument(0);
+            applyCalls.incrementAndGet();
+            for (PlaybackDelta delta : deltas) {
+                applied.merge(PlaybackHotTier.member(delta.getStudentId(), delta.getResourceId()),
+                        delta.getCounts(), PlaybackHotTier::addCounts);
+            }
+            return deltas.size();
+        });
+        Map<Integer, Long> offsets = new ConcurrentHashMap<>();
+        PlaybackEventOffsetMapper offsetMapper = mock(PlaybackEventOffsetMapper.class);
+        when(offsetMapper.findLastOffsetForUpdate(eq(GROUP), eq(TOPIC), anyInt()))
+                .thenAnswer(invocation -> offsets.getOrDefault(invocation.<Integer>getArgument(2), -1L));
+        doAnswer(invocation -> offsets.put(invocation.getArgument(2), invocation.getArgument(3)))
+                .when(offsetMapper).updateLastOffset(eq(GROUP), eq(TOPIC), anyInt(), anyLong());
+        ResourceService resourceService = mock(ResourceService.class);
+        when(resourceService.getResourceById(anyLong())).thenReturn(Optional.of(new Resource()));
+        when(playbackVectorService.getVideoDuration(anyLong())).thenReturn(120);
+
+        PlaybackEventListener listener = new PlaybackEventListener(
+                new PlaybackEventIngestService(playbackVectorService, offsetMapper, resourceService, GROUP));
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory = new PlaybackKafkaConfig()
+                .playbackEventListenerContainerFactory(kafkaProperties, sslBundles, 2, 500, 100, 100L);
+        container = factory.createContainer(TOPIC);
+        container.getContainerProperties().setGroupId(GROUP);
+        container.getContainerProperties().setMessageListener((BatchMessageListener<String, byte[]>) listener::onEvents);
+        container.start();
+        ContainerTestUtils.waitForAssignment(container, broker.getPartitionsPerTopic());
+
+        publisher = new PlaybackEventPublisher(kafkaProperties, sslBundles, true, TOPIC, 5);
+
+        // When
+        for (int i = 0; i < 200; i++) {
+            for (long studentId = 1; studentId <= 5; studentId++) {
+                publisher.publish(studentId, 7L, new int[]{1, 1});
+            }
+        }
+
+        // Then
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!(allApplied(applied, 200) && committedEvents(offsets) == 1000) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        for (long studentId = 1; studentId <= 5; studentId++) {
+            int[] counts = applied.get(PlaybackHotTier.member(studentId, 7L));
+            assertNotNull(counts, "No events applied for student " + studentId);
+            assertArrayEquals(new int[]{200, 200}, counts);
+        }
+        assertTrue(applyCalls.get() < 1000, "Events should be applied in batches, not one by one");
+        assertEquals(1000, committedEvents(offsets));
+    }
+
+    /**
+     * Offsets start at 0 on every partition, so last offset + 1 is the number of events applied from it
+     */
+    private static long committedEvents(Map<Integer, Long> offsets) {
+        return offsets.values().stream().mapToLong(offset -> offset + 1).sum();
+    }
+
+    private static boolean allApplied(Map<String, int[]> applied, int perStudent) {
+        for (long studentId = 1; studentId <= 5; studentId++) {
+            int[] counts = applied.get(PlaybackHotTier.member(studentId, 7L));
+            if (counts == null || counts[0] < perStudent) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
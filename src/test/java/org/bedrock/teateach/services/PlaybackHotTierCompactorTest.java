@@ -0,0 +1,78 @@
+package org.bedrock.teateach.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PlaybackHotTierCompactorTest {
+
+    @Mock
+    private PlaybackHotTier playbackHotTier;
+
+    @Mock
+    private PlaybackHotTierIngestService playbackHotTierIngestService;
+
+    private PlaybackHotTierCompactor compactor;
+
+    @BeforeEach
+    void setUp() {
+        compactor = new PlaybackHotTierCompactor(playbackHotTier, playbackHotTierIngestService, 2, 10);
+    }
+
+    @Test
+    void compact_shouldApplyAndAcknowledgeUntilDrained() {
+        // Given
+        List<PlaybackHotTier.Snapshot> full = List.of(
+                new PlaybackHotTier.Snapshot(1L, "1:2", 1L, 2L, new int[]{1}),
+                new PlaybackHotTier.Snapshot(2L, "3:2", 3L, 2L, new int[]{0, 1}));
+        List<PlaybackHotTier.Snapshot> last = List.of(new PlaybackHotTier.Snapshot(3L, "5:2", 5L, 2L, new int[]{2}));
+        when(playbackHotTier.takeSnapshots(2)).thenReturn(full, last);
+        when(playbackHotTierIngestService.ingest(anyList())).thenReturn(2, 1);
+
+        // When
+        int written = compactor.compact();
+
+        // Then
+        assertEquals(3, written);
+        verify(playbackHotTier).acknowledge(full);
+        verify(playbackHotTier).acknowledge(last);
+        verify(playbackHotTierIngestService).forget(full);
+        verify(playbackHotTierIngestService).forget(last);
+        verify(playbackHotTier, times(2)).takeSnapshots(anyInt());
+    }
+
+    @Test
+    void compact_shouldNotAcknowledge_whenMysqlWriteFails() {
+        // Given
+        List<PlaybackHotTier.Snapshot> snapshots = List.of(new PlaybackHotTier.Snapshot(4L, "1:2", 1L, 2L, new int[]{1}));
+        when(playbackHotTier.takeSnapshots(2)).thenReturn(snapshots);
+        when(playbackHotTierIngestService.ingest(anyList())).thenThrow(new RuntimeException("db down"));
+
+        // When
+        int written = compactor.compact();
+
+        // Then
+        assertEquals(0, written);
+        verify(playbackHotTier, never()).acknowledge(anyList());
+        verify(playbackHotTierIngestService, never()).forget(anyList());
+    }
+
+    @Test
+    void compact_shouldDoNothing_whenHotTierEmpty() {
+        when(playbackHotTier.takeSnapshots(2)).thenReturn(Collections.emptyList());
+
+        assertEquals(0, compactor.compact());
+        verifyNoInteractions(playbackHotTierIngestService);
+    }
+}
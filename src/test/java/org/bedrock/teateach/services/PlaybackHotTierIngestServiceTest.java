@@ -0,0 +1,85 @@
+package org.bedrock.teateach.services;
+
+import org.bedrock.teateach.beans.PlaybackDelta;
+import org.bedrock.teateach.beans.PlaybackHotTierSnapshot;
+import org.bedrock.teateach.mappers.PlaybackHotTierSnapshotMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PlaybackHotTierIngestServiceTest {
+
+    @Mock
+    private PlaybackVectorService playbackVectorService;
+
+    @Mock
+    private PlaybackHotTierSnapshotMapper playbackHotTierSnapshotMapper;
+
+    private PlaybackHotTierIngestService ingestService;
+
+    @BeforeEach
+    void setUp() {
+        ingestService = new PlaybackHotTierIngestService(playbackVectorService, playbackHotTierSnapshotMapper);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ingest_shouldApplyAndRecordOnlySnapshotsNotAppliedYet() {
+        // Given - snapshot 7 was committed before the process died, its retry arrives with the new snapshot 9
+        List<PlaybackHotTier.Snapshot> snapshots = List.of(
+                new PlaybackHotTier.Snapshot(7L, "1:2", 1L, 2L, new int[]{1}),
+                new PlaybackHotTier.Snapshot(9L, "3:2", 3L, 2L, new int[]{0, 2}));
+        when(playbackHotTierSnapshotMapper.findAppliedForUpdate(anyList())).thenReturn(List.of(7L));
+        when(playbackVectorService.applyDeltas(anyList())).thenReturn(1);
+
+        // When
+        int written = ingestService.ingest(snapshots);
+
+        // Then
+        assertEquals(1, written);
+        ArgumentCaptor<List<PlaybackHotTierSnapshot>> recorded = ArgumentCaptor.forClass(List.class);
+        verify(playbackHotTierSnapshotMapper).insertBatch(recorded.capture());
+        assertEquals(1, recorded.getValue().size());
+        assertEquals(9L, recorded.getValue().get(0).getSnapshotId());
+        assertEquals("3:2", recorded.getValue().get(0).getMember());
+        ArgumentCaptor<List<PlaybackDelta>> applied = ArgumentCaptor.forClass(List.class);
+        verify(playbackVectorService).applyDeltas(applied.capture());
+        assertEquals(1, applied.getValue().size());
+        assertEquals(3L, applied.getValue().get(0).getStudentId());
+        assertArrayEquals(new int[]{0, 2}, applied.getValue().get(0).getCounts());
+    }
+
+    @Test
+    void ingest_shouldWriteNothing_whenEverySnapshotIsAlreadyApplied() {
+        // Given
+        List<PlaybackHotTier.Snapshot> snapshots = List.of(new PlaybackHotTier.Snapshot(7L, "1:2", 1L, 2L, new int[]{1}));
+        when(playbackHotTierSnapshotMapper.findAppliedForUpdate(anyList())).thenReturn(List.of(7L));
+
+        // When
+        int written = ingestService.ingest(snapshots);
+
+        // Then
+        assertEquals(0, written);
+        verify(playbackHotTierSnapshotMapper, never()).insertBatch(anyList());
+        verifyNoInteractions(playbackVectorService);
+    }
+
+    @Test
+    void forget_shouldDeleteTheRecordedIds() {
+        ingestService.forget(List.of(
+                new PlaybackHotTier.Snapshot(7L, "1:2", 1L, 2L, new int[]{1}),
+                new PlaybackHotTier.Snapshot(9L, "3:2", 3L, 2L, new int[]{1})));
+
+        verify(playbackHotTierSnapshotMapper).deleteByIds(List.of(7L, 9L));
+    }
+}
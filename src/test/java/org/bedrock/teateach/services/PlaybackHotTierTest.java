@@ -0,0 +1,176 @@
+package org.bedrock.teateach.services;
+
+import org.bedrock.teateach.dto.HotTierConsistencyReport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlaybackHotTierTest {
+
+    @Test
+    void toCounts_shouldBuildCountVectorAndIgnoreInvalidFields() {
+        // When
+        int[] counts = PlaybackHotTier.toCounts(Map.of("0", "2", "3", "1", "bogus", "9"));
+
+        // Then
+        assertArrayEquals(new int[]{2, 0, 0, 1}, counts);
+        assertArrayEquals(new int[0], PlaybackHotTier.toCounts(Map.of()));
+        assertArrayEquals(new int[0], PlaybackHotTier.toCounts(null));
+    }
+
+    @Test
+    void addCounts_shouldSumVectorsOfDifferentLengths() {
+        assertArrayEquals(new int[]{2, 1, 3}, PlaybackHotTier.addCounts(new int[]{1, 1}, new int[]{1, 0, 3}));
+    }
+
+    @Test
+    void parseMember_shouldRejectMalformedMembers() {
+        assertArrayEquals(new Long[]{7L, 9L}, PlaybackHotTier.parseMember(PlaybackHotTier.member(7L, 9L)));
+        assertNull(PlaybackHotTier.parseMember("7"));
+        assertNull(PlaybackHotTier.parseMember("a:b"));
+    }
+
+    /**
+     * Runs against a real Redis, see deploy/docker-compose.playback-redis.yml
+     */
+    @Nested
+    @EnabledIfEnvironmentVariable(named = "PLAYBACK_REDIS_HOST", matches = ".+")
+    class WithRedis {
+
+        private LettuceConnectionFactory connectionFactory;
+        private StringRedisTemplate redisTemplate;
+        private PlaybackHotTier hotTier;
+
+        @BeforeEach
+        void setUp() {
+            RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                    System.getenv("PLAYBACK_REDIS_HOST"), 6379);
+            configuration.setDatabase(15);
+            connectionFactory = new LettuceConnectionFactory(configuration);
+            connectionFactory.afterPropertiesSet();
+            connectionFactory.start();
+            redisTemplate = new StringRedisTemplate(connectionFactory);
+            redisTemplate.execute(connection -> {
+                connection.serverCommands().flushDb();
+                return null;
+            }, true);
+            hotTier = new PlaybackHotTier(redisTemplate, true, 60);
+        }
+
+        @AfterEach
+        void tearDown() {
+            connectionFactory.destroy();
+        }
+
+        @Test
+        void record_shouldAccumulateAndReturnPendingCounts() {
+            // When
+            hotTier.record(1L, 2L, new int[]{1, 1, 0, 2});
+            int[] pending = hotTier.record(1L, 2L, new int[]{0, 1}).getPending();
+
+            // Then
+            assertArrayEquals(new int[]{1, 2, 0, 2}, pending);
+            assertArrayEquals(pending, hotTier.pendingCounts(1L, 2L));
+            HotTierConsistencyReport report = hotTier.checkConsistency(false);
+            assertTrue(report.isConsistent());
+            assertEquals(1, report.getLiveKeys());
+            assertEquals(5, report.getPendingIncrements());
+        }
+
+        @Test
+        void takeSnapshots_shouldKeepCountsVisibleUntilAcknowledged() {
+            // Given
+            hotTier.record(1L, 2L, new int[]{1, 2});
+
+            // When
+            List<PlaybackHotTier.Snapshot> snapshots = hotTier.takeSnapshots(10);
+            hotTier.record(1L, 2L, new int[]{1});
+
+            // Then - the in-flight snapshot and the new live increment are both pending
+            assertEquals(1, snapshots.size());
+            assertArrayEquals(new int[]{1, 2}, snapshots.get(0).getCounts());
+            assertArrayEquals(new int[]{2, 2}, hotTier.pendingCounts(1L, 2L));
+
+            hotTier.acknowledge(snapshots);
+            assertArrayEquals(new int[]{1}, hotTier.pendingCounts(1L, 2L));
+            assertTrue(hotTier.checkConsistency(false).isConsistent());
+        }
+
+        @Test
+        void takeSnapshots_shouldRetryUnacknowledgedSnapshotUnchangedAndKeepNewIncrementsForTheNextOne() {
+            // Given - a compaction whose MySQL write may or may not have committed
+            hotTier.record(1L, 2L, new int[]{1});
+            PlaybackHotTier.Snapshot first = hotTier.takeSnapshots(10).get(0);
+            hotTier.record(1L, 2L, new int[]{0, 0, 3});
+
+            // When
+            List<PlaybackHotTier.Snapshot> retried = hotTier.takeSnapshots(10);
+
+            // Then - same id and counts, so the applied-snapshot check can recognise it
+            assertEquals(1, retried.size());
+            assertEquals(first.getId(), retried.get(0).getId());
+            assertArrayEquals(new int[]{1}, retried.get(0).getCounts());
+            assertArrayEquals(new int[]{1, 0, 3}, hotTier.pendingCounts(1L, 2L));
+            hotTier.acknowledge(retried);
+
+            List<PlaybackHotTier.Snapshot> next = hotTier.takeSnapshots(10);
+            assertEquals(1, next.size());
+            assertTrue(next.get(0).getId() > first.getId());
+            assertArrayEquals(new int[]{0, 0, 3}, next.get(0).getCounts());
+            hotTier.acknowledge(next);
+            assertTrue(hotTier.takeSnapshots(10).isEmpty());
+            assertArrayEquals(new int[0], hotTier.pendingCounts(1L, 2L));
+            assertTrue(hotTier.checkConsistency(false).isConsistent());
+        }
+
+        @Test
+        void record_shouldReturnCachedStoredCountsUntilTheirPairIsCompacted() {
+            // Given
+            assertNull(hotTier.record(1L, 2L, new int[]{1}).getStored());
+            hotTier.cacheStored(1L, 2L, new int[]{0, 4}, 5);
+            hotTier.cacheStored(1L, 2L, new int[]{9}, 5);
+
+            // When
+            PlaybackHotTier.Recorded recorded = hotTier.record(1L, 2L, new int[]{0, 1});
+
+            // Then - the first cached base wins, padded to the duration
+            assertArrayEquals(new int[]{0, 4, 0, 0, 0}, recorded.getStored());
+            assertEquals(5, recorded.getDuration());
+            assertArrayEquals(new int[]{1, 1}, recorded.getPending());
+            assertTrue(hotTier.checkConsistency(false).isConsistent());
+
+            hotTier.acknowledge(hotTier.takeSnapshots(10));
+            assertNull(hotTier.record(1L, 2L, new int[]{1}).getStored());
+        }
+
+        @Test
+        void checkConsistency_shouldDetectAndRepairUntrackedLiveHash() {
+            // Given - a live hash that lost its dirty-set entry would never be compacted
+            hotTier.record(3L, 4L, new int[]{1});
+            redisTemplate.opsForSet().remove(PlaybackHotTier.DIRTY_SET, PlaybackHotTier.member(3L, 4L));
+            redisTemplate.opsForSet().add(PlaybackHotTier.DIRTY_SET, PlaybackHotTier.member(8L, 8L));
+
+            // When
+            HotTierConsistencyReport before = hotTier.checkConsistency(true);
+            HotTierConsistencyReport after = hotTier.checkConsistency(false);
+
+            // Then
+            assertFalse(before.isConsistent());
+            assertEquals(1, before.getUntrackedLiveKeys());
+            assertEquals(1, before.getDanglingMembers());
+            assertTrue(before.isRepaired());
+            assertTrue(after.isConsistent());
+            assertEquals(1, hotTier.takeSnapshots(10).size());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.bedrock.teateach.services;
+
+import org.bedrock.teateach.beans.PlaybackDelta;
+import org.bedrock.teateach.dto.HeatmapRebuildResult;
+import org.bedrock.teateach.mappers.PlaybackVectorMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PlaybackStorageMigrationServiceTest {
+
+    @Mock
+    private PlaybackVectorMapper playbackVectorMapper;
+
+    @Mock
+    private PlaybackVectorService playbackVectorService;
+
+    @Mock
+    private ResourceHeatmapService resourceHeatmapService;
+
+    @InjectMocks
+    private PlaybackStorageMigrationService migrationService;
+
+    @Test
+    void backfillCompactEncoding_shouldPageThroughLegacyRowsByKeyset() {
+        // Given
+        when(playbackVectorMapper.findLegacyEncodedIds(0L, 2)).thenReturn(List.of(3L, 7L));
+        when(playbackVectorMapper.findLegacyEncodedIds(7L, 2)).thenReturn(List.of(9L));
+        when(playbackVectorMapper.findLegacyEncodedIds(9L, 2)).thenReturn(Collections.emptyList());
+        when(playbackVectorService.reencodeVectors(List.of(3L, 7L))).thenReturn(2);
+        when(playbackVectorService.reencodeVectors(List.of(9L))).thenReturn(1);
+
+        // When
+        int converted = migrationService.backfillCompactEncoding(2);
+
+        // Then
+        assertEquals(3, converted);
+        verify(playbackVectorService, times(2)).reencodeVectors(anyList());
+    }
+
+    @Test
+    void rebuildAllHeatmaps_shouldRebuildEveryResourceWithPlaybackData() {
+        // Given
+        when(playbackVectorMapper.findDistinctResourceIds()).thenReturn(List.of(2L, 5L));
+        when(resourceHeatmapService.rebuildHeatmap(2L)).thenReturn(new HeatmapRebuildResult(2L, true, true, 0, -1));
+        when(resourceHeatmapService.rebuildHeatmap(5L)).thenReturn(new HeatmapRebuildResult(5L, true, false, 3, 10));
+
+        // When
+        List<HeatmapRebuildResult> results = migrationService.rebuildAllHeatmaps();
+
+        // Then
+        assertEquals(2, results.size());
+        assertEquals(10, results.get(1).getFirstMismatchSecond());
+    }
+
+    @Test
+    void mergeDuplicateVectors_shouldMergeEveryDuplicatedPair() {
+        // Given
+        when(playbackVectorMapper.findDuplicateStudentResourcePairs()).thenReturn(List.of(
+                new PlaybackDelta(1L, 2L, null), new PlaybackDelta(3L, 2L, null)));
+        when(playbackVectorService.mergeDuplicateVectors(1L, 2L)).thenReturn(1);
+        when(playbackVectorService.mergeDuplicateVectors(3L, 2L)).thenReturn(2);
+
+        // When
+        int removed = migrationService.mergeDuplicateVectors();
+
+        // Then
+        assertEquals(3, removed);
+    }
+}
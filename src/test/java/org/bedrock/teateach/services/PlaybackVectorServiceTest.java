@@ -1,22 +1,39 @@
 package org.bedrock.teateach.services;
 
+import org.bedrock.teateach.beans.PlaybackDelta;
 import org.bedrock.teateach.beans.PlaybackVector;
 import org.bedrock.teateach.beans.Resource;
+import org.bedrock.teateach.beans.ResourceHeatmapLevel;
+import org.bedrock.teateach.dto.PlaybackVectorSummary;
+import org.bedrock.teateach.dto.ResourceWatchRoster;
+import org.bedrock.teateach.dto.StudentEngagementSummary;
 import org.bedrock.teateach.mappers.PlaybackVectorMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -28,6 +45,15 @@ class PlaybackVectorServiceTest {
     @Mock
     private ResourceService resourceService;
 
+    @Mock
+    private PlaybackWriteBuffer playbackWriteBuffer;
+
+    @Mock
+    private ResourceHeatmapService resourceHeatmapService;
+
+    @Mock
+    private PlaybackHotTier playbackHotTier;
+
     @InjectMocks
     private PlaybackVectorService playbackVectorService;
 
@@ -96,14 +122,14 @@ class PlaybackVectorServiceTest {
         assertNotNull(result);
         assertEquals(studentId, result.getStudentId());
         assertEquals(resourceId, result.getResourceId());
-        verify(playbackVectorMapper).insert(any(PlaybackVector.class));
+        verify(playbackVectorMapper).upsert(any(PlaybackVector.class));
     }
 
     @Test
     void updatePlaybackVector_shouldUpdate_whenExists() {
         // Given
         int[] playedSeconds = {10, 11, 12, 30, 31, 32};
-        when(playbackVectorMapper.findByStudentAndResource(studentId, resourceId)).thenReturn(testVector);
+        when(playbackVectorMapper.findByStudentAndResourceForUpdate(studentId, resourceId)).thenReturn(testVector);
 
         // When
         PlaybackVector result = playbackVectorService.updatePlaybackVector(studentId, resourceId, playedSeconds);
@@ -123,7 +149,7 @@ class PlaybackVectorServiceTest {
     void updatePlaybackVector_shouldCreateAndUpdate_whenNotExists() {
         // Given
         int[] playedSeconds = {5, 6, 7};
-        when(playbackVectorMapper.findByStudentAndResource(studentId, resourceId)).thenReturn(null);
+        when(playbackVectorMapper.findByStudentAndResourceForUpdate(studentId, resourceId)).thenReturn(null);
         when(resourceService.getResourceById(resourceId)).thenReturn(Optional.of(testResource));
 
         // When
@@ -131,50 +157,181 @@ class PlaybackVectorServiceTest {
 
         // Then
         assertNotNull(result);
-        verify(playbackVectorMapper).insert(any(PlaybackVector.class));
+        verify(playbackVectorMapper).upsert(any(PlaybackVector.class));
         verify(playbackVectorMapper).update(any(PlaybackVector.class));
     }
 
     @Test
-    void generateHeatmap_shouldAggregateData() {
+    void updatePlaybackVector_shouldBuildOnRowInsertedByConcurrentRequest() {
         // Given
-        PlaybackVector vector1 = new PlaybackVector();
-        vector1.setVideoDuration(100);
-        vector1.setPlaybackData(new int[100]);
-        // Set some playback counts in vector1
-        vector1.getPlaybackData()[1] = 2;  // Second 1 played twice
-        vector1.getPlaybackData()[2] = 1;  // Second 2 played once
-        vector1.getPlaybackData()[3] = 3;  // Second 3 played three times
-        vector1.getPlaybackData()[10] = 1; // Second 10 played once
-        vector1.getPlaybackData()[11] = 2; // Second 11 played twice
+        testVector.getPlaybackData()[5] = 3;
+        when(playbackVectorMapper.findByStudentAndResourceForUpdate(studentId, resourceId)).thenReturn(null);
+        when(resourceService.getResourceById(resourceId)).thenReturn(Optional.of(testResource));
+        doAnswer(invocation -> {
+            // Duplicate key: the upsert reports the id of the row that won the race
+            invocation.<PlaybackVector>getArgument(0).setId(testVector.getId());
+            return null;
+        }).when(playbackVectorMapper).upsert(any(PlaybackVector.class));
+        when(playbackVectorMapper.findByIdForUpdate(testVector.getId())).thenReturn(testVector);
 
-        PlaybackVector vector2 = new PlaybackVector();
-        vector2.setVideoDuration(100);
-        vector2.setPlaybackData(new int[100]);
-        // Set some playback counts in vector2
-        vector2.getPlaybackData()[1] = 1;  // Second 1 played once
-        vector2.getPlaybackData()[3] = 2;  // Second 3 played twice
-        vector2.getPlaybackData()[5] = 3;  // Second 5 played three times
-        vector2.getPlaybackData()[11] = 1; // Second 11 played once
-        vector2.getPlaybackData()[12] = 2; // Second 12 played twice
+        // When
+        PlaybackVector result = playbackVectorService.updatePlaybackVector(studentId, resourceId, new int[]{5});
 
-        List<PlaybackVector> vectors = Arrays.asList(vector1, vector2);
-        when(playbackVectorMapper.findByResourceId(resourceId)).thenReturn(vectors);
+        // Then
+        assertSame(testVector, result);
+        assertEquals(4, result.getPlaybackData()[5]);
+        verify(playbackVectorMapper).update(testVector);
+        verify(playbackVectorMapper, never()).insert(any(PlaybackVector.class));
+    }
+
+    @Test
+    void updatePlaybackVector_shouldNotLoseCounts_underConcurrentHeartbeats() throws InterruptedException {
+        // Given
+        LockingPlaybackTable table = new LockingPlaybackTable(playbackVectorMapper);
+        when(resourceService.getResourceById(resourceId)).thenReturn(Optional.of(testResource));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(8);
+
+        // When
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < 200; i++) {
+                        playbackVectorService.updatePlaybackVector(studentId, resourceId, new int[]{0, 1});
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        // Then
+        assertEquals(1, table.rows.size(), "Concurrent first heartbeats must not create duplicate rows");
+        PlaybackVector stored = table.rows.values().iterator().next();
+        assertEquals(1600, stored.getPlaybackData()[0]);
+        assertEquals(1600, stored.getPlaybackData()[1]);
+    }
+
+    @Test
+    void mergeDuplicateVectors_shouldFoldCountsIntoLowestId() {
+        // Given
+        PlaybackVector duplicate = testVector.copy();
+        duplicate.setId(7L);
+        duplicate.getPlaybackData()[0] = 2;
+        testVector.getPlaybackData()[0] = 1;
+        when(playbackVectorMapper.findByStudentResourcePairsForUpdate(any())).thenReturn(List.of(duplicate, testVector));
+
+        // When
+        int removed = playbackVectorService.mergeDuplicateVectors(studentId, resourceId);
+
+        // Then
+        assertEquals(1, removed);
+        assertEquals(3, testVector.getPlaybackData()[0]);
+        verify(playbackVectorMapper).update(testVector);
+        verify(playbackVectorMapper).delete(7L);
+    }
+
+    @Test
+    void getStudentEngagementSummary_shouldAggregateCounterColumns() {
+        // Given
+        LocalDateTime earlier = LocalDateTime.of(2024, 3, 1, 9, 0);
+        LocalDateTime later = earlier.plusDays(1);
+        when(playbackVectorMapper.findSummariesByStudentId(studentId)).thenReturn(List.of(
+                new PlaybackVectorSummary(1L, studentId, 2L, 100, 95, 120L, later),
+                new PlaybackVectorSummary(2L, studentId, 3L, 200, 50, 50L, earlier)));
+
+        // When
+        StudentEngagementSummary summary = playbackVectorService.getStudentEngagementSummary(studentId);
+
+        // Then
+        assertEquals(2, summary.getResourceCount());
+        assertEquals(1, summary.getCompletedResources());
+        assertEquals((95.0 + 25.0) / 2, summary.getAverageWatchPercentage(), 1e-9);
+        assertEquals(145, summary.getCoveredSeconds());
+        assertEquals(170, summary.getTotalPlayCount());
+        assertEquals(later, summary.getLastActivity());
+        verify(playbackVectorMapper, never()).findByStudentId(any());
+    }
+
+    @Test
+    void getResourceWatchRoster_shouldReturnEmptyRoster_whenNobodyWatched() {
+        // Given
+        when(playbackVectorMapper.findSummariesByResourceId(resourceId)).thenReturn(List.of());
+
+        // When
+        ResourceWatchRoster roster = playbackVectorService.getResourceWatchRoster(resourceId);
+
+        // Then
+        assertEquals(0, roster.getStudentCount());
+        assertEquals(0.0, roster.getAverageWatchPercentage());
+        assertTrue(roster.getStudents().isEmpty());
+    }
+
+    @Test
+    void generateHeatmap_shouldReadMaterializedAggregate() {
+        // Given
+        when(resourceHeatmapService.findHeatmap(resourceId)).thenReturn(new int[]{0, 3, 1});
+
+        // When
+        int[] heatmap = playbackVectorService.generateHeatmap(resourceId);
+
+        // Then
+        assertArrayEquals(new int[]{0, 3, 1}, heatmap);
+        verify(resourceHeatmapService, never()).rebuildHeatmap(any());
+        verify(playbackVectorMapper, never()).findByResourceId(any());
+    }
+
+    @Test
+    void generateHeatmap_shouldRebuildAggregate_whenNotMaterialized() {
+        // Given
+        when(resourceHeatmapService.findHeatmap(resourceId)).thenReturn(null, new int[]{2});
 
         // When
         int[] heatmap = playbackVectorService.generateHeatmap(resourceId);
 
         // Then
-        assertNotNull(heatmap);
-        assertEquals(100, heatmap.length);
-        assertEquals(3, heatmap[1]);  // Total: 2+1=3 times for second 1
-        assertEquals(1, heatmap[2]);  // Total: 1 time for second 2
-        assertEquals(5, heatmap[3]);  // Total: 3+2=5 times for second 3
-        assertEquals(3, heatmap[5]);  // Total: 3 times for second 5
-        assertEquals(0, heatmap[6]);  // Total: 0 times for second 6
-        assertEquals(1, heatmap[10]); // Total: 1 time for second 10
-        assertEquals(3, heatmap[11]); // Total: 2+1=3 times for second 11
-        assertEquals(2, heatmap[12]); // Total: 2 times for second 12
+        assertArrayEquals(new int[]{2}, heatmap);
+        verify(resourceHeatmapService).rebuildHeatmap(resourceId);
+    }
+
+    @Test
+    void generateHeatmapLevel_shouldRebuildAggregate_whenLevelsNotMaterialized() {
+        // Given
+        ResourceHeatmapLevel level = new ResourceHeatmapLevel(resourceId, 60, new int[]{4}, new int[]{2}, 60, null);
+        when(resourceHeatmapService.findHeatmapLevel(resourceId, 200, null)).thenReturn(null, level);
+
+        // When
+        ResourceHeatmapLevel result = playbackVectorService.generateHeatmapLevel(resourceId, 200, null);
+
+        // Then
+        assertSame(level, result);
+        verify(resourceHeatmapService).rebuildHeatmap(resourceId);
+    }
+
+    @Test
+    void updatePlaybackVector_shouldApplyEffectiveDeltaToHeatmap() {
+        // Given
+        testVector.getPlaybackData()[5] = 4;
+        when(playbackVectorMapper.findByStudentAndResourceForUpdate(studentId, resourceId)).thenReturn(testVector);
+
+        // When - second 500 is past the video duration and must not reach the heatmap
+        playbackVectorService.updatePlaybackVector(studentId, resourceId, new int[]{5, 6, 6, 500});
+
+        // Then
+        ArgumentCaptor<Map<Long, int[]>> captor = ArgumentCaptor.forClass(Map.class);
+        verify(resourceHeatmapService).applyDeltas(captor.capture());
+        int[] delta = captor.getValue().get(resourceId);
+        assertEquals(120, delta.length);
+        assertEquals(1, delta[5]);
+        assertEquals(2, delta[6]);
+        assertEquals(3, Arrays.stream(delta).sum());
     }
 
     @Test
@@ -220,7 +377,7 @@ class PlaybackVectorServiceTest {
         newCountVector[10] = 2; // Second 10 played twice more
         newCountVector[15] = 3; // Second 15 played three times
 
-        when(playbackVectorMapper.findByStudentAndResource(studentId, resourceId)).thenReturn(testVector);
+        when(playbackVectorMapper.findByStudentAndResourceForUpdate(studentId, resourceId)).thenReturn(testVector);
 
         // When
         PlaybackVector result = playbackVectorService.updatePlaybackVectorWithCounts(studentId, resourceId, newCountVector);
@@ -240,4 +397,308 @@ class PlaybackVectorServiceTest {
         assertEquals(9, result.getTotalPlayCount(), "Total play count should be 9");
         assertEquals(3, result.getMaxPlayCount(), "Max play count should be 3");
     }
+
+    @Test
+    void updatePlaybackVectorWithCounts_shouldRejectCountsLongerThanTheVideo() {
+        // Given
+        when(playbackVectorMapper.findByStudentAndResourceForUpdate(studentId, resourceId)).thenReturn(testVector);
+
+        // When & Then - the video is 120s long
+        assertThrows(IllegalArgumentException.class,
+                () -> playbackVectorService.updatePlaybackVectorWithCounts(studentId, resourceId, new int[121]));
+        verify(playbackVectorMapper, never()).update(any());
+    }
+
+    @Test
+    void updatePlaybackVectorWithIntervals_shouldSweepOverlappingIntervals() {
+        // Given
+        when(playbackVectorMapper.findByStudentAndResourceForUpdate(studentId, resourceId)).thenReturn(testVector);
+
+        // When - overlapping intervals and one ending at the 120s duration
+        PlaybackVector result = playbackVectorService.updatePlaybackVectorWithIntervals(studentId, resourceId,
+                new int[][]{{10, 20}, {15, 30}, {0, 2}, {110, 120}});
+
+        // Then
+        int[] data = result.getPlaybackData();
+        assertEquals(120, data.length);
+        assertEquals(1, data[0]);
+        assertEquals(0, data[2]);
+        assertEquals(1, data[10]);
+        assertEquals(2, data[15]);
+        assertEquals(2, data[19]);
+        assertEquals(1, data[20]);
+        assertEquals(0, data[30]);
+        assertEquals(0, data[40]);
+        assertEquals(1, data[119]);
+        assertEquals(2 + 5 + 5 * 2 + 10 + 10, result.getTotalPlayCount());
+        verify(playbackVectorMapper).update(testVector);
+    }
+
+    @Test
+    void updatePlaybackVectorWithIntervals_shouldRejectEmptyReversedAndOutOfRangeIntervals() {
+        // Given
+        when(playbackVectorMapper.findByStudentAndResourceForUpdate(studentId, resourceId)).thenReturn(testVector);
+
+        // When & Then - the video is 120s long
+        for (int[] interval : new int[][]{{40, 40}, {50, 45}, {-5, 2}, {110, 500}, {0, Integer.MAX_VALUE}}) {
+            assertThrows(IllegalArgumentException.class, () ->
+                    playbackVectorService.updatePlaybackVectorWithIntervals(studentId, resourceId, new int[][]{interval}));
+        }
+        verify(playbackVectorMapper, never()).update(any());
+        verifyNoInteractions(resourceHeatmapService);
+    }
+
+    @Test
+    void updatePlaybackVectorWithIntervals_shouldRejectIntervalsPastTheVideo_whenWriteBehindEnabled() {
+        // Given
+        PlaybackWriteBuffer buffer = new PlaybackWriteBuffer(true, 4, 100, 1_000_000);
+        PlaybackVectorService writeBehindService = new PlaybackVectorService(playbackVectorMapper, resourceService, buffer, resourceHeatmapService,
+                playbackHotTier);
+        when(resourceService.getResourceById(resourceId)).thenReturn(Optional.of(testResource));
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> writeBehindService.updatePlaybackVectorWithIntervals(
+                studentId, resourceId, new int[][]{{0, 10}, {100, Integer.MAX_VALUE}}));
+        assertEquals(0, buffer.size());
+        verifyNoInteractions(playbackVectorMapper);
+    }
+
+    @Test
+    void intervalsToCountVector_shouldMatchPerSecondIncrements() {
+        // Given
+        int[][] intervals = {{3, 7}, {5, 9}, {0, 1}};
+        PlaybackVector perSecond = new PlaybackVector(null, studentId, resourceId, new int[9], 9, null);
+        perSecond.incrementPlayCounts(new int[]{3, 4, 5, 6, 5, 6, 7, 8, 0});
+
+        // When
+        int[] counts = PlaybackVector.intervalsToCountVector(intervals, 120);
+
+        // Then
+        assertArrayEquals(perSecond.getPlaybackData(), counts);
+    }
+
+    @Test
+    void toCountVector_shouldIgnoreSecondsOutsideTheVideo() {
+        // When
+        int[] counts = PlaybackVector.toCountVector(new int[]{2, 3, 3, -1, 120, Integer.MAX_VALUE}, 120);
+
+        // Then
+        assertArrayEquals(new int[]{0, 0, 1, 2}, counts);
+        assertEquals(0, PlaybackVector.toCountVector(new int[]{Integer.MAX_VALUE}, 120).length);
+    }
+
+    @Test
+    void updatePlaybackVector_shouldBufferOnlySecondsWithinTheVideo_whenWriteBehindEnabled() {
+        // Given
+        PlaybackWriteBuffer buffer = new PlaybackWriteBuffer(true, 4, 100, 1_000_000);
+        PlaybackVectorService writeBehindService = new PlaybackVectorService(playbackVectorMapper, resourceService, buffer, resourceHeatmapService,
+                playbackHotTier);
+        when(resourceService.getResourceById(resourceId)).thenReturn(Optional.of(testResource));
+        when(playbackVectorMapper.findByStudentAndResource(studentId, resourceId)).thenReturn(testVector);
+
+        // When
+        writeBehindService.updatePlaybackVector(studentId, resourceId, new int[]{1, Integer.MAX_VALUE, 2_000_000_000});
+
+        // Then: the stored 120 seconds plus a delta up to second 1
+        assertEquals(120 + 2, buffer.heldInts());
+        assertArrayEquals(new int[]{0, 1}, buffer.drain().get(0).toDelta().getCounts());
+    }
+
+    @Test
+    void applyDeltas_shouldMergeIntoExistingAndWriteOneBatch() {
+        // Given
+        int[] delta = new int[120];
+        delta[3] = 2;
+        delta[4] = 1;
+        when(playbackVectorMapper.findByStudentResourcePairsForUpdate(any())).thenReturn(List.of(testVector));
+
+        // When
+        int written = playbackVectorService.applyDeltas(List.of(
+                new PlaybackDelta(studentId, resourceId, delta),
+                new PlaybackDelta(studentId, resourceId, delta)));
+
+        // Then
+        assertEquals(1, written);
+        assertEquals(4, testVector.getPlaybackData()[3]);
+        assertEquals(2, testVector.getPlaybackData()[4]);
+        verify(playbackVectorMapper).updateBatch(List.of(testVector));
+        verify(playbackVectorMapper, never()).update(any(PlaybackVector.class));
+        ArgumentCaptor<Map<Long, int[]>> captor = ArgumentCaptor.forClass(Map.class);
+        verify(resourceHeatmapService).applyDeltas(captor.capture());
+        assertEquals(4, captor.getValue().get(resourceId)[3]);
+        assertEquals(2, captor.getValue().get(resourceId)[4]);
+    }
+
+    @Test
+    void updatePlaybackVector_shouldBufferAndOverlay_whenWriteBehindEnabled() {
+        // Given
+        PlaybackWriteBuffer buffer = new PlaybackWriteBuffer(true, 4, 100, 1_000_000);
+        PlaybackVectorService writeBehindService = new PlaybackVectorService(playbackVectorMapper, resourceService, buffer, resourceHeatmapService,
+                playbackHotTier);
+        when(playbackVectorMapper.findByStudentAndResource(studentId, resourceId)).thenReturn(testVector);
+        when(resourceService.getResourceById(resourceId)).thenReturn(Optional.of(testResource));
+
+        // When
+        writeBehindService.updatePlaybackVector(studentId, resourceId, new int[]{0, 1, 2});
+        PlaybackVector result = writeBehindService.updatePlaybackVector(studentId, resourceId, new int[]{2, 3});
+
+        // Then
+        assertEquals(2, result.getPlaybackData()[2]);
+        assertEquals(4.0 / 120 * 100.0, writeBehindService.getWatchPercentage(studentId, resourceId), 1e-9);
+        verify(playbackVectorMapper, times(1)).findByStudentAndResource(studentId, resourceId);
+        verify(playbackVectorMapper, never()).update(any(PlaybackVector.class));
+        assertEquals(0, testVector.getPlaybackData()[2], "Stored vector must not change until flush");
+    }
+
+    @Test
+    void updatePlaybackVector_shouldRecordInRedis_whenHotTierEnabled() {
+        // Given - the stored counts are not cached in Redis yet
+        when(playbackHotTier.isEnabled()).thenReturn(true);
+        when(resourceService.getResourceById(resourceId)).thenReturn(Optional.of(testResource));
+        when(playbackVectorMapper.findByStudentAndResource(studentId, resourceId)).thenReturn(testVector);
+        when(playbackHotTier.record(studentId, resourceId, new int[]{0, 1, 2}))
+                .thenReturn(new PlaybackHotTier.Recorded(new int[]{0, 1, 2}, null, 0));
+
+        // When
+        PlaybackVector result = playbackVectorService.updatePlaybackVector(studentId, resourceId, new int[]{1, 2, 2});
+
+        // Then
+        assertEquals(2, result.getPlaybackData()[2]);
+        assertEquals(0, testVector.getPlaybackData()[2], "Stored vector must not change until compaction");
+        verify(playbackHotTier).cacheStored(studentId, resourceId, testVector.getPlaybackData(), 120);
+        verify(playbackVectorMapper, never()).update(any(PlaybackVector.class));
+        verifyNoInteractions(resourceHeatmapService);
+    }
+
+    @Test
+    void updatePlaybackVector_shouldNotReadMysql_whenStoredCountsAreCachedInRedis() {
+        // Given
+        when(playbackHotTier.isEnabled()).thenReturn(true);
+        when(resourceService.getResourceById(resourceId)).thenReturn(Optional.of(testResource));
+        int[] stored = new int[120];
+        stored[5] = 3;
+        when(playbackHotTier.record(studentId, resourceId, new int[]{0, 1}))
+                .thenReturn(new PlaybackHotTier.Recorded(new int[]{0, 1}, stored, 120));
+
+        // When
+        PlaybackVector result = playbackVectorService.updatePlaybackVector(studentId, resourceId, new int[]{1});
+
+        // Then
+        assertEquals(1, result.getPlaybackData()[1]);
+        assertEquals(3, result.getPlaybackData()[5]);
+        assertEquals(4, result.getTotalPlayCount());
+        verifyNoInteractions(playbackVectorMapper);
+        verify(playbackHotTier, never()).cacheStored(any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void updatePlaybackVector_shouldLeaveRowCreationToTheCompactor_whenHotTierEnabled() {
+        // Given - the first heartbeat of a student for this resource
+        when(playbackHotTier.isEnabled()).thenReturn(true);
+        when(resourceService.getResourceById(resourceId)).thenReturn(Optional.of(testResource));
+        when(playbackVectorMapper.findByStudentAndResource(studentId, resourceId)).thenReturn(null);
+        when(playbackHotTier.record(studentId, resourceId, new int[]{1}))
+                .thenReturn(new PlaybackHotTier.Recorded(new int[]{1}, null, 0));
+
+        // When
+        PlaybackVector result = playbackVectorService.updatePlaybackVector(studentId, resourceId, new int[]{0});
+
+        // Then
+        assertEquals(120, result.getVideoDuration());
+        assertEquals(1, result.getTotalPlayCount());
+        verify(playbackVectorMapper, never()).upsert(any());
+        verify(playbackHotTier).cacheStored(studentId, resourceId, new int[120], 120);
+    }
+
+    @Test
+    void getPlaybackVector_shouldIncludeRedisIncrements_whenHotTierPairHasNoRowYet() {
+        // Given - heartbeats recorded in Redis that the compactor has not written yet
+        when(playbackHotTier.isEnabled()).thenReturn(true);
+        when(resourceService.getResourceById(resourceId)).thenReturn(Optional.of(testResource));
+        when(playbackVectorMapper.findByStudentAndResource(studentId, resourceId)).thenReturn(null);
+        when(playbackHotTier.pendingCounts(studentId, resourceId)).thenReturn(new int[]{1, 1, 2});
+
+        // When
+        PlaybackVector result = playbackVectorService.getPlaybackVector(studentId, resourceId);
+
+        // Then
+        assertEquals(120, result.getVideoDuration());
+        assertEquals(4, result.getTotalPlayCount());
+        assertEquals(3.0 / 120 * 100.0, playbackVectorService.getWatchPercentage(studentId, resourceId), 1e-9);
+    }
+
+    @Test
+    void getPlaybackVector_shouldReturnNull_whenHotTierPairHasNoRowAndNoIncrements() {
+        when(playbackHotTier.isEnabled()).thenReturn(true);
+        when(playbackVectorMapper.findByStudentAndResource(studentId, resourceId)).thenReturn(null);
+        when(playbackHotTier.pendingCounts(studentId, resourceId)).thenReturn(new int[0]);
+
+        assertNull(playbackVectorService.getPlaybackVector(studentId, resourceId));
+        verifyNoInteractions(resourceService);
+    }
+
+    /**
+     * In-memory playback_vectors with uk_student_resource and InnoDB-style row locks.
+     * A lock is held until the row is written back, which is when the surrounding transaction commits.
+     */
+    private static class LockingPlaybackTable {
+
+        final Map<Long, PlaybackVector> rows = new ConcurrentHashMap<>();
+        private final Map<String, Long> uniqueKey = new HashMap<>();
+        private final Map<Long, ReentrantLock> locks = new ConcurrentHashMap<>();
+        private final AtomicLong nextId = new AtomicLong(1);
+
+        LockingPlaybackTable(PlaybackVectorMapper mapper) {
+            when(mapper.findByStudentAndResourceForUpdate(anyLong(), anyLong())).thenAnswer(invocation -> {
+                Long id;
+                synchronized (uniqueKey) {
+                    id = uniqueKey.get(invocation.getArgument(0) + ":" + invocation.getArgument(1));
+                }
+                // READ COMMITTED: a miss locks nothing
+                return id != null ? lockAndRead(id) : null;
+            });
+            when(mapper.findByIdForUpdate(anyLong())).thenAnswer(invocation -> lockAndRead(invocation.getArgument(0)));
+            doAnswer(invocation -> {
+                PlaybackVector vector = invocation.getArgument(0);
+                String key = vector.getStudentId() + ":" + vector.getResourceId();
+                Long id;
+                synchronized (uniqueKey) {
+                    id = uniqueKey.get(key);
+                    if (id == null) {
+                        // The inserting transaction holds the new row's lock from the start
+                        id = nextId.getAndIncrement();
+                        lock(id);
+                        PlaybackVector row = vector.copy();
+                        row.setId(id);
+                        rows.put(id, row);
+                        uniqueKey.put(key, id);
+                    }
+                }
+                lock(id);
+                vector.setId(id);
+                return null;
+            }).when(mapper).upsert(any(PlaybackVector.class));
+            doAnswer(invocation -> {
+                PlaybackVector vector = invocation.getArgument(0);
+                rows.put(vector.getId(), vector.copy());
+                ReentrantLock lock = locks.get(vector.getId());
+                while (lock.isHeldByCurrentThread()) {
+                    lock.unlock();
+                }
+                return null;
+            }).when(mapper).update(any(PlaybackVector.class));
+        }
+
+        private void lock(Long id) {
+            ReentrantLock lock = locks.computeIfAbsent(id, k -> new ReentrantLock());
+            if (!lock.isHeldByCurrentThread()) {
+                lock.lock();
+            }
+        }
+
+        private PlaybackVector lockAndRead(Long id) {
+            lock(id);
+            return rows.get(id).copy();
+        }
+    }
 }
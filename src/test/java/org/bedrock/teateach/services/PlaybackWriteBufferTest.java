@@ -0,0 +1,138 @@
+package org.bedrock.teateach.services;
+
+import org.bedrock.teateach.beans.PlaybackDelta;
+import org.bedrock.teateach.beans.PlaybackVector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlaybackWriteBufferTest {
+
+    private PlaybackWriteBuffer buffer;
+    private AtomicInteger baseLoads;
+
+    @BeforeEach
+    void setUp() {
+        buffer = new PlaybackWriteBuffer(true, 8, 3, 1_000_000);
+        baseLoads = new AtomicInteger();
+    }
+
+    private PlaybackVector loadBase(Long studentId, Long resourceId) {
+        baseLoads.incrementAndGet();
+        return new PlaybackVector(1L, studentId, resourceId, new int[60], 60, LocalDateTime.now());
+    }
+
+    @Test
+    void record_shouldMergeDeltasAndLoadBaseOnce() {
+        // When
+        buffer.record(1L, 2L, new int[]{1, 1}, () -> loadBase(1L, 2L));
+        PlaybackVector view = buffer.record(1L, 2L, new int[]{0, 2, 3}, () -> loadBase(1L, 2L));
+
+        // Then
+        assertEquals(1, baseLoads.get());
+        assertArrayEquals(new int[]{1, 3, 3}, Arrays.copyOf(view.getPlaybackData(), 3));
+        assertEquals(1, buffer.size());
+    }
+
+    @Test
+    void drain_shouldReturnAccumulatedDeltasAndEmptyTheBuffer() {
+        // Given
+        buffer.record(1L, 2L, new int[]{1}, () -> loadBase(1L, 2L));
+        buffer.record(3L, 2L, new int[]{0, 1}, () -> loadBase(3L, 2L));
+
+        // When
+        List<PlaybackWriteBuffer.Pending> drained = buffer.drain();
+
+        // Then
+        assertEquals(2, drained.size());
+        assertEquals(0, buffer.size());
+        assertNull(buffer.overlay(1L, 2L));
+    }
+
+    @Test
+    void requeue_shouldKeepCountsOfFailedFlush() {
+        // Given
+        buffer.record(1L, 2L, new int[]{2}, () -> loadBase(1L, 2L));
+        List<PlaybackWriteBuffer.Pending> drained = buffer.drain();
+        buffer.record(1L, 2L, new int[]{1}, () -> loadBase(1L, 2L));
+
+        // When
+        buffer.requeue(drained);
+
+        // Then
+        PlaybackDelta delta = buffer.drain().get(0).toDelta();
+        assertEquals(3, delta.getCounts()[0]);
+    }
+
+    @Test
+    void record_shouldNotifyOverflowListener_whenMemoryBoundExceeded() {
+        // Given
+        AtomicInteger overflows = new AtomicInteger();
+        buffer.setOverflowListener(overflows::incrementAndGet);
+
+        // When
+        for (long studentId = 1; studentId <= 4; studentId++) {
+            long id = studentId;
+            buffer.record(id, 2L, new int[]{1}, () -> loadBase(id, 2L));
+        }
+
+        // Then
+        assertTrue(buffer.isOverCapacity());
+        assertEquals(1, overflows.get());
+    }
+
+    @Test
+    void record_shouldNotifyOverflowListener_whenHeldIntsExceedTheBound() {
+        // Given: room for two 60-second entries, however many entries are allowed
+        PlaybackWriteBuffer small = new PlaybackWriteBuffer(true, 8, 1000, 150);
+        AtomicInteger overflows = new AtomicInteger();
+        small.setOverflowListener(overflows::incrementAndGet);
+
+        // When
+        small.record(1L, 2L, new int[]{1}, () -> loadBase(1L, 2L));
+        small.record(3L, 2L, new int[]{1}, () -> loadBase(3L, 2L));
+        assertFalse(small.isOverCapacity());
+        small.record(3L, 2L, new int[30], () -> loadBase(3L, 2L));
+
+        // Then
+        assertEquals(60 + 1 + 60 + 30, small.heldInts());
+        assertTrue(small.isOverCapacity());
+        assertEquals(1, overflows.get());
+        small.drain();
+        assertEquals(0, small.heldInts());
+    }
+
+    @Test
+    void record_shouldNotLoseCounts_underConcurrentHeartbeats() throws InterruptedException {
+        // Given
+        PlaybackWriteBuffer large = new PlaybackWriteBuffer(true, 4, 10_000, 1_000_000);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch done = new CountDownLatch(8);
+
+        // When
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    large.record(1L, 2L, new int[]{1}, () -> loadBase(1L, 2L));
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        // Then
+        assertEquals(8000, large.overlay(1L, 2L).getPlaybackData()[0]);
+        assertEquals(8000, large.drain().get(0).toDelta().getCounts()[0]);
+    }
+}
@@ -0,0 +1,354 @@
+package org.bedrock.teateach.services;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.bedrock.teateach.beans.PlaybackVector;
+import org.bedrock.teateach.beans.ResourceHeatmap;
+import org.bedrock.teateach.beans.ResourceHeatmapLevel;
+import org.bedrock.teateach.beans.ResourceHeatmapShard;
+import org.bedrock.teateach.dto.HeatmapRebuildResult;
+import org.bedrock.teateach.mappers.PlaybackVectorMapper;
+import org.bedrock.teateach.mappers.ResourceHeatmapLevelMapper;
+import org.bedrock.teateach.mappers.ResourceHeatmapMapper;
+import org.bedrock.teateach.mappers.ResourceHeatmapShardMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ResourceHeatmapServiceTest {
+
+    @Mock
+    private ResourceHeatmapMapper resourceHeatmapMapper;
+
+    @Mock
+    private ResourceHeatmapLevelMapper resourceHeatmapLevelMapper;
+
+    @Mock
+    private ResourceHeatmapShardMapper resourceHeatmapShardMapper;
+
+    @Mock
+    private PlaybackVectorMapper playbackVectorMapper;
+
+    private ResourceHeatmapService resourceHeatmapService;
+
+    private final Long resourceId = 2L;
+
+    @BeforeEach
+    void setUp() {
+        // A single shard, so every write of the test thread goes to shard 0
+        resourceHeatmapService = new ResourceHeatmapService(resourceHeatmapMapper, resourceHeatmapLevelMapper,
+                resourceHeatmapShardMapper, playbackVectorMapper, 1);
+    }
+
+    private PlaybackVector vector(int duration, int... playbackData) {
+        return new PlaybackVector(null, 1L, resourceId, playbackData, duration, LocalDateTime.now());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Cursor<PlaybackVector> cursorOf(PlaybackVector... vectors) {
+        Cursor<PlaybackVector> cursor = mock(Cursor.class);
+        when(cursor.iterator()).thenReturn(List.of(vectors).iterator());
+        return cursor;
+    }
+
+    @Test
+    void applyDeltas_shouldAddToShardsOfMaterializedRowsAndSkipMissingOnes() {
+        // Given
+        ResourceHeatmapShard shard = new ResourceHeatmapShard(resourceId, 0, new int[]{1, 1}, null);
+        when(resourceHeatmapShardMapper.findForUpdate(resourceId, 0)).thenReturn(shard);
+        when(resourceHeatmapShardMapper.findForUpdate(9L, 0)).thenReturn(null);
+        when(resourceHeatmapMapper.findByResourceIdForUpdate(9L)).thenReturn(null);
+        Map<Long, int[]> deltas = new LinkedHashMap<>();
+        deltas.put(9L, new int[]{5});
+        deltas.put(resourceId, new int[]{0, 2, 1});
+
+        // When
+        resourceHeatmapService.applyDeltas(deltas);
+
+        // Then - the aggregate row is neither locked nor written, so viewers of the video do not queue on it
+        assertArrayEquals(new int[]{1, 3, 1}, shard.getDeltaData());
+        verify(resourceHeatmapShardMapper).update(shard);
+        verify(resourceHeatmapShardMapper, times(1)).update(any(ResourceHeatmapShard.class));
+        verify(resourceHeatmapShardMapper, never()).insertIgnore(eq(9L), anyInt());
+        verify(resourceHeatmapMapper, never()).findByResourceIdForUpdate(resourceId);
+        verify(resourceHeatmapMapper, never()).update(any());
+        verifyNoInteractions(resourceHeatmapLevelMapper);
+    }
+
+    @Test
+    void applyDeltas_shouldCreateShardOfMaterializedRowOnFirstWrite() {
+        // Given
+        ResourceHeatmapShard created = new ResourceHeatmapShard(resourceId, 0, null, null);
+        when(resourceHeatmapShardMapper.findForUpdate(resourceId, 0)).thenReturn(null, created);
+        when(resourceHeatmapMapper.findByResourceIdForUpdate(resourceId))
+                .thenReturn(new ResourceHeatmap(resourceId, new int[]{4}, 1, null));
+
+        // When
+        resourceHeatmapService.applyDeltas(Map.of(resourceId, new int[]{0, 3}));
+
+        // Then
+        verify(resourceHeatmapShardMapper).insertIgnore(resourceId, 0);
+        assertArrayEquals(new int[]{0, 3}, created.getDeltaData());
+        verify(resourceHeatmapShardMapper).update(created);
+    }
+
+    @Test
+    void foldShards_shouldAddPendingShardsToAggregateAndClearThem() {
+        // Given
+        ResourceHeatmap existing = new ResourceHeatmap(resourceId, new int[]{1, 1}, 2, null);
+        when(resourceHeatmapMapper.findByResourceIdForUpdate(resourceId)).thenReturn(existing);
+        when(resourceHeatmapShardMapper.findByResourceIdForUpdate(resourceId)).thenReturn(List.of(
+                new ResourceHeatmapShard(resourceId, 0, new int[]{0, 2, 1}, null),
+                new ResourceHeatmapShard(resourceId, 1, null, null),
+                new ResourceHeatmapShard(resourceId, 2, new int[]{1}, null)));
+
+        // When
+        boolean folded = resourceHeatmapService.foldShards(resourceId);
+
+        // Then
+        assertTrue(folded);
+        assertArrayEquals(new int[]{2, 3, 1}, existing.getHeatmapData());
+        assertEquals(3, existing.getDuration());
+        verify(resourceHeatmapMapper).update(existing);
+        verify(resourceHeatmapShardMapper).clearByResourceId(resourceId);
+    }
+
+    @Test
+    void foldShards_shouldSkipResourcesWithoutPendingDeltas() {
+        when(resourceHeatmapMapper.findByResourceIdForUpdate(resourceId))
+                .thenReturn(new ResourceHeatmap(resourceId, new int[]{1}, 1, null));
+        when(resourceHeatmapShardMapper.findByResourceIdForUpdate(resourceId))
+                .thenReturn(List.of(new ResourceHeatmapShard(resourceId, 0, null, null)));
+
+        assertFalse(resourceHeatmapService.foldShards(resourceId));
+        verify(resourceHeatmapMapper, never()).update(any());
+        verifyNoInteractions(resourceHeatmapLevelMapper);
+    }
+
+    @Test
+    void rebuildHeatmap_shouldReportDrift_whenIncrementalAggregateDiffers() {
+        // Given
+        ResourceHeatmap stored = new ResourceHeatmap(resourceId, new int[]{1, 9, 0, 0}, 4, null);
+        when(resourceHeatmapMapper.insertIgnore(resourceId)).thenReturn(0);
+        when(resourceHeatmapMapper.findByResourceIdForUpdate(resourceId)).thenReturn(stored);
+        Cursor<PlaybackVector> cursor = cursorOf(vector(4, 1, 1, 0, 0), vector(4, 0, 1, 0, 2));
+        when(playbackVectorMapper.streamByResourceId(resourceId)).thenReturn(cursor);
+
+        // When
+        HeatmapRebuildResult result = resourceHeatmapService.rebuildHeatmap(resourceId);
+
+        // Then
+        assertTrue(result.isPreviouslyMaterialized());
+        assertFalse(result.isMatched());
+        assertEquals(2, result.getMismatchedSeconds());
+        assertEquals(1, result.getFirstMismatchSecond());
+        assertArrayEquals(new int[]{1, 2, 0, 2}, stored.getHeatmapData());
+        verify(resourceHeatmapMapper).update(stored);
+    }
+
+    @Test
+    void rebuildHeatmap_shouldMatch_whenIncrementalUpdatesAgreeWithRawVectors() {
+        // Given - an aggregate maintained only through applyDeltas, one delta folded and one still in its shard
+        ResourceHeatmap stored = new ResourceHeatmap(resourceId, null, 0, null);
+        ResourceHeatmapShard shard = new ResourceHeatmapShard(resourceId, 0, null, null);
+        when(resourceHeatmapShardMapper.findForUpdate(resourceId, 0)).thenReturn(shard);
+        when(resourceHeatmapShardMapper.findByResourceIdForUpdate(resourceId)).thenAnswer(invocation -> List.of(shard));
+        when(resourceHeatmapMapper.findByResourceIdForUpdate(resourceId)).thenReturn(stored);
+        doAnswer(invocation -> {
+            shard.setDeltaData(null);
+            return null;
+        }).when(resourceHeatmapShardMapper).clearByResourceId(resourceId);
+        Map<Long, int[]> deltas = new LinkedHashMap<>();
+        deltas.put(resourceId, new int[]{1, 1, 0});
+        resourceHeatmapService.applyDeltas(deltas);
+        resourceHeatmapService.foldShards(resourceId);
+        deltas.put(resourceId, new int[]{0, 1, 2});
+        resourceHeatmapService.applyDeltas(deltas);
+
+        when(resourceHeatmapMapper.insertIgnore(resourceId)).thenReturn(0);
+        Cursor<PlaybackVector> cursor = cursorOf(vector(3, 1, 0, 2), vector(3, 0, 2, 0));
+        when(playbackVectorMapper.streamByResourceId(resourceId)).thenReturn(cursor);
+
+        // When
+        HeatmapRebuildResult result = resourceHeatmapService.rebuildHeatmap(resourceId);
+
+        // Then
+        assertTrue(result.isMatched());
+        assertEquals(-1, result.getFirstMismatchSecond());
+        assertArrayEquals(new int[]{1, 2, 2}, stored.getHeatmapData());
+        assertNull(shard.getDeltaData());
+    }
+
+    @Test
+    void rebuildHeatmap_shouldMaterializeMissingRow() {
+        // Given
+        ResourceHeatmap created = new ResourceHeatmap(resourceId, null, 0, null);
+        when(resourceHeatmapMapper.insertIgnore(resourceId)).thenReturn(1);
+        when(resourceHeatmapMapper.findByResourceIdForUpdate(resourceId)).thenReturn(created);
+        Cursor<PlaybackVector> cursor = cursorOf(vector(2, 3, 1));
+        when(playbackVectorMapper.streamByResourceId(resourceId)).thenReturn(cursor);
+
+        // When
+        HeatmapRebuildResult result = resourceHeatmapService.rebuildHeatmap(resourceId);
+
+        // Then
+        assertFalse(result.isPreviouslyMaterialized());
+        assertArrayEquals(new int[]{3, 1}, created.getHeatmapData());
+        assertEquals(2, created.getDuration());
+    }
+
+    @Test
+    void findHeatmap_shouldAddPendingShardsToAggregate() {
+        when(resourceHeatmapMapper.findByResourceId(resourceId))
+                .thenReturn(new ResourceHeatmap(resourceId, new int[]{1, 0}, 2, null));
+        when(resourceHeatmapShardMapper.findByResourceId(resourceId)).thenReturn(List.of(
+                new ResourceHeatmapShard(resourceId, 0, new int[]{0, 1, 4}, null),
+                new ResourceHeatmapShard(resourceId, 3, new int[]{2}, null)));
+
+        assertArrayEquals(new int[]{3, 1, 4}, resourceHeatmapService.findHeatmap(resourceId));
+    }
+
+    @Test
+    void findHeatmap_shouldReturnNull_whenNotMaterialized() {
+        when(resourceHeatmapMapper.findByResourceId(resourceId)).thenReturn(null);
+
+        assertNull(resourceHeatmapService.findHeatmap(resourceId));
+    }
+
+    private int[] rampHeatmap(int duration) {
+        int[] heatmap = new int[duration];
+        for (int i = 0; i < duration; i++) {
+            heatmap[i] = i % 7;
+        }
+        return heatmap;
+    }
+
+    private List<ResourceHeatmapLevel> storedLevels(int[] perSecond) {
+        return List.of(
+                ResourceHeatmapLevel.downsample(resourceId, perSecond, 10),
+                ResourceHeatmapLevel.downsample(resourceId, perSecond, 60));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void foldShards_shouldBuildDownsampledLevels_whenNoneAreStored() {
+        // Given
+        ResourceHeatmap existing = new ResourceHeatmap(resourceId, new int[25], 25, null);
+        when(resourceHeatmapMapper.findByResourceIdForUpdate(resourceId)).thenReturn(existing);
+        int[] delta = new int[25];
+        delta[3] = 2;
+        delta[7] = 5;
+        delta[24] = 1;
+        when(resourceHeatmapShardMapper.findByResourceIdForUpdate(resourceId))
+                .thenReturn(List.of(new ResourceHeatmapShard(resourceId, 0, delta, null)));
+
+        // When
+        resourceHeatmapService.foldShards(resourceId);
+
+        // Then
+        ArgumentCaptor<List<ResourceHeatmapLevel>> captor = ArgumentCaptor.forClass(List.class);
+        verify(resourceHeatmapLevelMapper).upsertBatch(captor.capture());
+        ResourceHeatmapLevel tenSeconds = captor.getValue().get(0);
+        assertEquals(10, tenSeconds.getResolutionSeconds());
+        assertArrayEquals(new int[]{7, 0, 1}, tenSeconds.getSumData());
+        assertArrayEquals(new int[]{5, 0, 1}, tenSeconds.getMaxData());
+        ResourceHeatmapLevel minute = captor.getValue().get(1);
+        assertArrayEquals(new int[]{8}, minute.getSumData());
+        assertArrayEquals(new int[]{5}, minute.getMaxData());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void foldShards_shouldUpdateOnlyTheLevelBucketsTheDeltaTouches() {
+        // Given - a 125s video whose stored levels match the aggregate
+        int[] perSecond = rampHeatmap(125);
+        ResourceHeatmap existing = new ResourceHeatmap(resourceId, perSecond.clone(), 125, null);
+        when(resourceHeatmapMapper.findByResourceIdForUpdate(resourceId)).thenReturn(existing);
+        when(resourceHeatmapLevelMapper.findByResourceId(resourceId)).thenReturn(storedLevels(perSecond));
+        // Raises second 12 to a new bucket max, lowers the max second 20 and reaches past the end of the video
+        int[] delta = new int[128];
+        delta[12] = 9;
+        delta[20] = -6;
+        delta[127] = 2;
+        when(resourceHeatmapShardMapper.findByResourceIdForUpdate(resourceId))
+                .thenReturn(List.of(new ResourceHeatmapShard(resourceId, 0, delta, null)));
+
+        // When
+        resourceHeatmapService.foldShards(resourceId);
+
+        // Then - the levels equal a full downsample of the new aggregate
+        int[] expected = Arrays.copyOf(perSecond, 128);
+        expected[12] += 9;
+        expected[20] -= 6;
+        expected[127] += 2;
+        ArgumentCaptor<List<ResourceHeatmapLevel>> captor = ArgumentCaptor.forClass(List.class);
+        verify(resourceHeatmapLevelMapper).upsertBatch(captor.capture());
+        for (ResourceHeatmapLevel level : captor.getValue()) {
+            ResourceHeatmapLevel full = ResourceHeatmapLevel.downsample(resourceId, expected, level.getResolutionSeconds());
+            assertArrayEquals(full.getSumData(), level.getSumData());
+            assertArrayEquals(full.getMaxData(), level.getMaxData());
+            assertEquals(128, level.getDuration());
+        }
+    }
+
+    @Test
+    void findHeatmapLevel_shouldMergeCoarsestSufficientLevelToTargetBuckets() {
+        // Given - a 3 hour video: 1080 ten-second buckets, 180 one-minute buckets
+        int[] perSecond = rampHeatmap(10800);
+        when(resourceHeatmapLevelMapper.findByResourceId(resourceId)).thenReturn(storedLevels(perSecond));
+
+        // When
+        ResourceHeatmapLevel forTwoHundred = resourceHeatmapService.findHeatmapLevel(resourceId, 200, null);
+        ResourceHeatmapLevel forHundred = resourceHeatmapService.findHeatmapLevel(resourceId, 100, null);
+
+        // Then
+        assertEquals(60, forTwoHundred.getResolutionSeconds());
+        assertEquals(180, forTwoHundred.getBucketCount());
+        assertEquals(120, forHundred.getResolutionSeconds());
+        assertEquals(90, forHundred.getBucketCount());
+        assertArrayEquals(ResourceHeatmapLevel.downsample(resourceId, perSecond, 120).getSumData(), forHundred.getSumData());
+        assertArrayEquals(ResourceHeatmapLevel.downsample(resourceId, perSecond, 120).getMaxData(), forHundred.getMaxData());
+        verify(resourceHeatmapMapper, never()).findByResourceId(any());
+    }
+
+    @Test
+    void findHeatmapLevel_shouldUseLargestDividingLevelForResolution() {
+        // Given
+        int[] perSecond = rampHeatmap(125);
+        when(resourceHeatmapLevelMapper.findByResourceId(resourceId)).thenReturn(storedLevels(perSecond));
+        when(resourceHeatmapMapper.findByResourceId(resourceId)).thenReturn(new ResourceHeatmap(resourceId, perSecond, 125, null));
+
+        // When
+        ResourceHeatmapLevel thirty = resourceHeatmapService.findHeatmapLevel(resourceId, null, 30);
+        ResourceHeatmapLevel seven = resourceHeatmapService.findHeatmapLevel(resourceId, null, 7);
+
+        // Then
+        assertArrayEquals(ResourceHeatmapLevel.downsample(resourceId, perSecond, 30).getSumData(), thirty.getSumData());
+        assertEquals(5, thirty.getBucketCount());
+        assertEquals(7, seven.getResolutionSeconds());
+        assertEquals(18, seven.getBucketCount());
+        assertArrayEquals(ResourceHeatmapLevel.downsample(resourceId, perSecond, 7).getMaxData(), seven.getMaxData());
+    }
+
+    @Test
+    void findHeatmapLevel_shouldReturnNull_whenLevelsNotMaterialized() {
+        when(resourceHeatmapLevelMapper.findByResourceId(resourceId)).thenReturn(List.of());
+
+        assertNull(resourceHeatmapService.findHeatmapLevel(resourceId, 200, null));
+    }
+}
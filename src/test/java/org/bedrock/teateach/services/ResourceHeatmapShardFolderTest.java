@@ -0,0 +1,50 @@
+package org.bedrock.teateach.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ResourceHeatmapShardFolderTest {
+
+    @Mock
+    private ResourceHeatmapService resourceHeatmapService;
+
+    private ResourceHeatmapShardFolder folder;
+
+    @BeforeEach
+    void setUp() {
+        folder = new ResourceHeatmapShardFolder(resourceHeatmapService, 50);
+    }
+
+    @Test
+    void fold_shouldFoldEachPendingResourceAndContinueAfterAFailure() {
+        // Given
+        when(resourceHeatmapService.findResourcesWithPendingShards(50)).thenReturn(List.of(1L, 2L, 3L));
+        when(resourceHeatmapService.foldShards(1L)).thenReturn(true);
+        when(resourceHeatmapService.foldShards(2L)).thenThrow(new RuntimeException("lock wait timeout"));
+        when(resourceHeatmapService.foldShards(3L)).thenReturn(true);
+
+        // When
+        int folded = folder.fold();
+
+        // Then
+        assertEquals(2, folded);
+        verify(resourceHeatmapService).foldShards(3L);
+    }
+
+    @Test
+    void fold_shouldDoNothing_whenNoShardsArePending() {
+        when(resourceHeatmapService.findResourcesWithPendingShards(50)).thenReturn(List.of());
+
+        assertEquals(0, folder.fold());
+        verify(resourceHeatmapService, never()).foldShards(any());
+    }
+}
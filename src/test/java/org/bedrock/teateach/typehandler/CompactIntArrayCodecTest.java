@@ -0,0 +1,112 @@
+package org.bedrock.teateach.typehandler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactIntArrayCodecTest {
+
+    @Test
+    void shouldRoundTripRandomVectors() {
+        // Given
+        Random random = new Random(42);
+
+        for (int iteration = 0; iteration < 200; iteration++) {
+            int[] values = new int[random.nextInt(3000)];
+            for (int i = 0; i < values.length; i++) {
+                // Mix of long runs, small counts and the occasional extreme value
+                int pick = random.nextInt(20);
+                values[i] = pick < 15 ? (i / 50) % 3 : pick < 19 ? random.nextInt(1000) - 500 : random.nextInt();
+            }
+
+            // When
+            int[] decoded = CompactIntArrayCodec.decode(CompactIntArrayCodec.encode(values));
+
+            // Then
+            assertArrayEquals(values, decoded);
+        }
+    }
+
+    @Test
+    void shouldRoundTripEdgeCases() {
+        assertArrayEquals(new int[0], CompactIntArrayCodec.decode(CompactIntArrayCodec.encode(new int[0])));
+        assertArrayEquals(new int[0], CompactIntArrayCodec.decode(CompactIntArrayCodec.encode(null)));
+        int[] extremes = {Integer.MIN_VALUE, -1, 0, 1, Integer.MAX_VALUE};
+        assertArrayEquals(extremes, CompactIntArrayCodec.decode(CompactIntArrayCodec.encode(extremes)));
+    }
+
+    @Test
+    void shouldBeMuchSmallerThanJsonForTypicalPlayback() throws Exception {
+        // Given - a two hour video watched once with a rewatched section
+        int[] values = new int[7200];
+        for (int i = 0; i < 5400; i++) {
+            values[i] = 1;
+        }
+        for (int i = 1200; i < 1500; i++) {
+            values[i] = 2;
+        }
+
+        // When
+        byte[] compact = CompactIntArrayCodec.encode(values);
+        byte[] json = new ObjectMapper().writeValueAsBytes(values);
+
+        // Then
+        assertTrue(CompactIntArrayCodec.isCompact(compact));
+        assertTrue(compact.length < 20, "compact size was " + compact.length);
+        assertTrue(json.length > 14000);
+    }
+
+    @Test
+    void shouldDecodeLegacyJson() {
+        byte[] legacy = "[0,1,1,2]".getBytes(StandardCharsets.UTF_8);
+
+        assertFalse(CompactIntArrayCodec.isCompact(legacy));
+        assertArrayEquals(new int[]{0, 1, 1, 2}, CompactIntArrayCodec.decode(legacy));
+    }
+
+    @Test
+    void shouldReturnEmptyArrayForInvalidLegacyJson() {
+        assertArrayEquals(new int[0], CompactIntArrayCodec.decode("not json".getBytes(StandardCharsets.UTF_8)));
+        assertArrayEquals(new int[0], CompactIntArrayCodec.decode(new byte[0]));
+        assertArrayEquals(new int[0], CompactIntArrayCodec.decode(null));
+    }
+
+    @Test
+    void shouldRejectUnknownVersion() {
+        byte[] bytes = {CompactIntArrayCodec.MAGIC, 99, 0};
+
+        assertThrows(IllegalArgumentException.class, () -> CompactIntArrayCodec.decode(bytes));
+    }
+
+    @Test
+    void shouldRejectCorruptData() {
+        byte[] encoded = CompactIntArrayCodec.encode(new int[]{1, 1, 1, 5, 5});
+
+        // Truncated input
+        byte[] truncated = new byte[encoded.length - 1];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+        assertThrows(IllegalArgumentException.class, () -> CompactIntArrayCodec.decode(truncated));
+
+        // Run longer than the declared length
+        byte[] overlong = {CompactIntArrayCodec.MAGIC, CompactIntArrayCodec.VERSION_RLE_VARINT, 2, 5, 2};
+        assertThrows(IllegalArgumentException.class, () -> CompactIntArrayCodec.decode(overlong));
+    }
+
+    @Test
+    void shouldRejectDataLongerThanMaxLength() {
+        // A 7 byte event claiming Integer.MAX_VALUE seconds is rejected before the array is allocated
+        byte[] huge = {CompactIntArrayCodec.MAGIC, CompactIntArrayCodec.VERSION_RLE_VARINT,
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+        assertThrows(IllegalArgumentException.class, () -> CompactIntArrayCodec.decode(huge, 120));
+
+        assertArrayEquals(new int[]{1, 2}, CompactIntArrayCodec.decode(CompactIntArrayCodec.encode(new int[]{1, 2}), 2));
+        assertThrows(IllegalArgumentException.class,
+                () -> CompactIntArrayCodec.decode(CompactIntArrayCodec.encode(new int[3]), 2));
+        assertThrows(IllegalArgumentException.class,
+                () -> CompactIntArrayCodec.decode("[1,2,3]".getBytes(StandardCharsets.UTF_8), 2));
+    }
+}
@@ -0,0 +1,94 @@
+package org.bedrock.teateach.typehandler;
+
+import org.apache.ibatis.type.JdbcType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class IntArrayCompactTypeHandlerTest {
+
+    private IntArrayCompactTypeHandler typeHandler;
+
+    @Mock
+    private PreparedStatement ps;
+
+    @Mock
+    private ResultSet rs;
+
+    @Mock
+    private CallableStatement cs;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        typeHandler = new IntArrayCompactTypeHandler();
+    }
+
+    @Test
+    void shouldSetNonNullParameterAsCompactBytes() throws SQLException {
+        // Given
+        int[] parameter = {1, 1, 1, 0, 2};
+
+        // When
+        typeHandler.setNonNullParameter(ps, 1, parameter, JdbcType.BLOB);
+
+        // Then
+        verify(ps).setBytes(eq(1), eq(CompactIntArrayCodec.encode(parameter)));
+    }
+
+    @Test
+    void shouldGetNullableResultByColumnName() throws SQLException {
+        // Given
+        when(rs.getBytes("col")).thenReturn(CompactIntArrayCodec.encode(new int[]{3, 3, 0}));
+
+        // When
+        int[] result = typeHandler.getNullableResult(rs, "col");
+
+        // Then
+        assertArrayEquals(new int[]{3, 3, 0}, result);
+    }
+
+    @Test
+    void shouldGetNullableResultFromLegacyJsonByColumnIndex() throws SQLException {
+        // Given
+        when(rs.getBytes(1)).thenReturn("[1,2,3]".getBytes(StandardCharsets.UTF_8));
+
+        // When
+        int[] result = typeHandler.getNullableResult(rs, 1);
+
+        // Then
+        assertArrayEquals(new int[]{1, 2, 3}, result);
+    }
+
+    @Test
+    void shouldGetEmptyArrayForNullFromCallableStatement() throws SQLException {
+        // Given
+        when(cs.getBytes(1)).thenReturn(null);
+
+        // When
+        int[] result = typeHandler.getNullableResult(cs, 1);
+
+        // Then
+        assertArrayEquals(new int[0], result);
+    }
+
+    @Test
+    void shouldWrapCorruptDataInSqlException() throws SQLException {
+        // Given
+        when(rs.getBytes("col")).thenReturn(new byte[]{CompactIntArrayCodec.MAGIC, 7});
+
+        // When & Then
+        assertThrows(SQLException.class, () -> typeHandler.getNullableResult(rs, "col"));
+    }
+}
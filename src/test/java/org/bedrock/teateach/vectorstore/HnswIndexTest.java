@@ -0,0 +1,140 @@
+package org.bedrock.teateach.vectorstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HnswIndexTest {
+
+    private static final int DIMENSIONS = 32;
+
+    /**
+     * Vectors scattered around a few centres, which is closer to real embeddings than uniform noise
+     */
+    private static float[][] clusteredVectors(int count, Random random) {
+        float[][] centres = new float[20][DIMENSIONS];
+        for (float[] centre : centres) {
+            for (int i = 0; i < DIMENSIONS; i++) {
+                centre[i] = (float) random.nextGaussian();
+            }
+        }
+        float[][] vectors = new float[count][DIMENSIONS];
+        for (float[] vector : vectors) {
+            float[] centre = centres[random.nextInt(centres.length)];
+            for (int i = 0; i < DIMENSIONS; i++) {
+                vector[i] = centre[i] + (float) random.nextGaussian() * 0.5f;
+            }
+        }
+        return vectors;
+    }
+
+    private static HnswIndex build(float[][] vectors) {
+        HnswIndex index = new HnswIndex(DIMENSIONS, 16, 100, 7L);
+        for (float[] vector : vectors) {
+            index.add(vector);
+        }
+        return index;
+    }
+
+    private static double recall(HnswIndex index, float[][] queries, int k, java.util.function.IntPredicate accept) {
+        int hits = 0;
+        int expected = 0;
+        for (float[] query : queries) {
+            Set<Integer> exact = new HashSet<>();
+            for (int node : index.exactSearch(query, k, accept).nodes()) {
+                exact.add(node);
+            }
+            expected += exact.size();
+            for (int node : index.search(query, k, 128, accept).nodes()) {
+                if (exact.contains(node)) {
+                    hits++;
+                }
+            }
+        }
+        return (double) hits / expected;
+    }
+
+    @Test
+    void search_shouldFindNearlyAllExactNeighbours() {
+        Random random = new Random(1);
+        HnswIndex index = build(clusteredVectors(3000, random));
+        float[][] queries = clusteredVectors(100, random);
+
+        assertTrue(recall(index, queries, 10, node -> true) >= 0.95);
+    }
+
+    @Test
+    void search_shouldReturnBestFirstWithSimilarities() {
+        HnswIndex index = new HnswIndex(2, 4, 16, 1L);
+        index.add(new float[]{1, 0});
+        index.add(new float[]{0, 1});
+        index.add(new float[]{1, 1});
+
+        HnswIndex.SearchResult result = index.search(new float[]{2, 0.1f}, 3, 16, node -> true);
+
+        assertArrayEquals(new int[]{0, 2, 1}, result.nodes());
+        assertEquals(1.0, result.similarities()[0], 0.01);
+        assertEquals(Math.sqrt(0.5), result.similarities()[1], 0.05);
+    }
+
+    @Test
+    void search_shouldSkipDeletedAndFilteredNodes() {
+        Random random = new Random(2);
+        HnswIndex index = build(clusteredVectors(2000, random));
+        for (int node = 0; node < 2000; node += 4) {
+            index.markDeleted(node);
+        }
+        float[][] queries = clusteredVectors(50, random);
+
+        for (float[] query : queries) {
+            for (int node : index.search(query, 10, 64, n -> n % 3 == 0).nodes()) {
+                assertFalse(index.isDeleted(node));
+                assertEquals(0, node % 3);
+            }
+        }
+        assertTrue(recall(index, queries, 10, n -> n % 3 == 0) >= 0.9);
+        assertEquals(1500, index.liveCount());
+    }
+
+    @Test
+    void search_shouldFindRareFilterMatches() {
+        Random random = new Random(3);
+        HnswIndex index = build(clusteredVectors(2000, random));
+
+        HnswIndex.SearchResult result = index.search(clusteredVectors(1, random)[0], 5, 16, node -> node % 500 == 0);
+
+        assertEquals(4, result.nodes().length);
+    }
+
+    @Test
+    void writeAndRead_shouldRestoreTheSameGraph() throws IOException {
+        Random random = new Random(4);
+        HnswIndex index = build(clusteredVectors(500, random));
+        index.markDeleted(3);
+        float[] query = clusteredVectors(1, random)[0];
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.write(new DataOutputStream(bytes));
+        HnswIndex restored = HnswIndex.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 7L);
+
+        assertEquals(index.size(), restored.size());
+        assertTrue(restored.isDeleted(3));
+        assertArrayEquals(index.search(query, 10, 64, n -> true).nodes(), restored.search(query, 10, 64, n -> true).nodes());
+    }
+
+    @Test
+    void add_shouldRejectVectorsOfAnotherDimension() {
+        HnswIndex index = new HnswIndex(3, 4, 16, 1L);
+
+        assertThrows(IllegalArgumentException.class, () -> index.add(new float[]{1, 2}));
+    }
+}
@@ -0,0 +1,174 @@
+package org.bedrock.teateach.vectorstore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Search latency and recall@k of {@link HnswVectorStore} against the brute-force {@link SimpleVectorStore} on
+ * clustered random vectors. Recall is measured once per trial, with SimpleVectorStore as the exact reference, and
+ * printed before the measurements.
+ * <p>
+ * Not run by the test suite. To run it:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main \
+ *     -Dexec.args="HnswVectorStoreBenchmark"
+ * </pre>
+ * The 1M run needs several GB of heap and a few minutes to build both stores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx8g"})
+public class HnswVectorStoreBenchmark {
+
+    private static final int DIMENSIONS = 128;
+    private static final int CLUSTERS = 256;
+    private static final int QUERIES = 100;
+    private static final int TOP_K = 10;
+    private static final int BATCH = 10_000;
+
+    @Param({"10000", "100000", "1000000"})
+    public int vectorCount;
+
+    private HnswVectorStore hnswStore;
+    private SimpleVectorStore simpleStore;
+    private List<SearchRequest> queries;
+    private int nextQuery;
+
+    /**
+     * Embeds "doc-i" and "query-i" texts as precomputed vectors, so the benchmark measures the stores alone
+     */
+    private static class StubEmbeddingModel implements EmbeddingModel {
+        private final float[][] documents;
+        private final float[][] queries;
+
+        StubEmbeddingModel(float[][] documents, float[][] queries) {
+            this.documents = documents;
+            this.queries = queries;
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>(request.getInstructions().size());
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                embeddings.add(new Embedding(vectorOf(request.getInstructions().get(i)), i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return vectorOf(document.getText());
+        }
+
+        @Override
+        public int dimensions() {
+            return DIMENSIONS;
+        }
+
+        private float[] vectorOf(String text) {
+            int separator = text.indexOf('-');
+            int index = Integer.parseInt(text.substring(separator + 1));
+            return text.startsWith("query") ? queries[index] : documents[index];
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        float[][] centroids = new float[CLUSTERS][];
+        for (int c = 0; c < CLUSTERS; c++) {
+            centroids[c] = gaussian(random, null, 1f);
+        }
+        float[][] documentVectors = new float[vectorCount][];
+        for (int i = 0; i < vectorCount; i++) {
+            documentVectors[i] = gaussian(random, centroids[random.nextInt(CLUSTERS)], 0.6f);
+        }
+        float[][] queryVectors = new float[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            queryVectors[i] = gaussian(random, centroids[random.nextInt(CLUSTERS)], 0.6f);
+        }
+        StubEmbeddingModel embeddingModel = new StubEmbeddingModel(documentVectors, queryVectors);
+
+        hnswStore = new HnswVectorStore(embeddingModel, 16, 200, 64, 0.3);
+        simpleStore = SimpleVectorStore.builder(embeddingModel).build();
+        for (int from = 0; from < vectorCount; from += BATCH) {
+            List<Document> batch = new ArrayList<>(BATCH);
+            for (int i = from; i < Math.min(from + BATCH, vectorCount); i++) {
+                batch.add(new Document("id-" + i, "doc-" + i, new HashMap<>()));
+            }
+            hnswStore.add(batch);
+            simpleStore.add(batch);
+        }
+
+        queries = new ArrayList<>(QUERIES);
+        for (int i = 0; i < QUERIES; i++) {
+            queries.add(SearchRequest.builder().query("query-" + i).topK(TOP_K).build());
+        }
+        System.out.printf("%nrecall@%d of HNSW at %d vectors: %.3f%n", TOP_K, vectorCount, recall());
+    }
+
+    @Benchmark
+    public List<Document> hnswSearch() {
+        return hnswStore.similaritySearch(nextQuery());
+    }
+
+    @Benchmark
+    public List<Document> simpleSearch() {
+        return simpleStore.similaritySearch(nextQuery());
+    }
+
+    private SearchRequest nextQuery() {
+        nextQuery = (nextQuery + 1) % QUERIES;
+        return queries.get(nextQuery);
+    }
+
+    private double recall() {
+        int found = 0;
+        for (SearchRequest query : queries) {
+            Set<String> exact = new HashSet<>();
+            simpleStore.similaritySearch(query).forEach(document -> exact.add(document.getId()));
+            for (Document document : hnswStore.similaritySearch(query)) {
+                if (exact.contains(document.getId())) {
+                    found++;
+                }
+            }
+        }
+        return (double) found / (QUERIES * TOP_K);
+    }
+
+    private static float[] gaussian(Random random, float[] center, float scale) {
+        float[] vector = new float[DIMENSIONS];
+        for (int d = 0; d < DIMENSIONS; d++) {
+            vector[d] = (center == null ? 0 : center[d]) + (float) random.nextGaussian() * scale;
+        }
+        return vector;
+    }
+}
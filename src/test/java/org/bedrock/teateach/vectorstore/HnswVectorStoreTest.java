@@ -0,0 +1,204 @@
+package org.bedrock.teateach.vectorstore;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class HnswVectorStoreTest {
+
+    /** Texts are embedded as a direction, so similarity between texts is easy to predict */
+    private static final Map<String, float[]> EMBEDDINGS = Map.of(
+            "east", new float[]{1, 0, 0},
+            "north-east", new float[]{1, 1, 0},
+            "north", new float[]{0, 1, 0},
+            "up", new float[]{0, 0, 1},
+            "east again", new float[]{0.9f, 0.1f, 0});
+
+    @Mock
+    private EmbeddingModel embeddingModel;
+
+    @TempDir
+    Path tempDir;
+
+    private HnswVectorStore store;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(embeddingModel.embed(anyString())).thenAnswer(invocation -> EMBEDDINGS.get(invocation.<String>getArgument(0)));
+        lenient().when(embeddingModel.embed(anyList())).thenAnswer(invocation ->
+                invocation.<List<String>>getArgument(0).stream().map(EMBEDDINGS::get).toList());
+        store = new HnswVectorStore(embeddingModel, 4, 16, 16, 0.5);
+    }
+
+    private static Document document(String id, String text, String courseId) {
+        return new Document(id, text, new HashMap<>(Map.of("courseId", courseId)));
+    }
+
+    private static List<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).toList();
+    }
+
+    @Test
+    void similaritySearch_shouldReturnNearestDocumentsWithScores() {
+        store.add(List.of(document("e", "east", "1"), document("ne", "north-east", "1"),
+                document("n", "north", "2"), document("u", "up", "2")));
+
+        List<Document> results = store.similaritySearch(SearchRequest.builder().query("east").topK(2).build());
+
+        assertEquals(List.of("e", "ne"), ids(results));
+        assertEquals(1.0, results.get(0).getScore(), 0.001);
+        assertEquals(Math.sqrt(0.5), results.get(1).getScore(), 0.001);
+        assertEquals("north-east", results.get(1).getText());
+        assertEquals("1", results.get(1).getMetadata().get("courseId"));
+    }
+
+    @Test
+    void similaritySearch_shouldApplyThresholdAndFilter() {
+        store.add(List.of(document("e", "east", "1"), document("ne", "north-east", "2"),
+                document("n", "north", "2"), document("u", "up", "2")));
+
+        List<Document> thresholded = store.similaritySearch(SearchRequest.builder()
+                .query("east").topK(4).similarityThreshold(0.5).build());
+        List<Document> filtered = store.similaritySearch(SearchRequest.builder()
+                .query("east").topK(4).filterExpression(new FilterExpressionBuilder().eq("courseId", "2").build()).build());
+
+        assertEquals(List.of("e", "ne"), ids(thresholded));
+        assertEquals("ne", filtered.get(0).getId());
+        assertEquals(Set.of("ne", "n", "u"), Set.copyOf(ids(filtered)));
+    }
+
+    @Test
+    void add_shouldReplaceDocumentWithTheSameId() {
+        store.add(List.of(document("a", "up", "1"), document("b", "north", "1")));
+        store.add(List.of(document("a", "east", "1")));
+
+        List<Document> results = store.similaritySearch(SearchRequest.builder().query("east").topK(3).build());
+
+        assertEquals(2, store.size());
+        assertEquals(List.of("a", "b"), ids(results));
+        assertEquals("east", results.get(0).getText());
+    }
+
+    @Test
+    void add_shouldCompactNodesLeftBehindByReplacedDocuments() {
+        store.add(List.of(document("a", "up", "1"), document("b", "north", "1")));
+
+        for (int i = 0; i < 10; i++) {
+            store.add(List.of(document("a", i % 2 == 0 ? "east" : "up", "1")));
+        }
+
+        assertEquals(2, store.size());
+        assertTrue(store.graphSize() < 4, "graph has " + store.graphSize() + " nodes for 2 documents");
+        assertEquals(List.of("a", "b"), ids(store.similaritySearch(SearchRequest.builder().query("up").topK(2).build())));
+    }
+
+    @Test
+    void delete_shouldRemoveDocumentsByIdAndByFilter() {
+        store.add(List.of(document("e", "east", "1"), document("ne", "north-east", "1"),
+                document("n", "north", "2"), document("u", "up", "3")));
+
+        store.delete(List.of("e"));
+        store.delete(new FilterExpressionBuilder().eq("courseId", "2").build());
+
+        assertEquals(List.of("ne", "u"), ids(store.similaritySearch(SearchRequest.builder().query("east").topK(4).build())));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void delete_shouldCompactWithoutEmbeddingAgain() {
+        store.add(List.of(document("e", "east", "1"), document("ne", "north-east", "1"),
+                document("n", "north", "2"), document("u", "up", "3")));
+
+        // Two of four nodes deleted reaches the compact ratio of 0.5
+        store.delete(List.of("e", "n"));
+
+        verify(embeddingModel, times(1)).embed(anyList());
+        assertEquals(List.of("ne", "u"), ids(store.similaritySearch(SearchRequest.builder().query("east").topK(4).build())));
+    }
+
+    @Test
+    void saveAndLoad_shouldRestoreDocumentsAndGraph() {
+        store.add(List.of(document("e", "east", "1"), document("ne", "north-east", "1"), document("u", "up", "2")));
+        store.delete(List.of("u"));
+        File file = tempDir.resolve("vectors.bin").toFile();
+
+        store.save(file);
+        HnswVectorStore restored = new HnswVectorStore(embeddingModel, 4, 16, 16, 0.5);
+        restored.load(file);
+
+        assertEquals(2, restored.size());
+        List<Document> results = restored.similaritySearch(SearchRequest.builder().query("east again").topK(3).build());
+        assertEquals(List.of("e", "ne"), ids(results));
+        assertEquals("1", results.get(0).getMetadata().get("courseId"));
+    }
+
+    @Test
+    void similaritySearch_shouldReturnNothingWhenEmpty() {
+        assertTrue(store.similaritySearch(SearchRequest.builder().query("east").build()).isEmpty());
+    }
+
+    @Test
+    void partitionedSearch_shouldOnlyReturnDocumentsOfTheSelectedPartitions() {
+        HnswVectorStore partitioned = new HnswVectorStore(embeddingModel, 4, 16, 16, 0.5, "courseIds");
+        partitioned.add(List.of(
+                new Document("e", "east", new HashMap<>(Map.of("courseIds", List.of("1"), "type", "pdf"))),
+                new Document("ne", "north-east", new HashMap<>(Map.of("courseIds", List.of("1", "2"), "type", "pdf"))),
+                new Document("n", "north", new HashMap<>(Map.of("courseIds", List.of("2"), "type", "video"))),
+                new Document("u", "up", new HashMap<>(Map.of("type", "pdf")))));
+        FilterExpressionBuilder filter = new FilterExpressionBuilder();
+
+        List<Document> course2 = partitioned.similaritySearch(SearchRequest.builder()
+                .query("east").topK(4).filterExpression(filter.eq("courseIds", "2").build()).build());
+        List<Document> course2Pdfs = partitioned.similaritySearch(SearchRequest.builder()
+                .query("east").topK(4).filterExpression(filter.and(filter.eq("courseIds", "2"), filter.eq("type", "pdf")).build()).build());
+        List<Document> all = partitioned.similaritySearch(SearchRequest.builder().query("east").topK(4).build());
+
+        assertEquals(List.of("ne", "n"), ids(course2));
+        assertEquals(List.of("ne"), ids(course2Pdfs));
+        // A document in two partitions is returned once
+        assertEquals(List.of("e", "ne"), ids(all).subList(0, 2));
+        assertEquals(Set.of("e", "ne", "n", "u"), Set.copyOf(ids(all)));
+    }
+
+    @Test
+    void partitionedStore_shouldMoveReplacedDocumentsAndSurviveSaveAndLoad() {
+        HnswVectorStore partitioned = new HnswVectorStore(embeddingModel, 4, 16, 16, 0.5, "courseIds");
+        partitioned.add(List.of(new Document("e", "east", new HashMap<>(Map.of("courseIds", List.of("1")))),
+                new Document("n", "north", new HashMap<>(Map.of("courseIds", List.of("1"))))));
+        // Relinking a document to another course moves it to that partition
+        partitioned.add(List.of(new Document("e", "east", new HashMap<>(Map.of("courseIds", List.of("2"))))));
+        File file = tempDir.resolve("partitioned.bin").toFile();
+        partitioned.save(file);
+
+        HnswVectorStore restored = new HnswVectorStore(embeddingModel, 4, 16, 16, 0.5, "courseIds");
+        restored.load(file);
+
+        assertEquals(List.of("n"), ids(restored.similaritySearch(SearchRequest.builder().query("east").topK(4)
+                .filterExpression(new FilterExpressionBuilder().eq("courseIds", "1").build()).build())));
+        assertEquals(List.of("e"), ids(restored.similaritySearch(SearchRequest.builder().query("east").topK(4)
+                .filterExpression(new FilterExpressionBuilder().in("courseIds", "2", "3").build()).build())));
+        // A file partitioned by another key is rejected rather than searched wrongly
+        assertThrows(UncheckedIOException.class, () -> store.load(file));
+    }
+}
@@ -108,6 +108,26 @@ export const submissionService = {
       data.gradingRubric = gradingRubric
     }
     return apiClient.post('/submissions/batch-llm-grade', data)
+  },
+
+  // Background batch LLM grading, returns a job id to poll
+  submitLlmGradingJob(submissionIds, gradingRubric = null, regradeGraded = false) {
+    const data = {
+      submissionIds: submissionIds,
+      regradeGraded: regradeGraded
+    }
+    if (gradingRubric) {
+      data.gradingRubric = gradingRubric
+    }
+    return apiClient.post('/submissions/batch-llm-grade/jobs', data)
+  },
+
+  getLlmGradingJob(jobId) {
+    return apiClient.get(`/submissions/batch-llm-grade/jobs/${jobId}`)
+  },
+
+  retryLlmGradingJob(jobId) {
+    return apiClient.post(`/submissions/batch-llm-grade/jobs/${jobId}/retry`)
   }
 }
 